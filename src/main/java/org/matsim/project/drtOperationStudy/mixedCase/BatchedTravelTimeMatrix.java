@@ -0,0 +1,102 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.zone.skims.TravelTimeMatrix;
+import org.matsim.core.router.speedy.LeastCostPathTree;
+import org.matsim.core.router.speedy.SpeedyGraph;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.utils.misc.OptionalTime;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Travel time matrix that answers the queries from/to the nodes of the current request with least cost path trees,
+ * and all the other queries with the delegate matrix. Before the insertion of a request, {@link #prepare} calculates
+ * one forward tree (one-to-many) per source node and one backward tree (many-to-one) per target node. The trees are
+ * also calculated for the nodes covered by the delegate: the other end of a query may be outside the delegate (e.g.,
+ * the current location of a vehicle --> pickup). This replaces the many point-to-point fallback queries of the
+ * delegate. Queries between two nodes covered by the delegate are still answered by the delegate.
+ * The trees are calculated before the (parallel) evaluation of the insertions and are read-only afterward.
+ */
+class BatchedTravelTimeMatrix implements TravelTimeMatrix {
+    private static final int UNREACHABLE = -1;
+
+    private final TravelTimeMatrix delegate;
+    private final Predicate<Node> coveredByDelegate;
+    private final SpeedyGraph graph;
+    private final LeastCostPathTree lcpTree;
+
+    // node index --> travel times from/to all the nodes (by node index)
+    private volatile Map<Integer, int[]> forwardTravelTimes = Map.of();
+    private volatile Map<Integer, int[]> backwardTravelTimes = Map.of();
+
+    BatchedTravelTimeMatrix(Network network, TravelTime travelTime, TravelDisutility travelDisutility,
+                            TravelTimeMatrix delegate, Predicate<Node> coveredByDelegate) {
+        this.delegate = delegate;
+        this.coveredByDelegate = coveredByDelegate;
+        this.graph = new SpeedyGraph(network);
+        this.lcpTree = new LeastCostPathTree(graph, travelTime, travelDisutility);
+    }
+
+    /**
+     * Calculate the trees for the source nodes (travel times from the node) and the target nodes (travel times to
+     * the node) at the time. The trees of the previous request are discarded.
+     */
+    void prepare(Collection<Node> sourceNodes, Collection<Node> targetNodes, double time) {
+        Map<Integer, int[]> newForwardTravelTimes = new HashMap<>();
+        for (Node node : sourceNodes) {
+            int nodeIndex = node.getId().index();
+            if (!newForwardTravelTimes.containsKey(nodeIndex)) {
+                lcpTree.calculate(nodeIndex, time, null, null);
+                newForwardTravelTimes.put(nodeIndex, readTravelTimes(time, true));
+            }
+        }
+
+        Map<Integer, int[]> newBackwardTravelTimes = new HashMap<>();
+        for (Node node : targetNodes) {
+            int nodeIndex = node.getId().index();
+            if (!newBackwardTravelTimes.containsKey(nodeIndex)) {
+                lcpTree.calculateBackwards(nodeIndex, time, null, null);
+                newBackwardTravelTimes.put(nodeIndex, readTravelTimes(time, false));
+            }
+        }
+
+        forwardTravelTimes = newForwardTravelTimes;
+        backwardTravelTimes = newBackwardTravelTimes;
+    }
+
+    @Override
+    public int getTravelTime(Node fromNode, Node toNode, double departureTime) {
+        if (coveredByDelegate.test(fromNode) && coveredByDelegate.test(toNode)) {
+            return delegate.getTravelTime(fromNode, toNode, departureTime);
+        }
+        int[] travelTimesFromNode = forwardTravelTimes.get(fromNode.getId().index());
+        if (travelTimesFromNode != null && travelTimesFromNode[toNode.getId().index()] != UNREACHABLE) {
+            return travelTimesFromNode[toNode.getId().index()];
+        }
+        int[] travelTimesToNode = backwardTravelTimes.get(toNode.getId().index());
+        if (travelTimesToNode != null && travelTimesToNode[fromNode.getId().index()] != UNREACHABLE) {
+            return travelTimesToNode[fromNode.getId().index()];
+        }
+        return delegate.getTravelTime(fromNode, toNode, departureTime);
+    }
+
+    private int[] readTravelTimes(double time, boolean forward) {
+        int[] travelTimes = new int[graph.getNodeCount()];
+        for (int nodeIndex = 0; nodeIndex < travelTimes.length; nodeIndex++) {
+            OptionalTime nodeTime = lcpTree.getTime(nodeIndex);
+            if (nodeTime.isUndefined()) {
+                travelTimes[nodeIndex] = UNREACHABLE;
+            } else {
+                // Forward: arrival time at the node. Backward: departure time from the node
+                travelTimes[nodeIndex] = (int) (forward ? nodeTime.seconds() - time : time - nodeTime.seconds());
+            }
+        }
+        return travelTimes;
+    }
+}
@@ -0,0 +1,208 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe cache of node to node travel times. The key is built from the two node indices (i.e.,
+ * {@link org.matsim.api.core.v01.Id#index()}) and the values are stored in primitive arrays. Each entry also
+ * stores the time bin of the departure time it was calculated for, and a query for another time bin is a miss.
+ * The cache is split into segments (each guarded by its own lock). When a segment is full, an entry is evicted
+ * based on the CLOCK algorithm (i.e., an approximation of LRU).
+ */
+class BoundedTravelTimeCache {
+    static final int DEFAULT_CAPACITY = 1_000_000;
+    static final int MISSING = -1;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final double timeBinSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    BoundedTravelTimeCache(int capacity, double timeBinSize) {
+        this(capacity, timeBinSize, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1);
+    }
+
+    /**
+     * @param numberOfSegments must be a power of two
+     */
+    BoundedTravelTimeCache(int capacity, double timeBinSize, int numberOfSegments) {
+        Preconditions.checkArgument(Integer.bitCount(numberOfSegments) == 1, "The number of segments must be a power of two");
+        this.segments = new Segment[numberOfSegments];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(numberOfSegments);
+        int segmentCapacity = Math.max(1, capacity / numberOfSegments);
+        for (int i = 0; i < numberOfSegments; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        this.timeBinSize = timeBinSize;
+    }
+
+    /**
+     * @return the cached travel time, or {@link #MISSING} if it is not in the cache (for the time bin).
+     */
+    int get(int fromNodeIndex, int toNodeIndex, double departureTime) {
+        long key = getKey(fromNodeIndex, toNodeIndex);
+        int hash = hash(key);
+        int travelTime = getSegment(hash).get(key, hash, getTimeBin(departureTime));
+        if (travelTime == MISSING) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return travelTime;
+    }
+
+    void put(int fromNodeIndex, int toNodeIndex, double departureTime, int travelTime) {
+        long key = getKey(fromNodeIndex, toNodeIndex);
+        int hash = hash(key);
+        getSegment(hash).put(key, hash, getTimeBin(departureTime), travelTime);
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        long numberOfHits = getHits();
+        long numberOfQueries = numberOfHits + getMisses();
+        return "hits = " + numberOfHits + ", misses = " + getMisses() + ", hit rate = "
+                + (numberOfQueries == 0 ? 0 : (double) numberOfHits / numberOfQueries) + ", evictions = " + getEvictions();
+    }
+
+    // Private functions
+    private Segment getSegment(int hash) {
+        // The high bits select the segment (shift on long, as the shift is 32 for a single segment)
+        return segments[(int) ((hash & 0xffffffffL) >>> segmentShift)];
+    }
+
+    private int getTimeBin(double time) {
+        return (int) (time / timeBinSize);
+    }
+
+    private static long getKey(int fromNodeIndex, int toNodeIndex) {
+        return ((long) fromNodeIndex << 32) | (toNodeIndex & 0xffffffffL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Entries are stored in slots. An open addressing hash table (linear probing) maps the keys to the slots.
+     */
+    private class Segment {
+        private final int capacity;
+        private final long[] keys;
+        private final int[] timeBins;
+        private final int[] travelTimes;
+        private final boolean[] referenced;
+        private final int[] table; // slot + 1 (0 --> empty)
+        private final int mask;
+        private int size = 0;
+        private int clockHand = 0;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.keys = new long[capacity];
+            this.timeBins = new int[capacity];
+            this.travelTimes = new int[capacity];
+            this.referenced = new boolean[capacity];
+            int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1; // at least twice the capacity
+            this.table = new int[tableSize];
+            this.mask = tableSize - 1;
+        }
+
+        synchronized int get(long key, int hash, int timeBin) {
+            int slot = findSlot(key, hash);
+            if (slot < 0 || timeBins[slot] != timeBin) {
+                return MISSING;
+            }
+            referenced[slot] = true;
+            return travelTimes[slot];
+        }
+
+        synchronized void put(long key, int hash, int timeBin, int travelTime) {
+            int slot = findSlot(key, hash);
+            if (slot < 0) {
+                if (size < capacity) {
+                    slot = size++;
+                } else {
+                    slot = evict();
+                }
+                keys[slot] = key;
+                insertIntoTable(hash, slot);
+            }
+            timeBins[slot] = timeBin;
+            travelTimes[slot] = travelTime;
+            referenced[slot] = false;
+        }
+
+        private int findSlot(long key, int hash) {
+            for (int i = index(hash); table[i] != 0; i = (i + 1) & mask) {
+                int slot = table[i] - 1;
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int evict() {
+            // CLOCK: entries referenced since the last sweep get a second chance
+            while (referenced[clockHand]) {
+                referenced[clockHand] = false;
+                clockHand = (clockHand + 1) % capacity;
+            }
+            int slot = clockHand;
+            clockHand = (clockHand + 1) % capacity;
+            removeFromTable(keys[slot]);
+            evictions.increment();
+            return slot;
+        }
+
+        private void insertIntoTable(int hash, int slot) {
+            int i = index(hash);
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = slot + 1;
+        }
+
+        private void removeFromTable(long key) {
+            int i = index(hash(key));
+            while (keys[table[i] - 1] != key) {
+                i = (i + 1) & mask;
+            }
+            table[i] = 0;
+            // Shift back the following entries of the cluster, so that the probing is not interrupted by the gap
+            for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+                int home = index(hash(keys[table[j] - 1]));
+                boolean homeIsCyclicallyBetween = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!homeIsCyclicallyBetween) {
+                    table[i] = table[j];
+                    table[j] = 0;
+                    i = j;
+                }
+            }
+        }
+
+        private int index(int hash) {
+            // The high bits are used for selecting the segment
+            return hash & mask;
+        }
+    }
+}
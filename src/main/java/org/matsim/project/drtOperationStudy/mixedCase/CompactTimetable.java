@@ -0,0 +1,254 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Struct-of-arrays representation of the timetable of one vehicle. The insertion heuristics load the timetable into
+ * (re-usable) instances of this class and evaluate the candidate insertions in place. Only the selected insertion
+ * is materialized back to a list of {@link TimetableEntry}.
+ */
+class CompactTimetable {
+    private static final int INITIAL_CAPACITY = 32;
+
+    private final double stopDuration;
+    private int size;
+    private int vehicleCapacity;
+    private double latestServiceTime;
+
+    private MixedCaseDrtOptimizer.GeneralRequest[] requests;
+    private TimetableEntry.StopType[] stopTypes;
+    private int[] linkIndices;
+    private double[] arrivalTimes;
+    private double[] departureTimes;
+    private double[] slackTimes;
+    private double[] cumulativeSlackTimes;
+    private int[] occupancies; // occupancy before the stop
+
+    CompactTimetable(double stopDuration) {
+        this.stopDuration = stopDuration;
+        this.requests = new MixedCaseDrtOptimizer.GeneralRequest[INITIAL_CAPACITY];
+        this.stopTypes = new TimetableEntry.StopType[INITIAL_CAPACITY];
+        this.linkIndices = new int[INITIAL_CAPACITY];
+        this.arrivalTimes = new double[INITIAL_CAPACITY];
+        this.departureTimes = new double[INITIAL_CAPACITY];
+        this.slackTimes = new double[INITIAL_CAPACITY];
+        this.cumulativeSlackTimes = new double[INITIAL_CAPACITY];
+        this.occupancies = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Insertion selected by the insertion heuristic. It is described by the position and the timing of the
+     * pickup and drop off stops, so that the timetable only needs to be materialized once for the winning insertion.
+     * The index of the drop off refers to the timetable after the pickup is inserted. The delays are the delays caused
+     * to the stop after the inserted stop.
+     */
+    record Insertion(DvrpVehicle vehicle, MixedCaseDrtOptimizer.GeneralRequest request,
+                     int pickupIdx, double pickupArrivalTime, double pickupDepartureTime, int pickupOccupancy, double pickupDelay,
+                     int dropOffIdx, double dropOffArrivalTime, double dropOffDepartureTime, int dropOffOccupancy, double dropOffDelay) {
+    }
+
+    /**
+     * Links of the network indexed by {@link Id#index()}, so that the link indices of the timetable can be resolved
+     * without hash map lookups.
+     */
+    static Link[] createLinksByIndex(Network network) {
+        Link[] linksByIndex = new Link[Id.getNumberOfIds(Link.class)];
+        for (Link link : network.getLinks().values()) {
+            linksByIndex[link.getId().index()] = link;
+        }
+        return linksByIndex;
+    }
+
+    void load(List<TimetableEntry> timetable, DvrpVehicle vehicle) {
+        this.vehicleCapacity = vehicle.getCapacity();
+        this.latestServiceTime = vehicle.getServiceEndTime() - stopDuration;
+        this.size = 0;
+        ensureCapacity(timetable.size() + 2);
+        for (TimetableEntry entry : timetable) {
+            requests[size] = entry.getRequest();
+            stopTypes[size] = entry.stopType;
+            linkIndices[size] = entry.getLinkId().index();
+            arrivalTimes[size] = entry.getArrivalTime();
+            departureTimes[size] = entry.getDepartureTime();
+            slackTimes[size] = entry.getSlackTime();
+            cumulativeSlackTimes[size] = entry.getCumulativeSlackTime();
+            occupancies[size] = entry.getOccupancyBeforeStop();
+            size++;
+        }
+    }
+
+    void copyFrom(CompactTimetable other) {
+        this.vehicleCapacity = other.vehicleCapacity;
+        this.latestServiceTime = other.latestServiceTime;
+        this.size = other.size;
+        ensureCapacity(size + 2);
+        System.arraycopy(other.requests, 0, requests, 0, size);
+        System.arraycopy(other.stopTypes, 0, stopTypes, 0, size);
+        System.arraycopy(other.linkIndices, 0, linkIndices, 0, size);
+        System.arraycopy(other.arrivalTimes, 0, arrivalTimes, 0, size);
+        System.arraycopy(other.departureTimes, 0, departureTimes, 0, size);
+        System.arraycopy(other.slackTimes, 0, slackTimes, 0, size);
+        System.arraycopy(other.cumulativeSlackTimes, 0, cumulativeSlackTimes, 0, size);
+        System.arraycopy(other.occupancies, 0, occupancies, 0, size);
+    }
+
+    /**
+     * Insert a stop at the index and propagate the delay (and the change of occupancy) to all the following stops.
+     * This is the in-place equivalent of copying the timetable and inserting a new {@link TimetableEntry} into it.
+     * Note: delay includes the stop duration of the inserted stop and may be negative (i.e., bring forward).
+     * The cumulative slack times are only re-calculated for the inserted stop and the stops with changed timing.
+     */
+    void insertStop(int idx, MixedCaseDrtOptimizer.GeneralRequest request, TimetableEntry.StopType stopType,
+                    double arrivalTime, double departureTime, int occupancyBeforeStop, double delay) {
+        ensureCapacity(size + 1);
+        int numToShift = size - idx;
+        if (numToShift > 0) {
+            System.arraycopy(requests, idx, requests, idx + 1, numToShift);
+            System.arraycopy(stopTypes, idx, stopTypes, idx + 1, numToShift);
+            System.arraycopy(linkIndices, idx, linkIndices, idx + 1, numToShift);
+            System.arraycopy(arrivalTimes, idx, arrivalTimes, idx + 1, numToShift);
+            System.arraycopy(departureTimes, idx, departureTimes, idx + 1, numToShift);
+            System.arraycopy(slackTimes, idx, slackTimes, idx + 1, numToShift);
+            System.arraycopy(cumulativeSlackTimes, idx, cumulativeSlackTimes, idx + 1, numToShift);
+            System.arraycopy(occupancies, idx, occupancies, idx + 1, numToShift);
+        }
+        requests[idx] = request;
+        stopTypes[idx] = stopType;
+        linkIndices[idx] = (stopType == TimetableEntry.StopType.PICKUP ? request.fromLinkId() : request.toLinkId()).index();
+        arrivalTimes[idx] = arrivalTime;
+        departureTimes[idx] = departureTime;
+        slackTimes[idx] = departureTime - (arrivalTime + stopDuration);
+        occupancies[idx] = occupancyBeforeStop;
+        size++;
+
+        int occupancyChange = stopType == TimetableEntry.StopType.PICKUP ? 1 : -1;
+        int lastRetimedIdx = idx;
+        for (int i = idx + 1; i < size; i++) {
+            if (delay != 0) {
+                double effectiveDelay = getEffectiveDelayIfStopIsDelayedBy(i, delay);
+                arrivalTimes[i] += delay;
+                departureTimes[i] = Math.max(arrivalTimes[i], requests[i].earliestStartTime()) + stopDuration;
+                slackTimes[i] = departureTimes[i] - (arrivalTimes[i] + stopDuration);
+                delay = effectiveDelay; // Update the delay carry over to the next stop
+                lastRetimedIdx = i;
+            }
+            occupancies[i] += occupancyChange;
+        }
+        // The delay is absorbed after lastRetimedIdx: the following stops keep their timing and cumulative slack times.
+        // The stops before the inserted stop are not updated, as the insertion heuristics only check the delay
+        // feasibility after the inserted stop (materialize re-calculates the whole timetable).
+        updateCumulativeSlackTimes(lastRetimedIdx, idx);
+    }
+
+    /**
+     * Check in O(1) whether delaying the stops from the index onward by the delay keeps the timetable feasible
+     * (i.e., within the latest arrival/pickup time of each stop and the service end time of the vehicle).
+     */
+    boolean isDelayFeasible(int idx, double delay) {
+        return idx >= size || delay <= cumulativeSlackTimes[idx];
+    }
+
+    /**
+     * Create the timetable for the vehicle, with the request of the insertion inserted. The original timetable is
+     * not modified.
+     */
+    List<TimetableEntry> materialize(List<TimetableEntry> originalTimetable, Insertion insertion) {
+        load(originalTimetable, insertion.vehicle());
+        insertStop(insertion.pickupIdx(), insertion.request(), TimetableEntry.StopType.PICKUP, insertion.pickupArrivalTime(),
+                insertion.pickupDepartureTime(), insertion.pickupOccupancy(), insertion.pickupDelay());
+        insertStop(insertion.dropOffIdx(), insertion.request(), TimetableEntry.StopType.DROP_OFF, insertion.dropOffArrivalTime(),
+                insertion.dropOffDepartureTime(), insertion.dropOffOccupancy(), insertion.dropOffDelay());
+
+        List<TimetableEntry> timetable = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            timetable.add(new TimetableEntry(requests[i], stopTypes[i], arrivalTimes[i], departureTimes[i],
+                    occupancies[i], stopDuration, insertion.vehicle()));
+        }
+        TimetableEntry.updateCumulativeSlackTimes(timetable);
+        return timetable;
+    }
+
+    // Getter functions
+    int size() {
+        return size;
+    }
+
+    double getArrivalTime(int idx) {
+        return arrivalTimes[idx];
+    }
+
+    double getDepartureTime(int idx) {
+        return departureTimes[idx];
+    }
+
+    double getSlackTime(int idx) {
+        return slackTimes[idx];
+    }
+
+    double getCumulativeSlackTime(int idx) {
+        return cumulativeSlackTimes[idx];
+    }
+
+    int getOccupancyBeforeStop(int idx) {
+        return occupancies[idx];
+    }
+
+    int getLinkIndex(int idx) {
+        return linkIndices[idx];
+    }
+
+    Id<Link> getLinkId(int idx) {
+        return Id.get(linkIndices[idx], Link.class);
+    }
+
+    double getLatestArrivalTime(int idx) {
+        return stopTypes[idx] == TimetableEntry.StopType.PICKUP ? requests[idx].latestStartTime() : requests[idx].latestArrivalTime();
+    }
+
+    boolean isVehicleFullBeforeThisStop(int idx) {
+        return occupancies[idx] >= vehicleCapacity;
+    }
+
+    boolean isVehicleOverloaded(int idx) {
+        return stopTypes[idx] == TimetableEntry.StopType.PICKUP ? occupancies[idx] >= vehicleCapacity : occupancies[idx] > vehicleCapacity;
+    }
+
+    // Private functions
+    private void updateCumulativeSlackTimes(int fromIdx, int toIdx) {
+        // Backward pass from fromIdx down to toIdx, same as TimetableEntry.updateCumulativeSlackTimes
+        for (int i = fromIdx; i >= toIdx; i--) {
+            double tolerance = Math.min(getLatestArrivalTime(i), latestServiceTime) - arrivalTimes[i];
+            if (i + 1 < size) {
+                tolerance = Math.min(tolerance, slackTimes[i] + Math.max(0, cumulativeSlackTimes[i + 1]));
+            }
+            cumulativeSlackTimes[i] = tolerance;
+        }
+    }
+
+    private double getEffectiveDelayIfStopIsDelayedBy(int idx, double delay) {
+        double departureTimeAfterAddingDelay = Math.max(arrivalTimes[idx] + delay, requests[idx].earliestStartTime()) + stopDuration;
+        return departureTimeAfterAddingDelay - departureTimes[idx];
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= arrivalTimes.length) {
+            return;
+        }
+        int newCapacity = Math.max(minCapacity, arrivalTimes.length * 2);
+        requests = Arrays.copyOf(requests, newCapacity);
+        stopTypes = Arrays.copyOf(stopTypes, newCapacity);
+        linkIndices = Arrays.copyOf(linkIndices, newCapacity);
+        arrivalTimes = Arrays.copyOf(arrivalTimes, newCapacity);
+        departureTimes = Arrays.copyOf(departureTimes, newCapacity);
+        slackTimes = Arrays.copyOf(slackTimes, newCapacity);
+        cumulativeSlackTimes = Arrays.copyOf(cumulativeSlackTimes, newCapacity);
+        occupancies = Arrays.copyOf(occupancies, newCapacity);
+    }
+}
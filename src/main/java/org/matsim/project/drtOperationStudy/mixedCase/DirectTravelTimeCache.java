@@ -0,0 +1,166 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.router.util.TravelTime;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Direct (i.e., link to link) travel times of the pre-booked trips, keyed by from link, to link and time bin. The
+ * cache can be written to a sidecar file (tsv) and read again in the following runs, so that the pre-booked trips do
+ * not need to be routed again.
+ * Note: the travel times are calculated at the start time of the time bin, so that the results do not depend on
+ * whether the travel time is read from the file or calculated.
+ * The first line of the file records the time bin size and the hash of the network and the link travel times. A file
+ * written for another network or travel time is ignored.
+ */
+class DirectTravelTimeCache {
+    private static final Logger log = LogManager.getLogger(DirectTravelTimeCache.class);
+    static final double DEFAULT_TIME_BIN_SIZE = 900;
+    private static final double HASHED_TIME_PERIOD = 30 * 3600;
+
+    private static final String FROM_LINK = "from_link";
+    private static final String TO_LINK = "to_link";
+    private static final String TIME_BIN = "time_bin";
+    private static final String TRAVEL_TIME = "travel_time";
+
+    private final double timeBinSize;
+    private final String fileHeader;
+    private final Map<Key, Double> travelTimes = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+    private record Key(Id<Link> fromLinkId, Id<Link> toLinkId, int timeBin) {
+    }
+
+    interface DirectTravelTimeCalculator {
+        double calcTravelTime(Id<Link> fromLinkId, Id<Link> toLinkId, double departureTime);
+    }
+
+    /**
+     * @param hash see {@link #hashNetworkAndTravelTime(Network, TravelTime, double)}
+     */
+    DirectTravelTimeCache(double timeBinSize, long hash) {
+        this.timeBinSize = timeBinSize;
+        this.fileHeader = "# time_bin_size=" + timeBinSize + " hash=" + Long.toHexString(hash);
+    }
+
+    /**
+     * Hash of the network and of the link travel times at the start times of the time bins (within the first 30
+     * hours), i.e., of everything that the cached travel times depend on.
+     */
+    static long hashNetworkAndTravelTime(Network network, TravelTime travelTime, double timeBinSize) {
+        long hash = 1125899906842597L;
+        List<? extends Link> links = network.getLinks()
+                .values()
+                .stream()
+                .sorted(Comparator.comparing(link -> link.getId().toString()))
+                .toList();
+        for (Link link : links) {
+            hash = 31 * hash + link.getId().toString().hashCode();
+            hash = 31 * hash + link.getFromNode().getId().toString().hashCode();
+            hash = 31 * hash + link.getToNode().getId().toString().hashCode();
+            hash = 31 * hash + Double.doubleToLongBits(link.getLength());
+            for (double time = 0; time < HASHED_TIME_PERIOD; time += timeBinSize) {
+                hash = 31 * hash + Double.doubleToLongBits(travelTime.getLinkTravelTime(link, time, null, null));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return the cached travel time or the travel time calculated at the start time of the time bin
+     */
+    double getTravelTime(Id<Link> fromLinkId, Id<Link> toLinkId, double departureTime, DirectTravelTimeCalculator calculator) {
+        int timeBin = (int) (departureTime / timeBinSize);
+        Key key = new Key(fromLinkId, toLinkId, timeBin);
+        Double travelTime = travelTimes.get(key);
+        if (travelTime == null) {
+            // Routing is not done inside computeIfAbsent, so that the other threads are not blocked
+            travelTime = calculator.calcTravelTime(fromLinkId, toLinkId, timeBin * timeBinSize);
+            travelTimes.putIfAbsent(key, travelTime);
+            modified = true;
+        }
+        return travelTime;
+    }
+
+    /**
+     * Read the travel times from the sidecar file (if it exists). Entries of a file written with another time bin
+     * size, network or travel time would be wrong, so the whole file is ignored in that case.
+     */
+    void readFile(Path file) {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            if (!fileHeader.equals(reader.readLine())) {
+                log.warn("The direct travel time file " + file + " was written for another network, travel time or time bin size and is ignored");
+                return;
+            }
+            CSVParser parser = new CSVParser(reader, CSVFormat.TDF.withFirstRecordAsHeader());
+            for (CSVRecord record : parser) {
+                Key key = new Key(Id.createLinkId(record.get(FROM_LINK)), Id.createLinkId(record.get(TO_LINK)),
+                        Integer.parseInt(record.get(TIME_BIN)));
+                travelTimes.put(key, Double.parseDouble(record.get(TRAVEL_TIME)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info(travelTimes.size() + " direct travel times are read from " + file);
+    }
+
+    /**
+     * Write the travel times to the sidecar file, if new travel times have been calculated since it was read. The rows
+     * are sorted, so that the file does not depend on the order of the calculations.
+     */
+    void writeFile(Path file) {
+        if (!modified) {
+            return;
+        }
+        List<Map.Entry<Key, Double>> entries = travelTimes.entrySet()
+                .stream()
+                .sorted(Comparator.comparing((Map.Entry<Key, Double> entry) -> entry.getKey().fromLinkId().toString())
+                        .thenComparing(entry -> entry.getKey().toLinkId().toString())
+                        .thenComparingInt(entry -> entry.getKey().timeBin()))
+                .toList();
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            // Write to a temporary file first, so that a parallel run never reads an incomplete file
+            Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile)) {
+                writer.write(fileHeader);
+                writer.newLine();
+                CSVPrinter printer = new CSVPrinter(writer, CSVFormat.TDF);
+                printer.printRecord(FROM_LINK, TO_LINK, TIME_BIN, TRAVEL_TIME);
+                for (Map.Entry<Key, Double> entry : entries) {
+                    Key key = entry.getKey();
+                    printer.printRecord(key.fromLinkId(), key.toLinkId(), key.timeBin(), entry.getValue());
+                }
+                printer.flush();
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        modified = false;
+        log.info(entries.size() + " direct travel times are written to " + file);
+    }
+}
@@ -13,206 +13,250 @@ import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.matsim.contrib.dvrp.path.VrpPaths.FIRST_LINK_TT;
 
 class ExtensiveOnlineInserter implements OnlineInserter {
+    // Lowest cost first. Ties are broken by vehicle ID, so that the result does not depend on the number of threads
+    private static final Comparator<InsertionWithCost> INSERTION_COMPARATOR = Comparator
+            .comparingDouble(InsertionWithCost::cost)
+            .thenComparing(insertionWithCost -> insertionWithCost.insertion().vehicle().getId());
+
     private final Network network;
+    private final Link[] linksByIndex;
     private final double stopDuration;
     private final TravelTimeMatrix travelTimeMatrix;
     private final TravelTime travelTime;
     private final LeastCostPathCalculator router;
 
+    private final ForkJoinPool forkJoinPool; // null --> vehicles are evaluated sequentially
+    private final VehicleIndex vehicleIndex;
+
+    // Re-usable buffers for evaluating the insertions in place (one set per thread)
+    private final ThreadLocal<CompactTimetable> originalTimetables;
+    private final ThreadLocal<CompactTimetable> temporaryTimetables;
+
     ExtensiveOnlineInserter(Network network, DrtConfigGroup drtConfigGroup, TravelTimeMatrix travelTimeMatrix,
                             TravelTime travelTime, TravelDisutility travelDisutility) {
+        this(network, drtConfigGroup, travelTimeMatrix, travelTime, travelDisutility, null);
+    }
+
+    /**
+     * With a fork join pool, the vehicles are evaluated in parallel on the pool. Note: the travel time matrix
+     * must then be thread-safe.
+     */
+    ExtensiveOnlineInserter(Network network, DrtConfigGroup drtConfigGroup, TravelTimeMatrix travelTimeMatrix,
+                            TravelTime travelTime, TravelDisutility travelDisutility, ForkJoinPool forkJoinPool) {
         this.network = network;
+        this.linksByIndex = CompactTimetable.createLinksByIndex(network);
         this.stopDuration = drtConfigGroup.stopDuration;
         this.travelTimeMatrix = travelTimeMatrix;
         this.travelTime = travelTime;
         this.router = new SpeedyALTFactory().createPathCalculator(network, travelDisutility, travelTime);
+        this.forkJoinPool = forkJoinPool;
+        this.vehicleIndex = new VehicleIndex(network);
+        this.originalTimetables = ThreadLocal.withInitial(() -> new CompactTimetable(stopDuration));
+        this.temporaryTimetables = ThreadLocal.withInitial(() -> new CompactTimetable(stopDuration));
     }
 
     @Override
     public Id<DvrpVehicle> insert(DrtRequest request, Map<Id<DvrpVehicle>, List<TimetableEntry>> timetables,
                                   Map<Id<DvrpVehicle>, MixedCaseDrtOptimizer.OnlineVehicleInfo> realTimeVehicleInfoMap) {
+        MixedCaseDrtOptimizer.GeneralRequest spontaneousRequest = MixedCaseDrtOptimizer.createFromDrtRequest(request);
+
+        // Pre-filter the vehicles that cannot reach the pickup location in time (only the vehicles that have moved to
+        // another link or whose timetable has changed are re-indexed)
+        vehicleIndex.update(timetables, realTimeVehicleInfoMap);
+        Set<Id<DvrpVehicle>> candidateVehicles = vehicleIndex.getCandidateVehicles(request.getFromLink(), request.getLatestStartTime());
+
+        // Travel times from/to the pickup and drop off locations are calculated in batch (one tree per node)
+        if (travelTimeMatrix instanceof BatchedTravelTimeMatrix batchedTravelTimeMatrix) {
+            batchedTravelTimeMatrix.prepare(List.of(request.getFromLink().getToNode(), request.getToLink().getToNode()),
+                    List.of(request.getFromLink().getFromNode(), request.getToLink().getFromNode()), request.getSubmissionTime());
+        }
+
+        // Try to find the best insertion for each vehicle, and then select the best one among them
+        Optional<InsertionWithCost> bestInsertion;
+        if (forkJoinPool != null) {
+            bestInsertion = forkJoinPool.submit(() -> candidateVehicles
+                    .parallelStream()
+                    .map(vehicleId -> findBestInsertion(request, spontaneousRequest, realTimeVehicleInfoMap.get(vehicleId), timetables.get(vehicleId)))
+                    .filter(Objects::nonNull)
+                    .min(INSERTION_COMPARATOR)).join();
+        } else {
+            bestInsertion = candidateVehicles
+                    .stream()
+                    .map(vehicleId -> findBestInsertion(request, spontaneousRequest, realTimeVehicleInfoMap.get(vehicleId), timetables.get(vehicleId)))
+                    .filter(Objects::nonNull)
+                    .min(INSERTION_COMPARATOR);
+        }
+
+        // Insert the request to the best vehicle (the timetable is only materialized for the selected insertion)
+        if (bestInsertion.isPresent()) {
+            CompactTimetable.Insertion insertion = bestInsertion.get().insertion();
+            Id<DvrpVehicle> selectedVehicleId = insertion.vehicle().getId();
+            List<TimetableEntry> updatedTimetable = originalTimetables.get().materialize(timetables.get(selectedVehicleId), insertion);
+            formalizeTimetable(realTimeVehicleInfoMap.get(selectedVehicleId), updatedTimetable);
+            timetables.put(selectedVehicleId, updatedTimetable);
+            vehicleIndex.updateVehicle(realTimeVehicleInfoMap.get(selectedVehicleId), updatedTimetable);
+            return selectedVehicleId;
+        }
+        return null;
+    }
+
+    private record InsertionWithCost(CompactTimetable.Insertion insertion, double cost) {
+    }
+
+    private InsertionWithCost findBestInsertion(DrtRequest request, MixedCaseDrtOptimizer.GeneralRequest spontaneousRequest,
+                                                MixedCaseDrtOptimizer.OnlineVehicleInfo vehicleInfo, List<TimetableEntry> timetable) {
         // Request information
         Link fromLink = request.getFromLink();
         Link toLink = request.getToLink();
         double latestPickUpTime = request.getLatestStartTime();
         double latestArrivalTime = request.getLatestArrivalTime();
-        MixedCaseDrtOptimizer.GeneralRequest spontaneousRequest = MixedCaseDrtOptimizer.createFromDrtRequest(request);
 
-        // Try to find the best insertion
+        // Vehicle information
+        DvrpVehicle vehicle = vehicleInfo.vehicle();
+        Link currentLink = vehicleInfo.currentLink();
+        double divertableTime = vehicleInfo.divertableTime();
+        double serviceEndTime = vehicle.getServiceEndTime() - stopDuration;
+
+        // 1 If original timetable is empty
+        if (timetable.isEmpty()) {
+            double timeToPickup = calculateVrpTravelTimeFromMatrix(currentLink, fromLink, divertableTime);
+            double arrivalTimePickUp = divertableTime + timeToPickup;
+            double tripTravelTime = calculateVrpTravelTimeFromMatrix(fromLink, toLink, arrivalTimePickUp + stopDuration);
+            double arrivalTimeDropOff = arrivalTimePickUp + stopDuration + tripTravelTime;
+            double totalInsertionCost = timeToPickup + tripTravelTime;
+            if (arrivalTimePickUp > latestPickUpTime || arrivalTimePickUp > serviceEndTime) {
+                return null;
+            }
+            // Note: The departure time of the last stop is actually not meaningful, but this stop may become non-last stop later, therefore, we set the departure time of this stop as if it is a middle stop
+            return new InsertionWithCost(new CompactTimetable.Insertion(vehicle, spontaneousRequest,
+                    0, arrivalTimePickUp, arrivalTimePickUp + stopDuration, 0, 0,
+                    1, arrivalTimeDropOff, arrivalTimeDropOff + stopDuration, 1, 0), totalInsertionCost);
+        }
+
         double bestInsertionCost = Double.MAX_VALUE;
-        DvrpVehicle selectedVehicle = null;
-        List<TimetableEntry> updatedTimetable = null;
-        double estPickUpTime = -1;
-        double estDropOffTime = -1;
-
-        for (Id<DvrpVehicle> vehicleId : timetables.keySet()) {
-            MixedCaseDrtOptimizer.OnlineVehicleInfo vehicleInfo = realTimeVehicleInfoMap.get(vehicleId);
-            Link currentLink = vehicleInfo.currentLink();
-            double divertableTime = vehicleInfo.divertableTime();
-            double serviceEndTime = vehicleInfo.vehicle().getServiceEndTime() - stopDuration;
-
-            List<TimetableEntry> originalTimetable = timetables.get(vehicleId);
-
-            // 1 If original timetable is empty
-            if (originalTimetable.isEmpty()) {
-                double timeToPickup = calculateVrpTravelTimeFromMatrix(currentLink, fromLink, divertableTime);
-                double arrivalTimePickUp = divertableTime + timeToPickup;
-                double tripTravelTime = calculateVrpTravelTimeFromMatrix(fromLink, toLink, arrivalTimePickUp + stopDuration);
-                double arrivalTimeDropOff = arrivalTimePickUp + stopDuration + tripTravelTime;
-                double totalInsertionCost = timeToPickup + tripTravelTime;
-                if (arrivalTimePickUp > latestPickUpTime || arrivalTimePickUp > serviceEndTime) {
-                    continue;
-                }
+        CompactTimetable.Insertion bestInsertion = null;
 
-                if (totalInsertionCost < bestInsertionCost) {
-                    bestInsertionCost = totalInsertionCost;
-                    selectedVehicle = vehicleInfo.vehicle();
-                    updatedTimetable = new ArrayList<>();
-                    updatedTimetable.add(new TimetableEntry(spontaneousRequest, TimetableEntry.StopType.PICKUP, arrivalTimePickUp, arrivalTimePickUp + stopDuration, 0, stopDuration, selectedVehicle));
-                    updatedTimetable.add(new TimetableEntry(spontaneousRequest, TimetableEntry.StopType.DROP_OFF, arrivalTimeDropOff, arrivalTimeDropOff + stopDuration, 1, stopDuration, selectedVehicle));
-                    // Note: The departure time of the last stop is actually not meaningful, but this stop may become non-last stop later, therefore, we set the departure time of this stop as if it is a middle stop
-                    estPickUpTime = arrivalTimePickUp;
-                    estDropOffTime = arrivalTimeDropOff;
-                }
-                continue;
+        // 2 If the timetable is not empty
+        CompactTimetable originalTimetable = originalTimetables.get();
+        CompactTimetable temporaryTimetable = temporaryTimetables.get();
+        originalTimetable.load(timetable, vehicle);
+
+        // Try to insert request in the timetable, BEFORE stop i (i.e., not including appending at the end)
+        boolean noNeedToContinueWithThisVehicle = false;
+        for (int i = 0; i < originalTimetable.size(); i++) {
+            if (originalTimetable.isVehicleFullBeforeThisStop(i)) {
+                continue; // Not possible to insert pickup at this location, try next location
             }
+            Link linkOfStopAfterPickUpInsertion = getLink(originalTimetable, i);
 
-            // 2 If the timetable is not empty
-            // Try to insert request in the timetable, BEFORE stop i (i.e., not including appending at the end)
-            boolean noNeedToContinueWithThisVehicle = false;
-            for (int i = 0; i < originalTimetable.size(); i++) {
-                TimetableEntry stopAfterPickUpInsertion = originalTimetable.get(i);
-                if (stopAfterPickUpInsertion.isVehicleFullBeforeThisStop()) {
-                    continue; // Not possible to insert pickup at this location, try next location
+            double detourA;
+            double detourB;
+            double pickupTime;
+            double delayCausedByPickupDetour;
+            if (i == 0) {
+                detourA = calculateVrpTravelTimeFromMatrix(currentLink, fromLink, divertableTime);
+                pickupTime = divertableTime + detourA;
+                if (pickupTime > latestPickUpTime || pickupTime > serviceEndTime) {
+                    noNeedToContinueWithThisVehicle = true;
+                    break; // Vehicle cannot reach the pickup location in time. No need to continue with this vehicle
                 }
-                Link linkOfStopAfterPickUpInsertion = network.getLinks().get(stopAfterPickUpInsertion.getLinkId());
-
-                double detourA;
-                double detourB;
-                double pickupTime;
-                double delayCausedByPickupDetour;
-                if (i == 0) {
-                    detourA = calculateVrpTravelTimeFromMatrix(currentLink, fromLink, divertableTime);
-                    pickupTime = divertableTime + detourA;
-                    if (pickupTime > latestPickUpTime || pickupTime > serviceEndTime) {
-                        noNeedToContinueWithThisVehicle = true;
-                        break; // Vehicle cannot reach the pickup location in time. No need to continue with this vehicle
-                    }
-                    detourB = calculateVrpTravelTimeFromMatrix(fromLink, linkOfStopAfterPickUpInsertion, pickupTime + stopDuration);
-                    delayCausedByPickupDetour = detourA + detourB - calculateVrpTravelTimeFromMatrix(currentLink, linkOfStopAfterPickUpInsertion, divertableTime);
-                } else {
-                    TimetableEntry stopBeforePickUpInsertion = originalTimetable.get(i - 1);
-                    Link linkOfStopBeforePickUpInsertion = network.getLinks().get(stopBeforePickUpInsertion.getLinkId());
-                    detourA = calculateVrpTravelTimeFromMatrix(linkOfStopBeforePickUpInsertion, fromLink, stopBeforePickUpInsertion.getDepartureTime());
-                    pickupTime = stopBeforePickUpInsertion.getDepartureTime() + detourA;
-                    if (pickupTime > latestPickUpTime || pickupTime > serviceEndTime) {
-                        noNeedToContinueWithThisVehicle = true;
-                        break; // Vehicle cannot reach the pickup location in time from this point. No need to continue on the timetable.
-                    }
-                    detourB = calculateVrpTravelTimeFromMatrix(fromLink, linkOfStopAfterPickUpInsertion, pickupTime + stopDuration);
-                    delayCausedByPickupDetour = detourA + detourB - calculateVrpTravelTimeFromMatrix(linkOfStopBeforePickUpInsertion, linkOfStopAfterPickUpInsertion, stopBeforePickUpInsertion.getDepartureTime());
+                detourB = calculateVrpTravelTimeFromMatrix(fromLink, linkOfStopAfterPickUpInsertion, pickupTime + stopDuration);
+                delayCausedByPickupDetour = detourA + detourB - calculateVrpTravelTimeFromMatrix(currentLink, linkOfStopAfterPickUpInsertion, divertableTime);
+            } else {
+                Link linkOfStopBeforePickUpInsertion = getLink(originalTimetable, i - 1);
+                double departureTimeOfStopBeforePickUpInsertion = originalTimetable.getDepartureTime(i - 1);
+                detourA = calculateVrpTravelTimeFromMatrix(linkOfStopBeforePickUpInsertion, fromLink, departureTimeOfStopBeforePickUpInsertion);
+                pickupTime = departureTimeOfStopBeforePickUpInsertion + detourA;
+                if (pickupTime > latestPickUpTime || pickupTime > serviceEndTime) {
+                    noNeedToContinueWithThisVehicle = true;
+                    break; // Vehicle cannot reach the pickup location in time from this point. No need to continue on the timetable.
                 }
+                detourB = calculateVrpTravelTimeFromMatrix(fromLink, linkOfStopAfterPickUpInsertion, pickupTime + stopDuration);
+                delayCausedByPickupDetour = detourA + detourB - calculateVrpTravelTimeFromMatrix(linkOfStopBeforePickUpInsertion, linkOfStopAfterPickUpInsertion, departureTimeOfStopBeforePickUpInsertion);
+            }
+
+            delayCausedByPickupDetour = Math.max(0, delayCausedByPickupDetour); // Due to the inaccuracy of the TT matrix, the delay may be smaller than 0, which is not meaningful
+            double pickupDelay = delayCausedByPickupDetour + stopDuration;
+            boolean isPickupFeasible = originalTimetable.isDelayFeasible(i, pickupDelay);
+            if (isPickupFeasible) {
+                int pickupOccupancy = originalTimetable.getOccupancyBeforeStop(i);
+                temporaryTimetable.copyFrom(originalTimetable);
+                temporaryTimetable.insertStop(i, spontaneousRequest, TimetableEntry.StopType.PICKUP,
+                        pickupTime, pickupTime + stopDuration, pickupOccupancy, pickupDelay);
 
-                delayCausedByPickupDetour = Math.max(0, delayCausedByPickupDetour); // Due to the inaccuracy of the TT matrix, the delay may be smaller than 0, which is not meaningful
-                boolean isPickupFeasible = isInsertionFeasible(originalTimetable, i, delayCausedByPickupDetour + stopDuration, serviceEndTime);
-                if (isPickupFeasible) {
-                    TimetableEntry pickupStopToInsert = new TimetableEntry(spontaneousRequest, TimetableEntry.StopType.PICKUP,
-                            pickupTime, pickupTime + stopDuration, stopAfterPickUpInsertion.getOccupancyBeforeStop(), stopDuration, vehicleInfo.vehicle());
-                    List<TimetableEntry> temporaryTimetable = insertPickup(originalTimetable, i, pickupStopToInsert, delayCausedByPickupDetour + stopDuration);
-
-                    // Try to insert drop off from here (insert drop off AFTER the stop j)
-                    for (int j = i; j < temporaryTimetable.size(); j++) {
-                        if (temporaryTimetable.get(j).isVehicleOverloaded()) {
-                            break; // Drop off must be inserted before this stop. No need to continue with the timetable
+                // Try to insert drop off from here (insert drop off AFTER the stop j)
+                for (int j = i; j < temporaryTimetable.size(); j++) {
+                    if (temporaryTimetable.isVehicleOverloaded(j)) {
+                        break; // Drop off must be inserted before this stop. No need to continue with the timetable
+                    }
+                    Link linkOfStopBeforeDropOffInsertion = getLink(temporaryTimetable, j);
+                    double departureTimeOfStopBeforeDropOffInsertion = temporaryTimetable.getDepartureTime(j);
+                    if (j + 1 < temporaryTimetable.size()) {
+                        // Append drop off between j and j+1
+                        Link linkOfStopAfterDropOffInsertion = getLink(temporaryTimetable, j + 1);
+                        double detourC = calculateVrpTravelTimeFromMatrix(linkOfStopBeforeDropOffInsertion, toLink, departureTimeOfStopBeforeDropOffInsertion);
+                        double dropOffTime = detourC + departureTimeOfStopBeforeDropOffInsertion;
+                        if (dropOffTime > latestArrivalTime || dropOffTime > serviceEndTime) {
+                            break; // No more drop-off feasible after this stop. No need to continue in the timetable
+                        }
+                        double detourD = calculateVrpTravelTimeFromMatrix(toLink, linkOfStopAfterDropOffInsertion, dropOffTime + stopDuration);
+                        double delayCausedByDropOffDetour = detourC + detourD - calculateVrpTravelTimeFromMatrix(linkOfStopBeforeDropOffInsertion, linkOfStopAfterDropOffInsertion, departureTimeOfStopBeforeDropOffInsertion);
+                        delayCausedByDropOffDetour = Math.max(0, delayCausedByDropOffDetour);
+                        boolean isDropOffIsFeasible = temporaryTimetable.isDelayFeasible(j + 1, delayCausedByDropOffDetour + stopDuration);
+                        double totalInsertionCost = delayCausedByDropOffDetour + delayCausedByPickupDetour; // Currently, we assume cost = total extra drive time caused by the insertion
+
+                        if (isDropOffIsFeasible && totalInsertionCost < bestInsertionCost) {
+                            bestInsertionCost = totalInsertionCost;
+                            bestInsertion = new CompactTimetable.Insertion(vehicle, spontaneousRequest,
+                                    i, pickupTime, pickupTime + stopDuration, pickupOccupancy, pickupDelay,
+                                    j + 1, dropOffTime, dropOffTime + stopDuration, temporaryTimetable.getOccupancyBeforeStop(j + 1),
+                                    delayCausedByDropOffDetour + stopDuration);
                         }
-                        TimetableEntry stopBeforeDropOffInsertion = temporaryTimetable.get(j);
-                        Link linkOfStopBeforeDropOffInsertion = network.getLinks().get(stopBeforeDropOffInsertion.getLinkId());
-                        if (j + 1 < temporaryTimetable.size()) {
-                            // Append drop off between j and j+1
-                            TimetableEntry stopAfterDropOffInsertion = temporaryTimetable.get(j + 1);
-                            Link linkOfStopAfterDropOffInsertion = network.getLinks().get(stopAfterDropOffInsertion.getLinkId());
-                            double detourC = calculateVrpTravelTimeFromMatrix(linkOfStopBeforeDropOffInsertion, toLink, stopBeforeDropOffInsertion.getDepartureTime());
-                            double dropOffTime = detourC + stopBeforeDropOffInsertion.getDepartureTime();
-                            if (dropOffTime > latestArrivalTime || dropOffTime > serviceEndTime) {
-                                break; // No more drop-off feasible after this stop. No need to continue in the timetable
-                            }
-                            double detourD = calculateVrpTravelTimeFromMatrix(toLink, linkOfStopAfterDropOffInsertion, dropOffTime + stopDuration);
-                            double delayCausedByDropOffDetour = detourC + detourD - calculateVrpTravelTimeFromMatrix(linkOfStopBeforeDropOffInsertion, linkOfStopAfterDropOffInsertion, stopBeforeDropOffInsertion.getDepartureTime());
-                            delayCausedByDropOffDetour = Math.max(0, delayCausedByDropOffDetour);
-                            boolean isDropOffIsFeasible = isInsertionFeasible(temporaryTimetable, j + 1, delayCausedByDropOffDetour + stopDuration, serviceEndTime);
-                            double totalInsertionCost = delayCausedByDropOffDetour + delayCausedByPickupDetour; // Currently, we assume cost = total extra drive time caused by the insertion
-
-                            if (isDropOffIsFeasible && totalInsertionCost < bestInsertionCost) {
-                                TimetableEntry dropOffStopToInsert = new TimetableEntry(spontaneousRequest, TimetableEntry.StopType.DROP_OFF,
-                                        dropOffTime, dropOffTime + stopDuration, stopAfterDropOffInsertion.getOccupancyBeforeStop(), stopDuration, vehicleInfo.vehicle());
-                                updatedTimetable = insertDropOff(temporaryTimetable, j + 1, dropOffStopToInsert, delayCausedByDropOffDetour + stopDuration);
-                                bestInsertionCost = totalInsertionCost;
-                                selectedVehicle = vehicleInfo.vehicle();
-                                estPickUpTime = pickupTime;
-                                estDropOffTime = dropOffTime;
-                            }
-                        } else {
-                            // Append drop off at the end
-                            double detourC = calculateVrpTravelTimeFromMatrix(linkOfStopBeforeDropOffInsertion, toLink, stopBeforeDropOffInsertion.getDepartureTime());
-                            double dropOffTime = detourC + stopBeforeDropOffInsertion.getDepartureTime();
-                            double totalInsertionCost = detourC + delayCausedByPickupDetour;
-                            boolean isDropOffFeasible = dropOffTime <= latestArrivalTime && dropOffTime <= serviceEndTime;
-
-                            if (isDropOffFeasible && totalInsertionCost < bestInsertionCost) {
-                                TimetableEntry dropOffStopToInsert = new TimetableEntry(spontaneousRequest, TimetableEntry.StopType.DROP_OFF,
-                                        dropOffTime, dropOffTime + stopDuration, 1, stopDuration, vehicleInfo.vehicle());
-                                updatedTimetable = insertDropOff(temporaryTimetable, j + 1, dropOffStopToInsert, detourC + stopDuration);
-                                bestInsertionCost = totalInsertionCost;
-                                selectedVehicle = vehicleInfo.vehicle();
-                                estPickUpTime = pickupTime;
-                                estDropOffTime = dropOffTime;
-                            }
+                    } else {
+                        // Append drop off at the end
+                        double detourC = calculateVrpTravelTimeFromMatrix(linkOfStopBeforeDropOffInsertion, toLink, departureTimeOfStopBeforeDropOffInsertion);
+                        double dropOffTime = detourC + departureTimeOfStopBeforeDropOffInsertion;
+                        double totalInsertionCost = detourC + delayCausedByPickupDetour;
+                        boolean isDropOffFeasible = dropOffTime <= latestArrivalTime && dropOffTime <= serviceEndTime;
+
+                        if (isDropOffFeasible && totalInsertionCost < bestInsertionCost) {
+                            bestInsertionCost = totalInsertionCost;
+                            bestInsertion = new CompactTimetable.Insertion(vehicle, spontaneousRequest,
+                                    i, pickupTime, pickupTime + stopDuration, pickupOccupancy, pickupDelay,
+                                    j + 1, dropOffTime, dropOffTime + stopDuration, 1, detourC + stopDuration);
                         }
                     }
                 }
             }
+        }
 
-            // Try to append the request at the end
-            if (!noNeedToContinueWithThisVehicle) {
-                TimetableEntry stopBeforePickUpInsertion = originalTimetable.get(originalTimetable.size() - 1);
-                Link linkOfStopBeforePickUpInsertion = network.getLinks().get(stopBeforePickUpInsertion.getLinkId());
-                double timeToPickUp = calculateVrpTravelTimeFromMatrix(linkOfStopBeforePickUpInsertion, fromLink, stopBeforePickUpInsertion.getDepartureTime());
-                double pickupTime = stopBeforePickUpInsertion.getDepartureTime() + timeToPickUp;
-                if (pickupTime <= latestPickUpTime) {
-                    double tripTravelTime = calculateVrpTravelTimeFromMatrix(fromLink, toLink, pickupTime + stopDuration);
-                    double dropOffTime = pickupTime + stopDuration + tripTravelTime;
-                    double totalInsertionCost = timeToPickUp + tripTravelTime;
-                    if (totalInsertionCost < bestInsertionCost) {
-                        TimetableEntry pickupStopToInsert = new TimetableEntry(spontaneousRequest, TimetableEntry.StopType.PICKUP,
-                                pickupTime, pickupTime + stopDuration, 0, stopDuration, vehicleInfo.vehicle());
-                        TimetableEntry dropOffStopToInsert = new TimetableEntry(spontaneousRequest, TimetableEntry.StopType.DROP_OFF,
-                                dropOffTime, dropOffTime + stopDuration, 1, stopDuration, vehicleInfo.vehicle());
-                        List<TimetableEntry> temporaryTimetable = insertPickup(originalTimetable, originalTimetable.size(), pickupStopToInsert, timeToPickUp + stopDuration);
-
-                        updatedTimetable = insertDropOff(temporaryTimetable, temporaryTimetable.size(), dropOffStopToInsert, tripTravelTime + stopDuration);
-                        bestInsertionCost = totalInsertionCost;
-                        selectedVehicle = vehicleInfo.vehicle();
-                        estPickUpTime = pickupTime;
-                        estDropOffTime = dropOffTime;
-                    }
+        // Try to append the request at the end
+        if (!noNeedToContinueWithThisVehicle) {
+            int lastIdx = originalTimetable.size() - 1;
+            Link linkOfStopBeforePickUpInsertion = getLink(originalTimetable, lastIdx);
+            double departureTimeOfStopBeforePickUpInsertion = originalTimetable.getDepartureTime(lastIdx);
+            double timeToPickUp = calculateVrpTravelTimeFromMatrix(linkOfStopBeforePickUpInsertion, fromLink, departureTimeOfStopBeforePickUpInsertion);
+            double pickupTime = departureTimeOfStopBeforePickUpInsertion + timeToPickUp;
+            if (pickupTime <= latestPickUpTime) {
+                double tripTravelTime = calculateVrpTravelTimeFromMatrix(fromLink, toLink, pickupTime + stopDuration);
+                double dropOffTime = pickupTime + stopDuration + tripTravelTime;
+                double totalInsertionCost = timeToPickUp + tripTravelTime;
+                if (totalInsertionCost < bestInsertionCost) {
+                    bestInsertionCost = totalInsertionCost;
+                    bestInsertion = new CompactTimetable.Insertion(vehicle, spontaneousRequest,
+                            lastIdx + 1, pickupTime, pickupTime + stopDuration, 0, timeToPickUp + stopDuration,
+                            lastIdx + 2, dropOffTime, dropOffTime + stopDuration, 1, tripTravelTime + stopDuration);
                 }
             }
         }
 
-        // Insert the request to the best vehicle
-        if (selectedVehicle != null) {
-            formalizeTimetable(realTimeVehicleInfoMap.get(selectedVehicle.getId()), updatedTimetable);
-            timetables.put(selectedVehicle.getId(), updatedTimetable);
-            return selectedVehicle.getId();
-        }
-        return null;
+        return bestInsertion == null ? null : new InsertionWithCost(bestInsertion, bestInsertionCost);
     }
 
     /**
@@ -228,70 +272,15 @@ class ExtensiveOnlineInserter implements OnlineInserter {
             currentLink = stopLink;
             currentTime = stop.getDepartureTime();
         }
+        TimetableEntry.updateCumulativeSlackTimes(updatedTimetable);
     }
 
-    private boolean isInsertionFeasible(List<TimetableEntry> originalTimetable, int insertionIdx, double delay, double serviceEndTime) {
-        for (int i = insertionIdx; i < originalTimetable.size(); i++) {
-            TimetableEntry stop = originalTimetable.get(i);
-            double newArrivalTime = stop.getArrivalTime() + delay;
-            if (stop.isTimeConstraintViolated(delay) || newArrivalTime > serviceEndTime) {
-                return false;
-            }
-            delay = stop.getEffectiveDelayIfStopIsDelayedBy(delay); // Update the delay after this stop (as stop time of some stops may be squeezed)
-            if (delay <= 0) {
-                return true; // The delay becomes 0, then there will be no impact on the following stops
-            }
-        }
-        return true; // If every stop is feasible, then return true
-    }
-
-    private List<TimetableEntry> insertPickup(List<TimetableEntry> originalTimetable, int pickUpIdx,
-                                              TimetableEntry stopToInsert, double delay) {
-        // Create a copy of the original timetable (and copy each object inside)
-        // Note: Delay includes the pickup time
-        List<TimetableEntry> temporaryTimetable = new ArrayList<>();
-        for (TimetableEntry timetableEntry : originalTimetable) {
-            temporaryTimetable.add(new TimetableEntry(timetableEntry));
-        }
-
-        if (pickUpIdx < temporaryTimetable.size()) {
-            temporaryTimetable.add(pickUpIdx, stopToInsert);
-            for (int i = pickUpIdx + 1; i < temporaryTimetable.size(); i++) {
-                double effectiveDelay = temporaryTimetable.get(i).getEffectiveDelayIfStopIsDelayedBy(delay);
-                temporaryTimetable.get(i).delayTheStopBy(delay);
-                temporaryTimetable.get(i).addPickupBeforeTheStop();
-                delay = effectiveDelay; // Update the delay carry over to the next stop
-            }
-        } else {
-            temporaryTimetable.add(stopToInsert); // insert at the end
-        }
-        return temporaryTimetable;
-    }
-
-    private List<TimetableEntry> insertDropOff(List<TimetableEntry> temporaryTimetable, int dropOffIdx,
-                                               TimetableEntry stopToInsert, double delay) {
-        // Note: Delay includes the Drop-off time
-        List<TimetableEntry> candidateTimetable = new ArrayList<>();
-        for (TimetableEntry timetableEntry : temporaryTimetable) {
-            candidateTimetable.add(new TimetableEntry(timetableEntry));
-        }
-
-        if (dropOffIdx < candidateTimetable.size()) {
-            candidateTimetable.add(dropOffIdx, stopToInsert);
-            for (int i = dropOffIdx + 1; i < candidateTimetable.size(); i++) {
-                double effectiveDelay = candidateTimetable.get(i).getEffectiveDelayIfStopIsDelayedBy(delay);
-                candidateTimetable.get(i).delayTheStopBy(delay);
-                candidateTimetable.get(i).addDropOffBeforeTheStop();
-                delay = effectiveDelay; // Update the delay carry over to the next stop
-            }
-        } else {
-            candidateTimetable.add(stopToInsert); // insert at the end
-        }
-        return candidateTimetable;
+    private Link getLink(CompactTimetable timetable, int idx) {
+        return linksByIndex[timetable.getLinkIndex(idx)];
     }
 
     private double calculateVrpTravelTimeFromMatrix(Link fromLink, Link toLink, double departureTime) {
-        if (fromLink.getId().toString().equals(toLink.getId().toString())) {
+        if (fromLink.getId().index() == toLink.getId().index()) {
             return 0;
         }
         return FIRST_LINK_TT + travelTimeMatrix.getTravelTime(fromLink.getToNode(), toLink.getFromNode(), departureTime)
@@ -299,7 +288,7 @@ class ExtensiveOnlineInserter implements OnlineInserter {
     }
 
     private double calculateAccurateTravelTime(Link fromLink, Link toLink, double departureTime) {
-        if (fromLink.getId().toString().equals(toLink.getId().toString())) {
+        if (fromLink.getId().index() == toLink.getId().index()) {
             return 0;
         }
         return VrpPaths.calcAndCreatePath(fromLink, toLink, departureTime, router, travelTime).getTravelTime();
@@ -0,0 +1,204 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import com.google.common.base.Preconditions;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.zone.skims.TravelTimeMatrix;
+import org.matsim.core.router.speedy.LeastCostPathTree;
+import org.matsim.core.router.speedy.SpeedyGraph;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+
+import java.util.*;
+
+/**
+ * Node to node travel time matrix that is kept across the re-planning of the (prebooked) requests. When the set of
+ * relevant nodes is updated, only the newly appearing nodes are calculated: one forward tree (new node --> all the
+ * nodes in the matrix) and one backward tree (all the existing nodes --> new node) per new node. Nodes that are no
+ * longer relevant are evicted and their slots are re-used.
+ * <p>
+ * With a finite refresh interval (i.e., time-dependent travel times), the travel times are calculated for departing at
+ * the start of the interval of the update time. The matrix is fully re-calculated with forward trees when the update
+ * time enters a new interval, and the new nodes are added incrementally within the interval. The backward tree is
+ * arrival-based (arriving at the start of the interval), so the travel times to the nodes added within an interval are
+ * only exact for travel times that do not change along the path. They become departure-based at the next refresh.
+ * With an infinite refresh interval (i.e., time-independent travel times, such as free speed travel times), both
+ * semantics coincide and the matrix is never fully re-calculated.
+ * Note: the departure time of the query is ignored.
+ */
+class IncrementalNodeToNodeTravelTimeMatrix implements TravelTimeMatrix {
+    static final double DEFAULT_REFRESH_INTERVAL = 900; // Default time bin size of the travel time calculator
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final SpeedyGraph graph;
+    private final ThreadLocal<LeastCostPathTree> lcpTrees;
+    private final double refreshInterval;
+    private int currentTimeBin = Integer.MIN_VALUE;
+
+    private int[] slotByNodeIndex; // -1 --> node is not in the matrix
+    private Node[] nodeBySlot;
+    private int[][] travelTimes; // [from slot][to slot]
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private int numberOfUsedSlots = 0; // slots in use or in the free list
+    private int numberOfFullRecalculations = 0;
+
+    IncrementalNodeToNodeTravelTimeMatrix(Network network, TravelTime travelTime, TravelDisutility travelDisutility) {
+        this(network, travelTime, travelDisutility, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * @param refreshInterval the matrix is re-calculated at the first update in each interval.
+     *                        {@link Double#POSITIVE_INFINITY}: time-independent travel times, never re-calculated.
+     */
+    IncrementalNodeToNodeTravelTimeMatrix(Network network, TravelTime travelTime, TravelDisutility travelDisutility,
+                                          double refreshInterval) {
+        Preconditions.checkArgument(refreshInterval > 0, "Refresh interval must be positive");
+        this.refreshInterval = refreshInterval;
+        this.graph = new SpeedyGraph(network);
+        this.lcpTrees = ThreadLocal.withInitial(() -> new LeastCostPathTree(graph, travelTime, travelDisutility));
+        this.slotByNodeIndex = new int[Id.getNumberOfIds(Node.class)];
+        Arrays.fill(slotByNodeIndex, -1);
+        this.nodeBySlot = new Node[INITIAL_CAPACITY];
+        this.travelTimes = new int[INITIAL_CAPACITY][INITIAL_CAPACITY];
+    }
+
+    /**
+     * Make the matrix cover exactly the relevant nodes: nodes that are not relevant anymore are evicted and the
+     * new nodes are calculated at the given time (or at the start of its refresh interval). With time-dependent travel
+     * times, all the nodes are re-calculated if the time enters a new refresh interval.
+     */
+    void update(Set<Node> relevantNodes, double time) {
+        // Evict the nodes that are no longer referenced
+        for (int slot = 0; slot < numberOfUsedSlots; slot++) {
+            Node node = nodeBySlot[slot];
+            if (node != null && !relevantNodes.contains(node)) {
+                slotByNodeIndex[node.getId().index()] = -1;
+                nodeBySlot[slot] = null;
+                freeSlots.push(slot);
+            }
+        }
+
+        // Assign slots to the new nodes
+        List<Integer> newSlots = new ArrayList<>();
+        for (Node node : relevantNodes) {
+            if (!contains(node)) {
+                int slot = freeSlots.isEmpty() ? numberOfUsedSlots++ : freeSlots.pop();
+                ensureCapacity(numberOfUsedSlots);
+                ensureNodeIndexCapacity(node.getId().index());
+                slotByNodeIndex[node.getId().index()] = slot;
+                nodeBySlot[slot] = node;
+                newSlots.add(slot);
+            }
+        }
+        double departureTime = time;
+        if (Double.isFinite(refreshInterval)) {
+            int timeBin = (int) Math.floor(time / refreshInterval);
+            departureTime = timeBin * refreshInterval;
+            if (timeBin != currentTimeBin) {
+                // The travel times of the previous interval are outdated (incl. the new nodes)
+                recalculateAll(departureTime);
+                currentTimeBin = timeBin;
+                return;
+            }
+        }
+        if (!newSlots.isEmpty()) {
+            calculateNewSlots(newSlots, departureTime);
+        }
+    }
+
+    @Override
+    public int getTravelTime(Node fromNode, Node toNode, double departureTime) {
+        return getTravelTime(fromNode.getId().index(), toNode.getId().index());
+    }
+
+    /**
+     * Query based on the node indices (i.e., {@link Id#index()}).
+     */
+    int getTravelTime(int fromNodeIndex, int toNodeIndex) {
+        return travelTimes[slotByNodeIndex[fromNodeIndex]][slotByNodeIndex[toNodeIndex]];
+    }
+
+    boolean contains(Node node) {
+        int nodeIndex = node.getId().index();
+        return nodeIndex < slotByNodeIndex.length && slotByNodeIndex[nodeIndex] >= 0;
+    }
+
+    /**
+     * @return number of times all the rows have been re-calculated (i.e., at the start of a refresh interval)
+     */
+    int getNumberOfFullRecalculations() {
+        return numberOfFullRecalculations;
+    }
+
+    // Private functions
+    /**
+     * Forward tree: new node --> all the nodes (incl. the other new nodes).
+     * Backward tree: existing nodes --> new node (equal to departure-based for time-independent travel times).
+     * The cells written by the different new nodes do not overlap.
+     */
+    private void calculateNewSlots(List<Integer> newSlots, double time) {
+        Set<Integer> newSlotSet = new HashSet<>(newSlots);
+        newSlots.parallelStream().forEach(newSlot -> {
+            LeastCostPathTree lcpTree = lcpTrees.get();
+            int newNodeIndex = nodeBySlot[newSlot].getId().index();
+
+            lcpTree.calculate(newNodeIndex, time, null, null);
+            for (int slot = 0; slot < numberOfUsedSlots; slot++) {
+                if (nodeBySlot[slot] != null) {
+                    double arrivalTime = lcpTree.getTime(nodeBySlot[slot].getId().index()).seconds();
+                    travelTimes[newSlot][slot] = (int) (arrivalTime - time);
+                }
+            }
+
+            lcpTree.calculateBackwards(newNodeIndex, time, null, null);
+            for (int slot = 0; slot < numberOfUsedSlots; slot++) {
+                if (nodeBySlot[slot] != null && !newSlotSet.contains(slot)) {
+                    double departureTime = lcpTree.getTime(nodeBySlot[slot].getId().index()).seconds();
+                    travelTimes[slot][newSlot] = (int) (time - departureTime);
+                }
+            }
+        });
+    }
+
+    private void recalculateAll(double time) {
+        numberOfFullRecalculations++;
+        // One forward tree per node (i.e., departure at the given time). Each tree writes its own row.
+        List<Integer> usedSlots = new ArrayList<>();
+        for (int slot = 0; slot < numberOfUsedSlots; slot++) {
+            if (nodeBySlot[slot] != null) {
+                usedSlots.add(slot);
+            }
+        }
+        usedSlots.parallelStream().forEach(fromSlot -> {
+            LeastCostPathTree lcpTree = lcpTrees.get();
+            lcpTree.calculate(nodeBySlot[fromSlot].getId().index(), time, null, null);
+            for (int toSlot : usedSlots) {
+                double arrivalTime = lcpTree.getTime(nodeBySlot[toSlot].getId().index()).seconds();
+                travelTimes[fromSlot][toSlot] = (int) (arrivalTime - time);
+            }
+        });
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= nodeBySlot.length) {
+            return;
+        }
+        int newCapacity = Math.max(minCapacity, nodeBySlot.length * 2);
+        nodeBySlot = Arrays.copyOf(nodeBySlot, newCapacity);
+        int[][] newTravelTimes = new int[newCapacity][];
+        for (int slot = 0; slot < newCapacity; slot++) {
+            newTravelTimes[slot] = slot < travelTimes.length ? Arrays.copyOf(travelTimes[slot], newCapacity) : new int[newCapacity];
+        }
+        travelTimes = newTravelTimes;
+    }
+
+    private void ensureNodeIndexCapacity(int nodeIndex) {
+        if (nodeIndex < slotByNodeIndex.length) {
+            return;
+        }
+        int oldLength = slotByNodeIndex.length;
+        slotByNodeIndex = Arrays.copyOf(slotByNodeIndex, Math.max(nodeIndex + 1, Id.getNumberOfIds(Node.class)));
+        Arrays.fill(slotByNodeIndex, oldLength, slotByNodeIndex.length, -1);
+    }
+}
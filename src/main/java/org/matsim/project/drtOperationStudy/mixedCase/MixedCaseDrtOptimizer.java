@@ -6,6 +6,7 @@ import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.contrib.drt.extension.preplanned.optimizer.WaitForStopTask;
@@ -19,7 +20,9 @@ import org.matsim.contrib.drt.schedule.DrtStayTask;
 import org.matsim.contrib.drt.schedule.DrtStopTask;
 import org.matsim.contrib.drt.schedule.DrtTaskFactory;
 import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicleImpl;
 import org.matsim.contrib.dvrp.fleet.Fleet;
+import org.matsim.contrib.dvrp.fleet.ImmutableDvrpVehicleSpecification;
 import org.matsim.contrib.dvrp.optimizer.Request;
 import org.matsim.contrib.dvrp.passenger.PassengerRequestRejectedEvent;
 import org.matsim.contrib.dvrp.passenger.PassengerRequestScheduledEvent;
@@ -30,20 +33,26 @@ import org.matsim.contrib.dvrp.tracker.OnlineDriveTaskTracker;
 import org.matsim.contrib.dvrp.util.LinkTimePair;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.mobsim.framework.MobsimTimer;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
 import org.matsim.core.mobsim.framework.events.MobsimBeforeSimStepEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.router.speedy.SpeedyALTFactory;
 import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import static org.matsim.contrib.drt.schedule.DrtTaskBaseType.STAY;
 
-public class MixedCaseDrtOptimizer implements DrtOptimizer {
+public class MixedCaseDrtOptimizer implements DrtOptimizer, MobsimBeforeCleanupListener {
     private final Logger log = LogManager.getLogger(MixedCaseDrtOptimizer.class);
     private final Network network;
     private final TravelTime travelTime;
@@ -69,25 +78,42 @@ public class MixedCaseDrtOptimizer implements DrtOptimizer {
     private double serviceStartTime = Double.MAX_VALUE;  // Start time of the whole DRT service (will be set to the earliest starting time of all the fleet)
     private double serviceEndTime = 0; // End time of the whole DRT service (will be set to the latest ending time of all the fleet)
 
+    // Sorted by the earliest start time (after reading). The requests before the cursor have already been read
     private final List<DrtRequest> prebookedRequests = new ArrayList<>();
+    private int prebookedRequestsCursor = 0;
 
     private double lastUpdateTimeOfFleetStatus;
 
     private FleetSchedules fleetSchedules;
     Map<Id<DvrpVehicle>, OnlineVehicleInfo> realTimeVehicleInfoMap = new HashMap<>();
 
+    // Asynchronous re-planning: the solve for the next interval runs in the background on a snapshot of the schedules
+    private final boolean asyncReplanning;
+    private final ExecutorService replanningExecutor;
+    private PendingReplanning pendingReplanning;
+    private final Map<Id<DvrpVehicle>, DvrpVehicle> detachedVehicles = new HashMap<>();
+
+    // Time-dependent travel time matrix of the online insertion (optional): the past slices are discarded at each re-plan
+    private final TimeSlicedExactNodeToNodeMatrix timeSlicedTravelTimeMatrix;
+
     /**
      * This DRT optimizer handles both pre-booked requests and the spontaneous requests.
      * Pre-booked requests will be optimized via rolling horizon approach with jsprit (later can
      * work with other VRP solver). The spontaneous requests will be inserted to the timetable
      * via a simple insertion heuristic* *
+     * With asynchronous re-planning, the pre-booked requests of the next interval are solved in a background thread
+     * while the mobsim is running, and the result is merged at the next interval boundary.
+     * The direct travel times of the pre-booked trips are read from / written to the directTravelTimeFile (optional).
+     * The timeSlicedTravelTimeMatrix is the travel time matrix of the online inserter, if the time-sliced matrix is used
+     * (null otherwise).
      */
     public MixedCaseDrtOptimizer(Network network, TravelTime travelTime, MobsimTimer timer, DrtTaskFactory taskFactory,
                                  EventsManager eventsManager, ScheduleTimingUpdater scheduleTimingUpdater,
                                  TravelDisutility travelDisutility, DrtConfigGroup drtCfg,
                                  Fleet fleet, ForkJoinPool forkJoinPool, VehicleEntry.EntryFactory vehicleEntryFactory,
                                  PrebookedRequestsSolver solver, OnlineInserter inserter, Population plans,
-                                 double horizon, double interval, Population prebookedTrips) {
+                                 double horizon, double interval, Population prebookedTrips, boolean asyncReplanning,
+                                 Path directTravelTimeFile, TimeSlicedExactNodeToNodeMatrix timeSlicedTravelTimeMatrix) {
         this.network = network;
         this.travelTime = travelTime;
         this.timer = timer;
@@ -105,9 +131,16 @@ public class MixedCaseDrtOptimizer implements DrtOptimizer {
         this.inserter = inserter;
         this.horizon = horizon;
         this.interval = interval;
+        this.asyncReplanning = asyncReplanning;
+        this.replanningExecutor = asyncReplanning ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mixed-case-replanning");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.timeSlicedTravelTimeMatrix = timeSlicedTravelTimeMatrix;
 
         initDrtSchedules();
-        readPrebookedRequests(plans, prebookedTrips);
+        readPrebookedRequests(plans, prebookedTrips, travelDisutility, directTravelTimeFile);
         assert interval <= horizon : "Interval of optimization must be smaller than or equal to the horizon length!";
 
     }
@@ -224,28 +257,62 @@ public class MixedCaseDrtOptimizer implements DrtOptimizer {
         if (now % interval == 1 && now >= serviceStartTime && now < serviceEndTime) {
             // Update vehicle current information
             updateFleetStatus(now);
+            if (timeSlicedTravelTimeMatrix != null) {
+                timeSlicedTravelTimeMatrix.discardSlicesBefore(now);
+            }
 
-            // Read new requests
-            List<GeneralRequest> newRequests = readRequestsFromTimeBin(now);
+            if (asyncReplanning && pendingReplanning != null) {
+                // Merge the plan calculated in the background since the previous interval boundary
+                fleetSchedules = mergePendingReplanning(now);
+            } else {
+                // Read new requests
+                List<GeneralRequest> newRequests = readRequestsFromTimeBin(now);
+
+                // Calculate the new preplanned schedule
+                double endTime = now + horizon;
+                log.info("Calculating the plan for t =" + now + " to t = " + endTime);
+                log.info("There are " + newRequests.size() + " new request within this horizon");
+                fleetSchedules = solve(fleetSchedules, realTimeVehicleInfoMap, newRequests, now);
+            }
 
-            // Calculate the new preplanned schedule
-            double endTime = now + horizon;
-            log.info("Calculating the plan for t =" + now + " to t = " + endTime);
-            log.info("There are " + newRequests.size() + " new request within this horizon");
-            fleetSchedules = solver.calculate(fleetSchedules, realTimeVehicleInfoMap, newRequests, now);
+            // Update vehicles schedules (i.e., current task). Only the vehicles with changed stop sequence are affected
+            for (Id<DvrpVehicle> vehicleId : fleetSchedules.updatedVehicles()) {
+                OnlineVehicleInfo onlineVehicleInfo = realTimeVehicleInfoMap.get(vehicleId);
+                if (onlineVehicleInfo != null) {
+                    updateVehicleCurrentTask(onlineVehicleInfo, now);
+                }
+            }
 
-            // Update vehicles schedules (i.e., current task)
-            for (OnlineVehicleInfo onlineVehicleInfo : realTimeVehicleInfoMap.values()) {
-                updateVehicleCurrentTask(onlineVehicleInfo, now);
+            if (asyncReplanning) {
+                startReplanning(now);
             }
         }
     }
 
+    @Override
+    public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent event) {
+        if (replanningExecutor != null) {
+            if (pendingReplanning != null) {
+                pendingReplanning.result().cancel(true);
+                pendingReplanning = null;
+            }
+            replanningExecutor.shutdownNow();
+        }
+        if (timeSlicedTravelTimeMatrix != null) {
+            timeSlicedTravelTimeMatrix.shutdown();
+        }
+    }
+
     // Records and inner classes
+    /**
+     * The updated vehicles are the vehicles whose stop sequence has been changed by the latest calculation of the
+     * solver. Only the current tasks of those vehicles need to be updated.
+     */
     record FleetSchedules(
             Map<Id<DvrpVehicle>, List<TimetableEntry>> vehicleToTimetableMap,
             Map<Id<Person>, Id<DvrpVehicle>> requestIdToVehicleMap,
-            List<Id<Person>> rejectedRequests) {
+            List<Id<Person>> rejectedRequests,
+            Set<Id<DvrpVehicle>> updatedVehicles) {
     }
 
     record GeneralRequest(Id<Person> passengerId, Id<Link> fromLinkId, Id<Link> toLinkId,
@@ -255,6 +322,20 @@ public class MixedCaseDrtOptimizer implements DrtOptimizer {
     record OnlineVehicleInfo(DvrpVehicle vehicle, Link currentLink, double divertableTime) {
     }
 
+    /**
+     * Background calculation started at the interval boundary. The snapshot is the state of the schedules that the
+     * calculation is based on. It is compared with the live schedules when the result is merged.
+     */
+    private record PendingReplanning(FleetSchedules snapshot, List<GeneralRequest> newRequests,
+                                     CompletableFuture<FleetSchedules> result) {
+    }
+
+    private record StopKey(Id<Person> passengerId, TimetableEntry.StopType stopType) {
+        static StopKey of(TimetableEntry stop) {
+            return new StopKey(stop.getRequest().passengerId(), stop.stopType);
+        }
+    }
+
     // Static functions
     static GeneralRequest createFromDrtRequest(DrtRequest drtRequest) {
         return new GeneralRequest(drtRequest.getPassengerId(), drtRequest.getFromLink().getId(),
@@ -277,8 +358,11 @@ public class MixedCaseDrtOptimizer implements DrtOptimizer {
         }
     }
 
-    private void readPrebookedRequests(Population plans, Population prebookedTrips) {
-        int counter = 0;
+    private void readPrebookedRequests(Population plans, Population prebookedTrips, TravelDisutility travelDisutility,
+                                       Path directTravelTimeFile) {
+        // Collect the pre-booked legs first. The request IDs are assigned in the order of the population
+        List<Leg> prebookedLegs = new ArrayList<>();
+        List<Id<Person>> passengerIds = new ArrayList<>();
         for (Person person : plans.getPersons().values()) {
             if (!prebookedTrips.getPersons().containsKey(person.getId())) {
                 continue;
@@ -287,42 +371,264 @@ public class MixedCaseDrtOptimizer implements DrtOptimizer {
                 if (!leg.getMode().equals(mode)) {
                     continue;
                 }
-                var startLink = network.getLinks().get(leg.getRoute().getStartLinkId());
-                var endLink = network.getLinks().get(leg.getRoute().getEndLinkId());
-                double earliestPickupTime = leg.getDepartureTime().seconds();
-                double latestPickupTime = earliestPickupTime + drtCfg.maxWaitTime;
-                double estimatedDirectTravelTime = VrpPaths.calcAndCreatePath(startLink, endLink, earliestPickupTime, router, travelTime).getTravelTime();
-                double latestArrivalTime = earliestPickupTime + drtCfg.maxTravelTimeAlpha * estimatedDirectTravelTime + drtCfg.maxTravelTimeBeta;
-                DrtRequest drtRequest = DrtRequest.newBuilder()
-                        .id(Id.create(person.getId().toString() + "_" + counter, Request.class))
-                        .submissionTime(earliestPickupTime)
-                        .earliestStartTime(earliestPickupTime)
-                        .latestStartTime(latestPickupTime)
-                        .latestArrivalTime(latestArrivalTime)
-                        .passengerId(person.getId())
-                        .mode(mode)
-                        .fromLink(startLink)
-                        .toLink(endLink)
-                        .build();
-                prebookedRequests.add(drtRequest);
-                counter++;
+                prebookedLegs.add(leg);
+                passengerIds.add(person.getId());
             }
         }
-        log.info("There are " + counter + " pre-booked trips");
+
+        // Calculate the direct travel times in parallel (the router is not thread-safe). With a sidecar file, the
+        // travel times of the previous runs are re-used
+        ThreadLocal<LeastCostPathCalculator> routers = ThreadLocal.withInitial(
+                () -> new SpeedyALTFactory().createPathCalculator(network, travelDisutility, travelTime));
+        DirectTravelTimeCache.DirectTravelTimeCalculator calculator = (fromLinkId, toLinkId, departureTime) ->
+                VrpPaths.calcAndCreatePath(network.getLinks().get(fromLinkId), network.getLinks().get(toLinkId),
+                        departureTime, routers.get(), travelTime).getTravelTime();
+        DirectTravelTimeCache cache = directTravelTimeFile == null ? null : new DirectTravelTimeCache(
+                DirectTravelTimeCache.DEFAULT_TIME_BIN_SIZE, DirectTravelTimeCache.hashNetworkAndTravelTime(network,
+                travelTime, DirectTravelTimeCache.DEFAULT_TIME_BIN_SIZE));
+        if (cache != null) {
+            cache.readFile(directTravelTimeFile);
+        }
+        double[] estimatedDirectTravelTimes = forkJoinPool.submit(() -> prebookedLegs.parallelStream()
+                .mapToDouble(leg -> {
+                    Id<Link> fromLinkId = leg.getRoute().getStartLinkId();
+                    Id<Link> toLinkId = leg.getRoute().getEndLinkId();
+                    double departureTime = leg.getDepartureTime().seconds();
+                    return cache == null ? calculator.calcTravelTime(fromLinkId, toLinkId, departureTime)
+                            : cache.getTravelTime(fromLinkId, toLinkId, departureTime, calculator);
+                })
+                .toArray()).join();
+        if (cache != null) {
+            cache.writeFile(directTravelTimeFile);
+        }
+
+        for (int counter = 0; counter < prebookedLegs.size(); counter++) {
+            Leg leg = prebookedLegs.get(counter);
+            Id<Person> passengerId = passengerIds.get(counter);
+            var startLink = network.getLinks().get(leg.getRoute().getStartLinkId());
+            var endLink = network.getLinks().get(leg.getRoute().getEndLinkId());
+            double earliestPickupTime = leg.getDepartureTime().seconds();
+            double latestPickupTime = earliestPickupTime + drtCfg.maxWaitTime;
+            double estimatedDirectTravelTime = estimatedDirectTravelTimes[counter];
+            double latestArrivalTime = earliestPickupTime + drtCfg.maxTravelTimeAlpha * estimatedDirectTravelTime + drtCfg.maxTravelTimeBeta;
+            DrtRequest drtRequest = DrtRequest.newBuilder()
+                    .id(Id.create(passengerId.toString() + "_" + counter, Request.class))
+                    .submissionTime(earliestPickupTime)
+                    .earliestStartTime(earliestPickupTime)
+                    .latestStartTime(latestPickupTime)
+                    .latestArrivalTime(latestArrivalTime)
+                    .passengerId(passengerId)
+                    .mode(mode)
+                    .fromLink(startLink)
+                    .toLink(endLink)
+                    .build();
+            prebookedRequests.add(drtRequest);
+        }
+        // Stable sort: requests with the same earliest start time keep the order of the population
+        prebookedRequests.sort(Comparator.comparingDouble(DrtRequest::getEarliestStartTime));
+        log.info("There are " + prebookedRequests.size() + " pre-booked trips");
     }
 
     private List<GeneralRequest> readRequestsFromTimeBin(double now) {
+        // Only the requests that have entered the horizon since the last call are read
+        double latestDepartureTime = now + horizon;
         List<DrtRequest> newRequests = new ArrayList<>();
-        for (DrtRequest prebookedRequest : prebookedRequests) {
-            double latestDepartureTime = now + horizon;
-            if (prebookedRequest.getEarliestStartTime() < latestDepartureTime) {
-                newRequests.add(prebookedRequest);
-            }
+        while (prebookedRequestsCursor < prebookedRequests.size()
+                && prebookedRequests.get(prebookedRequestsCursor).getEarliestStartTime() < latestDepartureTime) {
+            newRequests.add(prebookedRequests.get(prebookedRequestsCursor));
+            prebookedRequestsCursor++;
         }
-        prebookedRequests.removeAll(newRequests);
         return newRequests.stream().map(MixedCaseDrtOptimizer::createFromDrtRequest).collect(Collectors.toList());
     }
 
+    /**
+     * With asynchronous re-planning, the solver (which is stateful) is only used by the re-planning thread. The
+     * synchronous calculations are also run there, while the mobsim waits for the result.
+     */
+    private FleetSchedules solve(FleetSchedules previousSchedules, Map<Id<DvrpVehicle>, OnlineVehicleInfo> vehicleInfoMap,
+                                 List<GeneralRequest> newRequests, double time) {
+        if (replanningExecutor == null) {
+            return solver.calculate(previousSchedules, vehicleInfoMap, newRequests, time);
+        }
+        return CompletableFuture.supplyAsync(() -> solver.calculate(previousSchedules, vehicleInfoMap, newRequests, time),
+                replanningExecutor).join();
+    }
+
+    /**
+     * Start the calculation of the next interval in the background. The pre-booked requests that will enter the horizon
+     * at the next interval boundary are read one interval in advance, so that they are planned before they are
+     * submitted. The calculation is done for the next interval boundary, based on a snapshot of the current state:
+     * the timetables are copied and the vehicles are replaced by detached copies, so that the background thread does
+     * not share any mutable object with the mobsim.
+     */
+    private void startReplanning(double now) {
+        List<GeneralRequest> newRequests = readRequestsFromTimeBin(now + interval);
+        FleetSchedules snapshot = copyOf(fleetSchedules);
+        // The solver may modify the schedules passed to it --> it works on its own copy
+        FleetSchedules solverInput = copyOf(fleetSchedules);
+        Map<Id<DvrpVehicle>, OnlineVehicleInfo> vehicleInfoSnapshot = new HashMap<>();
+        for (OnlineVehicleInfo vehicleInfo : realTimeVehicleInfoMap.values()) {
+            DvrpVehicle detachedVehicle = detachedVehicles.computeIfAbsent(vehicleInfo.vehicle().getId(),
+                    vehicleId -> createDetachedCopy(vehicleInfo.vehicle()));
+            vehicleInfoSnapshot.put(detachedVehicle.getId(),
+                    new OnlineVehicleInfo(detachedVehicle, vehicleInfo.currentLink(), vehicleInfo.divertableTime()));
+        }
+        double time = now + interval;
+        log.info("Calculating the plan for t =" + time + " to t = " + (time + horizon) + " in the background");
+        log.info("There are " + newRequests.size() + " new request within this horizon");
+        CompletableFuture<FleetSchedules> result = CompletableFuture.supplyAsync(
+                () -> solver.calculate(solverInput, vehicleInfoSnapshot, newRequests, time), replanningExecutor);
+        pendingReplanning = new PendingReplanning(snapshot, newRequests, result);
+    }
+
+    /**
+     * Vehicle with the same (immutable) attributes, but without schedule. Only the ID, the capacity and the service
+     * times are read by the solvers.
+     */
+    private static DvrpVehicle createDetachedCopy(DvrpVehicle vehicle) {
+        return new DvrpVehicleImpl(ImmutableDvrpVehicleSpecification.newBuilder()
+                .id(vehicle.getId())
+                .startLinkId(vehicle.getStartLink().getId())
+                .capacity(vehicle.getCapacity())
+                .serviceBeginTime(vehicle.getServiceBeginTime())
+                .serviceEndTime(vehicle.getServiceEndTime())
+                .build(), vehicle.getStartLink());
+    }
+
+    /**
+     * Merge the result of the background calculation into the live schedules. While the solver was running, the
+     * vehicles have served some stops (removed from the live timetables) and spontaneous requests may have been
+     * inserted. The served stops are removed from the result, the remaining stops are re-timed based on the current
+     * state of the vehicles (the result is timed for the snapshot), and the spontaneous requests are inserted again.
+     * When the result cannot be reconciled with the live schedules (e.g., a served stop is re-assigned to another
+     * vehicle), the new requests are planned again on the live schedules (i.e., as in the synchronous mode).
+     */
+    private FleetSchedules mergePendingReplanning(double now) {
+        PendingReplanning replanning = pendingReplanning;
+        pendingReplanning = null;
+        FleetSchedules result = replanning.result().join();
+        Map<Id<DvrpVehicle>, List<TimetableEntry>> liveTimetables = fleetSchedules.vehicleToTimetableMap();
+
+        // Served stops (in the snapshot but not in the live timetable) and the spontaneous requests inserted meanwhile
+        Map<Id<DvrpVehicle>, Set<StopKey>> servedStops = new HashMap<>();
+        Set<Id<Person>> insertedRequests = new LinkedHashSet<>();
+        Set<Id<Person>> onboardInsertedRequests = new HashSet<>();
+        for (Id<DvrpVehicle> vehicleId : liveTimetables.keySet()) {
+            Set<StopKey> snapshotStops = toStopKeys(replanning.snapshot().vehicleToTimetableMap().get(vehicleId));
+            Set<StopKey> liveStops = toStopKeys(liveTimetables.get(vehicleId));
+            Set<StopKey> servedStopsOfVehicle = new HashSet<>(snapshotStops);
+            servedStopsOfVehicle.removeAll(liveStops);
+            servedStops.put(vehicleId, servedStopsOfVehicle);
+            for (StopKey stop : liveStops) {
+                if (!snapshotStops.contains(stop)) {
+                    insertedRequests.add(stop.passengerId());
+                    if (!liveStops.contains(new StopKey(stop.passengerId(), TimetableEntry.StopType.PICKUP))) {
+                        onboardInsertedRequests.add(stop.passengerId());
+                    }
+                }
+            }
+        }
+
+        String conflict = null;
+        Map<Id<DvrpVehicle>, List<TimetableEntry>> mergedTimetables = new HashMap<>();
+        for (Id<DvrpVehicle> vehicleId : liveTimetables.keySet()) {
+            List<TimetableEntry> timetable = result.vehicleToTimetableMap().getOrDefault(vehicleId, new ArrayList<>());
+            Set<StopKey> servedStopsOfVehicle = servedStops.get(vehicleId);
+            // The served stops must still be the first stops of the same vehicle. Otherwise, the occupancy and the
+            // order of the remaining stops would not match what the vehicle has actually done
+            if (timetable.size() < servedStopsOfVehicle.size() || !toStopKeys(timetable.subList(0, servedStopsOfVehicle.size())).equals(servedStopsOfVehicle)) {
+                conflict = "stops served by vehicle " + vehicleId + " are re-planned";
+                break;
+            }
+            mergedTimetables.put(vehicleId, new ArrayList<>(timetable.subList(servedStopsOfVehicle.size(), timetable.size())));
+        }
+        if (conflict == null && !onboardInsertedRequests.isEmpty()) {
+            conflict = "spontaneous passengers " + onboardInsertedRequests + " have been picked up";
+        }
+
+        // Re-time the remaining stops from the current location of the vehicles
+        if (conflict == null) {
+            for (Map.Entry<Id<DvrpVehicle>, List<TimetableEntry>> entry : mergedTimetables.entrySet()) {
+                OnlineVehicleInfo vehicleInfo = realTimeVehicleInfoMap.get(entry.getKey());
+                if (vehicleInfo != null) {
+                    retime(vehicleInfo, entry.getValue());
+                }
+            }
+        }
+
+        // Insert the spontaneous requests again (in the order of submission)
+        if (conflict == null) {
+            for (Id<Person> passengerId : insertedRequests) {
+                DrtRequest drtRequest = openRequests.get(passengerId);
+                if (drtRequest == null || inserter.insert(drtRequest, mergedTimetables, realTimeVehicleInfoMap) == null) {
+                    conflict = "spontaneous request " + passengerId + " cannot be inserted again";
+                    break;
+                }
+            }
+        }
+
+        if (conflict != null) {
+            log.warn("The plan calculated in the background cannot be merged (" + conflict + "). Re-calculating the plan at t = " + now);
+            return solve(fleetSchedules, realTimeVehicleInfoMap, replanning.newRequests(), now);
+        }
+
+        Set<Id<DvrpVehicle>> updatedVehicles = new HashSet<>();
+        for (Id<DvrpVehicle> vehicleId : mergedTimetables.keySet()) {
+            List<TimetableEntry> timetable = mergedTimetables.get(vehicleId);
+            TimetableEntry.updateCumulativeSlackTimes(timetable);
+            if (!TimetableEntry.hasSameStopSequence(timetable, liveTimetables.get(vehicleId))) {
+                updatedVehicles.add(vehicleId);
+            }
+        }
+        return new FleetSchedules(mergedTimetables, result.requestIdToVehicleMap(), result.rejectedRequests(), updatedVehicles);
+    }
+
+    /**
+     * Re-calculate the arrival times of the stops with the accurate travel times from the current location.
+     */
+    private void retime(OnlineVehicleInfo vehicleInfo, List<TimetableEntry> timetable) {
+        double currentTime = vehicleInfo.divertableTime();
+        Link currentLink = vehicleInfo.currentLink();
+        for (TimetableEntry stop : timetable) {
+            Link stopLink = network.getLinks().get(stop.getLinkId());
+            double travelTimeToStop = stopLink.getId().equals(currentLink.getId()) ? 0 :
+                    VrpPaths.calcAndCreatePath(currentLink, stopLink, currentTime, router, travelTime).getTravelTime();
+            stop.updateArrivalTime(currentTime + travelTimeToStop);
+            currentLink = stopLink;
+            currentTime = stop.getDepartureTime();
+        }
+        TimetableEntry.updateCumulativeSlackTimes(timetable);
+    }
+
+    private static Set<StopKey> toStopKeys(List<TimetableEntry> timetable) {
+        Set<StopKey> stopKeys = new HashSet<>();
+        if (timetable != null) {
+            for (TimetableEntry stop : timetable) {
+                stopKeys.add(StopKey.of(stop));
+            }
+        }
+        return stopKeys;
+    }
+
+    /**
+     * Deep copy of the schedules (the timetable entries are mutable).
+     */
+    private static FleetSchedules copyOf(FleetSchedules fleetSchedules) {
+        if (fleetSchedules == null) {
+            return null;
+        }
+        Map<Id<DvrpVehicle>, List<TimetableEntry>> vehicleToTimetableMap = new HashMap<>();
+        for (Map.Entry<Id<DvrpVehicle>, List<TimetableEntry>> entry : fleetSchedules.vehicleToTimetableMap().entrySet()) {
+            List<TimetableEntry> timetable = new ArrayList<>();
+            for (TimetableEntry stop : entry.getValue()) {
+                timetable.add(new TimetableEntry(stop));
+            }
+            vehicleToTimetableMap.put(entry.getKey(), timetable);
+        }
+        return new FleetSchedules(vehicleToTimetableMap, new HashMap<>(fleetSchedules.requestIdToVehicleMap()),
+                new ArrayList<>(fleetSchedules.rejectedRequests()), new HashSet<>(fleetSchedules.updatedVehicles()));
+    }
+
     private void updateFleetStatus(double now) {
         // TODO potential place to update vehicle timetable
         // This function only needs to be performed once for each time step
@@ -406,7 +712,7 @@ public class MixedCaseDrtOptimizer implements DrtOptimizer {
                 assert timetable.get(0) != null;
                 Id<Link> newDestination = timetable.get(0).getLinkId();
                 Id<Link> oldDestination = ((DrtDriveTask) currentTask).getPath().getToLink().getId();
-                if (!oldDestination.toString().equals(newDestination.toString())) {
+                if (oldDestination.index() != newDestination.index()) {
                     var newPath = VrpPaths.calcAndCreatePath(currentLink,
                             network.getLinks().get(newDestination), divertableTime, router, travelTime);
                     ((OnlineDriveTaskTracker) currentTask.getTaskTracker()).divertPath(newPath);
@@ -1,5 +1,6 @@
 package org.matsim.project.drtOperationStudy.mixedCase;
 
+import com.google.inject.Singleton;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.contrib.drt.optimizer.DrtOptimizer;
@@ -17,6 +18,7 @@ import org.matsim.core.mobsim.framework.MobsimTimer;
 import org.matsim.core.router.costcalculators.TravelDisutilityFactory;
 import org.matsim.core.router.util.TravelTime;
 
+import java.nio.file.Path;
 import java.util.Random;
 
 public class MixedCaseModule extends AbstractDvrpModeQSimModule {
@@ -28,9 +30,29 @@ public class MixedCaseModule extends AbstractDvrpModeQSimModule {
     private final boolean multiThread;
     private final long seed;
     private final PrebookedRequestSolverType prebookedRequestSolverType;
+    private final boolean asyncReplanning;
+    private final Path directTravelTimeFile;
+    private final int maxIterationsWithoutImprovement;
+    private final double maxSolveTime;
+    private final OnlineTravelTimeMatrixType onlineTravelTimeMatrixType;
 
     public MixedCaseModule(Population prebookedPlans, String mode, DrtConfigGroup drtConfigGroup, double horizon,
                            double interval, int maxIterations, boolean multiThread, long seed, PrebookedRequestSolverType type) {
+        this(prebookedPlans, mode, drtConfigGroup, horizon, interval, maxIterations, multiThread, seed, type, false, null, 0, 0,
+                OnlineTravelTimeMatrixType.FREE_SPEED);
+    }
+
+    /**
+     * @param asyncReplanning      solve the pre-booked requests of the next interval in the background (see {@link MixedCaseDrtOptimizer})
+     * @param directTravelTimeFile sidecar file with the direct travel times of the pre-booked trips (null: not used)
+     * @param maxIterationsWithoutImprovement early termination of the jsprit solver (0: disabled)
+     * @param maxSolveTime         maximum computation time of the jsprit solver per re-plan in seconds (0: disabled)
+     * @param onlineTravelTimeMatrixType travel time matrix used for the insertion of the spontaneous requests
+     */
+    public MixedCaseModule(Population prebookedPlans, String mode, DrtConfigGroup drtConfigGroup, double horizon,
+                           double interval, int maxIterations, boolean multiThread, long seed, PrebookedRequestSolverType type,
+                           boolean asyncReplanning, Path directTravelTimeFile, int maxIterationsWithoutImprovement,
+                           double maxSolveTime, OnlineTravelTimeMatrixType onlineTravelTimeMatrixType) {
         super(mode);
         this.prebookedPlans = prebookedPlans;
         this.drtConfigGroup = drtConfigGroup;
@@ -40,10 +62,23 @@ public class MixedCaseModule extends AbstractDvrpModeQSimModule {
         this.multiThread = multiThread;
         this.seed = seed;
         this.prebookedRequestSolverType = type;
+        this.asyncReplanning = asyncReplanning;
+        this.directTravelTimeFile = directTravelTimeFile;
+        this.maxIterationsWithoutImprovement = maxIterationsWithoutImprovement;
+        this.maxSolveTime = maxSolveTime;
+        this.onlineTravelTimeMatrixType = onlineTravelTimeMatrixType;
     }
 
     enum PrebookedRequestSolverType {JSPRIT, SEQ_INSERTION}
 
+    /**
+     * FREE_SPEED: the travel time matrix of DVRP (zonal, free speed). PRECALCULATED: exact node to node matrix of the
+     * drt trips, calculated at the start of the simulation. TIME_SLICED: exact node to node matrix per 15 min time bin.
+     * BATCHED: PRECALCULATED, with the travel times from/to the locations of each request outside the matrix calculated
+     * in batch (see {@link BatchedTravelTimeMatrix}).
+     */
+    enum OnlineTravelTimeMatrixType {FREE_SPEED, PRECALCULATED, TIME_SLICED, BATCHED}
+
     @Override
     protected void configureQSim() {
         addModalComponent(DrtOptimizer.class, this.modalProvider((getter) -> new MixedCaseDrtOptimizer(getter.getModal(Network.class), getter.getModal(TravelTime.class),
@@ -55,17 +90,46 @@ public class MixedCaseModule extends AbstractDvrpModeQSimModule {
                 getter.getModal(VehicleEntry.EntryFactory.class),
                 getter.getModal(PrebookedRequestsSolver.class),
                 getter.getModal(OnlineInserter.class),
-                getter.get(Population.class), horizon, interval, prebookedPlans)));
+                getter.get(Population.class), horizon, interval, prebookedPlans, asyncReplanning, directTravelTimeFile,
+                onlineTravelTimeMatrixType == OnlineTravelTimeMatrixType.TIME_SLICED ?
+                        getter.getModal(TimeSlicedExactNodeToNodeMatrix.class) : null)));
+
+        // Exact travel time matrices for the online insertion (one instance shared by the optimizer and the inserter)
+        switch (onlineTravelTimeMatrixType) {
+            case PRECALCULATED, BATCHED -> bindModal(PrecalculatedExactNodeToNodeMatrix.class).toProvider(modalProvider(
+                    getter -> new PrecalculatedExactNodeToNodeMatrix(getter.getModal(Network.class),
+                            getter.getModal(TravelTime.class), 0, getter.get(Population.class)))).in(Singleton.class);
+            case TIME_SLICED -> bindModal(TimeSlicedExactNodeToNodeMatrix.class).toProvider(modalProvider(
+                    getter -> new TimeSlicedExactNodeToNodeMatrix(getter.getModal(Network.class),
+                            getter.getModal(TravelTime.class), 0, getter.get(Population.class)))).in(Singleton.class);
+            case FREE_SPEED -> {
+                // The travel time matrix of DVRP is already bound
+            }
+        }
 
         bindModal(OnlineInserter.class).toProvider(modalProvider(
                 getter -> new ExtensiveOnlineInserter(getter.getModal(Network.class), drtConfigGroup,
-                        getter.getModal(TravelTimeMatrix.class), getter.getModal(TravelTime.class),
-                        getter.getModal(TravelDisutilityFactory.class).createTravelDisutility(getter.getModal(TravelTime.class)))));
+                        switch (onlineTravelTimeMatrixType) {
+                            case FREE_SPEED -> getter.getModal(TravelTimeMatrix.class);
+                            case PRECALCULATED -> getter.getModal(PrecalculatedExactNodeToNodeMatrix.class);
+                            case TIME_SLICED -> getter.getModal(TimeSlicedExactNodeToNodeMatrix.class);
+                            case BATCHED -> {
+                                PrecalculatedExactNodeToNodeMatrix matrix = getter.getModal(PrecalculatedExactNodeToNodeMatrix.class);
+                                TravelTime travelTime = getter.getModal(TravelTime.class);
+                                yield new BatchedTravelTimeMatrix(getter.getModal(Network.class), travelTime,
+                                        getter.getModal(TravelDisutilityFactory.class).createTravelDisutility(travelTime),
+                                        matrix, matrix::contains);
+                            }
+                        },
+                        getter.getModal(TravelTime.class),
+                        getter.getModal(TravelDisutilityFactory.class).createTravelDisutility(getter.getModal(TravelTime.class)),
+                        multiThread ? getter.getModal(QSimScopeForkJoinPoolHolder.class).getPool() : null)));
 
         switch (prebookedRequestSolverType) {
             case JSPRIT -> bindModal(PrebookedRequestsSolver.class).toProvider(modalProvider(
                     getter -> new PrebookedRequestsSolverJsprit(
-                            new PrebookedRequestsSolverJsprit.Options(maxIteration, multiThread, new Random(seed)),
+                            new PrebookedRequestsSolverJsprit.Options(maxIteration, multiThread, new Random(seed),
+                                    maxIterationsWithoutImprovement, maxSolveTime),
                             drtConfigGroup, getter.getModal(Network.class), getter.getModal(TravelTime.class))));
             case SEQ_INSERTION -> bindModal(PrebookedRequestsSolver.class).toProvider(modalProvider(
                     getter -> new PrebookedRequestsSolverSeqInsertion(
@@ -76,17 +140,5 @@ public class MixedCaseModule extends AbstractDvrpModeQSimModule {
         addModalComponent(QSimScopeForkJoinPoolHolder.class,
                 () -> new QSimScopeForkJoinPoolHolder(drtConfigGroup.numberOfThreads));
         bindModal(VehicleEntry.EntryFactory.class).toInstance(new VehicleDataEntryFactoryImpl(drtConfigGroup));
-
-        // For testing purpose: use exact travel time matrix for online insertion
-//        bindModal(PrecalculatedExactNodeToNodeMatrix.class).toProvider(modalProvider(
-//                getter -> new PrecalculatedExactNodeToNodeMatrix(getter.getModal(Network.class),
-//                        getter.getModal(TravelTime.class), 0, getter.get(Population.class))
-//        ));
-
-//        bindModal(OnlineInserter.class).toProvider(modalProvider(
-//                getter -> new ExtensiveOnlineInserter(getter.getModal(Network.class), drtConfigGroup,
-//                        getter.getModal(PrecalculatedExactNodeToNodeMatrix.class), getter.getModal(TravelTime.class),
-//                        getter.getModal(TravelDisutilityFactory.class).createTravelDisutility(getter.getModal(TravelTime.class)))));
-
     }
 }
@@ -1,6 +1,8 @@
 package org.matsim.project.drtOperationStudy.mixedCase;
 
 import com.graphhopper.jsprit.core.algorithm.box.Jsprit;
+import com.graphhopper.jsprit.core.algorithm.termination.IterationWithoutImprovementTermination;
+import com.graphhopper.jsprit.core.algorithm.termination.TimeTermination;
 import com.graphhopper.jsprit.core.problem.Location;
 import com.graphhopper.jsprit.core.problem.VehicleRoutingProblem;
 import com.graphhopper.jsprit.core.problem.cost.VehicleRoutingTransportCosts;
@@ -19,7 +21,6 @@ import com.graphhopper.jsprit.core.problem.vehicle.VehicleTypeImpl;
 import com.graphhopper.jsprit.core.reporting.SolutionPrinter;
 import com.graphhopper.jsprit.core.util.Coordinate;
 import com.graphhopper.jsprit.core.util.Solutions;
-import one.util.streamex.EntryStream;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.network.Link;
@@ -30,10 +31,6 @@ import org.matsim.contrib.drt.run.DrtConfigGroup;
 import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
 import org.matsim.contrib.dvrp.path.VrpPaths;
 import org.matsim.contrib.dvrp.router.TimeAsTravelDisutility;
-import org.matsim.contrib.zone.Zone;
-import org.matsim.contrib.zone.skims.Matrix;
-import org.matsim.contrib.zone.skims.TravelTimeMatrices;
-import org.matsim.contrib.zone.skims.TravelTimeMatrix;
 import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
 
@@ -41,7 +38,6 @@ import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.toMap;
 import static org.matsim.contrib.dvrp.path.VrpPaths.FIRST_LINK_TT;
 
 class PrebookedRequestsSolverJsprit implements PrebookedRequestsSolver{
@@ -51,6 +47,7 @@ class PrebookedRequestsSolverJsprit implements PrebookedRequestsSolver{
     private final TravelTime travelTime;
     private final TravelDisutility travelDisutility;
     private final Map<Id<Link>, Location> locationByLinkId = new IdMap<>(Link.class);
+    private final IncrementalNodeToNodeTravelTimeMatrix travelTimeMatrix;
 
     public static final double REJECTION_COST = 100000;
 
@@ -61,6 +58,7 @@ class PrebookedRequestsSolverJsprit implements PrebookedRequestsSolver{
         this.network = network;
         this.travelTime = travelTime;
         this.travelDisutility = new TimeAsTravelDisutility(travelTime);
+        this.travelTimeMatrix = new IncrementalNodeToNodeTravelTimeMatrix(network, travelTime, travelDisutility);
     }
 
     @Override
@@ -116,8 +114,10 @@ class PrebookedRequestsSolverJsprit implements PrebookedRequestsSolver{
         }
 
         // Calculate link to link travel time matrix and initialize VRP costs
-        TravelTimeMatrix travelTimeMatrix = createTravelTimeMatrix(time);
-        MatrixBasedVrpCosts vrpCosts = new MatrixBasedVrpCosts(travelTimeMatrix, time, network, travelTime);
+        updateTravelTimeMatrix(time);
+        Link[] linkByLocationIndex = new Link[locationByLinkId.size()];
+        locationByLinkId.forEach((linkId, location) -> linkByLocationIndex[location.getIndex()] = network.getLinks().get(linkId));
+        MatrixBasedVrpCosts vrpCosts = new MatrixBasedVrpCosts(travelTimeMatrix, time, linkByLocationIndex, travelTime);
         vrpBuilder.setRoutingCost(vrpCosts);
         List<VehicleRoute> routesForInitialSolutions = new ArrayList<>();
         List<Job> unassignedShipments = new ArrayList<>(); //Used for initial solution
@@ -258,6 +258,15 @@ class PrebookedRequestsSolverJsprit implements PrebookedRequestsSolver{
                 .setRandom(options.random)
                 .buildAlgorithm();
         algorithm.setMaxIterations(options.maxIterations);
+        // The search starts from the previous plan. When it is already good, stop early instead of using the whole budget
+        if (options.maxIterationsWithoutImprovement > 0) {
+            algorithm.addTerminationCriterion(new IterationWithoutImprovementTermination(options.maxIterationsWithoutImprovement));
+        }
+        if (options.maxSolveTime > 0) {
+            TimeTermination timeTermination = new TimeTermination((long) (options.maxSolveTime * 1000));
+            algorithm.addListener(timeTermination);
+            algorithm.addTerminationCriterion(timeTermination);
+        }
         algorithm.addInitialSolution(initialSolution);
         var solutions = algorithm.searchSolutions();
         var bestSolution = Solutions.bestOf(solutions);
@@ -295,6 +304,7 @@ class PrebookedRequestsSolverJsprit implements PrebookedRequestsSolver{
                     occupancy--;
                 }
             }
+            TimetableEntry.updateCumulativeSlackTimes(vehicleToPreplannedStops.get(vehicleId));
         }
 
         List<Id<Person>> rejectedRequests = new ArrayList<>();
@@ -303,22 +313,39 @@ class PrebookedRequestsSolverJsprit implements PrebookedRequestsSolver{
             rejectedRequests.add(rejectedRequest.passengerId());
         }
 
-        return new MixedCaseDrtOptimizer.FleetSchedules(vehicleToPreplannedStops, assignedPassengerToVehicleMap, rejectedRequests);
+        // Vehicles whose stop sequence is changed by the new solution
+        Set<Id<DvrpVehicle>> updatedVehicles = new HashSet<>();
+        for (Id<DvrpVehicle> vehicleId : vehicleToPreplannedStops.keySet()) {
+            List<TimetableEntry> previousTimetable = previousSchedules == null ? null : previousSchedules.vehicleToTimetableMap().get(vehicleId);
+            if (previousTimetable == null || !TimetableEntry.hasSameStopSequence(previousTimetable, vehicleToPreplannedStops.get(vehicleId))) {
+                updatedVehicles.add(vehicleId);
+            }
+        }
+
+        return new MixedCaseDrtOptimizer.FleetSchedules(vehicleToPreplannedStops, assignedPassengerToVehicleMap, rejectedRequests, updatedVehicles);
     }
 
     // Inner classes / records
-    record Options(int maxIterations, boolean multiThread, Random random) {
+    /**
+     * @param maxIterationsWithoutImprovement stop the search after this number of iterations without improvement (0: disabled)
+     * @param maxSolveTime                    maximum computation time of one re-plan in seconds (0: disabled)
+     */
+    record Options(int maxIterations, boolean multiThread, Random random, int maxIterationsWithoutImprovement,
+                   double maxSolveTime) {
+        Options(int maxIterations, boolean multiThread, Random random) {
+            this(maxIterations, multiThread, random, 0, 0);
+        }
     }
 
-    record MatrixBasedVrpCosts(TravelTimeMatrix travelTimeMatrix, double now,
-                               Network network, TravelTime travelTime) implements VehicleRoutingTransportCosts {
+    record MatrixBasedVrpCosts(IncrementalNodeToNodeTravelTimeMatrix travelTimeMatrix, double now,
+                               Link[] linkByLocationIndex, TravelTime travelTime) implements VehicleRoutingTransportCosts {
         private double getTravelTime(Location from, Location to) {
-            if (from.getId().equals(to.getId())) {
+            if (from.getIndex() == to.getIndex()) {
                 return 0;
             }
-            Link fromLink = network.getLinks().get(Id.createLinkId(from.getId()));
-            Link toLink = network.getLinks().get(Id.createLinkId(to.getId()));
-            return FIRST_LINK_TT + travelTimeMatrix.getTravelTime(fromLink.getToNode(), toLink.getFromNode(), now)
+            Link fromLink = linkByLocationIndex[from.getIndex()];
+            Link toLink = linkByLocationIndex[to.getIndex()];
+            return FIRST_LINK_TT + travelTimeMatrix.getTravelTime(fromLink.getToNode().getId().index(), toLink.getFromNode().getId().index())
                     + VrpPaths.getLastLinkTT(travelTime, toLink, now);
         }
 
@@ -379,17 +406,13 @@ class PrebookedRequestsSolverJsprit implements PrebookedRequestsSolver{
                 .build());
     }
 
-    private TravelTimeMatrix createTravelTimeMatrix(double time) {
-        Map<Node, Zone> zoneByNode = locationByLinkId.keySet()
+    private void updateTravelTimeMatrix(double time) {
+        // Only the nodes not yet in the matrix are calculated. Nodes not referenced anymore are evicted
+        Set<Node> relevantNodes = locationByLinkId.keySet()
                 .stream()
                 .flatMap(linkId -> Stream.of(network.getLinks().get(linkId).getFromNode(), network.getLinks().get(linkId).getToNode()))
-                .collect(toMap(n -> n, node -> new Zone(Id.create(node.getId(), Zone.class), "node", node.getCoord()),
-                        (zone1, zone2) -> zone1));
-        var nodeByZone = EntryStream.of(zoneByNode).invert().toMap();
-        Matrix nodeToNodeMatrix = TravelTimeMatrices.calculateTravelTimeMatrix(network, nodeByZone, time, travelTime,
-                travelDisutility, Runtime.getRuntime().availableProcessors());
-
-        return (fromNode, toNode, departureTime) -> nodeToNodeMatrix.get(zoneByNode.get(fromNode), zoneByNode.get(toNode));
+                .collect(Collectors.toSet());
+        travelTimeMatrix.update(relevantNodes, time);
     }
 
 }
@@ -1,6 +1,5 @@
 package org.matsim.project.drtOperationStudy.mixedCase;
 
-import one.util.streamex.EntryStream;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -10,27 +9,35 @@ import org.matsim.contrib.drt.run.DrtConfigGroup;
 import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
 import org.matsim.contrib.dvrp.path.VrpPaths;
 import org.matsim.contrib.dvrp.router.TimeAsTravelDisutility;
-import org.matsim.contrib.zone.Zone;
-import org.matsim.contrib.zone.skims.Matrix;
-import org.matsim.contrib.zone.skims.TravelTimeMatrices;
-import org.matsim.contrib.zone.skims.TravelTimeMatrix;
 import org.matsim.core.router.util.TravelTime;
 
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.toMap;
 import static org.matsim.contrib.dvrp.path.VrpPaths.FIRST_LINK_TT;
 
 public class PrebookedRequestsSolverSeqInsertion implements PrebookedRequestsSolver {
     private final Network network;
+    private final Link[] linksByIndex;
     private final TravelTime travelTime;
     private final double stopDuration;
 
+    // Re-usable buffers for evaluating the insertions in place
+    private final CompactTimetable originalTimetable;
+    private final CompactTimetable temporaryTimetable;
+    private final VehicleIndex vehicleIndex;
+    private final IncrementalNodeToNodeTravelTimeMatrix nodeToNodeTravelTimeMatrix;
+
     PrebookedRequestsSolverSeqInsertion(Network network, TravelTime travelTime, DrtConfigGroup drtConfigGroup) {
         this.network = network;
+        this.linksByIndex = CompactTimetable.createLinksByIndex(network);
         this.travelTime = travelTime;
         this.stopDuration = drtConfigGroup.stopDuration;
+        this.originalTimetable = new CompactTimetable(stopDuration);
+        this.temporaryTimetable = new CompactTimetable(stopDuration);
+        this.vehicleIndex = new VehicleIndex(network);
+        this.nodeToNodeTravelTimeMatrix = new IncrementalNodeToNodeTravelTimeMatrix(network, travelTime, new TimeAsTravelDisutility(travelTime));
     }
 
     @Override
@@ -44,8 +51,9 @@ public class PrebookedRequestsSolverSeqInsertion implements PrebookedRequestsSol
             }
             Map<Id<Person>, Id<DvrpVehicle>> requestIdToVehicleMap = new HashMap<>();
             List<Id<Person>> rejectedRequests = new ArrayList<>();
-            previousSchedules = new MixedCaseDrtOptimizer.FleetSchedules(vehicleToTimetableMap, requestIdToVehicleMap, rejectedRequests);
+            previousSchedules = new MixedCaseDrtOptimizer.FleetSchedules(vehicleToTimetableMap, requestIdToVehicleMap, rejectedRequests, new HashSet<>());
         }
+        previousSchedules.updatedVehicles().clear();
 
         if (newRequests.isEmpty()) {
             return previousSchedules;
@@ -73,30 +81,42 @@ public class PrebookedRequestsSolverSeqInsertion implements PrebookedRequestsSol
             relevantLinks.add(request.fromLinkId());
             relevantLinks.add(request.toLinkId());
         }
-        LinkToLinkTravelTimeMatrix linkToLinkTravelTimeMatrix = new LinkToLinkTravelTimeMatrix(network, travelTime, relevantLinks, time);
+        // Only the nodes not yet in the matrix are calculated. Nodes not referenced anymore are evicted
+        Set<Node> relevantNodes = relevantLinks
+                .stream()
+                .flatMap(linkId -> Stream.of(network.getLinks().get(linkId).getFromNode(), network.getLinks().get(linkId).getToNode()))
+                .collect(Collectors.toSet());
+        nodeToNodeTravelTimeMatrix.update(relevantNodes, time);
+        LinkToLinkTravelTimeMatrix linkToLinkTravelTimeMatrix = new LinkToLinkTravelTimeMatrix(nodeToNodeTravelTimeMatrix, travelTime);
 
         // Update the schedule to the current situation (e.g., errors caused by those 1s differences; traffic situation...)
         updateFleetSchedule(previousSchedules, onlineVehicleInfoMap, linkToLinkTravelTimeMatrix);
+        vehicleIndex.build(previousSchedules.vehicleToTimetableMap(), onlineVehicleInfoMap);
 
         // Perform insertion
         for (MixedCaseDrtOptimizer.GeneralRequest request : newRequests) {
             Link fromLink = network.getLinks().get(request.fromLinkId());
             Link toLink = network.getLinks().get(request.toLinkId());
+            // Only vehicles that may reach the pickup location in time need to be evaluated
+            Set<Id<DvrpVehicle>> candidateVehicles = vehicleIndex.getCandidateVehicles(fromLink, request.latestStartTime());
 
             // Try to find the best insertion
             double bestInsertionCost = Double.MAX_VALUE;
-            DvrpVehicle selectedVehicle = null;
-            List<TimetableEntry> updatedTimetable = null;
+            CompactTimetable.Insertion bestInsertion = null;
 
             for (Id<DvrpVehicle> vehicleId : previousSchedules.vehicleToTimetableMap().keySet()) {
+                if (!candidateVehicles.contains(vehicleId)) {
+                    continue;
+                }
                 MixedCaseDrtOptimizer.OnlineVehicleInfo vehicleInfo = onlineVehicleInfoMap.get(vehicleId);
+                DvrpVehicle vehicle = vehicleInfo.vehicle();
                 Link currentLink = vehicleInfo.currentLink();
                 double divertableTime = vehicleInfo.divertableTime();
-                double serviceEndTime = vehicleInfo.vehicle().getServiceEndTime() - stopDuration; // the last stop must start on or before this time step
-                List<TimetableEntry> originalTimetable = previousSchedules.vehicleToTimetableMap().get(vehicleId);
+                double serviceEndTime = vehicle.getServiceEndTime() - stopDuration; // the last stop must start on or before this time step
+                List<TimetableEntry> timetable = previousSchedules.vehicleToTimetableMap().get(vehicleId);
 
                 // 1. if timetable is empty
-                if (originalTimetable.isEmpty()) {
+                if (timetable.isEmpty()) {
                     double timeToPickup = linkToLinkTravelTimeMatrix.getTravelTime(currentLink, fromLink, divertableTime);
                     double arrivalTimePickUp = divertableTime + timeToPickup;
                     double departureTimePickUp = Math.max(request.earliestStartTime(), arrivalTimePickUp) + stopDuration;
@@ -109,27 +129,29 @@ public class PrebookedRequestsSolverSeqInsertion implements PrebookedRequestsSol
 
                     if (totalInsertionCost < bestInsertionCost) {
                         bestInsertionCost = totalInsertionCost;
-                        selectedVehicle = vehicleInfo.vehicle();
-                        updatedTimetable = new ArrayList<>();
-                        updatedTimetable.add(new TimetableEntry(request, TimetableEntry.StopType.PICKUP, arrivalTimePickUp, departureTimePickUp, 0, stopDuration, selectedVehicle));
-                        updatedTimetable.add(new TimetableEntry(request, TimetableEntry.StopType.DROP_OFF, arrivalTimeDropOff, arrivalTimeDropOff + stopDuration, 1, stopDuration, selectedVehicle));
                         // Note: The departure time of the last stop is actually not meaningful, but this stop may become non-last stop later, therefore, we set the departure time of this stop as if it is a middle stop
+                        bestInsertion = new CompactTimetable.Insertion(vehicle, request,
+                                0, arrivalTimePickUp, departureTimePickUp, 0, 0,
+                                1, arrivalTimeDropOff, arrivalTimeDropOff + stopDuration, 1, 0);
                     }
                     continue;
                 }
 
                 // 2. If original timetable is non-empty
+                originalTimetable.load(timetable, vehicle);
                 for (int i = 0; i < originalTimetable.size() + 1; i++) {
                     double pickUpInsertionCost;
-                    List<TimetableEntry> temporaryTimetable;
+                    double arrivalTimePickUpStop;
+                    double departureTimePickUpStop;
+                    int pickupOccupancy;
+                    double delayCausedByInsertingPickUp;
 
                     // Insert pickup
                     if (i < originalTimetable.size()) {
-                        if (originalTimetable.get(i).isVehicleFullBeforeThisStop()) {
+                        if (originalTimetable.isVehicleFullBeforeThisStop(i)) {
                             continue;
                         }
                         double detourA;
-                        double arrivalTimePickUpStop;
                         Link linkOfStopBeforePickUpInsertion;
                         double departureTimeOfStopBeforePickUpInsertion;
                         if (i == 0) { // insert pickup before the first stop
@@ -138,54 +160,50 @@ public class PrebookedRequestsSolverSeqInsertion implements PrebookedRequestsSol
                             detourA = linkToLinkTravelTimeMatrix.getTravelTime(currentLink, fromLink, divertableTime);
                             arrivalTimePickUpStop = divertableTime + detourA;
                         } else {
-                            TimetableEntry stopBeforePickUpInsertion = originalTimetable.get(i - 1);
-                            linkOfStopBeforePickUpInsertion = network.getLinks().get(stopBeforePickUpInsertion.getLinkId());
-                            departureTimeOfStopBeforePickUpInsertion = stopBeforePickUpInsertion.getDepartureTime();
-                            detourA = linkToLinkTravelTimeMatrix.getTravelTime(linkOfStopBeforePickUpInsertion, fromLink, stopBeforePickUpInsertion.getDepartureTime());
+                            linkOfStopBeforePickUpInsertion = getLink(originalTimetable, i - 1);
+                            departureTimeOfStopBeforePickUpInsertion = originalTimetable.getDepartureTime(i - 1);
+                            detourA = linkToLinkTravelTimeMatrix.getTravelTime(linkOfStopBeforePickUpInsertion, fromLink, departureTimeOfStopBeforePickUpInsertion);
                             arrivalTimePickUpStop = departureTimeOfStopBeforePickUpInsertion + detourA;
                         }
                         if (arrivalTimePickUpStop > request.latestStartTime() || arrivalTimePickUpStop > serviceEndTime) {
                             break; // Vehicle can no longer reach the pickup location in time. No need to continue with this vehicle
                         }
-                        double departureTimePickUpStop = Math.max(arrivalTimePickUpStop, request.earliestStartTime()) + stopDuration;
-                        TimetableEntry stopAfterPickUpInsertion = originalTimetable.get(i);
-                        Link linkOfStopAfterPickUpInsertion = network.getLinks().get(stopAfterPickUpInsertion.getLinkId());
+                        departureTimePickUpStop = Math.max(arrivalTimePickUpStop, request.earliestStartTime()) + stopDuration;
+                        Link linkOfStopAfterPickUpInsertion = getLink(originalTimetable, i);
                         double detourB = linkToLinkTravelTimeMatrix.getTravelTime(fromLink, linkOfStopAfterPickUpInsertion, departureTimePickUpStop);
                         double newArrivalTimeOfNextStop = departureTimePickUpStop + detourB;
-                        double delayCausedByInsertingPickUp = newArrivalTimeOfNextStop - stopAfterPickUpInsertion.getArrivalTime();
-                        if (isInsertionNotFeasible(originalTimetable, i, delayCausedByInsertingPickUp, serviceEndTime)) {
+                        delayCausedByInsertingPickUp = newArrivalTimeOfNextStop - originalTimetable.getArrivalTime(i);
+                        if (!originalTimetable.isDelayFeasible(i, delayCausedByInsertingPickUp)) {
                             continue;
                         }
                         pickUpInsertionCost = detourA + detourB - linkToLinkTravelTimeMatrix.getTravelTime(linkOfStopBeforePickUpInsertion, linkOfStopAfterPickUpInsertion, departureTimeOfStopBeforePickUpInsertion);
-                        TimetableEntry pickupStopToInsert = new TimetableEntry(request, TimetableEntry.StopType.PICKUP,
-                                arrivalTimePickUpStop, departureTimePickUpStop, stopAfterPickUpInsertion.getOccupancyBeforeStop(), stopDuration, vehicleInfo.vehicle());
-                        temporaryTimetable = insertPickup(originalTimetable, i, pickupStopToInsert, delayCausedByInsertingPickUp);
+                        pickupOccupancy = originalTimetable.getOccupancyBeforeStop(i);
                     } else { // Append pickup at the end
-                        TimetableEntry stopBeforePickUpInsertion = originalTimetable.get(i - 1);
-                        Link linkOfStopBeforePickUpInsertion = network.getLinks().get(stopBeforePickUpInsertion.getLinkId());
-                        double departureTimeOfStopBeforePickUpInsertion = stopBeforePickUpInsertion.getDepartureTime();
+                        Link linkOfStopBeforePickUpInsertion = getLink(originalTimetable, i - 1);
+                        double departureTimeOfStopBeforePickUpInsertion = originalTimetable.getDepartureTime(i - 1);
                         double travelTimeToPickUp = linkToLinkTravelTimeMatrix.getTravelTime(linkOfStopBeforePickUpInsertion, fromLink, departureTimeOfStopBeforePickUpInsertion);
-                        double arrivalTimePickUpStop = travelTimeToPickUp + departureTimeOfStopBeforePickUpInsertion;
+                        arrivalTimePickUpStop = travelTimeToPickUp + departureTimeOfStopBeforePickUpInsertion;
                         if (arrivalTimePickUpStop > request.latestStartTime() || arrivalTimePickUpStop > serviceEndTime) {
                             break;
                         }
-                        double departureTimePickUpStop = Math.max(arrivalTimePickUpStop, request.earliestStartTime()) + stopDuration;
+                        departureTimePickUpStop = Math.max(arrivalTimePickUpStop, request.earliestStartTime()) + stopDuration;
                         pickUpInsertionCost = travelTimeToPickUp;
-                        TimetableEntry pickupStopToInsert = new TimetableEntry(request, TimetableEntry.StopType.PICKUP,
-                                arrivalTimePickUpStop, departureTimePickUpStop, 0, stopDuration, vehicleInfo.vehicle());
-                        temporaryTimetable = insertPickup(originalTimetable, i, pickupStopToInsert, 0); //Appending pickup at the end will not cause any delay to the original timetable
+                        pickupOccupancy = 0;
+                        delayCausedByInsertingPickUp = 0; //Appending pickup at the end will not cause any delay to the original timetable
                     }
+                    temporaryTimetable.copyFrom(originalTimetable);
+                    temporaryTimetable.insertStop(i, request, TimetableEntry.StopType.PICKUP, arrivalTimePickUpStop,
+                            departureTimePickUpStop, pickupOccupancy, delayCausedByInsertingPickUp);
 
                     // Insert drop off
                     for (int j = i + 1; j < temporaryTimetable.size() + 1; j++) {
                         // Check occupancy feasibility
-                        if (temporaryTimetable.get(j - 1).isVehicleOverloaded()) {
+                        if (temporaryTimetable.isVehicleOverloaded(j - 1)) {
                             break; // If the stop before the drop-off insertion is overloaded, then it is not feasible to insert drop off at or after current location
                         }
 
-                        TimetableEntry stopBeforeDropOffInsertion = temporaryTimetable.get(j - 1);
-                        Link linkOfStopBeforeDropOffInsertion = network.getLinks().get(stopBeforeDropOffInsertion.getLinkId());
-                        double departureTimeOfStopBeforeDropOffInsertion = stopBeforeDropOffInsertion.getDepartureTime();
+                        Link linkOfStopBeforeDropOffInsertion = getLink(temporaryTimetable, j - 1);
+                        double departureTimeOfStopBeforeDropOffInsertion = temporaryTimetable.getDepartureTime(j - 1);
                         if (j < temporaryTimetable.size()) { // Insert drop off between two stops
                             double detourC = linkToLinkTravelTimeMatrix.getTravelTime(linkOfStopBeforeDropOffInsertion, toLink, departureTimeOfStopBeforeDropOffInsertion);
                             double arrivalTimeDropOffStop = departureTimeOfStopBeforeDropOffInsertion + detourC;
@@ -193,22 +211,21 @@ public class PrebookedRequestsSolverSeqInsertion implements PrebookedRequestsSol
                                 break;
                             }
                             double departureTimeDropOffStop = arrivalTimeDropOffStop + stopDuration;
-                            TimetableEntry stopAfterDropOffInsertion = temporaryTimetable.get(j);
-                            Link linkOfStopAfterDropOffInsertion = network.getLinks().get(stopAfterDropOffInsertion.getLinkId());
+                            Link linkOfStopAfterDropOffInsertion = getLink(temporaryTimetable, j);
                             double detourD = linkToLinkTravelTimeMatrix.getTravelTime(toLink, linkOfStopAfterDropOffInsertion, departureTimeDropOffStop);
                             double newArrivalTimeOfStopAfterDropOffInsertion = departureTimeDropOffStop + detourD;
-                            double delayCausedByDropOffInsertion = newArrivalTimeOfStopAfterDropOffInsertion - stopAfterDropOffInsertion.getArrivalTime();
-                            if (isInsertionNotFeasible(temporaryTimetable, j, delayCausedByDropOffInsertion, serviceEndTime)) {
+                            double delayCausedByDropOffInsertion = newArrivalTimeOfStopAfterDropOffInsertion - temporaryTimetable.getArrivalTime(j);
+                            if (!temporaryTimetable.isDelayFeasible(j, delayCausedByDropOffInsertion)) {
                                 continue;
                             }
                             double dropOffInsertionCost = detourC + detourD - linkToLinkTravelTimeMatrix.getTravelTime(linkOfStopBeforeDropOffInsertion, linkOfStopAfterDropOffInsertion, departureTimeOfStopBeforeDropOffInsertion);
                             double totalInsertionCost = dropOffInsertionCost + pickUpInsertionCost;
                             if (totalInsertionCost < bestInsertionCost) {
                                 bestInsertionCost = totalInsertionCost;
-                                selectedVehicle = vehicleInfo.vehicle();
-                                TimetableEntry dropOffStopToInsert = new TimetableEntry(request, TimetableEntry.StopType.DROP_OFF,
-                                        arrivalTimeDropOffStop, departureTimeDropOffStop, stopAfterDropOffInsertion.getOccupancyBeforeStop(), stopDuration, vehicleInfo.vehicle()); //Attention: currently, the occupancy before next stop is already increased!
-                                updatedTimetable = insertDropOff(temporaryTimetable, j, dropOffStopToInsert, delayCausedByDropOffInsertion);
+                                //Attention: currently, the occupancy before next stop is already increased!
+                                bestInsertion = new CompactTimetable.Insertion(vehicle, request,
+                                        i, arrivalTimePickUpStop, departureTimePickUpStop, pickupOccupancy, delayCausedByInsertingPickUp,
+                                        j, arrivalTimeDropOffStop, departureTimeDropOffStop, temporaryTimetable.getOccupancyBeforeStop(j), delayCausedByDropOffInsertion);
                             }
                         } else { // Append drop off at the end
                             double travelTimeToDropOffStop = linkToLinkTravelTimeMatrix.getTravelTime(linkOfStopBeforeDropOffInsertion, toLink, departureTimeOfStopBeforeDropOffInsertion);
@@ -220,120 +237,48 @@ public class PrebookedRequestsSolverSeqInsertion implements PrebookedRequestsSol
                             double departureTimeDropOffStop = arrivalTimeDropOffStop + stopDuration;
                             if (totalInsertionCost < bestInsertionCost) {
                                 bestInsertionCost = totalInsertionCost;
-                                selectedVehicle = vehicleInfo.vehicle();
-                                TimetableEntry dropOffStopToInsert = new TimetableEntry(request, TimetableEntry.StopType.DROP_OFF,
-                                        arrivalTimeDropOffStop, departureTimeDropOffStop, 1, stopDuration, vehicleInfo.vehicle());
-                                updatedTimetable = insertDropOff(temporaryTimetable, j, dropOffStopToInsert, 0); // Append at the end --> no delay to other stops
+                                // Append at the end --> no delay to other stops
+                                bestInsertion = new CompactTimetable.Insertion(vehicle, request,
+                                        i, arrivalTimePickUpStop, departureTimePickUpStop, pickupOccupancy, delayCausedByInsertingPickUp,
+                                        j, arrivalTimeDropOffStop, departureTimeDropOffStop, 1, 0);
                             }
                         }
                     }
                 }
             }
 
-            if (selectedVehicle == null) {
+            if (bestInsertion == null) {
                 previousSchedules.rejectedRequests().add(request.passengerId());
             } else {
-                previousSchedules.vehicleToTimetableMap().put(selectedVehicle.getId(), updatedTimetable);
-                previousSchedules.requestIdToVehicleMap().put(request.passengerId(), selectedVehicle.getId());
+                // The timetable is only materialized for the selected insertion
+                Id<DvrpVehicle> selectedVehicleId = bestInsertion.vehicle().getId();
+                List<TimetableEntry> updatedTimetable = originalTimetable.materialize(previousSchedules.vehicleToTimetableMap().get(selectedVehicleId), bestInsertion);
+                previousSchedules.vehicleToTimetableMap().put(selectedVehicleId, updatedTimetable);
+                previousSchedules.requestIdToVehicleMap().put(request.passengerId(), selectedVehicleId);
+                previousSchedules.updatedVehicles().add(selectedVehicleId);
+                vehicleIndex.updateVehicle(onlineVehicleInfoMap.get(selectedVehicleId), updatedTimetable);
             }
         }
         return previousSchedules;
     }
 
     // Private classes / records
-    private static class LinkToLinkTravelTimeMatrix {
-        private final TravelTimeMatrix nodeToNodeTravelTimeMatrix;
-        private final TravelTime travelTime;
-        private final Network network;
-
-        LinkToLinkTravelTimeMatrix(Network network, TravelTime travelTime, Set<Id<Link>> relevantLinks, double time) {
-            this.network = network;
-            this.travelTime = travelTime;
-            this.nodeToNodeTravelTimeMatrix = calculateTravelTimeMatrix(relevantLinks, time);
-        }
-
+    private record LinkToLinkTravelTimeMatrix(IncrementalNodeToNodeTravelTimeMatrix nodeToNodeTravelTimeMatrix,
+                                              TravelTime travelTime) {
         double getTravelTime(Link fromLink, Link toLink, double departureTime) {
-            if (fromLink.getId().toString().equals(toLink.getId().toString())) {
+            if (fromLink.getId().index() == toLink.getId().index()) {
                 return 0;
             }
-            double travelTimeFromNodeToNode = nodeToNodeTravelTimeMatrix.getTravelTime(fromLink.getToNode(), toLink.getFromNode(), departureTime);
+            double travelTimeFromNodeToNode = nodeToNodeTravelTimeMatrix.getTravelTime(fromLink.getToNode().getId().index(),
+                    toLink.getFromNode().getId().index());
             return FIRST_LINK_TT + travelTimeFromNodeToNode
                     + VrpPaths.getLastLinkTT(travelTime, toLink, departureTime + travelTimeFromNodeToNode);
         }
-
-        private TravelTimeMatrix calculateTravelTimeMatrix(Set<Id<Link>> relevantLinks, double time) {
-            Map<Node, Zone> zoneByNode = relevantLinks
-                    .stream()
-                    .flatMap(linkId -> Stream.of(network.getLinks().get(linkId).getFromNode(), network.getLinks().get(linkId).getToNode()))
-                    .collect(toMap(n -> n, node -> new Zone(Id.create(node.getId(), Zone.class), "node", node.getCoord()),
-                            (zone1, zone2) -> zone1));
-            var nodeByZone = EntryStream.of(zoneByNode).invert().toMap();
-            Matrix nodeToNodeMatrix = TravelTimeMatrices.calculateTravelTimeMatrix(network, nodeByZone, time, travelTime,
-                    new TimeAsTravelDisutility(travelTime), Runtime.getRuntime().availableProcessors());
-
-            return (fromNode, toNode, departureTime) -> nodeToNodeMatrix.get(zoneByNode.get(fromNode), zoneByNode.get(toNode));
-        }
     }
 
     // Private methods
-    private boolean isInsertionNotFeasible(List<TimetableEntry> originalTimetable, int insertionIdx, double delay, double serviceEndTime) {
-        for (int i = insertionIdx; i < originalTimetable.size(); i++) {
-            TimetableEntry stop = originalTimetable.get(i);
-            double newArrivalTime = stop.getArrivalTime() + delay;
-            if (stop.isTimeConstraintViolated(delay) || newArrivalTime > serviceEndTime) {
-                return true;
-            }
-            delay = stop.getEffectiveDelayIfStopIsDelayedBy(delay); // Update the delay after this stop (as stop time of some stops may be squeezed)
-            if (delay <= 0) {
-                return false; // The delay becomes 0, then there will be no impact on the following stops --> feasible (not feasible = false)
-            }
-        }
-        return false; // If we reach here, then every stop is feasible (not feasible = false)
-    }
-
-    private List<TimetableEntry> insertPickup(List<TimetableEntry> originalTimetable, int pickUpIdx,
-                                              TimetableEntry stopToInsert, double delay) {
-        // Create a copy of the original timetable (and copy each object inside)
-        // Note: Delay includes the pickup time
-        List<TimetableEntry> temporaryTimetable = new ArrayList<>();
-        for (TimetableEntry timetableEntry : originalTimetable) {
-            temporaryTimetable.add(new TimetableEntry(timetableEntry));
-        }
-
-        if (pickUpIdx < temporaryTimetable.size()) {
-            temporaryTimetable.add(pickUpIdx, stopToInsert);
-            for (int i = pickUpIdx + 1; i < temporaryTimetable.size(); i++) {
-                double effectiveDelay = temporaryTimetable.get(i).getEffectiveDelayIfStopIsDelayedBy(delay);
-                temporaryTimetable.get(i).delayTheStopBy(delay);
-                temporaryTimetable.get(i).addPickupBeforeTheStop();
-                delay = effectiveDelay; // Update the delay carry over to the next stop
-            }
-        } else {
-            temporaryTimetable.add(stopToInsert); // insert at the end
-        }
-        return temporaryTimetable;
-    }
-
-    private List<TimetableEntry> insertDropOff(List<TimetableEntry> temporaryTimetable, int dropOffIdx,
-                                               TimetableEntry stopToInsert, double delay) {
-        // Note: Delay includes the Drop-off time
-        List<TimetableEntry> candidateTimetable = new ArrayList<>();
-        for (TimetableEntry timetableEntry : temporaryTimetable) {
-            candidateTimetable.add(new TimetableEntry(timetableEntry));
-        }
-
-        if (dropOffIdx < candidateTimetable.size()) {
-            candidateTimetable.add(dropOffIdx, stopToInsert);
-            for (int i = dropOffIdx + 1; i < candidateTimetable.size(); i++) {
-                double effectiveDelay = candidateTimetable.get(i).getEffectiveDelayIfStopIsDelayedBy(delay);
-                candidateTimetable.get(i).delayTheStopBy(delay);
-                candidateTimetable.get(i).addDropOffBeforeTheStop();
-                delay = effectiveDelay; // Update the delay carry over to the next stop
-            }
-        } else {
-            candidateTimetable.add(stopToInsert); // insert at the end
-        }
-        return candidateTimetable;
+    private Link getLink(CompactTimetable timetable, int idx) {
+        return linksByIndex[timetable.getLinkIndex(idx)];
     }
 
     private void updateFleetSchedule(MixedCaseDrtOptimizer.FleetSchedules previousSchedules,
@@ -359,6 +304,7 @@ public class PrebookedRequestsSolverSeqInsertion implements PrebookedRequestsSol
                     currentTime = timetableEntry.getDepartureTime();
                     currentLink = stopLink;
                 }
+                TimetableEntry.updateCumulativeSlackTimes(timetable);
             }
         }
     }
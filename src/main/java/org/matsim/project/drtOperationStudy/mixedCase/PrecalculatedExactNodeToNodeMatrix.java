@@ -1,6 +1,7 @@
 package org.matsim.project.drtOperationStudy.mixedCase;
 
-import one.util.streamex.EntryStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
@@ -12,9 +13,6 @@ import org.matsim.api.core.v01.population.Population;
 import org.matsim.application.analysis.DefaultAnalysisMainModeIdentifier;
 import org.matsim.contrib.dvrp.path.VrpPaths;
 import org.matsim.contrib.dvrp.router.TimeAsTravelDisutility;
-import org.matsim.contrib.zone.Zone;
-import org.matsim.contrib.zone.skims.Matrix;
-import org.matsim.contrib.zone.skims.TravelTimeMatrices;
 import org.matsim.contrib.zone.skims.TravelTimeMatrix;
 import org.matsim.core.router.MainModeIdentifier;
 import org.matsim.core.router.TripStructureUtils;
@@ -22,63 +20,73 @@ import org.matsim.core.router.speedy.SpeedyALTFactory;
 import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
+import org.matsim.project.utils.DenseNodeToNodeTravelTimeMatrix;
 
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.toMap;
 import static org.matsim.contrib.dvrp.path.VrpPaths.FIRST_LINK_TT;
 
 class PrecalculatedExactNodeToNodeMatrix implements TravelTimeMatrix {
+    private static final Logger log = LogManager.getLogger(PrecalculatedExactNodeToNodeMatrix.class);
+    private static final double CACHE_TIME_BIN_SIZE = 900;
+
     private final Network network;
     private final TravelTime travelTime;
-    private final LeastCostPathCalculator router;
+    private final ThreadLocal<LeastCostPathCalculator> routers; // the router is not thread-safe
     private final TravelDisutility travelDisutility;
-    private Matrix nodeToNodeMatrix;
-    private final Map<Node, Zone> zoneByNode;
+    private final Set<Node> relevantNodes;
+    private volatile DenseNodeToNodeTravelTimeMatrix nodeToNodeMatrix;
 
-    private final Set<Id<Link>> linkIds = new HashSet<>();
-    private final Map<Node, Map<Node, Double>> independentNodeToNodeTravelTimeMap = new HashMap<>();
+    // Travel times between the nodes that are not in the matrix
+    private final BoundedTravelTimeCache independentTravelTimeCache =
+            new BoundedTravelTimeCache(BoundedTravelTimeCache.DEFAULT_CAPACITY, CACHE_TIME_BIN_SIZE);
 
     PrecalculatedExactNodeToNodeMatrix(Network network, TravelTime travelTime, double time, Population population) {
         this.network = network;
         this.travelTime = travelTime;
         this.travelDisutility = new TimeAsTravelDisutility(travelTime);
-        this.router = new SpeedyALTFactory().createPathCalculator(network, travelDisutility, travelTime);
+        this.routers = ThreadLocal.withInitial(() -> new SpeedyALTFactory().createPathCalculator(network, travelDisutility, travelTime));
 
         // calculate travel time matrix
-        readRelevantLocations(population);
-        zoneByNode = linkIds
-                .stream()
-                .flatMap(linkId -> Stream.of(network.getLinks().get(linkId).getFromNode(), network.getLinks().get(linkId).getToNode()))
-                .collect(toMap(n -> n, node -> new Zone(Id.create(node.getId(), Zone.class), "node", node.getCoord()),
-                        (zone1, zone2) -> zone1));
+        relevantNodes = readRelevantNodes(network, population);
 
-        var nodeByZone = EntryStream.of(zoneByNode).invert().toMap();
-
-        nodeToNodeMatrix = TravelTimeMatrices.calculateTravelTimeMatrix(network, nodeByZone, time, travelTime,
+        nodeToNodeMatrix = new DenseNodeToNodeTravelTimeMatrix(network, relevantNodes, time, travelTime,
                 travelDisutility, Runtime.getRuntime().availableProcessors());
     }
 
     void updateMatrix(double time) {
-        var nodeByZone = EntryStream.of(zoneByNode).invert().toMap();
-        nodeToNodeMatrix = TravelTimeMatrices.calculateTravelTimeMatrix(network, nodeByZone, time, travelTime,
+        log.info("Travel time cache for the nodes outside the matrix: " + independentTravelTimeCache);
+        nodeToNodeMatrix = new DenseNodeToNodeTravelTimeMatrix(network, relevantNodes, time, travelTime,
                 travelDisutility, Runtime.getRuntime().availableProcessors());
     }
 
     @Override
     public int getTravelTime(Node fromNode, Node toNode, double departureTime) {
-        if (zoneByNode.containsKey(fromNode) && zoneByNode.containsKey(toNode)) {
-            return nodeToNodeMatrix.get(zoneByNode.get(fromNode), zoneByNode.get(toNode));
+        if (nodeToNodeMatrix.contains(fromNode) && nodeToNodeMatrix.contains(toNode)) {
+            return nodeToNodeMatrix.getTravelTime(fromNode.getId().index(), toNode.getId().index());
         }
 
-        double travelTime = independentNodeToNodeTravelTimeMap.
-                computeIfAbsent(fromNode, f -> new HashMap<>()).
-                computeIfAbsent(toNode, t -> router.calcLeastCostPath(fromNode, toNode, departureTime, null, null).travelTime);
-        return (int) travelTime;
+        int fromNodeIndex = fromNode.getId().index();
+        int toNodeIndex = toNode.getId().index();
+        int travelTime = independentTravelTimeCache.get(fromNodeIndex, toNodeIndex, departureTime);
+        if (travelTime == BoundedTravelTimeCache.MISSING) {
+            travelTime = (int) routers.get().calcLeastCostPath(fromNode, toNode, departureTime, null, null).travelTime;
+            independentTravelTimeCache.put(fromNodeIndex, toNodeIndex, departureTime, travelTime);
+        }
+        return travelTime;
     }
 
-    private void readRelevantLocations(Population population) {
+    boolean contains(Node node) {
+        return nodeToNodeMatrix.contains(node);
+    }
+
+    /**
+     * @return from and to nodes of the origin and destination links of all the drt trips in the population
+     */
+    static Set<Node> readRelevantNodes(Network network, Population population) {
+        Set<Id<Link>> linkIds = new HashSet<>();
         MainModeIdentifier modeIdentifier = new DefaultAnalysisMainModeIdentifier();
         for (Person person : population.getPersons().values()) {
             List<TripStructureUtils.Trip> trips = TripStructureUtils.getTrips(person.getSelectedPlan());
@@ -89,5 +97,9 @@ class PrecalculatedExactNodeToNodeMatrix implements TravelTimeMatrix {
                 }
             }
         }
+        return linkIds
+                .stream()
+                .flatMap(linkId -> Stream.of(network.getLinks().get(linkId).getFromNode(), network.getLinks().get(linkId).getToNode()))
+                .collect(Collectors.toSet());
     }
 }
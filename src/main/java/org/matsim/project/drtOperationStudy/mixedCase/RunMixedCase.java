@@ -51,6 +51,24 @@ public class RunMixedCase implements MATSimAppCommand {
     @CommandLine.Option(names = "--prebooked-solver", defaultValue = "JSPRIT", description = "Prebooked trips solver")
     private MixedCaseModule.PrebookedRequestSolverType type;
 
+    @CommandLine.Option(names = "--direct-travel-times", description = "path to the sidecar file of the direct travel times of the pre-booked trips (re-used across runs)", defaultValue = "none")
+    private String directTravelTimeFile;
+
+    @CommandLine.Option(names = "--max-iterations-without-improvement", description = "early termination of the jsprit solver (0: disabled)", defaultValue = "0")
+    private int maxIterationsWithoutImprovement;
+
+    @CommandLine.Option(names = "--max-solve-time", description = "maximum computation time (s) of the jsprit solver per re-plan (0: disabled)", defaultValue = "0")
+    private double maxSolveTime;
+
+    @CommandLine.Option(names = "--async-replanning", description = "solve the pre-booked requests of the next interval in the background", defaultValue = "false")
+    private boolean asyncReplanning;
+
+    @CommandLine.Option(names = "--multi-thread", description = "use multiple threads for the jsprit solver and the insertion of the spontaneous requests", defaultValue = "false")
+    private boolean multiThread;
+
+    @CommandLine.Option(names = "--online-travel-time-matrix", defaultValue = "FREE_SPEED", description = "travel time matrix for the insertion of the spontaneous requests: ${COMPLETION-CANDIDATES}")
+    private MixedCaseModule.OnlineTravelTimeMatrixType onlineTravelTimeMatrixType;
+
     public static void main(String[] args) {
         new RunMixedCase().execute(args);
     }
@@ -72,20 +90,10 @@ public class RunMixedCase implements MATSimAppCommand {
         config.controler().setOutputDirectory(outputDirectory);
         config.controler().setLastIteration(0);
 
-        Controler controler = PreplannedDrtControlerCreator.createControler(config, false);
-        controler.addOverridingModule(new DvrpModule(new DvrpBenchmarkTravelTimeModuleFixedTT(0)));
-        controler.addOverridingQSimModule(new MixedCaseModule(prebookedPlans, drtConfigGroup.mode, drtConfigGroup, horizon, interval, maxIterations, false, seed, type));
-
-        // Add linear stop duration module
-        controler.addOverridingModule(new AbstractDvrpModeModule(drtConfigGroup.getMode()) {
-            @Override
-            public void install() {
-                install(new DvrpModeRoutingNetworkModule(getMode(), drtConfigGroup.useModeFilteredSubnetwork));
-                bindModal(StopDurationEstimator.class).toInstance((vehicle, dropOffRequests, pickupRequests) -> drtConfigGroup.stopDuration * (dropOffRequests.size() + pickupRequests.size()));
-                bindModal(IncrementalStopDurationEstimator.class).toInstance(new LinearDrtStopDurationEstimator(drtConfigGroup.stopDuration));
-            }
-        });
-
+        Controler controler = createControler(config, drtConfigGroup, new MixedCaseModule(prebookedPlans, drtConfigGroup.mode,
+                drtConfigGroup, horizon, interval, maxIterations, multiThread, seed, type, asyncReplanning,
+                directTravelTimeFile.equals("none") ? null : Path.of(directTravelTimeFile), maxIterationsWithoutImprovement,
+                maxSolveTime, onlineTravelTimeMatrixType));
         controler.run();
 
         // Compute time used
@@ -102,4 +110,21 @@ public class RunMixedCase implements MATSimAppCommand {
 
         return 0;
     }
+
+    static Controler createControler(Config config, DrtConfigGroup drtConfigGroup, MixedCaseModule mixedCaseModule) {
+        Controler controler = PreplannedDrtControlerCreator.createControler(config, false);
+        controler.addOverridingModule(new DvrpModule(new DvrpBenchmarkTravelTimeModuleFixedTT(0)));
+        controler.addOverridingQSimModule(mixedCaseModule);
+
+        // Add linear stop duration module
+        controler.addOverridingModule(new AbstractDvrpModeModule(drtConfigGroup.getMode()) {
+            @Override
+            public void install() {
+                install(new DvrpModeRoutingNetworkModule(getMode(), drtConfigGroup.useModeFilteredSubnetwork));
+                bindModal(StopDurationEstimator.class).toInstance((vehicle, dropOffRequests, pickupRequests) -> drtConfigGroup.stopDuration * (dropOffRequests.size() + pickupRequests.size()));
+                bindModal(IncrementalStopDurationEstimator.class).toInstance(new LinearDrtStopDurationEstimator(drtConfigGroup.stopDuration));
+            }
+        });
+        return controler;
+    }
 }
@@ -0,0 +1,179 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.contrib.dvrp.router.TimeAsTravelDisutility;
+import org.matsim.contrib.zone.skims.TravelTimeMatrix;
+import org.matsim.core.router.speedy.SpeedyALTFactory;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.project.utils.DenseNodeToNodeTravelTimeMatrix;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Time-dependent variant of the {@link PrecalculatedExactNodeToNodeMatrix}. The day is divided into time bins, and
+ * the node to node matrix of each bin (i.e., a slice) is calculated at the start time of the bin. The slices are
+ * calculated in a background thread: when a slice is accessed, the following slices are pre-fetched.
+ * A query is answered by interpolating between the slices of the bin of the departure time and the following bin.
+ * If a slice is not ready yet, the latest finished slice before it is used instead, so that the simulation is not
+ * blocked. The results then depend on the timing of the background thread (i.e., they are not deterministic). With
+ * waitForSlices, the query waits for the slice instead (deterministic results).
+ */
+class TimeSlicedExactNodeToNodeMatrix implements TravelTimeMatrix {
+    private static final Logger log = LogManager.getLogger(TimeSlicedExactNodeToNodeMatrix.class);
+    static final double DEFAULT_TIME_BIN_SIZE = 900;
+
+    private final Network network;
+    private final TravelTime travelTime;
+    private final TravelDisutility travelDisutility;
+    private final Set<Node> relevantNodes;
+    private final double timeBinSize;
+    private final boolean waitForSlices;
+
+    private final Map<Integer, CompletableFuture<Slice>> slices = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    // Routers for the nodes that are not in the matrix (the router is not thread-safe)
+    private final ThreadLocal<LeastCostPathCalculator> routers;
+
+    // Travel times between the nodes that are not in the matrix (per time bin)
+    private final BoundedTravelTimeCache independentTravelTimeCache;
+
+    private record Slice(double time, DenseNodeToNodeTravelTimeMatrix matrix) {
+    }
+
+    TimeSlicedExactNodeToNodeMatrix(Network network, TravelTime travelTime, double time, Population population) {
+        this(network, travelTime, time, population, DEFAULT_TIME_BIN_SIZE, false);
+    }
+
+    /**
+     * @param waitForSlices true: a query waits for the slices it needs (deterministic, but the simulation is blocked
+     *                      while a slice is calculated). false: the latest finished slice is used instead.
+     */
+    TimeSlicedExactNodeToNodeMatrix(Network network, TravelTime travelTime, double time, Population population,
+                                    double timeBinSize, boolean waitForSlices) {
+        this.network = network;
+        this.travelTime = travelTime;
+        this.travelDisutility = new TimeAsTravelDisutility(travelTime);
+        this.relevantNodes = PrecalculatedExactNodeToNodeMatrix.readRelevantNodes(network, population);
+        this.timeBinSize = timeBinSize;
+        this.waitForSlices = waitForSlices;
+        this.independentTravelTimeCache = new BoundedTravelTimeCache(BoundedTravelTimeCache.DEFAULT_CAPACITY, timeBinSize);
+        this.routers = ThreadLocal.withInitial(() -> new SpeedyALTFactory().createPathCalculator(network, travelDisutility, travelTime));
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "time-sliced-travel-time-matrix");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // The first slices are calculated directly / in the background, so that the first queries do not wait long
+        int timeBin = getTimeBin(time);
+        slices.put(timeBin, CompletableFuture.completedFuture(calculateSlice(timeBin)));
+        getSliceFuture(timeBin + 1);
+    }
+
+    @Override
+    public int getTravelTime(Node fromNode, Node toNode, double departureTime) {
+        int timeBin = getTimeBin(departureTime);
+        // The slices of this and the next bin are scheduled first, then the one after (pre-fetch)
+        Slice slice = getSlice(timeBin);
+        Slice nextSlice = getSlice(timeBin + 1);
+        getSliceFuture(timeBin + 2);
+
+        int travelTimeOfThisBin = getTravelTime(slice, fromNode, toNode);
+        if (nextSlice == slice) {
+            return travelTimeOfThisBin; // the next slice is not ready yet
+        }
+        // Linear interpolation between the start time of this bin and the next bin
+        int travelTimeOfNextBin = getTravelTime(nextSlice, fromNode, toNode);
+        double weight = (departureTime - timeBin * timeBinSize) / timeBinSize;
+        return (int) ((1 - weight) * travelTimeOfThisBin + weight * travelTimeOfNextBin);
+    }
+
+    /**
+     * Discard the slices that end before the time, as the queries will not go back in time. The slice of the previous
+     * bin is kept as the fallback until the slice of the current bin is ready. Called by the optimizer at each
+     * re-plan.
+     */
+    void discardSlicesBefore(double time) {
+        int currentTimeBin = getTimeBin(time);
+        slices.keySet().removeIf(timeBin -> timeBin < currentTimeBin - 1);
+    }
+
+    /**
+     * Stop the background thread (the slices that are being calculated are not waited for).
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Private functions
+    /**
+     * @return the slice of the time bin or, if it is not ready yet (and waitForSlices is false), the latest finished
+     * slice before it (the slice is waited for if there is none)
+     */
+    private Slice getSlice(int timeBin) {
+        CompletableFuture<Slice> future = getSliceFuture(timeBin);
+        if (waitForSlices || future.isDone()) {
+            return future.join();
+        }
+        int fallbackTimeBin = Integer.MIN_VALUE;
+        Slice fallbackSlice = null;
+        for (Map.Entry<Integer, CompletableFuture<Slice>> entry : slices.entrySet()) {
+            CompletableFuture<Slice> fallbackFuture = entry.getValue();
+            if (entry.getKey() < timeBin && entry.getKey() > fallbackTimeBin && fallbackFuture.isDone()
+                    && !fallbackFuture.isCompletedExceptionally()) {
+                fallbackTimeBin = entry.getKey();
+                fallbackSlice = fallbackFuture.join();
+            }
+        }
+        return fallbackSlice != null ? fallbackSlice : future.join();
+    }
+
+    private CompletableFuture<Slice> getSliceFuture(int timeBin) {
+        return slices.computeIfAbsent(timeBin, this::scheduleCalculation);
+    }
+
+    private CompletableFuture<Slice> scheduleCalculation(int timeBin) {
+        return CompletableFuture.supplyAsync(() -> calculateSlice(timeBin), executor).whenComplete((slice, e) -> {
+            if (e != null) {
+                log.error("Failed to calculate the travel time matrix for time bin " + timeBin, e);
+            }
+        });
+    }
+
+    private Slice calculateSlice(int timeBin) {
+        double time = timeBin * timeBinSize;
+        DenseNodeToNodeTravelTimeMatrix matrix = new DenseNodeToNodeTravelTimeMatrix(network, relevantNodes,
+                time, travelTime, travelDisutility, Runtime.getRuntime().availableProcessors());
+        return new Slice(time, matrix);
+    }
+
+    private int getTravelTime(Slice slice, Node fromNode, Node toNode) {
+        if (slice.matrix().contains(fromNode) && slice.matrix().contains(toNode)) {
+            return slice.matrix().getTravelTime(fromNode.getId().index(), toNode.getId().index());
+        }
+        int fromNodeIndex = fromNode.getId().index();
+        int toNodeIndex = toNode.getId().index();
+        int travelTime = independentTravelTimeCache.get(fromNodeIndex, toNodeIndex, slice.time());
+        if (travelTime == BoundedTravelTimeCache.MISSING) {
+            travelTime = (int) routers.get().calcLeastCostPath(fromNode, toNode, slice.time(), null, null).travelTime;
+            independentTravelTimeCache.put(fromNodeIndex, toNodeIndex, slice.time(), travelTime);
+        }
+        return travelTime;
+    }
+
+    private int getTimeBin(double time) {
+        return (int) (time / timeBinSize);
+    }
+}
@@ -4,6 +4,9 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
 
+import java.util.Iterator;
+import java.util.List;
+
 class TimetableEntry {
 
     enum StopType {PICKUP, DROP_OFF}
@@ -16,6 +19,9 @@ class TimetableEntry {
     private final double stopDuration;
     private final int capacity;
     private double slackTime;
+    private final double latestServiceTime; // The stop must start on or before this time (i.e., service end time of the vehicle - stop duration)
+    private double cumulativeSlackTime;
+    private boolean cumulativeSlackTimeOutdated = false;
 
     TimetableEntry(MixedCaseDrtOptimizer.GeneralRequest request, StopType stopType, double arrivalTime,
                    double departureTime, int occupancyBeforeStop, double stopDuration,
@@ -28,6 +34,8 @@ class TimetableEntry {
         this.stopDuration = stopDuration;
         this.capacity = vehicle.getCapacity();
         this.slackTime = departureTime - (stopDuration + arrivalTime);
+        this.latestServiceTime = vehicle.getServiceEndTime() - stopDuration;
+        this.cumulativeSlackTime = getLatestFeasibleArrivalTime() - arrivalTime; // As if it is the last stop. Use updateCumulativeSlackTimes on the whole timetable
     }
 
     /**
@@ -42,6 +50,38 @@ class TimetableEntry {
         this.stopDuration = timetableEntry.stopDuration;
         this.capacity = timetableEntry.capacity;
         this.slackTime = timetableEntry.slackTime;
+        this.latestServiceTime = timetableEntry.latestServiceTime;
+        this.cumulativeSlackTime = timetableEntry.cumulativeSlackTime;
+        this.cumulativeSlackTimeOutdated = timetableEntry.cumulativeSlackTimeOutdated;
+    }
+
+    /**
+     * Update the cumulative slack time of all the stops in the timetable (backward pass, O(n)).
+     */
+    static void updateCumulativeSlackTimes(List<TimetableEntry> timetable) {
+        TimetableEntry nextStop = null;
+        for (int i = timetable.size() - 1; i >= 0; i--) {
+            TimetableEntry stop = timetable.get(i);
+            stop.updateCumulativeSlackTime(nextStop);
+            nextStop = stop;
+        }
+    }
+
+    /**
+     * @return true if the two timetables visit the same stops (request and stop type) in the same order
+     */
+    static boolean hasSameStopSequence(List<TimetableEntry> timetable, List<TimetableEntry> otherTimetable) {
+        if (timetable.size() != otherTimetable.size()) {
+            return false;
+        }
+        Iterator<TimetableEntry> otherIterator = otherTimetable.iterator();
+        for (TimetableEntry stop : timetable) {
+            TimetableEntry otherStop = otherIterator.next();
+            if (stop.stopType != otherStop.stopType || !stop.getRequest().passengerId().equals(otherStop.getRequest().passengerId())) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Deprecated
@@ -67,17 +107,32 @@ class TimetableEntry {
 
     void delayTheStopBy(double delay) {
         // Note: delay can be negative (i.e., bring forward)
-        arrivalTime += delay;
-        departureTime = Math.max(arrivalTime, getEarliestDepartureTime()) + stopDuration;
-        slackTime = departureTime - (arrivalTime + stopDuration);
+        updateArrivalTime(arrivalTime + delay);
     }
 
     void updateArrivalTime(double newArrivalTime) {
+        // The cumulative slack time depends on the waiting time at this stop and on the following stops (in both
+        // directions). It must be re-calculated with updateCumulativeSlackTimes on the whole timetable.
+        cumulativeSlackTimeOutdated = true;
         arrivalTime = newArrivalTime;
         departureTime = Math.max(arrivalTime, getEarliestDepartureTime()) + stopDuration;
         slackTime = departureTime - (arrivalTime + stopDuration);
     }
 
+    /**
+     * Update the cumulative slack time of this stop based on the next stop (null if this is the last stop), in O(1).
+     * A delay at this stop is first absorbed by the slack time (i.e., waiting time) of this stop, and the rest is
+     * carried over to the next stop.
+     */
+    void updateCumulativeSlackTime(TimetableEntry nextStop) {
+        double tolerance = getLatestFeasibleArrivalTime() - arrivalTime;
+        if (nextStop != null) {
+            tolerance = Math.min(tolerance, slackTime + Math.max(0, nextStop.cumulativeSlackTime));
+        }
+        cumulativeSlackTime = tolerance;
+        cumulativeSlackTimeOutdated = false;
+    }
+
     // Checking functions
     boolean isTimeConstraintViolated(double delay) {
         return arrivalTime + delay > getLatestArrivalTime();
@@ -132,10 +187,24 @@ class TimetableEntry {
         return slackTime;
     }
 
+    double getCumulativeSlackTime() {
+        if (cumulativeSlackTimeOutdated) {
+            throw new IllegalStateException("The stop has been re-timed. Call updateCumulativeSlackTimes on the timetable first");
+        }
+        return cumulativeSlackTime;
+    }
+
     double getLatestArrivalTime() {
         return stopType == StopType.PICKUP ? request.latestStartTime() : request.latestArrivalTime();
     }
 
+    double getLatestServiceTime() {
+        return latestServiceTime;
+    }
+
     // Private functions
+    private double getLatestFeasibleArrivalTime() {
+        return Math.min(getLatestArrivalTime(), latestServiceTime);
+    }
 
 }
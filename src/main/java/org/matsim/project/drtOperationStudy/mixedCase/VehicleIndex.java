@@ -0,0 +1,277 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.core.utils.geometry.CoordUtils;
+
+import java.util.*;
+
+/**
+ * Spatial-temporal index of the vehicles, used to pre-filter the vehicles before evaluating the insertions.
+ * Each vehicle is represented by the points from which it may depart to a new pickup: the current location at the
+ * divertable time and each stop of the timetable at its departure time. The points are stored in a grid, bucketed by
+ * time bin. A query returns the vehicles that may reach the pickup location before the latest pickup time, based on
+ * the beeline distance and the maximum beeline speed of the network (i.e., a lower bound of the travel time).
+ * The beeline speed of a link is the beeline distance between its nodes divided by its free speed travel time. As the
+ * travel time on each link is not shorter than length / free speed, the beeline distance divided by the maximum beeline
+ * speed over all links is a valid lower bound of the travel time between any two nodes (triangle inequality). If a
+ * link has no positive length (i.e., no bound can be derived), the pruning is disabled and all the vehicles are returned.
+ * <p>
+ * The index is updated incrementally ({@link #update}): a vehicle is only re-indexed if its timetable has been
+ * replaced, it is on another link, or a point is earlier than indexed (e.g., stops brought forward in place). A later
+ * divertable time on the same link or later stops are not re-indexed, which is conservative: the vehicle cannot reach
+ * any location earlier than from an earlier point. For the same reason, stops that are removed in place (i.e., served)
+ * are kept until the vehicle is re-indexed.
+ */
+class VehicleIndex {
+    private static final Logger log = LogManager.getLogger(VehicleIndex.class);
+    static final double DEFAULT_TIME_BIN_SIZE = 300;
+
+    private final Network network;
+    private final double maxBeelineSpeed;
+    private final boolean pruningEnabled;
+    private final double timeBinSize;
+    private final double cellSize;
+
+    private final Map<Integer, Map<Long, List<Anchor>>> cellsByTimeBin = new HashMap<>();
+    private final Map<Id<DvrpVehicle>, List<Anchor>> anchorsByVehicle = new HashMap<>();
+    private final Map<Id<DvrpVehicle>, IndexedState> indexedStates = new HashMap<>();
+    private long numberOfIndexedVehicles = 0;
+
+    /**
+     * The coordinate is the to-node of the link, where the vehicle enters the network when departing from the point.
+     */
+    private record Anchor(Id<DvrpVehicle> vehicleId, Coord coord, double time, int timeBin, long cellKey) {
+    }
+
+    /**
+     * Current link, divertable time, timetable (by reference) and the departure times of its stops the vehicle has
+     * been indexed with.
+     */
+    private record IndexedState(Id<Link> currentLinkId, double divertableTime, List<TimetableEntry> timetable,
+                                double[] stopDepartureTimes) {
+    }
+
+    VehicleIndex(Network network) {
+        this(network, DEFAULT_TIME_BIN_SIZE);
+    }
+
+    VehicleIndex(Network network, double timeBinSize) {
+        this.network = network;
+        this.maxBeelineSpeed = calcMaxBeelineSpeed(network);
+        this.pruningEnabled = Double.isFinite(maxBeelineSpeed) && maxBeelineSpeed > 0;
+        if (!pruningEnabled) {
+            log.warn("No lower bound of the travel time can be derived from the network (links without positive length). " +
+                    "The vehicles will not be pre-filtered.");
+        }
+        this.timeBinSize = timeBinSize;
+        // Distance that can be driven (in beeline) within one time bin
+        this.cellSize = pruningEnabled ? maxBeelineSpeed * timeBinSize : Double.POSITIVE_INFINITY;
+    }
+
+    void build(Map<Id<DvrpVehicle>, List<TimetableEntry>> timetables,
+               Map<Id<DvrpVehicle>, MixedCaseDrtOptimizer.OnlineVehicleInfo> vehicleInfoMap) {
+        cellsByTimeBin.clear();
+        anchorsByVehicle.clear();
+        indexedStates.clear();
+        update(timetables, vehicleInfoMap);
+    }
+
+    /**
+     * Re-index only the vehicles that have changed since they were last indexed (see {@link #isIndexOutdated}), and
+     * remove the vehicles without timetable or vehicle info.
+     */
+    void update(Map<Id<DvrpVehicle>, List<TimetableEntry>> timetables,
+                Map<Id<DvrpVehicle>, MixedCaseDrtOptimizer.OnlineVehicleInfo> vehicleInfoMap) {
+        indexedStates.keySet().removeIf(vehicleId -> {
+            if (!timetables.containsKey(vehicleId) || !vehicleInfoMap.containsKey(vehicleId)) {
+                removeAnchors(vehicleId);
+                return true;
+            }
+            return false;
+        });
+        for (Map.Entry<Id<DvrpVehicle>, List<TimetableEntry>> entry : timetables.entrySet()) {
+            MixedCaseDrtOptimizer.OnlineVehicleInfo vehicleInfo = vehicleInfoMap.get(entry.getKey());
+            if (vehicleInfo == null) {
+                continue;
+            }
+            IndexedState indexedState = indexedStates.get(entry.getKey());
+            if (indexedState == null || isIndexOutdated(indexedState, vehicleInfo, entry.getValue())) {
+                updateVehicle(vehicleInfo, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Add the vehicle to the index, or replace its entries (e.g., after its timetable is changed).
+     */
+    void updateVehicle(MixedCaseDrtOptimizer.OnlineVehicleInfo vehicleInfo, List<TimetableEntry> timetable) {
+        Id<DvrpVehicle> vehicleId = vehicleInfo.vehicle().getId();
+        removeVehicle(vehicleId);
+        numberOfIndexedVehicles++;
+
+        List<Anchor> anchors = new ArrayList<>(timetable.size() + 1);
+        double[] stopDepartureTimes = new double[timetable.size()];
+        anchors.add(addAnchor(vehicleId, vehicleInfo.currentLink(), vehicleInfo.divertableTime()));
+        for (int i = 0; i < timetable.size(); i++) {
+            TimetableEntry stop = timetable.get(i);
+            anchors.add(addAnchor(vehicleId, network.getLinks().get(stop.getLinkId()), stop.getDepartureTime()));
+            stopDepartureTimes[i] = stop.getDepartureTime();
+        }
+        anchorsByVehicle.put(vehicleId, anchors);
+        indexedStates.put(vehicleId, new IndexedState(vehicleInfo.currentLink().getId(), vehicleInfo.divertableTime(),
+                timetable, stopDepartureTimes));
+    }
+
+    void removeVehicle(Id<DvrpVehicle> vehicleId) {
+        indexedStates.remove(vehicleId);
+        removeAnchors(vehicleId);
+    }
+
+    /**
+     * @return vehicles that may reach the pickup link on or before the latest pickup time. All the other vehicles
+     * are guaranteed not to be able to serve the request.
+     */
+    Set<Id<DvrpVehicle>> getCandidateVehicles(Link pickupLink, double latestPickupTime) {
+        if (!pruningEnabled) {
+            return new HashSet<>(anchorsByVehicle.keySet());
+        }
+        Set<Id<DvrpVehicle>> candidateVehicles = new HashSet<>();
+        // The vehicle needs to reach the from-node of the pickup link (or it is already on the pickup link)
+        Coord fromNodeCoord = pickupLink.getFromNode().getCoord();
+        Coord toNodeCoord = pickupLink.getToNode().getCoord();
+        int centerCellX = getCellIndex(fromNodeCoord.getX());
+        int centerCellY = getCellIndex(fromNodeCoord.getY());
+        double linkBeelineLength = CoordUtils.calcEuclideanDistance(fromNodeCoord, toNodeCoord);
+
+        for (Map.Entry<Integer, Map<Long, List<Anchor>>> timeBinEntry : cellsByTimeBin.entrySet()) {
+            double timeBinStartTime = timeBinEntry.getKey() * timeBinSize;
+            if (timeBinStartTime > latestPickupTime) {
+                continue;
+            }
+            Map<Long, List<Anchor>> cells = timeBinEntry.getValue();
+            double searchRadius = maxBeelineSpeed * (latestPickupTime - timeBinStartTime) + linkBeelineLength;
+            int radiusInCells = (int) Math.ceil(searchRadius / cellSize);
+            long numberOfCellsInSearchArea = (2L * radiusInCells + 1) * (2L * radiusInCells + 1);
+
+            if (numberOfCellsInSearchArea > cells.size()) {
+                // Fewer occupied cells than cells in the search area: go through the occupied cells directly
+                for (List<Anchor> cell : cells.values()) {
+                    collectReachableAnchors(cell, fromNodeCoord, toNodeCoord, latestPickupTime, candidateVehicles);
+                }
+            } else {
+                for (int x = centerCellX - radiusInCells; x <= centerCellX + radiusInCells; x++) {
+                    for (int y = centerCellY - radiusInCells; y <= centerCellY + radiusInCells; y++) {
+                        List<Anchor> cell = cells.get(getCellKey(x, y));
+                        if (cell != null) {
+                            collectReachableAnchors(cell, fromNodeCoord, toNodeCoord, latestPickupTime, candidateVehicles);
+                        }
+                    }
+                }
+            }
+        }
+        return candidateVehicles;
+    }
+
+    /**
+     * @return number of times a vehicle has been (re-)indexed
+     */
+    long getNumberOfIndexedVehicles() {
+        return numberOfIndexedVehicles;
+    }
+
+    // Private functions
+    /**
+     * The timetable may be changed in place: the served stops are removed from the front and the stops may be
+     * re-timed. The remaining stops are therefore compared with the last indexed stops.
+     */
+    private static boolean isIndexOutdated(IndexedState indexedState, MixedCaseDrtOptimizer.OnlineVehicleInfo vehicleInfo,
+                                           List<TimetableEntry> timetable) {
+        if (indexedState.timetable() != timetable
+                || !indexedState.currentLinkId().equals(vehicleInfo.currentLink().getId())
+                || vehicleInfo.divertableTime() < indexedState.divertableTime()) {
+            return true;
+        }
+        double[] stopDepartureTimes = indexedState.stopDepartureTimes();
+        int numberOfServedStops = stopDepartureTimes.length - timetable.size();
+        if (numberOfServedStops < 0) {
+            return true; // stops inserted in place
+        }
+        for (int i = 0; i < timetable.size(); i++) {
+            if (timetable.get(i).getDepartureTime() < stopDepartureTimes[numberOfServedStops + i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double calcMaxBeelineSpeed(Network network) {
+        double maxBeelineSpeed = 0;
+        for (Link link : network.getLinks().values()) {
+            double beelineDistance = CoordUtils.calcEuclideanDistance(link.getFromNode().getCoord(), link.getToNode().getCoord());
+            if (beelineDistance == 0 || link.getFreespeed() <= 0) {
+                continue; // No shortcut through this link
+            }
+            if (link.getLength() <= 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            maxBeelineSpeed = Math.max(maxBeelineSpeed, beelineDistance * link.getFreespeed() / link.getLength());
+        }
+        return maxBeelineSpeed;
+    }
+
+    private void removeAnchors(Id<DvrpVehicle> vehicleId) {
+        List<Anchor> anchors = anchorsByVehicle.remove(vehicleId);
+        if (anchors == null) {
+            return;
+        }
+        for (Anchor anchor : anchors) {
+            Map<Long, List<Anchor>> cells = cellsByTimeBin.get(anchor.timeBin());
+            List<Anchor> cell = cells.get(anchor.cellKey());
+            cell.remove(anchor);
+            if (cell.isEmpty()) {
+                cells.remove(anchor.cellKey());
+            }
+            if (cells.isEmpty()) {
+                cellsByTimeBin.remove(anchor.timeBin());
+            }
+        }
+    }
+
+    private Anchor addAnchor(Id<DvrpVehicle> vehicleId, Link link, double time) {
+        Coord coord = link.getToNode().getCoord();
+        int timeBin = (int) (time / timeBinSize);
+        long cellKey = getCellKey(getCellIndex(coord.getX()), getCellIndex(coord.getY()));
+        Anchor anchor = new Anchor(vehicleId, coord, time, timeBin, cellKey);
+        cellsByTimeBin.computeIfAbsent(timeBin, t -> new HashMap<>()).computeIfAbsent(cellKey, c -> new ArrayList<>()).add(anchor);
+        return anchor;
+    }
+
+    private void collectReachableAnchors(List<Anchor> cell, Coord fromNodeCoord, Coord toNodeCoord,
+                                         double latestPickupTime, Set<Id<DvrpVehicle>> candidateVehicles) {
+        for (Anchor anchor : cell) {
+            if (anchor.time() > latestPickupTime || candidateVehicles.contains(anchor.vehicleId())) {
+                continue;
+            }
+            // Distance to the to-node is also considered, so that a vehicle already on the pickup link (travel time = 0) is not excluded
+            double beelineDistance = Math.min(CoordUtils.calcEuclideanDistance(anchor.coord(), fromNodeCoord),
+                    CoordUtils.calcEuclideanDistance(anchor.coord(), toNodeCoord));
+            if (anchor.time() + beelineDistance / maxBeelineSpeed <= latestPickupTime) {
+                candidateVehicles.add(anchor.vehicleId());
+            }
+        }
+    }
+
+    private int getCellIndex(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long getCellKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xffffffffL);
+    }
+}
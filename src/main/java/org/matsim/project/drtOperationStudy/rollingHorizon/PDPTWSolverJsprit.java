@@ -27,10 +27,21 @@ import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
 import org.matsim.project.drtSchoolTransportStudy.jsprit.MatrixBasedVrpCosts;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class PDPTWSolverJsprit {
-    public record Options(int maxIterations, boolean multiThread, Random random) {
+    /**
+     * @param numberOfClusters number of spatial clusters that are solved as separate (smaller) problems (in parallel,
+     *                         if multiThread). 1: the whole problem is solved at once. Note: each cluster is solved
+     *                         with maxIterations (the iterations of a smaller problem are cheaper), followed by
+     *                         maxIterations / 10 iterations of the repair on the whole problem
+     */
+    public record Options(int maxIterations, boolean multiThread, Random random, int numberOfClusters) {
+        public Options(int maxIterations, boolean multiThread, Random random) {
+            this(maxIterations, multiThread, random, 1);
+        }
     }
 
     private final Options options;
@@ -39,6 +50,7 @@ public class PDPTWSolverJsprit {
     private final Map<Id<Link>, Location> locationByLinkId = new IdMap<>(Link.class); //TODO clear the map everytime the function is called!
 
     public static final double REJECTION_COST = 100000;
+    private static final int REPAIR_ITERATIONS_DIVISOR = 10; // Iterations of the repair after the decomposition = max iterations / 10
 
     public PDPTWSolverJsprit(DrtConfigGroup drtCfg, Network network, Options options) {
         this.drtCfg = drtCfg;
@@ -54,30 +66,15 @@ public class PDPTWSolverJsprit {
         // 1. Vehicle
         Map<Id<DvrpVehicle>, VehicleImpl> vehicleIdToJSpritVehicleMap = new HashMap<>();
         for (RollingHorizonDrtOptimizer.OnlineVehicleInfo vehicleInfo : realTimeVehicleInfoMap.values()) {
-            DvrpVehicle vehicle = vehicleInfo.vehicle();
-            Link currentLink = vehicleInfo.currentLink();
-            double divertableTime = vehicleInfo.divertableTime();
-
-            int capacity = vehicle.getCapacity();
-            var vehicleType = VehicleTypeImpl.Builder.newInstance(drtCfg.getMode() + "-vehicle-" + capacity + "-seats")
-                    .addCapacityDimension(0, capacity)
-                    .build();
-            double serviceEndTime = vehicle.getServiceEndTime();
-            var vehicleBuilder = VehicleImpl.Builder.newInstance(vehicle.getId() + "");
-            vehicleBuilder.setEarliestStart(divertableTime);
-            vehicleBuilder.setLatestArrival(serviceEndTime);
-            vehicleBuilder.setStartLocation(collectLocationIfAbsent(currentLink));
-            vehicleBuilder.setReturnToDepot(false);
-            vehicleBuilder.setType(vehicleType);
-            vehicleBuilder.addSkill(vehicle.getId().toString()); // Vehicle skills can be used to make sure the request already onboard will be matched to the same vehicle
-            VehicleImpl jSpritVehicle = vehicleBuilder.build();
+            VehicleImpl jSpritVehicle = createJspritVehicle(vehicleInfo, collectLocationIfAbsent(vehicleInfo.currentLink()));
             vrpBuilder.addVehicle(jSpritVehicle);
-            vehicleIdToJSpritVehicleMap.put(vehicle.getId(), jSpritVehicle);
+            vehicleIdToJSpritVehicleMap.put(vehicleInfo.vehicle().getId(), jSpritVehicle);
         }
 
         // 2. Request
         var preplannedRequestByShipmentId = new HashMap<String, RollingHorizonDrtOptimizer.PreplannedRequest>();
         List<RollingHorizonDrtOptimizer.PreplannedRequest> requestsOnboard = new ArrayList<>();
+        Map<String, Id<DvrpVehicle>> previousVehicleByShipmentId = new HashMap<>(); // Used for the decomposition
 
         // 2.0 collect requests locations and compute the matrix
         newRequests.forEach(drtRequest -> collectLocationIfAbsent(drtRequest.getFromLink()));
@@ -95,7 +92,8 @@ public class PDPTWSolverJsprit {
                 }
             }
         }
-        var vrpCosts = MatrixBasedVrpCosts.calculateVrpCosts(network, locationByLinkId);  // TODO: @Michal we may need to update the TravelTime
+        // The objective function only uses the travel times (no distances needed)
+        var vrpCosts = MatrixBasedVrpCosts.calculateVrpCosts(network, locationByLinkId, null, false);  // TODO: @Michal we may need to update the TravelTime
         vrpBuilder.setRoutingCost(vrpCosts);
 
         // 2.1 Passengers already assigned
@@ -149,6 +147,7 @@ public class PDPTWSolverJsprit {
                             vrpBuilder.addJob(shipment);
                             requestToShipmentMap.put(request, shipment);
                             preplannedRequestByShipmentId.put(shipmentId, request);
+                            previousVehicleByShipmentId.put(shipmentId, vehicleId);
                         } else {
                             // The request is waiting to be picked up: retrieve the earliestLatestPickUpTime
                             double earliestLatestPickUpTime = requestPickUpTimeMap.get(request);
@@ -168,6 +167,7 @@ public class PDPTWSolverJsprit {
                             vrpBuilder.addJob(shipment);
                             requestToShipmentMap.put(request, shipment);
                             preplannedRequestByShipmentId.put(shipmentId, request);
+                            previousVehicleByShipmentId.put(shipmentId, vehicleId);
                         }
                     }
                     currentTime += drtCfg.stopDuration;
@@ -221,16 +221,22 @@ public class PDPTWSolverJsprit {
         if (options.multiThread) {
             numOfThreads = Runtime.getRuntime().availableProcessors() + "";
         }
-        var algorithm = Jsprit.Builder.newInstance(problem)
-                .setProperty(Jsprit.Parameter.THREADS, numOfThreads)
-//                .setObjectiveFunction(new RollingHorizonObjectiveFunctionWithDiscount(problem, horizon, interval, now))
-//                .setObjectiveFunction(new RollingHorizonObjectiveFunctionWithDiversionCosts(problem, previousSchedule, realTimeVehicleInfoMap, now))
-                .setObjectiveFunction(new DefaultRollingHorizonObjectiveFunction(problem))
-                .setRandom(options.random)
-                .buildAlgorithm();
-        algorithm.setMaxIterations(options.maxIterations);
-        var solutions = algorithm.searchSolutions();
-        var bestSolution = Solutions.bestOf(solutions);
+        VehicleRoutingProblemSolution bestSolution;
+        if (options.numberOfClusters > 1 && vehicleIdToJSpritVehicleMap.size() > 1) {
+            bestSolution = solveByClusters(problem, realTimeVehicleInfoMap, vehicleIdToJSpritVehicleMap,
+                    previousVehicleByShipmentId, vrpCosts, numOfThreads);
+        } else {
+            var algorithm = Jsprit.Builder.newInstance(problem)
+                    .setProperty(Jsprit.Parameter.THREADS, numOfThreads)
+//                    .setObjectiveFunction(new RollingHorizonObjectiveFunctionWithDiscount(problem, horizon, interval, now))
+//                    .setObjectiveFunction(new RollingHorizonObjectiveFunctionWithDiversionCosts(problem, previousSchedule, realTimeVehicleInfoMap, now))
+                    .setObjectiveFunction(new DefaultRollingHorizonObjectiveFunction(problem))
+                    .setRandom(options.random)
+                    .buildAlgorithm();
+            algorithm.setMaxIterations(options.maxIterations);
+            var solutions = algorithm.searchSolutions();
+            bestSolution = Solutions.bestOf(solutions);
+        }
 
 //        SolutionPrinter.print(problem, bestSolution, SolutionPrinter.Print.VERBOSE); // TODO delete
 
@@ -275,6 +281,190 @@ public class PDPTWSolverJsprit {
         return new RollingHorizonDrtOptimizer.PreplannedSchedules(preplannedRequestToVehicle, vehicleToPreplannedStops, unassignedRequests);
     }
 
+    private VehicleImpl createJspritVehicle(RollingHorizonDrtOptimizer.OnlineVehicleInfo vehicleInfo, Location startLocation) {
+        DvrpVehicle vehicle = vehicleInfo.vehicle();
+        double divertableTime = vehicleInfo.divertableTime();
+
+        int capacity = vehicle.getCapacity();
+        var vehicleType = VehicleTypeImpl.Builder.newInstance(drtCfg.getMode() + "-vehicle-" + capacity + "-seats")
+                .addCapacityDimension(0, capacity)
+                .build();
+        double serviceEndTime = vehicle.getServiceEndTime();
+        var vehicleBuilder = VehicleImpl.Builder.newInstance(vehicle.getId() + "");
+        vehicleBuilder.setEarliestStart(divertableTime);
+        vehicleBuilder.setLatestArrival(serviceEndTime);
+        vehicleBuilder.setStartLocation(startLocation);
+        vehicleBuilder.setReturnToDepot(false);
+        vehicleBuilder.setType(vehicleType);
+        vehicleBuilder.addSkill(vehicle.getId().toString()); // Vehicle skills can be used to make sure the request already onboard will be matched to the same vehicle
+        return vehicleBuilder.build();
+    }
+
+    /**
+     * Decomposition of the problem: the vehicles are grouped into spatial clusters around seed locations (the vehicle
+     * locations that are farthest apart, based on the travel time matrix). The requests already assigned stay with
+     * their vehicle and the new requests join the cluster with the nearest seed (pickup location). The sub-problems are
+     * solved in parallel (only if multiThread, with as many threads as the whole problem would use), each with the
+     * full number of iterations. Finally, the combined solution is used as the initial solution of the whole problem, and a
+     * short search (repair) moves requests across the clusters and inserts the requests rejected by the sub-problems.
+     */
+    private VehicleRoutingProblemSolution solveByClusters(VehicleRoutingProblem problem,
+                                                          Map<Id<DvrpVehicle>, RollingHorizonDrtOptimizer.OnlineVehicleInfo> realTimeVehicleInfoMap,
+                                                          Map<Id<DvrpVehicle>, VehicleImpl> vehicleIdToJSpritVehicleMap,
+                                                          Map<String, Id<DvrpVehicle>> previousVehicleByShipmentId,
+                                                          MatrixBasedVrpCosts vrpCosts, String numOfThreads) {
+        // 1. Seeds (farthest point sampling over the vehicle locations)
+        List<Id<DvrpVehicle>> vehicleIds = vehicleIdToJSpritVehicleMap.keySet().stream().sorted().toList();
+        List<Location> seeds = new ArrayList<>();
+        seeds.add(vehicleIdToJSpritVehicleMap.get(vehicleIds.get(0)).getStartLocation());
+        double[] distanceToNearestSeed = new double[vehicleIds.size()];
+        Arrays.fill(distanceToNearestSeed, Double.MAX_VALUE);
+        while (seeds.size() < options.numberOfClusters) {
+            Location lastSeed = seeds.get(seeds.size() - 1);
+            int farthestVehicle = -1;
+            double maxDistance = 0;
+            for (int i = 0; i < vehicleIds.size(); i++) {
+                Location location = vehicleIdToJSpritVehicleMap.get(vehicleIds.get(i)).getStartLocation();
+                distanceToNearestSeed[i] = Math.min(distanceToNearestSeed[i], getRoundTripTime(lastSeed, location, vrpCosts));
+                if (distanceToNearestSeed[i] > maxDistance) {
+                    maxDistance = distanceToNearestSeed[i];
+                    farthestVehicle = i;
+                }
+            }
+            if (farthestVehicle < 0) {
+                break; // All the remaining vehicles are at the seed locations
+            }
+            seeds.add(vehicleIdToJSpritVehicleMap.get(vehicleIds.get(farthestVehicle)).getStartLocation());
+        }
+
+        // 2. Vehicles (incl. the requests assigned to them) and new requests --> cluster of the nearest seed
+        List<List<Id<DvrpVehicle>>> vehiclesByCluster = new ArrayList<>();
+        List<List<Shipment>> shipmentsByCluster = new ArrayList<>();
+        for (int i = 0; i < seeds.size(); i++) {
+            vehiclesByCluster.add(new ArrayList<>());
+            shipmentsByCluster.add(new ArrayList<>());
+        }
+        Map<Id<DvrpVehicle>, Integer> clusterByVehicle = new HashMap<>();
+        for (Id<DvrpVehicle> vehicleId : vehicleIds) {
+            int cluster = getNearestSeed(seeds, vehicleIdToJSpritVehicleMap.get(vehicleId).getStartLocation(), vrpCosts);
+            vehiclesByCluster.get(cluster).add(vehicleId);
+            clusterByVehicle.put(vehicleId, cluster);
+        }
+        for (Job job : problem.getJobs().values()) {
+            Shipment shipment = (Shipment) job;
+            Id<DvrpVehicle> previousVehicleId = previousVehicleByShipmentId.get(shipment.getId());
+            int cluster = previousVehicleId != null ? clusterByVehicle.get(previousVehicleId) :
+                    getNearestSeed(seeds, shipment.getPickupLocation(), vrpCosts);
+            shipmentsByCluster.get(cluster).add(shipment);
+        }
+
+        // 3. Solve the sub-problems (in a dedicated pool, sequentially if there is only one thread). Each sub-problem
+        // has its own vehicles and jobs (jsprit assigns problem specific indices to them), and its own random generator
+        // (drawn here for reproducibility)
+        long[] randomSeeds = new long[seeds.size()];
+        for (int i = 0; i < randomSeeds.length; i++) {
+            randomSeeds[i] = options.random.nextLong();
+        }
+        ForkJoinPool clusterPool = new ForkJoinPool(Integer.parseInt(numOfThreads));
+        List<VehicleRoutingProblemSolution> clusterSolutions;
+        try {
+            clusterSolutions = clusterPool.submit(() -> IntStream.range(0, seeds.size()).parallel()
+                    .mapToObj(cluster -> {
+                        if (vehiclesByCluster.get(cluster).isEmpty() || shipmentsByCluster.get(cluster).isEmpty()) {
+                            return null;
+                        }
+                        var subVrpBuilder = new VehicleRoutingProblem.Builder();
+                        vehiclesByCluster.get(cluster).forEach(vehicleId -> subVrpBuilder.addVehicle(
+                                createJspritVehicle(realTimeVehicleInfoMap.get(vehicleId), vehicleIdToJSpritVehicleMap.get(vehicleId).getStartLocation())));
+                        shipmentsByCluster.get(cluster).forEach(shipment -> subVrpBuilder.addJob(copyOf(shipment)));
+                        subVrpBuilder.setRoutingCost(vrpCosts);
+                        var subProblem = subVrpBuilder.setFleetSize(VehicleRoutingProblem.FleetSize.FINITE).build();
+                        var algorithm = Jsprit.Builder.newInstance(subProblem)
+                                .setProperty(Jsprit.Parameter.THREADS, "1")
+                                .setObjectiveFunction(new DefaultRollingHorizonObjectiveFunction(subProblem))
+                                .setRandom(new Random(randomSeeds[cluster]))
+                                .buildAlgorithm();
+                        algorithm.setMaxIterations(options.maxIterations);
+                        return Solutions.bestOf(algorithm.searchSolutions());
+                    })
+                    .toList()).join();
+        } finally {
+            clusterPool.shutdown();
+        }
+
+        // 4. Combine the solutions of the sub-problems (translated to the vehicles and jobs of the whole problem)
+        List<VehicleRoute> routes = new ArrayList<>();
+        List<Job> unassignedJobs = new ArrayList<>();
+        for (int cluster = 0; cluster < seeds.size(); cluster++) {
+            VehicleRoutingProblemSolution clusterSolution = clusterSolutions.get(cluster);
+            if (clusterSolution == null) {
+                unassignedJobs.addAll(shipmentsByCluster.get(cluster));
+                continue;
+            }
+            for (VehicleRoute clusterRoute : clusterSolution.getRoutes()) {
+                VehicleRoute.Builder routeBuilder = VehicleRoute.Builder
+                        .newInstance(vehicleIdToJSpritVehicleMap.get(Id.create(clusterRoute.getVehicle().getId(), DvrpVehicle.class)))
+                        .setJobActivityFactory(problem.getJobActivityFactory());
+                for (TourActivity activity : clusterRoute.getActivities()) {
+                    Shipment shipment = (Shipment) problem.getJobs().get(((TourActivity.JobActivity) activity).getJob().getId());
+                    if (activity instanceof PickupShipment) {
+                        routeBuilder.addPickup(shipment);
+                    } else {
+                        routeBuilder.addDelivery(shipment);
+                    }
+                }
+                routes.add(routeBuilder.build());
+            }
+            clusterSolution.getUnassignedJobs().forEach(job -> unassignedJobs.add(problem.getJobs().get(job.getId())));
+        }
+        VehicleRoutingProblemSolution combinedSolution = new VehicleRoutingProblemSolution(routes, unassignedJobs, 0);
+        combinedSolution.setCost(new DefaultRollingHorizonObjectiveFunction(problem).getCosts(combinedSolution));
+
+        // 5. Cross-cluster repair: short search on the whole problem, starting from the combined solution
+        var algorithm = Jsprit.Builder.newInstance(problem)
+                .setProperty(Jsprit.Parameter.THREADS, numOfThreads)
+                .setObjectiveFunction(new DefaultRollingHorizonObjectiveFunction(problem))
+                .setRandom(options.random)
+                .buildAlgorithm();
+        algorithm.setMaxIterations(Math.max(1, options.maxIterations / REPAIR_ITERATIONS_DIVISOR));
+        algorithm.addInitialSolution(combinedSolution);
+        return Solutions.bestOf(algorithm.searchSolutions());
+    }
+
+    private static int getNearestSeed(List<Location> seeds, Location location, MatrixBasedVrpCosts vrpCosts) {
+        int nearestSeed = 0;
+        double minDistance = Double.MAX_VALUE;
+        for (int i = 0; i < seeds.size(); i++) {
+            double distance = getRoundTripTime(seeds.get(i), location, vrpCosts);
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearestSeed = i;
+            }
+        }
+        return nearestSeed;
+    }
+
+    private static double getRoundTripTime(Location location, Location otherLocation, MatrixBasedVrpCosts vrpCosts) {
+        return vrpCosts.getTransportTime(location, otherLocation, 0, null, null)
+                + vrpCosts.getTransportTime(otherLocation, location, 0, null, null);
+    }
+
+    private static Shipment copyOf(Shipment shipment) {
+        var shipmentBuilder = Shipment.Builder.newInstance(shipment.getId()).
+                setPickupLocation(shipment.getPickupLocation()).
+                setDeliveryLocation(shipment.getDeliveryLocation()).
+                setPickupTimeWindow(shipment.getPickupTimeWindow()).
+                setDeliveryTimeWindow(shipment.getDeliveryTimeWindow()).
+                setPickupServiceTime(shipment.getPickupServiceTime()).
+                setDeliveryServiceTime(shipment.getDeliveryServiceTime()).
+                setPriority(shipment.getPriority());
+        for (int i = 0; i < shipment.getSize().getNuOfDimensions(); i++) {
+            shipmentBuilder.addSizeDimension(i, shipment.getSize().get(i));
+        }
+        shipment.getRequiredSkills().values().forEach(shipmentBuilder::addRequiredSkill);
+        return shipmentBuilder.build();
+    }
+
     private Location collectLocationIfAbsent(Link link) {
         return locationByLinkId.computeIfAbsent(link.getId(), linkId -> Location.Builder.newInstance()
                 .setId(link.getId() + "")
@@ -69,7 +69,9 @@ public class RollingHorizonDrtOptimizer implements DrtOptimizer {
     private double serviceStartTime = Double.MAX_VALUE;
     private double serviceEndTime = 0;
 
+    // Sorted by the earliest start time (after reading). The requests before the cursor have already been read
     private final List<DrtRequest> prebookedRequests = new ArrayList<>();
+    private int prebookedRequestsCursor = 0;
 
     private PreplannedSchedules preplannedSchedules;
 
@@ -129,6 +131,8 @@ public class RollingHorizonDrtOptimizer implements DrtOptimizer {
                 counter++;
             }
         }
+        // Stable sort: requests with the same earliest start time keep the order of the population
+        prebookedRequests.sort(Comparator.comparingDouble(DrtRequest::getEarliestStartTime));
     }
 
     @Override
@@ -302,7 +306,7 @@ public class RollingHorizonDrtOptimizer implements DrtOptimizer {
                         assert stopsToVisit.peek() != null;
                         Id<Link> newDestination = stopsToVisit.peek().getLinkId();
                         Id<Link> oldDestination = ((DrtDriveTask) currentTask).getPath().getToLink().getId();
-                        if (!oldDestination.toString().equals(newDestination.toString())) {
+                        if (oldDestination.index() != newDestination.index()) {
                             var newPath = VrpPaths.calcAndCreatePath(currentLink,
                                     network.getLinks().get(newDestination), divertableTime, router, travelTime);
                             ((OnlineDriveTaskTracker) currentTask.getTaskTracker()).divertPath(newPath);
@@ -316,14 +320,14 @@ public class RollingHorizonDrtOptimizer implements DrtOptimizer {
     }
 
     private List<DrtRequest> readRequestsFromTimeBin(double now) {
+        // Only the requests that have entered the horizon since the last call are read
+        double latestDepartureTime = now + horizon;
         List<DrtRequest> newRequests = new ArrayList<>();
-        for (DrtRequest prebookedRequest : prebookedRequests) {
-            double latestDepartureTime = now + horizon;
-            if (prebookedRequest.getEarliestStartTime() < latestDepartureTime) {
-                newRequests.add(prebookedRequest);
-            }
+        while (prebookedRequestsCursor < prebookedRequests.size()
+                && prebookedRequests.get(prebookedRequestsCursor).getEarliestStartTime() < latestDepartureTime) {
+            newRequests.add(prebookedRequests.get(prebookedRequestsCursor));
+            prebookedRequestsCursor++;
         }
-        prebookedRequests.removeAll(newRequests);
         return newRequests;
     }
 
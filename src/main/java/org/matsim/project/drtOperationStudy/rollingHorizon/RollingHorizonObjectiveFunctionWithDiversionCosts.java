@@ -8,10 +8,13 @@ import com.graphhopper.jsprit.core.problem.solution.route.VehicleRoute;
 import com.graphhopper.jsprit.core.problem.solution.route.activity.TourActivity;
 import org.matsim.api.core.v01.Id;
 import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.project.utils.RouteCostCache;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.matsim.project.drtOperationStudy.rollingHorizon.PDPTWSolverJsprit.REJECTION_COST;
 
@@ -20,6 +23,7 @@ public class RollingHorizonObjectiveFunctionWithDiversionCosts implements Soluti
     private final List<Id<DvrpVehicle>> activeVehicles = new ArrayList<>();
     private final Map<Id<DvrpVehicle>, RollingHorizonDrtOptimizer.OnlineVehicleInfo> realTimeVehicleInfoMap;
     private final double now;
+    private final RouteCostCache<Double> routeCosts = new RouteCostCache<>(); // only the changed routes are calculated
 
     RollingHorizonObjectiveFunctionWithDiversionCosts(VehicleRoutingProblem vrp, RollingHorizonDrtOptimizer.PreplannedSchedules previousSchedule,
                                                       Map<Id<DvrpVehicle>, RollingHorizonDrtOptimizer.OnlineVehicleInfo> realTimeVehicleInfoMap, double now) {
@@ -37,20 +41,13 @@ public class RollingHorizonObjectiveFunctionWithDiversionCosts implements Soluti
 
     @Override
     public double getCosts(VehicleRoutingProblemSolution solution) {
-        List<Id<DvrpVehicle>> newActiveVehicles = new ArrayList<>();
+        Set<Id<DvrpVehicle>> newActiveVehicles = new HashSet<>();
         double costs = 0;
 
         // adding driving costs in the solution
         for (VehicleRoute route : solution.getRoutes()) {
             newActiveVehicles.add(Id.create(route.getVehicle().getId(), DvrpVehicle.class));
-
-            costs += route.getVehicle().getType().getVehicleCostParams().fix;
-            TourActivity prevAct = route.getStart();
-            for (TourActivity act : route.getActivities()) {
-                costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                costs += vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
-                prevAct = act;
-            }
+            costs += routeCosts.get(route, this::calcRouteCosts);
         }
 
         // adding penalty for rejections
@@ -62,12 +59,24 @@ public class RollingHorizonObjectiveFunctionWithDiversionCosts implements Soluti
             }
         }
 
-        // Calculating the extra driving time to stop a vehicle
-        activeVehicles.removeAll(newActiveVehicles);
+        // Calculating the extra driving time to stop a vehicle (activeVehicles is not modified, as it is used for all the solutions)
         for (Id<DvrpVehicle> vehId : activeVehicles) {
-            costs += realTimeVehicleInfoMap.get(vehId).divertableTime() - now;
+            if (!newActiveVehicles.contains(vehId)) {
+                costs += realTimeVehicleInfoMap.get(vehId).divertableTime() - now;
+            }
         }
 
         return costs;
     }
+
+    private double calcRouteCosts(VehicleRoute route) {
+        double costs = route.getVehicle().getType().getVehicleCostParams().fix;
+        TourActivity prevAct = route.getStart();
+        for (TourActivity act : route.getActivities()) {
+            costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
+            costs += vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
+            prevAct = act;
+        }
+        return costs;
+    }
 }
@@ -41,6 +41,9 @@ public class RunOfflineOptimizationStrategy implements MATSimAppCommand {
     @CommandLine.Option(names = "--multi-thread", defaultValue = "false", description = "enable multi-threading in JSprit to increase computation speed")
     private boolean multiThread;
 
+    @CommandLine.Option(names = "--matrix-cache-dir", description = "directory for persisting the travel time matrix between runs", defaultValue = "none")
+    private String matrixCacheDirectory;
+
     @CommandLine.Option(names = "--otfvis", defaultValue = "false", description = "enable the otfvis visualiser")
     private boolean otfvis;
 
@@ -68,7 +71,8 @@ public class RunOfflineOptimizationStrategy implements MATSimAppCommand {
 
         Controler controler = PreplannedDrtControlerCreator.createControler(config, otfvis);
 
-        var options = new JspritOfflineCalculator.Options(false, true, maxIterations, multiThread);
+        var options = new JspritOfflineCalculator.Options(false, true, maxIterations, multiThread,
+                matrixCacheDirectory.equals("none") ? null : matrixCacheDirectory);
 
         // compute PreplannedSchedules before starting QSim
         MultiModeDrtConfigGroup.get(config)
@@ -66,6 +66,9 @@ public class RunRollingHorizonPrebookedDrt implements MATSimAppCommand {
     @CommandLine.Option(names = "--multi-thread", defaultValue = "false", description = "enable multi-threading in JSprit to increase computation speed")
     private boolean multiThread;
 
+    @CommandLine.Option(names = "--clusters", defaultValue = "1", description = "number of spatial clusters solved in parallel (1: no decomposition)")
+    private int numberOfClusters;
+
     public static void main(String[] args) {
         new RunRollingHorizonPrebookedDrt().execute(args);
     }
@@ -85,7 +88,7 @@ public class RunRollingHorizonPrebookedDrt implements MATSimAppCommand {
         Controler controler = PreplannedDrtControlerCreator.createControler(config, false);
         controler.addOverridingModule(new DvrpModule(new DvrpBenchmarkTravelTimeModuleFixedTT(0)));
         // Add rolling horizon module with PDPTWSolverJsprit
-        var options = new PDPTWSolverJsprit.Options(maxIterations, multiThread, new Random(4711));
+        var options = new PDPTWSolverJsprit.Options(maxIterations, multiThread, new Random(4711), numberOfClusters);
         controler.addOverridingQSimModule(new AbstractDvrpModeQSimModule(drtConfigGroup.getMode()) {
             @Override
             protected void configureQSim() {
@@ -29,13 +29,19 @@ import org.matsim.contrib.dvrp.fleet.FleetSpecification;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.project.drtSchoolTransportStudy.jsprit.MatrixBasedVrpCosts;
 
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class JspritOfflineCalculator {
+    /**
+     * @param matrixCacheDirectory directory of the persisted travel time matrices (null: the matrix is not cached)
+     */
     public record Options(boolean infiniteFleet, boolean printProgressStatistics, int maxIterations,
-                          boolean multiThread) {
-
+                          boolean multiThread, String matrixCacheDirectory) {
+        public Options(boolean infiniteFleet, boolean printProgressStatistics, int maxIterations, boolean multiThread) {
+            this(infiniteFleet, printProgressStatistics, maxIterations, multiThread, null);
+        }
     }
 
     private final DrtConfigGroup drtCfg;
@@ -105,7 +111,8 @@ public class JspritOfflineCalculator {
         }
 
         // compute matrix
-        var vrpCosts = MatrixBasedVrpCosts.calculateVrpCosts(network, locationByLinkId);
+        var vrpCosts = MatrixBasedVrpCosts.calculateVrpCosts(network, locationByLinkId,
+                options.matrixCacheDirectory() == null ? null : Path.of(options.matrixCacheDirectory()));
         vrpBuilder.setRoutingCost(vrpCosts);
 
         var preplannedRequestByShipmentId = new HashMap<String, PreplannedDrtOptimizer.PreplannedRequest>();
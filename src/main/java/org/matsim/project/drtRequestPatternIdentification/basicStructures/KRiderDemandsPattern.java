@@ -0,0 +1,9 @@
+package org.matsim.project.drtRequestPatternIdentification.basicStructures;
+
+/**
+ * @param kRiderShareability    share of the demands assigned to a shared trip of up to maxTripSize demands
+ * @param averageSharedTripSize average number of demands in the shared trips (0 if there are no shared trips)
+ */
+public record KRiderDemandsPattern(DemandsPatternCore demandsPatternCore, int maxTripSize, double kRiderShareability,
+                                   double averageSharedTripSize) {
+}
@@ -19,6 +19,8 @@ import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.project.drtRequestPatternIdentification.basicStructures.DemandsPatternCore;
 import org.matsim.project.drtRequestPatternIdentification.basicStructures.DrtDemand;
+import org.matsim.project.drtRequestPatternIdentification.basicStructures.KRiderDemandsPattern;
+import org.matsim.project.drtRequestPatternIdentification.shareability.KRiderShareabilityCalculator;
 import org.matsim.project.drtRequestPatternIdentification.shareability.PairwisePoolingCalculator;
 
 import java.util.ArrayList;
@@ -35,8 +37,18 @@ public class RunDemandQuantification {
 
         // Load scenario from config file
         Config config = ConfigUtils.loadConfig(configPath, new MultiModeDrtConfigGroup(), new DvrpConfigGroup());
-        DemandsPatternCore patternCore = runQuantification(config);
+        if (args.length > 1) {
+            // second argument: vehicle capacity for the k-rider shareability
+            KRiderDemandsPattern kRiderPattern = runKRiderQuantification(config, Integer.parseInt(args[1]));
+            logDemandsPatternCore(kRiderPattern.demandsPatternCore());
+            log.info("K-rider shareability (k = " + kRiderPattern.maxTripSize() + ") = " + kRiderPattern.kRiderShareability());
+            log.info("Average shared trip size = " + kRiderPattern.averageSharedTripSize());
+        } else {
+            logDemandsPatternCore(runQuantification(config));
+        }
+    }
 
+    private static void logDemandsPatternCore(DemandsPatternCore patternCore) {
         log.info("Key demands pattern: ");
         log.info("Number of trips = " + patternCore.numOfTrips());
         log.info("Average trip duration = " + patternCore.averageDirectTripDuration());
@@ -45,8 +57,27 @@ public class RunDemandQuantification {
 
     public static DemandsPatternCore runQuantification(Config config) {
         Scenario scenario = ScenarioUtils.loadScenario(config);
-        MultiModeDrtConfigGroup multiModeDrtConfig = MultiModeDrtConfigGroup.get(config);
-        DrtConfigGroup drtConfigGroup = multiModeDrtConfig.getModalElements().iterator().next();
+        DrtConfigGroup drtConfigGroup = MultiModeDrtConfigGroup.get(config).getModalElements().iterator().next();
+        List<DrtDemand> demands = collectDrtDemands(scenario);
+
+        // Perform demand quantification
+        PairwisePoolingCalculator calculator = new PairwisePoolingCalculator(drtConfigGroup, scenario.getNetwork());
+        return calculator.quantifyDemands(demands);
+    }
+
+    /**
+     * @param maxTripSize max number of demands in a shared trip (vehicle capacity)
+     */
+    public static KRiderDemandsPattern runKRiderQuantification(Config config, int maxTripSize) {
+        Scenario scenario = ScenarioUtils.loadScenario(config);
+        DrtConfigGroup drtConfigGroup = MultiModeDrtConfigGroup.get(config).getModalElements().iterator().next();
+        List<DrtDemand> demands = collectDrtDemands(scenario);
+
+        KRiderShareabilityCalculator calculator = new KRiderShareabilityCalculator(drtConfigGroup, scenario.getNetwork(), maxTripSize);
+        return calculator.quantifyDemands(demands);
+    }
+
+    private static List<DrtDemand> collectDrtDemands(Scenario scenario) {
         Population population = scenario.getPopulation();
         Network network = scenario.getNetwork();
 
@@ -65,9 +96,7 @@ public class RunDemandQuantification {
             }
         }
 
-        // Perform demand quantification
-        PairwisePoolingCalculator calculator = new PairwisePoolingCalculator(drtConfigGroup, network);
-        return calculator.quantifyDemands(demands);
+        return demands;
     }
 
 }
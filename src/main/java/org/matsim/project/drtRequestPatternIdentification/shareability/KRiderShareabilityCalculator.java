@@ -0,0 +1,321 @@
+package org.matsim.project.drtRequestPatternIdentification.shareability;
+
+import com.google.common.base.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.contrib.dvrp.trafficmonitoring.QSimFreeSpeedTravelTime;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.project.drtRequestPatternIdentification.basicStructures.DemandsPatternCore;
+import org.matsim.project.drtRequestPatternIdentification.basicStructures.DrtDemand;
+import org.matsim.project.drtRequestPatternIdentification.basicStructures.KRiderDemandsPattern;
+import org.matsim.project.drtRequestPatternIdentification.basicStructures.Tools;
+import org.matsim.project.utils.CompactLinkToLinkTravelTimeMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Shareability with trips of up to k demands (k = vehicle capacity), based on the request-trip part of the
+ * request-trip-vehicle (RTV) graph:
+ * <ul>
+ * <li>The trips of size 2 are the edges of the pairwise {@link ShareabilityGraph}.</li>
+ * <li>A trip of size m + 1 is only evaluated if all its sub-trips of size m are feasible (clique pruning). Its
+ * schedule is found by inserting the pickup and the drop off of the additional demand into the best schedule of the
+ * sub-trip without this demand.</li>
+ * </ul>
+ * The trips of each size are enumerated in parallel. The number of trips grows combinatorially with the trip size in
+ * dense demand, therefore each demand is only kept in the (max trips per demand) trips of each size with the highest
+ * pooling score. The feasible trips are then assigned greedily (larger trips first, then higher pooling score) and the
+ * share of the demands in a shared trip is the k-rider shareability.
+ */
+public class KRiderShareabilityCalculator {
+    public static final int DEFAULT_MAX_TRIPS_PER_DEMAND = 30;
+
+    private final DrtConfigGroup drtConfigGroup;
+    private final Network network;
+    private final int maxTripSize;
+    private final int maxTripsPerDemand;
+    private final double alpha;
+    private final double beta;
+    private final double maxWaitTime;
+    private final double stopDuration;
+    private final TravelTime travelTime = new QSimFreeSpeedTravelTime(1);
+    private final ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
+    private final Logger log = LogManager.getLogger(KRiderShareabilityCalculator.class);
+
+    /**
+     * A feasible trip: the demands (ascending indices) and the schedule with the shortest drive time. Stops:
+     * 2 * demand for the pickup, 2 * demand + 1 for the drop off.
+     */
+    private record Trip(int[] demands, int[] stops, double driveTime, double poolingScore) {
+    }
+
+    private record TripKey(int[] demands) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TripKey tripKey && Arrays.equals(demands, tripKey.demands);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(demands);
+        }
+    }
+
+    /**
+     * @param maxTripSize max number of demands in a trip (vehicle capacity)
+     */
+    public KRiderShareabilityCalculator(DrtConfigGroup drtConfigGroup, Network network, int maxTripSize) {
+        this(drtConfigGroup, network, maxTripSize, DEFAULT_MAX_TRIPS_PER_DEMAND);
+    }
+
+    /**
+     * @param maxTripSize       max number of demands in a trip (vehicle capacity)
+     * @param maxTripsPerDemand max number of trips of each size a demand is kept in (the ones with the highest pooling
+     *                          score)
+     */
+    public KRiderShareabilityCalculator(DrtConfigGroup drtConfigGroup, Network network, int maxTripSize, int maxTripsPerDemand) {
+        Preconditions.checkArgument(maxTripSize >= 2, "Max trip size must be at least 2");
+        Preconditions.checkArgument(maxTripsPerDemand >= 1, "Max trips per demand must be at least 1");
+        this.drtConfigGroup = drtConfigGroup;
+        this.network = network;
+        this.maxTripSize = maxTripSize;
+        this.maxTripsPerDemand = maxTripsPerDemand;
+        this.alpha = drtConfigGroup.maxTravelTimeAlpha;
+        this.beta = drtConfigGroup.maxTravelTimeBeta;
+        this.maxWaitTime = drtConfigGroup.maxWaitTime;
+        this.stopDuration = drtConfigGroup.stopDuration;
+    }
+
+    public KRiderDemandsPattern quantifyDemands(List<DrtDemand> drtDemands) {
+        Set<Id<Link>> relevantLinks = Tools.collectRelevantLink(drtDemands);
+        CompactLinkToLinkTravelTimeMatrix travelTimeMatrix = new CompactLinkToLinkTravelTimeMatrix(network, travelTime, relevantLinks, 0);
+
+        // Pairwise shareability (the pairs are the trips of size 2)
+        PairwisePoolingCalculator pairwisePoolingCalculator = new PairwisePoolingCalculator(drtConfigGroup, network, travelTimeMatrix);
+        ShareabilityGraph shareabilityGraph = pairwisePoolingCalculator.buildShareabilityGraph(drtDemands);
+        DemandsPatternCore demandsPatternCore = pairwisePoolingCalculator.quantifyDemands(drtDemands, shareabilityGraph);
+
+        double[] directTravelTimes = new double[drtDemands.size()];
+        for (int i = 0; i < drtDemands.size(); i++) {
+            DrtDemand demand = drtDemands.get(i);
+            directTravelTimes[i] = travelTimeMatrix.getTravelTime(demand.fromLink(), demand.toLink(), demand.departureTime());
+        }
+
+        // Enumerate the trips of size 2 to k
+        List<Trip> trips = new ArrayList<>();
+        for (int i = 0; i < drtDemands.size(); i++) {
+            for (int k = 0; k < shareabilityGraph.getDegree(i); k++) {
+                int j = shareabilityGraph.getNeighbour(i, k);
+                if (i < j) {
+                    Trip pair = insert(new Trip(new int[] {i}, new int[] {2 * i, 2 * i + 1}, 0, 0), j,
+                            drtDemands, directTravelTimes, travelTimeMatrix);
+                    if (pair != null) {
+                        trips.add(pair);
+                    }
+                }
+            }
+        }
+
+        trips = limitTripsPerDemand(trips, drtDemands.size());
+        List<Trip> allTrips = new ArrayList<>(trips);
+        log.info("Number of feasible trips of size 2 = " + trips.size());
+        for (int tripSize = 3; tripSize <= maxTripSize && !trips.isEmpty(); tripSize++) {
+            Set<TripKey> previousTrips = new HashSet<>();
+            for (Trip trip : trips) {
+                previousTrips.add(new TripKey(trip.demands()));
+            }
+            List<Trip> currentTrips = trips;
+            trips = forkJoinPool.submit(() -> currentTrips
+                    .parallelStream()
+                    .flatMap(trip -> extend(trip, previousTrips, shareabilityGraph, drtDemands, directTravelTimes, travelTimeMatrix).stream())
+                    .toList()).join();
+            trips = limitTripsPerDemand(trips, drtDemands.size());
+            allTrips.addAll(trips);
+            log.info("Number of feasible trips of size " + tripSize + " = " + trips.size());
+        }
+
+        // Greedy assignment: larger trips first, then higher pooling score
+        allTrips.sort(Comparator.comparingInt((Trip trip) -> -trip.demands().length)
+                .thenComparingDouble(trip -> -trip.poolingScore()));
+        boolean[] assigned = new boolean[drtDemands.size()];
+        int numOfSharedDemands = 0;
+        int numOfSharedTrips = 0;
+        for (Trip trip : allTrips) {
+            if (Arrays.stream(trip.demands()).noneMatch(demand -> assigned[demand])) {
+                for (int demand : trip.demands()) {
+                    assigned[demand] = true;
+                }
+                numOfSharedDemands += trip.demands().length;
+                numOfSharedTrips++;
+            }
+        }
+
+        double kRiderShareability = (double) numOfSharedDemands / drtDemands.size();
+        double averageSharedTripSize = numOfSharedTrips == 0 ? 0 : (double) numOfSharedDemands / numOfSharedTrips;
+        log.info("Number of shared trips = " + numOfSharedTrips + " with " + numOfSharedDemands + " demands, out of total trips of " + drtDemands.size());
+        log.info("K-rider shareability (k = " + maxTripSize + ") = " + kRiderShareability);
+        log.info("Average shared trip size = " + averageSharedTripSize);
+        return new KRiderDemandsPattern(demandsPatternCore, maxTripSize, kRiderShareability, averageSharedTripSize);
+    }
+
+    /**
+     * Keeps the trips (of one size) with the highest pooling score, so that each demand is in at most
+     * maxTripsPerDemand of them. The trips of the next size are only built from the kept trips.
+     */
+    private List<Trip> limitTripsPerDemand(List<Trip> trips, int numOfDemands) {
+        List<Trip> sortedTrips = new ArrayList<>(trips);
+        // ties are broken by the demands, so that the kept trips do not depend on the enumeration order
+        sortedTrips.sort(Comparator.comparingDouble((Trip trip) -> -trip.poolingScore())
+                .thenComparing((trip1, trip2) -> Arrays.compare(trip1.demands(), trip2.demands())));
+        int[] numOfTripsByDemand = new int[numOfDemands];
+        List<Trip> keptTrips = new ArrayList<>();
+        for (Trip trip : sortedTrips) {
+            if (Arrays.stream(trip.demands()).allMatch(demand -> numOfTripsByDemand[demand] < maxTripsPerDemand)) {
+                for (int demand : trip.demands()) {
+                    numOfTripsByDemand[demand]++;
+                }
+                keptTrips.add(trip);
+            }
+        }
+        if (keptTrips.size() < trips.size()) {
+            log.info((trips.size() - keptTrips.size()) + " trips removed (max " + maxTripsPerDemand + " trips per demand)");
+        }
+        return keptTrips;
+    }
+
+    /**
+     * Extends the trip by the neighbours of its last demand with a higher index (so that each trip is enumerated only
+     * once), if all the sub-trips of the extended trip are feasible.
+     */
+    private List<Trip> extend(Trip trip, Set<TripKey> previousTrips, ShareabilityGraph shareabilityGraph,
+                              List<DrtDemand> drtDemands, double[] directTravelTimes, CompactLinkToLinkTravelTimeMatrix travelTimeMatrix) {
+        List<Trip> extendedTrips = new ArrayList<>();
+        int[] demands = trip.demands();
+        int lastDemand = demands[demands.length - 1];
+        for (int k = 0; k < shareabilityGraph.getDegree(lastDemand); k++) {
+            int newDemand = shareabilityGraph.getNeighbour(lastDemand, k);
+            if (newDemand <= lastDemand || !allSubTripsFeasible(demands, newDemand, previousTrips)) {
+                continue;
+            }
+            Trip extendedTrip = insert(trip, newDemand, drtDemands, directTravelTimes, travelTimeMatrix);
+            if (extendedTrip != null) {
+                extendedTrips.add(extendedTrip);
+            }
+        }
+        return extendedTrips;
+    }
+
+    private boolean allSubTripsFeasible(int[] demands, int newDemand, Set<TripKey> previousTrips) {
+        // the sub-trip without the new demand is the trip itself
+        for (int removed = 0; removed < demands.length; removed++) {
+            int[] subTrip = new int[demands.length];
+            for (int i = 0, j = 0; i < demands.length; i++) {
+                if (i != removed) {
+                    subTrip[j++] = demands[i];
+                }
+            }
+            subTrip[demands.length - 1] = newDemand;
+            if (!previousTrips.contains(new TripKey(subTrip))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the trip extended by the new demand, with the pickup and drop off inserted at the positions with the
+     * shortest feasible drive time, or null if there is no feasible insertion
+     */
+    private Trip insert(Trip trip, int newDemand, List<DrtDemand> drtDemands, double[] directTravelTimes,
+                        CompactLinkToLinkTravelTimeMatrix travelTimeMatrix) {
+        int[] stops = trip.stops();
+        int[] bestStops = null;
+        double bestDriveTime = Double.MAX_VALUE;
+        for (int pickupIdx = 0; pickupIdx <= stops.length; pickupIdx++) {
+            for (int dropoffIdx = pickupIdx; dropoffIdx <= stops.length; dropoffIdx++) {
+                int[] newStops = new int[stops.length + 2];
+                System.arraycopy(stops, 0, newStops, 0, pickupIdx);
+                newStops[pickupIdx] = 2 * newDemand;
+                System.arraycopy(stops, pickupIdx, newStops, pickupIdx + 1, dropoffIdx - pickupIdx);
+                newStops[dropoffIdx + 1] = 2 * newDemand + 1;
+                System.arraycopy(stops, dropoffIdx, newStops, dropoffIdx + 2, stops.length - dropoffIdx);
+
+                double driveTime = calcDriveTime(newStops, drtDemands, directTravelTimes, travelTimeMatrix);
+                if (driveTime >= 0 && driveTime < bestDriveTime) {
+                    bestDriveTime = driveTime;
+                    bestStops = newStops;
+                }
+            }
+        }
+        if (bestStops == null) {
+            return null;
+        }
+
+        int[] demands = Arrays.copyOf(trip.demands(), trip.demands().length + 1);
+        demands[demands.length - 1] = newDemand;
+        double sumDirectTravelTimes = 0;
+        for (int demand : demands) {
+            sumDirectTravelTimes += directTravelTimes[demand];
+        }
+        return new Trip(demands, bestStops, bestDriveTime, sumDirectTravelTimes / bestDriveTime);
+    }
+
+    /**
+     * Same time constraints as the pairwise {@link ShareabilityGraphBuilder}: the vehicle waits for the first demand,
+     * each demand is picked up within the max wait time and dropped off before its latest arrival time.
+     *
+     * @return drive time of the schedule or -1 if the schedule is infeasible or the vehicle becomes empty before the
+     * last stop (i.e. not a shared ride)
+     */
+    private double calcDriveTime(int[] stops, List<DrtDemand> drtDemands, double[] directTravelTimes,
+                                 CompactLinkToLinkTravelTimeMatrix travelTimeMatrix) {
+        double now = 0;
+        double driveTime = 0;
+        int passengersOnBoard = 0;
+        Link lastLink = null;
+        for (int s = 0; s < stops.length; s++) {
+            int demandIdx = stops[s] / 2;
+            DrtDemand demand = drtDemands.get(demandIdx);
+            boolean pickup = stops[s] % 2 == 0;
+            Link link = pickup ? demand.fromLink() : demand.toLink();
+
+            double arrivalTime;
+            if (lastLink == null) {
+                arrivalTime = demand.departureTime();
+            } else {
+                double legTravelTime = travelTimeMatrix.getTravelTime(lastLink, link, now);
+                driveTime += legTravelTime;
+                arrivalTime = now + legTravelTime;
+            }
+
+            if (pickup) {
+                if (arrivalTime > demand.departureTime() + maxWaitTime) {
+                    return -1;
+                }
+                now = Math.max(demand.departureTime(), arrivalTime) + stopDuration;
+                passengersOnBoard++;
+            } else {
+                if (arrivalTime > demand.departureTime() + alpha * directTravelTimes[demandIdx] + beta) {
+                    return -1;
+                }
+                now = arrivalTime + stopDuration;
+                passengersOnBoard--;
+                if (passengersOnBoard == 0 && s < stops.length - 1) {
+                    return -1;
+                }
+            }
+            lastLink = link;
+        }
+        return driveTime;
+    }
+}
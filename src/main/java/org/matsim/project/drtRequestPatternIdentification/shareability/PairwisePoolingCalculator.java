@@ -11,10 +11,11 @@ import org.matsim.core.router.util.TravelTime;
 import org.matsim.project.drtRequestPatternIdentification.basicStructures.DrtDemand;
 import org.matsim.project.drtRequestPatternIdentification.basicStructures.DemandsPatternCore;
 import org.matsim.project.drtRequestPatternIdentification.basicStructures.Tools;
-import org.matsim.project.utils.LinkToLinkTravelTimeMatrix;
+import org.matsim.project.utils.CompactLinkToLinkTravelTimeMatrix;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class PairwisePoolingCalculator {
     private final Network network;
@@ -24,9 +25,9 @@ public class PairwisePoolingCalculator {
     private final double stopDuration;
     private final TravelTime travelTime = new QSimFreeSpeedTravelTime(1);
     private final Logger log = LogManager.getLogger(PairwisePoolingCalculator.class);
-    private LinkToLinkTravelTimeMatrix travelTimeMatrix;
+    private CompactLinkToLinkTravelTimeMatrix travelTimeMatrix;
 
-    public PairwisePoolingCalculator(DrtConfigGroup drtConfigGroup, Network network, LinkToLinkTravelTimeMatrix travelTimeMatrix) {
+    public PairwisePoolingCalculator(DrtConfigGroup drtConfigGroup, Network network, CompactLinkToLinkTravelTimeMatrix travelTimeMatrix) {
         this.network = network;
         this.alpha = drtConfigGroup.maxTravelTimeAlpha;
         this.beta = drtConfigGroup.maxTravelTimeBeta;
@@ -45,162 +46,27 @@ public class PairwisePoolingCalculator {
     }
 
     public DemandsPatternCore quantifyDemands(List<DrtDemand> drtDemands) {
-        // initialize travelTimeMatrix if it is null
-        if (travelTimeMatrix == null) {
-            Set<Id<Link>> relevantLinks = Tools.collectRelevantLink(drtDemands);
-            travelTimeMatrix = new LinkToLinkTravelTimeMatrix(network, travelTime, relevantLinks, 0);
-        }
+        // Go through the pairs of drt demands that may share a ride (time window and spatial pruning) and calculate
+        // share-ability and the total trip length (time).
+        return quantifyDemands(drtDemands, buildShareabilityGraph(drtDemands));
+    }
 
-        // Go through each pair of drt demand and calculate share-ability and the total trip length (time).
+    /**
+     * @param shareabilityGraph graph of the demands built by {@link #buildShareabilityGraph}
+     */
+    public DemandsPatternCore quantifyDemands(List<DrtDemand> drtDemands, ShareabilityGraph shareabilityGraph) {
         int numOfTrips = drtDemands.size();
 
-        // Initialize sharing matrix
-        double[][] drtSharingMatrix = new double[numOfTrips][numOfTrips];
-
-        // Initialize other statistics
-        int numberOfPairs = 0;
-        double shareablePairs = 0;
-        double sumPoolingScore = 0;
         double totalTripLength = 0;
-
-        for (int i = 0; i < drtDemands.size(); i++) {
-            DrtDemand demandA = drtDemands.get(i);
-            double directTravelTimeA = travelTimeMatrix.getTravelTime(demandA.fromLink(), demandA.toLink(), demandA.departureTime());
-            totalTripLength += directTravelTimeA;
-            for (int j = i + 1; j < drtDemands.size(); j++) {
-                DrtDemand demandB = drtDemands.get(j);
-                double directTravelTimeB = travelTimeMatrix.getTravelTime(demandB.fromLink(), demandB.toLink(), demandB.departureTime());
-
-                double latestDepartureTimeA = demandA.departureTime() + maxWaitTime;
-                double latestDepartureTimeB = demandB.departureTime() + maxWaitTime;
-
-                double latestArrivalTimeA = demandA.departureTime() + alpha * directTravelTimeA + beta;
-                double latestArrivalTimeB = demandB.departureTime() + alpha * directTravelTimeB + beta;
-
-                double minTotalPoolingDriveTime = Double.MAX_VALUE;
-                boolean shareable = false;
-
-                // Case 1: o1 o2 d1 d2
-                {
-                    double now = demandA.departureTime() + stopDuration;
-                    double pooledTravelTime = 0;
-                    double o1o2 = travelTimeMatrix.getTravelTime(demandA.fromLink(), demandB.fromLink(), now);
-                    pooledTravelTime += o1o2;
-                    double arrivalTimeO2 = now + o1o2;
-                    if (arrivalTimeO2 <= latestDepartureTimeB) {
-                        now = Math.max(demandB.departureTime(), arrivalTimeO2) + stopDuration;
-                        double o2d1 = travelTimeMatrix.getTravelTime(demandB.fromLink(), demandA.toLink(), now);
-                        pooledTravelTime += o2d1;
-                        double arrivalTimeD1 = now + o2d1;
-                        if (arrivalTimeD1 <= latestArrivalTimeA) {
-                            now = arrivalTimeD1 + stopDuration;
-                            double d1d2 = travelTimeMatrix.getTravelTime(demandA.toLink(), demandB.toLink(), now);
-                            pooledTravelTime += d1d2;
-                            double arrivalTimeD2 = now + d1d2;
-                            if (arrivalTimeD2 <= latestArrivalTimeB) {
-                                shareable = true;
-                                if (pooledTravelTime < minTotalPoolingDriveTime) {
-                                    minTotalPoolingDriveTime = pooledTravelTime;
-                                }
-                            }
-                        }
-                    }
-                }
-
-                // Case 2: o1 o2 d2 d1
-                {
-                    double now = demandA.departureTime() + stopDuration;
-                    double pooledTravelTime = 0;
-                    double o1o2 = travelTimeMatrix.getTravelTime(demandA.fromLink(), demandB.fromLink(), now);
-                    pooledTravelTime += o1o2;
-                    double arrivalTimeO2 = now + o1o2;
-                    if (arrivalTimeO2 <= latestDepartureTimeB) {
-                        now = Math.max(demandB.departureTime(), arrivalTimeO2) + stopDuration;
-                        double o2d2 = travelTimeMatrix.getTravelTime(demandB.fromLink(), demandB.toLink(), now);
-                        double arrivalTimeD2 = now + o2d2;
-                        pooledTravelTime += o2d2;
-                        if (arrivalTimeD2 <= latestArrivalTimeB) {
-                            now = arrivalTimeD2 + stopDuration;
-                            double d2d1 = travelTimeMatrix.getTravelTime(demandB.toLink(), demandA.toLink(), now);
-                            pooledTravelTime += d2d1;
-                            double arrivalTimeD1 = now + d2d1;
-                            if (arrivalTimeD1 <= latestArrivalTimeA) {
-                                shareable = true;
-                                if (pooledTravelTime < minTotalPoolingDriveTime) {
-                                    minTotalPoolingDriveTime = pooledTravelTime;
-                                }
-                            }
-                        }
-                    }
-                }
-
-                // Case 3: o2 o1 d1 d2
-                {
-                    double now = demandB.departureTime() + stopDuration;
-                    double pooledTravelTime = 0;
-                    double o2o1 = travelTimeMatrix.getTravelTime(demandB.fromLink(), demandA.fromLink(), now);
-                    pooledTravelTime += o2o1;
-                    double arrivalTimeO1 = now + o2o1;
-                    if (arrivalTimeO1 <= latestDepartureTimeA) {
-                        now = Math.max(demandA.departureTime(), arrivalTimeO1) + stopDuration;
-                        double o1d1 = travelTimeMatrix.getTravelTime(demandA.fromLink(), demandA.toLink(), now);
-                        double arrivalTimeD1 = now + o1d1;
-                        pooledTravelTime += o1d1;
-                        if (arrivalTimeD1 <= latestArrivalTimeA) {
-                            now = arrivalTimeD1 + stopDuration;
-                            double d1d2 = travelTimeMatrix.getTravelTime(demandA.toLink(), demandB.toLink(), now);
-                            double arrivalTimeD2 = now + d1d2;
-                            pooledTravelTime += d1d2;
-                            if (arrivalTimeD2 <= latestArrivalTimeB) {
-                                shareable = true;
-                                if (pooledTravelTime < minTotalPoolingDriveTime) {
-                                    minTotalPoolingDriveTime = pooledTravelTime;
-                                }
-                            }
-                        }
-                    }
-                }
-
-                // Case 4:  o2 o1 d2 d1
-                {
-                    double now = demandB.departureTime() + stopDuration;
-                    double pooledTravelTime = 0;
-                    double o2o1 = travelTimeMatrix.getTravelTime(demandB.fromLink(), demandA.fromLink(), now);
-                    pooledTravelTime += o2o1;
-                    double arrivalTimeO1 = now + o2o1;
-                    if (arrivalTimeO1 <= latestDepartureTimeA) {
-                        now = Math.max(demandA.departureTime(), arrivalTimeO1) + stopDuration;
-                        double o1d2 = travelTimeMatrix.getTravelTime(demandA.fromLink(), demandB.toLink(), now);
-                        double arrivalTimeD2 = now + o1d2;
-                        pooledTravelTime += o1d2;
-                        if (arrivalTimeD2 <= latestArrivalTimeB) {
-                            now = arrivalTimeD2 + stopDuration;
-                            double d2d1 = travelTimeMatrix.getTravelTime(demandB.toLink(), demandA.toLink(), now);
-                            double arrivalTimeD1 = now + d2d1;
-                            pooledTravelTime += d2d1;
-                            if (arrivalTimeD1 <= latestArrivalTimeA) {
-                                shareable = true;
-                                if (pooledTravelTime < minTotalPoolingDriveTime) {
-                                    minTotalPoolingDriveTime = pooledTravelTime;
-                                }
-                            }
-                        }
-                    }
-                }
-
-                if (shareable) {
-                    shareablePairs++;
-                    double unsharedSumDriveTime = directTravelTimeA + directTravelTimeB;
-                    double poolingScore = unsharedSumDriveTime / minTotalPoolingDriveTime;
-                    drtSharingMatrix[i][j] = poolingScore;
-                    sumPoolingScore += poolingScore;
-                }
-                numberOfPairs++;
-            }
+        for (DrtDemand demand : drtDemands) {
+            totalTripLength += travelTimeMatrix.getTravelTime(demand.fromLink(), demand.toLink(), demand.departureTime());
         }
+        double numberOfPairs = (double) numOfTrips * (numOfTrips - 1) / 2;
+        double shareablePairs = shareabilityGraph.getNumberOfEdges();
+        double sumPoolingScore = shareabilityGraph.getSumPoolingScore();
 
         double averageTripDirectDuration = totalTripLength / numOfTrips;
-        double shareability = calculateShareability(drtSharingMatrix);
+        double shareability = calculateShareability(shareabilityGraph);
 
         double sharingPotential = sumPoolingScore / numberOfPairs;
         log.info("Number of shareable pairs = " + shareablePairs + " out of " + numberOfPairs +
@@ -211,39 +77,27 @@ public class PairwisePoolingCalculator {
         return new DemandsPatternCore(numOfTrips, averageTripDirectDuration, shareability);
     }
 
-    private double calculateShareability(double[][] drtSharingMatrix) {
-        log.info("Calculating shareability based on heuristic approach...");
-        int numOfTrips = drtSharingMatrix[0].length;
-        int numOfSharedTrips = 0;
-        int iIndex = -1;
-        int jIndex = -1;
-
-        while (true) {
-            double maxPotential = -1;
-            for (int i = 0; i < numOfTrips; i++) {
-                for (int j = 0; j < numOfTrips; j++) {
-                    double sharingPotential = drtSharingMatrix[i][j];
-                    if (sharingPotential > maxPotential) {
-                        maxPotential = sharingPotential;
-                        iIndex = i;
-                        jIndex = j;
-                    }
-                }
-            }
-
-            if (maxPotential > 0) {
-                numOfSharedTrips += 2;
-            } else {
-                break;
-            }
-
-            for (int i = 0; i < numOfTrips; i++) {
-                drtSharingMatrix[i][iIndex] = 0;
-                drtSharingMatrix[i][jIndex] = 0;
-                drtSharingMatrix[iIndex][i] = 0;
-                drtSharingMatrix[jIndex][i] = 0;
-            }
+    public ShareabilityGraph buildShareabilityGraph(List<DrtDemand> drtDemands) {
+        // initialize travelTimeMatrix if it is null
+        if (travelTimeMatrix == null) {
+            Set<Id<Link>> relevantLinks = Tools.collectRelevantLink(drtDemands);
+            travelTimeMatrix = new CompactLinkToLinkTravelTimeMatrix(network, travelTime, relevantLinks, 0);
         }
+        // the pairs are evaluated in parallel (sharded by demand rows), the graph is identical to the sequential one
+        ShareabilityGraphBuilder builder = new ShareabilityGraphBuilder(alpha, beta, maxWaitTime, stopDuration,
+                travelTimeMatrix, ForkJoinPool.commonPool());
+        ShareabilityGraph shareabilityGraph = builder.build(drtDemands);
+        log.info("Number of pairs evaluated after pruning = " + builder.getNumberOfEvaluatedPairs());
+        return shareabilityGraph;
+    }
+
+    /**
+     * Share of the demands matched by the greedy matching (see {@link ShareabilityGraph#calcGreedyMatching}).
+     */
+    private double calculateShareability(ShareabilityGraph shareabilityGraph) {
+        log.info("Calculating shareability based on heuristic approach...");
+        int numOfTrips = shareabilityGraph.getNumberOfDemands();
+        int numOfSharedTrips = shareabilityGraph.calcGreedyMatching(0, numOfTrips);
 
         double shareability = (double) numOfSharedTrips / numOfTrips;
         log.info("Number of shared trips is " + numOfSharedTrips + ", out of total trips of " + numOfTrips);
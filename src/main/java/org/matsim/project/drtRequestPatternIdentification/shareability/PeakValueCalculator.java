@@ -10,7 +10,7 @@ import org.matsim.contrib.dvrp.trafficmonitoring.QSimFreeSpeedTravelTime;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.project.drtRequestPatternIdentification.basicStructures.DemandsPatternCore;
 import org.matsim.project.drtRequestPatternIdentification.basicStructures.DrtDemand;
-import org.matsim.project.utils.LinkToLinkTravelTimeMatrix;
+import org.matsim.project.utils.CompactLinkToLinkTravelTimeMatrix;
 
 import java.util.*;
 
@@ -18,19 +18,28 @@ public class PeakValueCalculator {
     private final DrtConfigGroup drtConfigGroup;
     private final Network network;
     private final double timeBin;
+    private final boolean incremental;
     private final TravelTime travelTime = new QSimFreeSpeedTravelTime(1);
     private final Logger log = LogManager.getLogger(PeakValueCalculator.class);
 
     public PeakValueCalculator(DrtConfigGroup drtConfigGroup, Network network) {
-        this.drtConfigGroup = drtConfigGroup;
-        this.network = network;
-        this.timeBin = 3600;
+        this(drtConfigGroup, network, 3600);
     }
 
     public PeakValueCalculator(DrtConfigGroup drtConfigGroup, Network network, double timeBin) {
+        this(drtConfigGroup, network, timeBin, true);
+    }
+
+    /**
+     * @param incremental true: the shareability graph is built once for all the demands and the pairs of the sliding
+     *                    time window are updated incrementally (demands entering and leaving the window). false: the
+     *                    pairs are evaluated again for each time window.
+     */
+    public PeakValueCalculator(DrtConfigGroup drtConfigGroup, Network network, double timeBin, boolean incremental) {
         this.drtConfigGroup = drtConfigGroup;
         this.network = network;
         this.timeBin = timeBin;
+        this.incremental = incremental;
     }
 
     public double calculate(List<DrtDemand> drtDemands) {
@@ -41,13 +50,24 @@ public class PeakValueCalculator {
             relevantLinks.add(demand.toLink().getId());
         }
         // Construct travel time matrix for relevant links
-        LinkToLinkTravelTimeMatrix travelTimeMatrix = new LinkToLinkTravelTimeMatrix(network, travelTime, relevantLinks, 0);
+        CompactLinkToLinkTravelTimeMatrix travelTimeMatrix = new CompactLinkToLinkTravelTimeMatrix(network, travelTime, relevantLinks, 0);
 
         // Construct pair-wise calculator
         PairwisePoolingCalculator pairwisePoolingCalculator = new PairwisePoolingCalculator(drtConfigGroup, network, travelTimeMatrix);
 
         // Analyze score for each time bin
         drtDemands.sort(Comparator.comparingDouble(DrtDemand::departureTime));
+        double peakValue = incremental ?
+                calculatePeakValueIncrementally(drtDemands, travelTimeMatrix, pairwisePoolingCalculator) :
+                calculatePeakValue(drtDemands, pairwisePoolingCalculator);
+
+        // Normalized based on total number of trips
+        double finalScore = peakValue;
+        log.info("Final score = " + finalScore);
+        return finalScore;
+    }
+
+    private double calculatePeakValue(List<DrtDemand> drtDemands, PairwisePoolingCalculator pairwisePoolingCalculator) {
         double peakValue = 0;
         double startTime = 0;
         while (startTime + timeBin <= 86400) {
@@ -66,23 +86,88 @@ public class PeakValueCalculator {
             log.info("===================================================================================");
             log.info("Analyzing for time bin " + startTime + " to " + endTime);
             DemandsPatternCore demandsPatternCoreForTimeBin = pairwisePoolingCalculator.quantifyDemands(demandsWithinThisTimeBin);
+            peakValue = updatePeakValue(peakValue, demandsPatternCoreForTimeBin);
 
-            double loadForTimeBin = (demandsPatternCoreForTimeBin.averageDirectTripDuration() * demandsPatternCoreForTimeBin.numOfTrips()
-                    + drtConfigGroup.stopDuration * demandsPatternCoreForTimeBin.numOfTrips() * 2)
-                    / Math.exp(demandsPatternCoreForTimeBin.shareability());
-            // TODO design this function
+            startTime += 0.5 * timeBin;
+        }
+        return peakValue;
+    }
 
-            if (loadForTimeBin > peakValue) {
-                peakValue = loadForTimeBin;
+    /**
+     * The demands are sorted by departure time, so the demands of a time window are a range [fromDemand, toDemand)
+     * of the list. The range only moves forward: the edges of the entering and the leaving demands are added to /
+     * removed from the window sums. Only the greedy matching is calculated for each window (on the edges within the
+     * window). The pruning of the shareability graph is exact, hence the results are the same as with
+     * {@link #calculatePeakValue}.
+     */
+    private double calculatePeakValueIncrementally(List<DrtDemand> drtDemands, CompactLinkToLinkTravelTimeMatrix travelTimeMatrix,
+                                                   PairwisePoolingCalculator pairwisePoolingCalculator) {
+        ShareabilityGraph shareabilityGraph = pairwisePoolingCalculator.buildShareabilityGraph(drtDemands);
+        double[] directTravelTimes = new double[drtDemands.size()];
+        for (int i = 0; i < drtDemands.size(); i++) {
+            DrtDemand demand = drtDemands.get(i);
+            directTravelTimes[i] = travelTimeMatrix.getTravelTime(demand.fromLink(), demand.toLink(), demand.departureTime());
+        }
+
+        int fromDemand = 0;
+        int toDemand = 0;
+        double totalTripLength = 0;
+        int shareablePairs = 0;
+
+        double peakValue = 0;
+        double startTime = 0;
+        while (startTime + timeBin <= 86400) {
+            double endTime = startTime + timeBin;
+            // demands entering the window
+            while (toDemand < drtDemands.size() && drtDemands.get(toDemand).departureTime() <= endTime) {
+                totalTripLength += directTravelTimes[toDemand];
+                for (int k = 0; k < shareabilityGraph.getDegree(toDemand); k++) {
+                    int neighbour = shareabilityGraph.getNeighbour(toDemand, k);
+                    if (neighbour >= fromDemand && neighbour < toDemand) {
+                        shareablePairs++;
+                    }
+                }
+                toDemand++;
+            }
+            // demands leaving the window
+            while (fromDemand < toDemand && drtDemands.get(fromDemand).departureTime() < startTime) {
+                totalTripLength -= directTravelTimes[fromDemand];
+                for (int k = 0; k < shareabilityGraph.getDegree(fromDemand); k++) {
+                    int neighbour = shareabilityGraph.getNeighbour(fromDemand, k);
+                    if (neighbour > fromDemand && neighbour < toDemand) {
+                        shareablePairs--;
+                    }
+                }
+                fromDemand++;
             }
-            log.info("Load for this time bin =  " + loadForTimeBin + ". Current max value = " + peakValue);
+
+            log.info("===================================================================================");
+            log.info("Analyzing for time bin " + startTime + " to " + endTime);
+            int numOfTrips = toDemand - fromDemand;
+            if (numOfTrips == 0) {
+                totalTripLength = 0; // no rounding errors carried over from the previous windows
+            }
+            double shareability = (double) shareabilityGraph.calcGreedyMatching(fromDemand, toDemand) / numOfTrips;
+            log.info("Number of shareable pairs = " + shareablePairs + ", shareability = " + shareability);
+            peakValue = updatePeakValue(peakValue, new DemandsPatternCore(numOfTrips, totalTripLength / numOfTrips, shareability));
 
             startTime += 0.5 * timeBin;
         }
+        return peakValue;
+    }
 
-        // Normalized based on total number of trips
-        double finalScore = peakValue;
-        log.info("Final score = " + finalScore);
-        return finalScore;
+    private double updatePeakValue(double peakValue, DemandsPatternCore demandsPatternCoreForTimeBin) {
+        // an empty time bin has no load (the average trip duration and the shareability are 0 / 0 = NaN)
+        double loadForTimeBin = demandsPatternCoreForTimeBin.numOfTrips() == 0 ? 0 :
+                (demandsPatternCoreForTimeBin.averageDirectTripDuration() * demandsPatternCoreForTimeBin.numOfTrips()
+                        + drtConfigGroup.stopDuration * demandsPatternCoreForTimeBin.numOfTrips() * 2)
+                        / Math.exp(demandsPatternCoreForTimeBin.shareability());
+        // TODO design this function
+
+        if (loadForTimeBin > peakValue) {
+            peakValue = loadForTimeBin;
+        }
+        log.info("Load for this time bin =  " + loadForTimeBin + ". Current max value = " + peakValue);
+        return peakValue;
     }
 }
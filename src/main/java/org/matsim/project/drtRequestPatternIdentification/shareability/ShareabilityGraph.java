@@ -0,0 +1,122 @@
+package org.matsim.project.drtRequestPatternIdentification.shareability;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sparse, undirected shareability graph of the drt demands: there is an edge between two demands (by their index in
+ * the demand list) if they can share a ride, weighted by the pooling score (sum of the direct drive times / drive
+ * time of the best pooled ride). The adjacency lists are stored in flat arrays (compressed sparse rows), each edge
+ * in both directions.
+ */
+public class ShareabilityGraph {
+    private final int numberOfDemands;
+    private final int[] offsets; // neighbours of demand i: offsets[i] (inclusive) to offsets[i + 1] (exclusive)
+    private final int[] neighbours;
+    private final double[] poolingScores;
+
+    ShareabilityGraph(int numberOfDemands, int[] edgeDemandsA, int[] edgeDemandsB, double[] edgePoolingScores,
+                      int numberOfEdges) {
+        this.numberOfDemands = numberOfDemands;
+        this.offsets = new int[numberOfDemands + 1];
+        for (int e = 0; e < numberOfEdges; e++) {
+            offsets[edgeDemandsA[e] + 1]++;
+            offsets[edgeDemandsB[e] + 1]++;
+        }
+        for (int i = 0; i < numberOfDemands; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        this.neighbours = new int[2 * numberOfEdges];
+        this.poolingScores = new double[2 * numberOfEdges];
+        int[] nextPosition = new int[numberOfDemands];
+        System.arraycopy(offsets, 0, nextPosition, 0, numberOfDemands);
+        for (int e = 0; e < numberOfEdges; e++) {
+            int a = edgeDemandsA[e];
+            int b = edgeDemandsB[e];
+            neighbours[nextPosition[a]] = b;
+            poolingScores[nextPosition[a]++] = edgePoolingScores[e];
+            neighbours[nextPosition[b]] = a;
+            poolingScores[nextPosition[b]++] = edgePoolingScores[e];
+        }
+    }
+
+    public int getNumberOfDemands() {
+        return numberOfDemands;
+    }
+
+    public int getNumberOfEdges() {
+        return neighbours.length / 2;
+    }
+
+    public int getDegree(int demand) {
+        return offsets[demand + 1] - offsets[demand];
+    }
+
+    /**
+     * @return the k-th neighbour of the demand (0 <= k < degree)
+     */
+    public int getNeighbour(int demand, int k) {
+        return neighbours[offsets[demand] + k];
+    }
+
+    /**
+     * @return the pooling score of the edge to the k-th neighbour of the demand (0 <= k < degree)
+     */
+    public double getPoolingScore(int demand, int k) {
+        return poolingScores[offsets[demand] + k];
+    }
+
+    public double getSumPoolingScore() {
+        double sum = 0;
+        for (double poolingScore : poolingScores) {
+            sum += poolingScore;
+        }
+        return sum / 2; // each edge is stored twice
+    }
+
+    /**
+     * Greedy matching on the sub-graph of the demands fromDemand (inclusive) to toDemand (exclusive): the pair with the
+     * highest pooling score is matched first, then the next highest pair of the unmatched demands, and so on. Ties are
+     * broken by the demand indices (i, j) with i < j in row-major order, i.e. the same pairs are matched as by a
+     * repeated scan of the upper triangular sharing matrix.
+     *
+     * @return number of matched demands (2 * number of matched pairs)
+     */
+    public int calcGreedyMatching(int fromDemand, int toDemand) {
+        return 2 * calcGreedyMatchedPairs(fromDemand, toDemand).size();
+    }
+
+    /**
+     * @return matched pairs [i, j] (i < j) of the greedy matching, in the order they are matched
+     */
+    List<int[]> calcGreedyMatchedPairs(int fromDemand, int toDemand) {
+        List<int[]> edges = new ArrayList<>(); // [demand, k-th neighbour]
+        for (int i = fromDemand; i < toDemand; i++) {
+            for (int k = 0; k < getDegree(i); k++) {
+                int j = getNeighbour(i, k);
+                if (i < j && j < toDemand) {
+                    edges.add(new int[] {i, k});
+                }
+            }
+        }
+        // the CSR order of the neighbours depends on the order the edges were added, so break the ties explicitly
+        edges.sort(Comparator.comparingDouble((int[] edge) -> -getPoolingScore(edge[0], edge[1]))
+                .thenComparingInt(edge -> edge[0])
+                .thenComparingInt(edge -> getNeighbour(edge[0], edge[1])));
+
+        boolean[] matched = new boolean[toDemand - fromDemand];
+        List<int[]> matchedPairs = new ArrayList<>();
+        for (int[] edge : edges) {
+            int i = edge[0];
+            int j = getNeighbour(edge[0], edge[1]);
+            if (!matched[i - fromDemand] && !matched[j - fromDemand]) {
+                matched[i - fromDemand] = true;
+                matched[j - fromDemand] = true;
+                matchedPairs.add(new int[] {i, j});
+            }
+        }
+        return matchedPairs;
+    }
+}
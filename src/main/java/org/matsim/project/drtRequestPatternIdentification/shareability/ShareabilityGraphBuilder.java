@@ -0,0 +1,284 @@
+package org.matsim.project.drtRequestPatternIdentification.shareability;
+
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.project.drtRequestPatternIdentification.basicStructures.DrtDemand;
+import org.matsim.project.utils.CompactLinkToLinkTravelTimeMatrix;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Builds the {@link ShareabilityGraph} without evaluating all the n(n-1)/2 pairs of demands:
+ * <ul>
+ * <li>Time window: in all four stop orders (o1 o2 d1 d2, o1 o2 d2 d1, o2 o1 d1 d2, o2 o1 d2 d1), the earlier demand
+ * (by departure time) is dropped off after the later demand has departed and has been picked up (+ stop duration).
+ * Hence, the later demand must depart before the latest arrival time of the earlier demand (alpha/beta detour bound)
+ * minus the stop duration. With the demands sorted by departure time, only these candidates are scanned.</li>
+ * <li>Space: one of the origins must be reachable from the other origin within the max wait time. The free speed
+ * travel times between the origins are checked before the four stop orders are evaluated.</li>
+ * </ul>
+ * The pruning is exact, i.e. the graph contains the same shareable pairs as the evaluation of all the pairs.
+ */
+public class ShareabilityGraphBuilder {
+    private static final int MIN_ROWS_PER_SHARD = 256;
+    private static final int SHARDS_PER_THREAD = 4; // more shards than threads: the rows have different costs
+
+    private final double alpha;
+    private final double beta;
+    private final double maxWaitTime;
+    private final double stopDuration;
+    private final CompactLinkToLinkTravelTimeMatrix travelTimeMatrix;
+
+    private final ForkJoinPool forkJoinPool; // null --> rows are evaluated sequentially
+
+    private final LongAdder numberOfEvaluatedPairs = new LongAdder();
+
+    public ShareabilityGraphBuilder(double alpha, double beta, double maxWaitTime, double stopDuration,
+                                    CompactLinkToLinkTravelTimeMatrix travelTimeMatrix) {
+        this(alpha, beta, maxWaitTime, stopDuration, travelTimeMatrix, null);
+    }
+
+    /**
+     * With a fork join pool, the rows (demands) are split into shards that are evaluated in parallel on the pool.
+     * The resulting graph is identical to the sequential one. The travel time matrix is only read (thread-safe).
+     */
+    public ShareabilityGraphBuilder(double alpha, double beta, double maxWaitTime, double stopDuration,
+                                    CompactLinkToLinkTravelTimeMatrix travelTimeMatrix, ForkJoinPool forkJoinPool) {
+        this.alpha = alpha;
+        this.beta = beta;
+        this.maxWaitTime = maxWaitTime;
+        this.stopDuration = stopDuration;
+        this.travelTimeMatrix = travelTimeMatrix;
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public ShareabilityGraphBuilder(DrtConfigGroup drtConfigGroup, CompactLinkToLinkTravelTimeMatrix travelTimeMatrix) {
+        this(drtConfigGroup.maxTravelTimeAlpha, drtConfigGroup.maxTravelTimeBeta, drtConfigGroup.maxWaitTime,
+                drtConfigGroup.stopDuration, travelTimeMatrix);
+    }
+
+    public ShareabilityGraph build(List<DrtDemand> drtDemands) {
+        int numOfTrips = drtDemands.size();
+        double[] directTravelTimes = new double[numOfTrips];
+        for (int i = 0; i < numOfTrips; i++) {
+            DrtDemand demand = drtDemands.get(i);
+            directTravelTimes[i] = travelTimeMatrix.getTravelTime(demand.fromLink(), demand.toLink(), demand.departureTime());
+        }
+
+        int[] sortedDemands = IntStream.range(0, numOfTrips)
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> drtDemands.get(i).departureTime()))
+                .mapToInt(i -> i)
+                .toArray();
+
+        // The rows (demand A in the departure order) are split into shards. Each shard collects its own edges, the
+        // edges are then concatenated in the shard order (i.e. the same order as the sequential evaluation).
+        List<EdgeList> shards;
+        if (forkJoinPool != null && numOfTrips >= MIN_ROWS_PER_SHARD * 2) {
+            int numberOfShards = Math.min(numOfTrips / MIN_ROWS_PER_SHARD, SHARDS_PER_THREAD * forkJoinPool.getParallelism());
+            shards = forkJoinPool.submit(() -> IntStream.range(0, numberOfShards)
+                    .parallel()
+                    .mapToObj(shard -> evaluateRows(drtDemands, directTravelTimes, sortedDemands,
+                            (int)((long)shard * numOfTrips / numberOfShards),
+                            (int)((long)(shard + 1) * numOfTrips / numberOfShards)))
+                    .toList()).join();
+        } else {
+            shards = List.of(evaluateRows(drtDemands, directTravelTimes, sortedDemands, 0, numOfTrips));
+        }
+
+        EdgeList edges = shards.get(0);
+        for (int shard = 1; shard < shards.size(); shard++) {
+            edges.addAll(shards.get(shard));
+        }
+        return new ShareabilityGraph(numOfTrips, edges.demandsA, edges.demandsB, edges.poolingScores, edges.size);
+    }
+
+    private EdgeList evaluateRows(List<DrtDemand> drtDemands, double[] directTravelTimes, int[] sortedDemands,
+                                  int fromRow, int toRow) {
+        int numOfTrips = sortedDemands.length;
+        EdgeList edges = new EdgeList(Math.max(16, toRow - fromRow));
+        for (int p = fromRow; p < toRow; p++) {
+            int a = sortedDemands[p];
+            DrtDemand demandA = drtDemands.get(a);
+            double latestDepartureTimeB = demandA.departureTime() + alpha * directTravelTimes[a] + beta - stopDuration;
+            for (int q = p + 1; q < numOfTrips; q++) {
+                int b = sortedDemands[q];
+                DrtDemand demandB = drtDemands.get(b);
+                if (demandB.departureTime() > latestDepartureTimeB) {
+                    break; // sorted by departure time: no more candidates for demand A
+                }
+
+                double poolingScore = calcPoolingScore(demandA, directTravelTimes[a], demandB, directTravelTimes[b]);
+                if (poolingScore > 0) {
+                    edges.add(a, b, poolingScore);
+                }
+            }
+        }
+        return edges;
+    }
+
+    private static class EdgeList {
+        private int size = 0;
+        private int[] demandsA;
+        private int[] demandsB;
+        private double[] poolingScores;
+
+        private EdgeList(int initialCapacity) {
+            demandsA = new int[initialCapacity];
+            demandsB = new int[initialCapacity];
+            poolingScores = new double[initialCapacity];
+        }
+
+        private void add(int a, int b, double poolingScore) {
+            ensureCapacity(size + 1);
+            demandsA[size] = a;
+            demandsB[size] = b;
+            poolingScores[size] = poolingScore;
+            size++;
+        }
+
+        private void addAll(EdgeList other) {
+            ensureCapacity(size + other.size);
+            System.arraycopy(other.demandsA, 0, demandsA, size, other.size);
+            System.arraycopy(other.demandsB, 0, demandsB, size, other.size);
+            System.arraycopy(other.poolingScores, 0, poolingScores, size, other.size);
+            size += other.size;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > demandsA.length) {
+                int newLength = Math.max(capacity, 2 * demandsA.length);
+                demandsA = Arrays.copyOf(demandsA, newLength);
+                demandsB = Arrays.copyOf(demandsB, newLength);
+                poolingScores = Arrays.copyOf(poolingScores, newLength);
+            }
+        }
+    }
+
+    /**
+     * @return number of pairs evaluated in the four stop orders (i.e. not pruned) by this builder so far
+     */
+    public long getNumberOfEvaluatedPairs() {
+        return numberOfEvaluatedPairs.sum();
+    }
+
+    /**
+     * @return pooling score (sum of the direct drive times / drive time of the best pooled ride) or 0 if the demands
+     * cannot share a ride
+     */
+    double calcPoolingScore(DrtDemand demandA, double directTravelTimeA, DrtDemand demandB, double directTravelTimeB) {
+        double latestDepartureTimeA = demandA.departureTime() + maxWaitTime;
+        double latestDepartureTimeB = demandB.departureTime() + maxWaitTime;
+
+        // Spatial bound: o2 must be reachable from o1 (or o1 from o2) within the max wait time
+        double o1o2 = travelTimeMatrix.getTravelTime(demandA.fromLink(), demandB.fromLink(), demandA.departureTime());
+        double o2o1 = travelTimeMatrix.getTravelTime(demandB.fromLink(), demandA.fromLink(), demandB.departureTime());
+        boolean o1First = demandA.departureTime() + stopDuration + o1o2 <= latestDepartureTimeB;
+        boolean o2First = demandB.departureTime() + stopDuration + o2o1 <= latestDepartureTimeA;
+        if (!o1First && !o2First) {
+            return 0;
+        }
+        numberOfEvaluatedPairs.increment();
+
+        double latestArrivalTimeA = demandA.departureTime() + alpha * directTravelTimeA + beta;
+        double latestArrivalTimeB = demandB.departureTime() + alpha * directTravelTimeB + beta;
+
+        double minTotalPoolingDriveTime = Double.MAX_VALUE;
+        boolean shareable = false;
+
+        if (o1First) {
+            double arrivalTimeO2 = demandA.departureTime() + stopDuration + o1o2;
+            double departureTimeO2 = Math.max(demandB.departureTime(), arrivalTimeO2) + stopDuration;
+
+            // Case 1: o1 o2 d1 d2
+            {
+                double now = departureTimeO2;
+                double pooledTravelTime = o1o2;
+                double o2d1 = travelTimeMatrix.getTravelTime(demandB.fromLink(), demandA.toLink(), now);
+                pooledTravelTime += o2d1;
+                double arrivalTimeD1 = now + o2d1;
+                if (arrivalTimeD1 <= latestArrivalTimeA) {
+                    now = arrivalTimeD1 + stopDuration;
+                    double d1d2 = travelTimeMatrix.getTravelTime(demandA.toLink(), demandB.toLink(), now);
+                    pooledTravelTime += d1d2;
+                    double arrivalTimeD2 = now + d1d2;
+                    if (arrivalTimeD2 <= latestArrivalTimeB) {
+                        shareable = true;
+                        minTotalPoolingDriveTime = Math.min(minTotalPoolingDriveTime, pooledTravelTime);
+                    }
+                }
+            }
+
+            // Case 2: o1 o2 d2 d1
+            {
+                double now = departureTimeO2;
+                double pooledTravelTime = o1o2;
+                double o2d2 = travelTimeMatrix.getTravelTime(demandB.fromLink(), demandB.toLink(), now);
+                double arrivalTimeD2 = now + o2d2;
+                pooledTravelTime += o2d2;
+                if (arrivalTimeD2 <= latestArrivalTimeB) {
+                    now = arrivalTimeD2 + stopDuration;
+                    double d2d1 = travelTimeMatrix.getTravelTime(demandB.toLink(), demandA.toLink(), now);
+                    pooledTravelTime += d2d1;
+                    double arrivalTimeD1 = now + d2d1;
+                    if (arrivalTimeD1 <= latestArrivalTimeA) {
+                        shareable = true;
+                        minTotalPoolingDriveTime = Math.min(minTotalPoolingDriveTime, pooledTravelTime);
+                    }
+                }
+            }
+        }
+
+        if (o2First) {
+            double arrivalTimeO1 = demandB.departureTime() + stopDuration + o2o1;
+            double departureTimeO1 = Math.max(demandA.departureTime(), arrivalTimeO1) + stopDuration;
+
+            // Case 3: o2 o1 d1 d2
+            {
+                double now = departureTimeO1;
+                double pooledTravelTime = o2o1;
+                double o1d1 = travelTimeMatrix.getTravelTime(demandA.fromLink(), demandA.toLink(), now);
+                double arrivalTimeD1 = now + o1d1;
+                pooledTravelTime += o1d1;
+                if (arrivalTimeD1 <= latestArrivalTimeA) {
+                    now = arrivalTimeD1 + stopDuration;
+                    double d1d2 = travelTimeMatrix.getTravelTime(demandA.toLink(), demandB.toLink(), now);
+                    double arrivalTimeD2 = now + d1d2;
+                    pooledTravelTime += d1d2;
+                    if (arrivalTimeD2 <= latestArrivalTimeB) {
+                        shareable = true;
+                        minTotalPoolingDriveTime = Math.min(minTotalPoolingDriveTime, pooledTravelTime);
+                    }
+                }
+            }
+
+            // Case 4: o2 o1 d2 d1
+            {
+                double now = departureTimeO1;
+                double pooledTravelTime = o2o1;
+                double o1d2 = travelTimeMatrix.getTravelTime(demandA.fromLink(), demandB.toLink(), now);
+                double arrivalTimeD2 = now + o1d2;
+                pooledTravelTime += o1d2;
+                if (arrivalTimeD2 <= latestArrivalTimeB) {
+                    now = arrivalTimeD2 + stopDuration;
+                    double d2d1 = travelTimeMatrix.getTravelTime(demandB.toLink(), demandA.toLink(), now);
+                    double arrivalTimeD1 = now + d2d1;
+                    pooledTravelTime += d2d1;
+                    if (arrivalTimeD1 <= latestArrivalTimeA) {
+                        shareable = true;
+                        minTotalPoolingDriveTime = Math.min(minTotalPoolingDriveTime, pooledTravelTime);
+                    }
+                }
+            }
+        }
+
+        if (!shareable) {
+            return 0;
+        }
+        return (directTravelTimeA + directTravelTimeB) / minTotalPoolingDriveTime;
+    }
+}
@@ -0,0 +1,130 @@
+package org.matsim.project.drtSchoolTransportStudy.jsprit;
+
+import com.graphhopper.jsprit.core.algorithm.VehicleRoutingAlgorithm;
+import com.graphhopper.jsprit.core.algorithm.box.Jsprit;
+import com.graphhopper.jsprit.core.problem.VehicleRoutingProblem;
+import com.graphhopper.jsprit.core.problem.solution.SolutionCostCalculator;
+import com.graphhopper.jsprit.core.problem.solution.VehicleRoutingProblemSolution;
+import com.graphhopper.jsprit.core.util.Solutions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Portfolio of independent (single-threaded) jsprit searches with different random seeds and, optionally, different
+ * objective functions. This scales better with the number of cores than one search with {@link Jsprit.Parameter#THREADS}.
+ * The iterations are split into rounds. After each round, the best solution of all the searches (the incumbent,
+ * compared with the objective function of search 0) is given to all the searches as an additional initial solution
+ * of the next round.
+ * Note: each round of a search is a new jsprit run (the algorithm is built again for each round). A jsprit run starts
+ * its acceptance (simulated annealing) schedule from the initial threshold, so each round restarts the annealing from
+ * the own best solution and the incumbent. Re-using the algorithm would not change this, as the schedule is reset at
+ * the start of each search of the algorithm. Fewer rounds give longer annealing schedules.
+ * The searches run on the same problem, which is not modified by jsprit. Each search has its own objective function
+ * instance (the objective functions cache per-route costs and are not thread-safe).
+ */
+class JspritPortfolio {
+    private static final Logger log = LogManager.getLogger(JspritPortfolio.class);
+
+    /**
+     * @param numberOfSearches number of independent searches (and threads)
+     * @param maxIterations    iterations of each search (over all the rounds)
+     * @param numberOfRounds   number of times the incumbent is shared between the searches (+1)
+     * @param randomSeed       search k uses the seed randomSeed + k
+     */
+    record Options(int numberOfSearches, int maxIterations, int numberOfRounds, long randomSeed) {
+    }
+
+    private static class Search {
+        private final SolutionCostCalculator objectiveFunction;
+        private final Random random;
+        private VehicleRoutingProblemSolution bestSolution;
+
+        private Search(SolutionCostCalculator objectiveFunction, Random random) {
+            this.objectiveFunction = objectiveFunction;
+            this.random = random;
+        }
+    }
+
+    /**
+     * @param objectiveFunctionFactory creates a new objective function for search k (k = 0: the reference objective
+     *                                 function used for comparing the solutions of the searches)
+     */
+    static VehicleRoutingProblemSolution solve(VehicleRoutingProblem problem,
+                                               IntFunction<SolutionCostCalculator> objectiveFunctionFactory,
+                                               Options options) {
+        List<Search> searches = new ArrayList<>();
+        for (int k = 0; k < options.numberOfSearches(); k++) {
+            searches.add(new Search(objectiveFunctionFactory.apply(k), new Random(options.randomSeed() + k)));
+        }
+        SolutionCostCalculator referenceObjectiveFunction = objectiveFunctionFactory.apply(0);
+
+        int numberOfRounds = Math.max(1, Math.min(options.numberOfRounds(), options.maxIterations()));
+        ExecutorService executor = Executors.newFixedThreadPool(options.numberOfSearches());
+        try {
+            VehicleRoutingProblemSolution incumbent = null;
+            double incumbentCosts = Double.POSITIVE_INFINITY;
+            for (int round = 0; round < numberOfRounds; round++) {
+                // split the iterations evenly between the rounds
+                int iterations = (round + 1) * options.maxIterations() / numberOfRounds
+                        - round * options.maxIterations() / numberOfRounds;
+                List<Future<VehicleRoutingProblemSolution>> results = new ArrayList<>();
+                for (Search search : searches) {
+                    VehicleRoutingProblemSolution sharedSolution = incumbent;
+                    results.add(executor.submit(() -> runSearch(problem, search, sharedSolution, iterations)));
+                }
+
+                for (int k = 0; k < searches.size(); k++) {
+                    VehicleRoutingProblemSolution solution = results.get(k).get();
+                    searches.get(k).bestSolution = solution;
+                    double costs = referenceObjectiveFunction.getCosts(solution);
+                    if (costs < incumbentCosts) {
+                        incumbentCosts = costs;
+                        incumbent = solution;
+                    }
+                }
+                log.info("Portfolio round " + (round + 1) + "/" + numberOfRounds + ": best costs = " + incumbentCosts);
+            }
+            return VehicleRoutingProblemSolution.copyOf(incumbent);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static VehicleRoutingProblemSolution runSearch(VehicleRoutingProblem problem, Search search,
+                                                           VehicleRoutingProblemSolution sharedSolution, int iterations) {
+        // A new run for each round: the annealing restarts (see the class documentation)
+        VehicleRoutingAlgorithm algorithm = Jsprit.Builder.newInstance(problem)
+                .setObjectiveFunction(search.objectiveFunction)
+                .setRandom(search.random)
+                .setProperty(Jsprit.Parameter.THREADS, "1")
+                .buildAlgorithm();
+        algorithm.setMaxIterations(iterations);
+
+        // continue from the own best solution and the incumbent (copies: the solutions are modified by the search)
+        if (search.bestSolution != null) {
+            addInitialSolution(algorithm, search, search.bestSolution);
+        }
+        if (sharedSolution != null && sharedSolution != search.bestSolution) {
+            addInitialSolution(algorithm, search, sharedSolution);
+        }
+        return Solutions.bestOf(algorithm.searchSolutions());
+    }
+
+    private static void addInitialSolution(VehicleRoutingAlgorithm algorithm, Search search,
+                                           VehicleRoutingProblemSolution solution) {
+        VehicleRoutingProblemSolution initialSolution = VehicleRoutingProblemSolution.copyOf(solution);
+        initialSolution.setCost(search.objectiveFunction.getCosts(initialSolution));
+        algorithm.addInitialSolution(initialSolution);
+    }
+}
@@ -20,20 +20,27 @@
 
 package org.matsim.project.drtSchoolTransportStudy.jsprit;
 
-import static java.util.stream.Collectors.toMap;
 import static org.matsim.contrib.dvrp.path.VrpPaths.FIRST_LINK_TT;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.contrib.dvrp.path.VrpPaths;
 import org.matsim.contrib.dvrp.router.TimeAsTravelDisutility;
 import org.matsim.contrib.dvrp.trafficmonitoring.QSimFreeSpeedTravelTime;
-import org.matsim.contrib.zone.Zone;
-import org.matsim.contrib.zone.skims.TravelTimeMatrices;
+import org.matsim.core.router.speedy.LeastCostPathTree;
+import org.matsim.core.router.speedy.SpeedyGraph;
 
 import com.graphhopper.jsprit.core.problem.Location;
 import com.graphhopper.jsprit.core.problem.cost.VehicleRoutingTransportCosts;
@@ -43,62 +50,130 @@ import com.graphhopper.jsprit.core.problem.vehicle.Vehicle;
 import one.util.streamex.EntryStream;
 
 /**
+ * Location to location travel times (1 s) and distances ({@link #DISTANCE_RESOLUTION} m) stored as unsigned 16-bit
+ * values off-heap (see {@link UnsignedShortMatrix}), i.e., 4 bytes per pair of locations. The travel times and the
+ * distances are calculated in the same least cost path tree (one tree per from node).
+ * The distances are optional: without them (e.g., if only the travel times are used by the objective function), the
+ * matrix needs 2 bytes per pair and {@link #getDistance} is not supported.
+ *
  * @author Michal Maciejewski (michalm)
  */
 public class MatrixBasedVrpCosts implements VehicleRoutingTransportCosts {
+	private static final Logger log = LogManager.getLogger(MatrixBasedVrpCosts.class);
+	static final double DISTANCE_RESOLUTION = 10;
+
 	public static MatrixBasedVrpCosts calculateVrpCosts(Network network, Map<Id<Link>, Location> locationByLinkId) {
+		return calculateVrpCosts(network, locationByLinkId, null);
+	}
+
+	public static MatrixBasedVrpCosts calculateVrpCosts(Network network, Map<Id<Link>, Location> locationByLinkId,
+			Path cacheDirectory) {
+		return calculateVrpCosts(network, locationByLinkId, cacheDirectory, true);
+	}
+
+	/**
+	 * The costs are read from (memory-mapped) or written to the cache directory (if not null), see {@link VrpCostsFile}.
+	 * A cache file of another network or other locations (or without distances, if they are needed) is not used.
+	 *
+	 * @param withDistances false: only the travel times are stored (half of the memory)
+	 */
+	public static MatrixBasedVrpCosts calculateVrpCosts(Network network, Map<Id<Link>, Location> locationByLinkId,
+			Path cacheDirectory, boolean withDistances) {
 		var linkByLocationIndex = EntryStream.of(locationByLinkId)
 				.invert()
 				.mapKeys(Location::getIndex)
 				.mapValues(linkId -> (Link)network.getLinks().get(linkId))
 				.toMap();
 
-		var zoneByNode = linkByLocationIndex.values()
-				.stream()
-				.flatMap(link -> Stream.of(link.getFromNode(), link.getToNode()))
-				.collect(toMap(n -> n, node -> new Zone(Id.create(node.getId(), Zone.class), "node", node.getCoord()),
-						(zone1, zone2) -> zone1));
-
-		var nodeByZone = EntryStream.of(zoneByNode).invert().toMap();
+		int size = locationByLinkId.size();
+		Link[] links = new Link[size];
+		linkByLocationIndex.forEach((locationIdx, link) -> links[locationIdx] = link);
 
-		// compute node-to-node TT matrix
-		var travelTime = new QSimFreeSpeedTravelTime(1);
-		var travelDisutility = new TimeAsTravelDisutility(travelTime);
-		var nodeToNodeMatrix = TravelTimeMatrices.calculateTravelTimeMatrix(network, nodeByZone, 0, travelTime,
-				travelDisutility, Runtime.getRuntime().availableProcessors());
+		if (cacheDirectory == null) {
+			return calculateVrpCosts(network, links, withDistances);
+		}
 
-		int size = locationByLinkId.size();
-		int[][] travelTimes = new int[size][size];
+		List<Id<Link>> linkIdByLocationIdx = Arrays.stream(links).map(Link::getId).toList();
+		long networkHash = VrpCostsFile.hashNetwork(network);
+		Path file = VrpCostsFile.getFile(cacheDirectory, networkHash, linkIdByLocationIdx);
+		MatrixBasedVrpCosts vrpCosts = VrpCostsFile.read(file, networkHash, linkIdByLocationIdx);
+		if (vrpCosts == null || (withDistances && vrpCosts.distances == null)) {
+			vrpCosts = calculateVrpCosts(network, links, withDistances);
+			VrpCostsFile.write(file, networkHash, linkIdByLocationIdx, vrpCosts);
+		}
+		return vrpCosts;
+	}
 
-		for (var from : locationByLinkId.entrySet()) {
-			var fromLink = network.getLinks().get(from.getKey());
-			var fromZone = zoneByNode.get(fromLink.getToNode()); // we start from the link's TO node
-			var fromLocationIdx = from.getValue().getIndex();
+	private static MatrixBasedVrpCosts calculateVrpCosts(Network network, Link[] links, boolean withDistances) {
+		int size = links.length;
 
-			for (var to : locationByLinkId.entrySet()) {
-				var toLink = network.getLinks().get(to.getKey());
-				var toZone = zoneByNode.get(toLink.getFromNode()); // we finish at the link's FROM node
-				var toLocationIdx = to.getValue().getIndex();
+		// One tree per from node: we start from the link's TO node
+		Map<Node, List<Integer>> fromLocationIdxsByNode = new HashMap<>();
+		for (int locationIdx = 0; locationIdx < size; locationIdx++) {
+			fromLocationIdxsByNode.computeIfAbsent(links[locationIdx].getToNode(), node -> new ArrayList<>()).add(locationIdx);
+		}
 
-				if (fromLink != toLink) { // otherwise, the matrix cell remains set to 0
-					double duration = FIRST_LINK_TT + nodeToNodeMatrix.get(fromZone, toZone) + VrpPaths.getLastLinkTT(
+		// compute location-to-location TT and distance matrices
+		var travelTime = new QSimFreeSpeedTravelTime(1);
+		var travelDisutility = new TimeAsTravelDisutility(travelTime);
+		var graph = new SpeedyGraph(network);
+		ThreadLocal<LeastCostPathTree> trees = ThreadLocal.withInitial(
+				() -> new LeastCostPathTree(graph, travelTime, travelDisutility));
+
+		var travelTimes = new UnsignedShortMatrix(size);
+		var distances = withDistances ? new UnsignedShortMatrix(size) : null;
+		AtomicInteger saturatedValues = new AtomicInteger();
+		fromLocationIdxsByNode.entrySet().parallelStream().forEach(entry -> {
+			LeastCostPathTree tree = trees.get();
+			tree.calculate(entry.getKey().getId().index(), 0, null, null);
+			for (int fromLocationIdx : entry.getValue()) {
+				for (int toLocationIdx = 0; toLocationIdx < size; toLocationIdx++) {
+					Link toLink = links[toLocationIdx];
+					if (links[fromLocationIdx] == toLink) {
+						continue; // otherwise, the matrix cell remains set to 0
+					}
+					int toNodeIdx = toLink.getFromNode().getId().index(); // we finish at the link's FROM node
+					double duration = FIRST_LINK_TT + (int)tree.getTime(toNodeIdx).seconds() + VrpPaths.getLastLinkTT(
 							travelTime, toLink, 0);
-					travelTimes[fromLocationIdx][toLocationIdx] = (int)duration;
+					boolean inRange = travelTimes.set(fromLocationIdx, toLocationIdx, (int)duration);
+					if (distances != null) {
+						double distance = tree.getDistance(toNodeIdx) + toLink.getLength(); // the first link is not included
+						inRange &= distances.set(fromLocationIdx, toLocationIdx, (int)Math.round(distance / DISTANCE_RESOLUTION));
+					}
+					if (!inRange) {
+						saturatedValues.incrementAndGet();
+					}
 				}
 			}
+		});
+		if (saturatedValues.get() > 0) {
+			log.warn(saturatedValues.get() + " travel times / distances exceed the 16-bit range and are saturated");
 		}
 
-		return new MatrixBasedVrpCosts(travelTimes);
+		return new MatrixBasedVrpCosts(travelTimes, distances);
 	}
 
-	private final int[][] travelTimes;
+	private final UnsignedShortMatrix travelTimes;
+	private final UnsignedShortMatrix distances;
 
-	private MatrixBasedVrpCosts(int[][] travelTimes) {
+	/**
+	 * @param distances null if the distances are not stored
+	 */
+	MatrixBasedVrpCosts(UnsignedShortMatrix travelTimes, UnsignedShortMatrix distances) {
 		this.travelTimes = travelTimes;
+		this.distances = distances;
+	}
+
+	UnsignedShortMatrix getTravelTimeMatrix() {
+		return travelTimes;
+	}
+
+	UnsignedShortMatrix getDistanceMatrix() {
+		return distances;
 	}
 
 	private double getTravelTime(Location from, Location to) {
-		return travelTimes[from.getIndex()][to.getIndex()];
+		return travelTimes.get(from.getIndex(), to.getIndex());
 	}
 
 	@Override
@@ -125,6 +200,9 @@ public class MatrixBasedVrpCosts implements VehicleRoutingTransportCosts {
 
 	@Override
 	public double getDistance(Location from, Location to, double departureTime, Vehicle vehicle) {
-		return getTravelTime(from, to);  //TODO
+		if (distances == null) {
+			throw new UnsupportedOperationException("The distances are not stored in this matrix");
+		}
+		return distances.get(from.getIndex(), to.getIndex()) * DISTANCE_RESOLUTION;
 	}
 }
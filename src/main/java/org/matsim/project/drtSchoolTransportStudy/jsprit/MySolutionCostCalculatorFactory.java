@@ -15,10 +15,9 @@ import org.matsim.contrib.drt.run.DrtConfigGroup;
 import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
 import org.matsim.core.config.Config;
 import org.matsim.core.gbl.Gbl;
-import org.matsim.project.drtSchoolTransportStudy.jsprit.utils.StatisticCollectorForOF;
+import org.matsim.project.drtSchoolTransportStudy.jsprit.utils.SolutionKpiAccumulator;
 import org.matsim.project.drtSchoolTransportStudy.jsprit.utils.TransportCostUtils;
-
-import java.util.Map;
+import org.matsim.project.utils.RouteCostCache;
 
 public class MySolutionCostCalculatorFactory {
 
@@ -33,11 +32,12 @@ public class MySolutionCostCalculatorFactory {
         for (DrtConfigGroup drtCfg : MultiModeDrtConfigGroup.get(config).getModalElements()) {
             serviceTimeInMatsim = drtCfg.stopDuration;
         }
-        StatisticCollectorForOF statisticCollectorForOF;
+        //the KPIs of each solution are summed up in one pass over the routes (instead of one walk per objective term)
+        SolutionKpiAccumulator kpis;
         if (transportCosts instanceof MatrixBasedVrpCosts) {
-            statisticCollectorForOF = new StatisticCollectorForOF(transportCosts, serviceTimeInMatsim);
+            kpis = new SolutionKpiAccumulator(vrp, transportCosts, serviceTimeInMatsim);
         } else if(transportCosts instanceof EuclideanCosts) {
-            statisticCollectorForOF = new StatisticCollectorForOF(serviceTimeInMatsim);
+            kpis = new SolutionKpiAccumulator(vrp, serviceTimeInMatsim);
         } else{
             throw new RuntimeException("MatsimVrpCostsCalculatorType can either be EuclideanCosts or NetworkBased/MatrixBased!");
         }
@@ -48,64 +48,64 @@ public class MySolutionCostCalculatorFactory {
 /*            case JspritDefaultMinusNoVeh:
                 return getJspritDefaultMinusNoVehObjectiveFunction(vrp, maxCosts);
             case JspritDefaultPlusLatePickup:
-                return getJspritDefaultPlusLatePickupObjectiveFunction(vrp, maxCosts, statisticCollectorForOF, serviceTimeInMatsim);
+                return getJspritDefaultPlusLatePickupObjectiveFunction(vrp, maxCosts, kpis, serviceTimeInMatsim);
             case JspritDefaultPlusLatePickupMinusNoVeh:
-                return getJspritDefaultPlusLatePickupMinusNoVehObjectiveFunction(vrp, maxCosts, statisticCollectorForOF, serviceTimeInMatsim);*/
+                return getJspritDefaultPlusLatePickupMinusNoVehObjectiveFunction(vrp, maxCosts, kpis, serviceTimeInMatsim);*/
             //jsprit default idea but using generalised transport costs
             case Jsprit:
                 return getJspritObjectiveFunction(vrp, maxCosts);
             case JspritMinusNoVeh:
                 return getJspritMinusNoVehObjectiveFunction(vrp, maxCosts);
             case JspritPlusLatePickup:
-                return getJspritPlusLatePickupObjectiveFunction(vrp, maxCosts, statisticCollectorForOF, serviceTimeInMatsim);
+                return getJspritPlusLatePickupObjectiveFunction(vrp, maxCosts, kpis, serviceTimeInMatsim);
             case JspritPlusLatePickupMinusNoVeh:
-                return getJspritPlusLatePickupMinusNoVehObjectiveFunction(vrp, maxCosts, statisticCollectorForOF, serviceTimeInMatsim);
+                return getJspritPlusLatePickupMinusNoVehObjectiveFunction(vrp, maxCosts, kpis, serviceTimeInMatsim);
             //customised objective functions (using generalised transport costs)
             case TT:
-                return getTTObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getTTObjectiveFunction(vrp, maxCosts, kpis);
             case TD:
-                return getTDObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getTDObjectiveFunction(vrp, maxCosts, kpis);
             case WT:
-                return getWTObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getWTObjectiveFunction(vrp, maxCosts, kpis);
             case TTTD:
-                return getTTTDObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getTTTDObjectiveFunction(vrp, maxCosts, kpis);
             case TTWT:
-                return getTTWTObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getTTWTObjectiveFunction(vrp, maxCosts, kpis);
             case TTWTTD:
-                return getTTWTTDObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getTTWTTDObjectiveFunction(vrp, maxCosts, kpis);
             case TTPlusNoVeh:
-                return getTTPlusNoVehObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getTTPlusNoVehObjectiveFunction(vrp, maxCosts, kpis);
             //school children related
             case OnTimeArrival:
-                return getOnTimeArrivalObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getOnTimeArrivalObjectiveFunction(vrp, maxCosts, kpis);
             case OnTimeArrivalPlusTD:
-                return getOnTimeArrivalPlusTDObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getOnTimeArrivalPlusTDObjectiveFunction(vrp, maxCosts, kpis);
             case DD:
-                return getDDObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getDDObjectiveFunction(vrp, maxCosts, kpis);
             case DDPlusNoVeh:
-                return getDDPlusNoVehObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getDDPlusNoVehObjectiveFunction(vrp, maxCosts, kpis);
             case DT:
-                return getDTObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getDTObjectiveFunction(vrp, maxCosts, kpis);
             case DTPlusNoVeh:
-                return getDTPlusNoVehObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getDTPlusNoVehObjectiveFunction(vrp, maxCosts, kpis);
             case NoVeh:
                 return getNoVehObjectiveFunction(vrp, maxCosts);
             case TTPlusDDPlusNoVeh:
-                return getTTPlusDDPlusNoVehObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getTTPlusDDPlusNoVehObjectiveFunction(vrp, maxCosts, kpis);
             case TTPlusDD:
-                return getTTPlusDDObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getTTPlusDDObjectiveFunction(vrp, maxCosts, kpis);
             case IVT:
-                return getIVTObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getIVTObjectiveFunction(vrp, maxCosts, kpis);
             case IVTPlusNoVeh:
-                return getIVTPlusNoVehObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getIVTPlusNoVehObjectiveFunction(vrp, maxCosts, kpis);
             case IVTPlusDDPlusNoVeh:
-                return getIVTPlusDDPlusNoVehObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getIVTPlusDDPlusNoVehObjectiveFunction(vrp, maxCosts, kpis);
             case IVTPlusDD:
-                return getIVTPlusDDObjectiveFunction(vrp, maxCosts, statisticCollectorForOF);
+                return getIVTPlusDDObjectiveFunction(vrp, maxCosts, kpis);
             case LatePickup:
-                return getLatePickupObjectiveFunction(vrp, maxCosts, statisticCollectorForOF, serviceTimeInMatsim);
+                return getLatePickupObjectiveFunction(vrp, maxCosts, kpis, serviceTimeInMatsim);
             case LatePickupPlusNoVeh:
-                return getLatePickupPlusNoVehObjectiveFunction(vrp, maxCosts, statisticCollectorForOF, serviceTimeInMatsim);
+                return getLatePickupPlusNoVehObjectiveFunction(vrp, maxCosts, kpis, serviceTimeInMatsim);
             default:
                 throw new RuntimeException(Gbl.NOT_IMPLEMENTED);
         }
@@ -115,32 +115,14 @@ public class MySolutionCostCalculatorFactory {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
+            private final RouteCostCache<Double> routeCosts = new RouteCostCache<>();
+
             @Override
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = 0.;
 
                 for (VehicleRoute route : solution.getRoutes()) {
-                    costs += route.getVehicle().getType().getVehicleCostParams().fix;
-                    boolean hasBreak = false;
-                    TourActivity prevAct = route.getStart();
-                    for (TourActivity act : route.getActivities()) {
-                        if (act instanceof BreakActivity) hasBreak = true;
-                        //ToDo: The used cost here is the TravelDisutility rather than travel time.
-                        costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                        costs += vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
-                        prevAct = act;
-                    }
-                    costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), route.getEnd().getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                    if (route.getVehicle().getBreak() != null) {
-                        if (!hasBreak) {
-                            //break defined and required but not assigned penalty
-                            if (route.getEnd().getArrTime() > route.getVehicle().getBreak().getTimeWindow().getEnd()) {
-                                costs += 4 * (maxCosts * 2 + route.getVehicle().getBreak().getServiceDuration() * route.getVehicle().getType().getVehicleCostParams().perServiceTimeUnit);
-                            }
-                        }
-                        //throw new RuntimeException("There exists Breaks.");
-                        LOG.info("************There exists Breaks! The vehicleId of this route is: " + route.getVehicle().getId() + "The number of breaks of this route is: " + route.getVehicle().getBreak() + "************");
-                    }
+                    costs += routeCosts.get(route, r -> getJspritDefaultRouteCosts(vrp, r, maxCosts, true));
                 }
                 if (solution.getUnassignedJobs().size() != 0){
                     //throw new RuntimeException("There exists unassignedJobs.");
@@ -158,32 +140,14 @@ public class MySolutionCostCalculatorFactory {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
+            private final RouteCostCache<Double> routeCosts = new RouteCostCache<>();
+
             @Override
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = 0.;
 
                 for (VehicleRoute route : solution.getRoutes()) {
-                    //costs += route.getVehicle().getType().getVehicleCostParams().fix;
-                    boolean hasBreak = false;
-                    TourActivity prevAct = route.getStart();
-                    for (TourActivity act : route.getActivities()) {
-                        if (act instanceof BreakActivity) hasBreak = true;
-                        //ToDo: The used cost here is the TravelDisutility rather than travel time.
-                        costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                        costs += vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
-                        prevAct = act;
-                    }
-                    costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), route.getEnd().getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                    if (route.getVehicle().getBreak() != null) {
-                        if (!hasBreak) {
-                            //break defined and required but not assigned penalty
-                            if (route.getEnd().getArrTime() > route.getVehicle().getBreak().getTimeWindow().getEnd()) {
-                                costs += 4 * (maxCosts * 2 + route.getVehicle().getBreak().getServiceDuration() * route.getVehicle().getType().getVehicleCostParams().perServiceTimeUnit);
-                            }
-                        }
-                        //throw new RuntimeException("There exists Breaks.");
-                        LOG.info("************There exists Breaks! The vehicleId of this route is: " + route.getVehicle().getId() + "The number of breaks of this route is: " + route.getVehicle().getBreak() + "************");
-                    }
+                    costs += routeCosts.get(route, r -> getJspritDefaultRouteCosts(vrp, r, maxCosts, false));
                 }
                 if (solution.getUnassignedJobs().size() != 0){
                     //throw new RuntimeException("There exists unassignedJobs.");
@@ -197,36 +161,18 @@ public class MySolutionCostCalculatorFactory {
         };
     }
 
-    private static SolutionCostCalculator getJspritDefaultPlusLatePickupObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF, double serviceTimeInMatsim) {
+    private static SolutionCostCalculator getJspritDefaultPlusLatePickupObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis, double serviceTimeInMatsim) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
+            private final RouteCostCache<Double> routeCosts = new RouteCostCache<>();
+
             @Override
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = 0.;
 
                 for (VehicleRoute route : solution.getRoutes()) {
-                    costs += route.getVehicle().getType().getVehicleCostParams().fix;
-                    boolean hasBreak = false;
-                    TourActivity prevAct = route.getStart();
-                    for (TourActivity act : route.getActivities()) {
-                        if (act instanceof BreakActivity) hasBreak = true;
-                        //ToDo: The used cost here is the TravelDisutility rather than travel time.
-                        costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                        costs += vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
-                        prevAct = act;
-                    }
-                    costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), route.getEnd().getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                    if (route.getVehicle().getBreak() != null) {
-                        if (!hasBreak) {
-                            //break defined and required but not assigned penalty
-                            if (route.getEnd().getArrTime() > route.getVehicle().getBreak().getTimeWindow().getEnd()) {
-                                costs += 4 * (maxCosts * 2 + route.getVehicle().getBreak().getServiceDuration() * route.getVehicle().getType().getVehicleCostParams().perServiceTimeUnit);
-                            }
-                        }
-                        //throw new RuntimeException("There exists Breaks.");
-                        LOG.info("************There exists Breaks! The vehicleId of this route is: " + route.getVehicle().getId() + "The number of breaks of this route is: " + route.getVehicle().getBreak() + "************");
-                    }
+                    costs += routeCosts.get(route, r -> getJspritDefaultRouteCosts(vrp, r, maxCosts, true));
                 }
                 if (solution.getUnassignedJobs().size() != 0){
                     //throw new RuntimeException("There exists unassignedJobs.");
@@ -237,48 +183,28 @@ public class MySolutionCostCalculatorFactory {
                 }
 
                 //add costs for late pickups
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add penalty for too early pickups
-                for (Map.Entry<String, Double> entry : statisticCollectorForOF.getPickupTimeMap().entrySet()) {
-                    double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - entry.getValue();
-                    costs += timeOffset /*- statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey())*/;
-                }
+                //(desired delivery time - pickup time)
+                costs += kpis.getPickupToDesiredDeliveryTime() + kpis.getEarlyPickupTime();
 
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getJspritDefaultPlusLatePickupMinusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF, double serviceTimeInMatsim) {
+    private static SolutionCostCalculator getJspritDefaultPlusLatePickupMinusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis, double serviceTimeInMatsim) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
+            private final RouteCostCache<Double> routeCosts = new RouteCostCache<>();
+
             @Override
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = 0.;
 
                 for (VehicleRoute route : solution.getRoutes()) {
-                    //costs += route.getVehicle().getType().getVehicleCostParams().fix;
-                    boolean hasBreak = false;
-                    TourActivity prevAct = route.getStart();
-                    for (TourActivity act : route.getActivities()) {
-                        if (act instanceof BreakActivity) hasBreak = true;
-                        //ToDo: The used cost here is the TravelDisutility rather than travel time.
-                        costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                        costs += vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
-                        prevAct = act;
-                    }
-                    costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), route.getEnd().getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                    if (route.getVehicle().getBreak() != null) {
-                        if (!hasBreak) {
-                            //break defined and required but not assigned penalty
-                            if (route.getEnd().getArrTime() > route.getVehicle().getBreak().getTimeWindow().getEnd()) {
-                                costs += 4 * (maxCosts * 2 + route.getVehicle().getBreak().getServiceDuration() * route.getVehicle().getType().getVehicleCostParams().perServiceTimeUnit);
-                            }
-                        }
-                        //throw new RuntimeException("There exists Breaks.");
-                        LOG.info("************There exists Breaks! The vehicleId of this route is: " + route.getVehicle().getId() + "The number of breaks of this route is: " + route.getVehicle().getBreak() + "************");
-                    }
+                    costs += routeCosts.get(route, r -> getJspritDefaultRouteCosts(vrp, r, maxCosts, false));
                 }
                 if (solution.getUnassignedJobs().size() != 0){
                     //throw new RuntimeException("There exists unassignedJobs.");
@@ -289,12 +215,10 @@ public class MySolutionCostCalculatorFactory {
                 }
 
                 //add costs for late pickups
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add penalty for too early pickups
-                for (Map.Entry<String, Double> entry : statisticCollectorForOF.getPickupTimeMap().entrySet()) {
-                    double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - entry.getValue();
-                    costs += timeOffset /*- statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey())*/;
-                }
+                //(desired delivery time - pickup time)
+                costs += kpis.getPickupToDesiredDeliveryTime() + kpis.getEarlyPickupTime();
 
                 return costs;
             }
@@ -306,32 +230,14 @@ public class MySolutionCostCalculatorFactory {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
+            private final RouteCostCache<Double> routeCosts = new RouteCostCache<>();
+
             @Override
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = 0.;
 
                 for (VehicleRoute route : solution.getRoutes()) {
-                    costs += TransportCostUtils.getVehicleFixCostPerDay();
-                    boolean hasBreak = false;
-                    TourActivity prevAct = route.getStart();
-                    for (TourActivity act : route.getActivities()) {
-                        if (act instanceof BreakActivity) hasBreak = true;
-                        //ToDo: The used cost here is the TravelDisutility rather than travel time.
-                        costs += TransportCostUtils.getDriveCostRate() * vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                        costs += TransportCostUtils.getDriveCostRate() * vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
-                        prevAct = act;
-                    }
-                    costs += TransportCostUtils.getDriveCostRate() * vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), route.getEnd().getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                    if (route.getVehicle().getBreak() != null) {
-                        if (!hasBreak) {
-                            //break defined and required but not assigned penalty
-                            if (route.getEnd().getArrTime() > route.getVehicle().getBreak().getTimeWindow().getEnd()) {
-                                costs += 4 * (maxCosts * 2 + route.getVehicle().getBreak().getServiceDuration() * TransportCostUtils.getDriveCostRate());
-                            }
-                        }
-                        //throw new RuntimeException("There exists Breaks.");
-                        LOG.info("************There exists Breaks! The vehicleId of this route is: " + route.getVehicle().getId() + "The number of breaks of this route is: " + route.getVehicle().getBreak() + "************");
-                    }
+                    costs += routeCosts.get(route, r -> getJspritRouteCosts(vrp, r, maxCosts, true));
                 }
                 if (solution.getUnassignedJobs().size() != 0){
                     //throw new RuntimeException("There exists unassignedJobs.");
@@ -350,32 +256,14 @@ public class MySolutionCostCalculatorFactory {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
+            private final RouteCostCache<Double> routeCosts = new RouteCostCache<>();
+
             @Override
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = 0.;
 
                 for (VehicleRoute route : solution.getRoutes()) {
-                    //costs += TransportCostUtils.getVehicleFixCostPerDay();
-                    boolean hasBreak = false;
-                    TourActivity prevAct = route.getStart();
-                    for (TourActivity act : route.getActivities()) {
-                        if (act instanceof BreakActivity) hasBreak = true;
-                        //ToDo: The used cost here is the TravelDisutility rather than travel time.
-                        costs += TransportCostUtils.getDriveCostRate() * vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                        costs += TransportCostUtils.getDriveCostRate() * vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
-                        prevAct = act;
-                    }
-                    costs += TransportCostUtils.getDriveCostRate() * vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), route.getEnd().getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                    if (route.getVehicle().getBreak() != null) {
-                        if (!hasBreak) {
-                            //break defined and required but not assigned penalty
-                            if (route.getEnd().getArrTime() > route.getVehicle().getBreak().getTimeWindow().getEnd()) {
-                                costs += 4 * (maxCosts * 2 + route.getVehicle().getBreak().getServiceDuration() * TransportCostUtils.getDriveCostRate());
-                            }
-                        }
-                        //throw new RuntimeException("There exists Breaks.");
-                        LOG.info("************There exists Breaks! The vehicleId of this route is: " + route.getVehicle().getId() + "The number of breaks of this route is: " + route.getVehicle().getBreak() + "************");
-                    }
+                    costs += routeCosts.get(route, r -> getJspritRouteCosts(vrp, r, maxCosts, false));
                 }
                 if (solution.getUnassignedJobs().size() != 0){
                     //throw new RuntimeException("There exists unassignedJobs.");
@@ -390,36 +278,18 @@ public class MySolutionCostCalculatorFactory {
     }
 
     //jsprit default idea but using generalised transport costs
-    private static SolutionCostCalculator getJspritPlusLatePickupObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF, double serviceTimeInMatsim) {
+    private static SolutionCostCalculator getJspritPlusLatePickupObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis, double serviceTimeInMatsim) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
+            private final RouteCostCache<Double> routeCosts = new RouteCostCache<>();
+
             @Override
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = 0.;
 
                 for (VehicleRoute route : solution.getRoutes()) {
-                    costs += TransportCostUtils.getVehicleFixCostPerDay();
-                    boolean hasBreak = false;
-                    TourActivity prevAct = route.getStart();
-                    for (TourActivity act : route.getActivities()) {
-                        if (act instanceof BreakActivity) hasBreak = true;
-                        //ToDo: The used cost here is the TravelDisutility rather than travel time.
-                        costs += TransportCostUtils.getDriveCostRate() * vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                        costs += TransportCostUtils.getDriveCostRate() * vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
-                        prevAct = act;
-                    }
-                    costs += TransportCostUtils.getDriveCostRate() * vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), route.getEnd().getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                    if (route.getVehicle().getBreak() != null) {
-                        if (!hasBreak) {
-                            //break defined and required but not assigned penalty
-                            if (route.getEnd().getArrTime() > route.getVehicle().getBreak().getTimeWindow().getEnd()) {
-                                costs += 4 * (maxCosts * 2 + route.getVehicle().getBreak().getServiceDuration() * TransportCostUtils.getDriveCostRate());
-                            }
-                        }
-                        //throw new RuntimeException("There exists Breaks.");
-                        LOG.info("************There exists Breaks! The vehicleId of this route is: " + route.getVehicle().getId() + "The number of breaks of this route is: " + route.getVehicle().getBreak() + "************");
-                    }
+                    costs += routeCosts.get(route, r -> getJspritRouteCosts(vrp, r, maxCosts, true));
                 }
                 if (solution.getUnassignedJobs().size() != 0){
                     //throw new RuntimeException("There exists unassignedJobs.");
@@ -430,18 +300,10 @@ public class MySolutionCostCalculatorFactory {
                 }
 
                 //add costs for late pickups
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add penalty for too early pickups
-                for (Map.Entry<String, Double> entry : statisticCollectorForOF.getPickupTimeMap().entrySet()) {
-                    if(statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey()) > entry.getValue()) {
-                        costs += TransportCostUtils.getDriveCostRate() * (statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey()) - entry.getValue());
-                        double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey());
-                        costs += TransportCostUtils.getStandardActivityDeviationCosts() * (timeOffset /*- statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey())*/);
-                    }else{
-                        double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - entry.getValue();
-                        costs += TransportCostUtils.getStandardActivityDeviationCosts() * (timeOffset /*- statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey())*/);
-                    }
-                }
+                costs += TransportCostUtils.getDriveCostRate() * kpis.getEarlyPickupTime();
+                costs += TransportCostUtils.getStandardActivityDeviationCosts() * kpis.getPickupToDesiredDeliveryTime();
 
                 return costs;
             }
@@ -449,36 +311,18 @@ public class MySolutionCostCalculatorFactory {
     }
 
     //jsprit default idea but using generalised transport costs
-    private static SolutionCostCalculator getJspritPlusLatePickupMinusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF, double serviceTimeInMatsim) {
+    private static SolutionCostCalculator getJspritPlusLatePickupMinusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis, double serviceTimeInMatsim) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
+            private final RouteCostCache<Double> routeCosts = new RouteCostCache<>();
+
             @Override
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = 0.;
 
                 for (VehicleRoute route : solution.getRoutes()) {
-                    //costs += TransportCostUtils.getVehicleFixCostPerDay();
-                    boolean hasBreak = false;
-                    TourActivity prevAct = route.getStart();
-                    for (TourActivity act : route.getActivities()) {
-                        if (act instanceof BreakActivity) hasBreak = true;
-                        //ToDo: The used cost here is the TravelDisutility rather than travel time.
-                        costs += TransportCostUtils.getDriveCostRate() * vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                        costs += TransportCostUtils.getDriveCostRate() * vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
-                        prevAct = act;
-                    }
-                    costs += TransportCostUtils.getDriveCostRate() * vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), route.getEnd().getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
-                    if (route.getVehicle().getBreak() != null) {
-                        if (!hasBreak) {
-                            //break defined and required but not assigned penalty
-                            if (route.getEnd().getArrTime() > route.getVehicle().getBreak().getTimeWindow().getEnd()) {
-                                costs += 4 * (maxCosts * 2 + route.getVehicle().getBreak().getServiceDuration() * TransportCostUtils.getDriveCostRate());
-                            }
-                        }
-                        //throw new RuntimeException("There exists Breaks.");
-                        LOG.info("************There exists Breaks! The vehicleId of this route is: " + route.getVehicle().getId() + "The number of breaks of this route is: " + route.getVehicle().getBreak() + "************");
-                    }
+                    costs += routeCosts.get(route, r -> getJspritRouteCosts(vrp, r, maxCosts, false));
                 }
                 if (solution.getUnassignedJobs().size() != 0){
                     //throw new RuntimeException("There exists unassignedJobs.");
@@ -489,18 +333,10 @@ public class MySolutionCostCalculatorFactory {
                 }
 
                 //add costs for late pickups
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add penalty for too early pickups
-                for (Map.Entry<String, Double> entry : statisticCollectorForOF.getPickupTimeMap().entrySet()) {
-                    if(statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey()) > entry.getValue()) {
-                        costs += TransportCostUtils.getDriveCostRate() * (statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey()) - entry.getValue());
-                        double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey());
-                        costs += TransportCostUtils.getStandardActivityDeviationCosts() * (timeOffset /*- statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey())*/);
-                    }else{
-                        double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - entry.getValue();
-                        costs += TransportCostUtils.getStandardActivityDeviationCosts() * (timeOffset /*- statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey())*/);
-                    }
-                }
+                costs += TransportCostUtils.getDriveCostRate() * kpis.getEarlyPickupTime();
+                costs += TransportCostUtils.getStandardActivityDeviationCosts() * kpis.getPickupToDesiredDeliveryTime();
 
                 return costs;
             }
@@ -547,7 +383,7 @@ public class MySolutionCostCalculatorFactory {
         };
     }
 
-    private static SolutionCostCalculator getTTObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getTTObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -555,15 +391,15 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add travel time
-                costs += TransportCostUtils.getTravelTimeCosts() * statisticCollectorForOF.getTravelTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getTravelTimeCosts() * kpis.getTravelTime();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getTTPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getTTPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -571,17 +407,17 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add travel time
-                costs += TransportCostUtils.getTravelTimeCosts() * statisticCollectorForOF.getTravelTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getTravelTimeCosts() * kpis.getTravelTime();
                 //add used number of vehicles
-                costs += TransportCostUtils.getVehicleCosts() * solution.getRoutes().size();
+                costs += TransportCostUtils.getVehicleCosts() * kpis.getVehiclesUsed();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getTTTDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getTTTDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -589,17 +425,17 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add travel time
-                costs += TransportCostUtils.getTravelTimeCosts() * statisticCollectorForOF.getTravelTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getTravelTimeCosts() * kpis.getTravelTime();
                 //add travel distance
-                costs += TransportCostUtils.getTravelDistanceCosts() * statisticCollectorForOF.getPassengerTraveledDistanceMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getTravelDistanceCosts() * kpis.getPassengerTraveledDistance();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getTDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getTDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -607,15 +443,15 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add travel distance
-                costs += TransportCostUtils.getTravelDistanceCosts() * statisticCollectorForOF.getPassengerTraveledDistanceMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getTravelDistanceCosts() * kpis.getPassengerTraveledDistance();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getWTObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getWTObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -623,15 +459,15 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add waiting time
-                costs += TransportCostUtils.getWaitingTimeCosts() * statisticCollectorForOF.getWaitingTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getWaitingTimeCosts() * kpis.getWaitingTime();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getTTWTObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getTTWTObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -639,17 +475,17 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add travel time
-                costs += TransportCostUtils.getTravelTimeCosts() * statisticCollectorForOF.getTravelTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getTravelTimeCosts() * kpis.getTravelTime();
                 //add waiting time
-                costs += TransportCostUtils.getWaitingTimeCosts() * statisticCollectorForOF.getWaitingTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getWaitingTimeCosts() * kpis.getWaitingTime();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getTTWTTDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getTTWTTDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -657,19 +493,19 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add travel time
-                costs += TransportCostUtils.getTravelTimeCosts() * statisticCollectorForOF.getTravelTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getTravelTimeCosts() * kpis.getTravelTime();
                 //add waiting time
-                costs += TransportCostUtils.getWaitingTimeCosts() * statisticCollectorForOF.getWaitingTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getWaitingTimeCosts() * kpis.getWaitingTime();
                 //add travel distance
-                costs += TransportCostUtils.getTravelDistanceCosts() * statisticCollectorForOF.getPassengerTraveledDistanceMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getTravelDistanceCosts() * kpis.getPassengerTraveledDistance();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getOnTimeArrivalObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getOnTimeArrivalObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -677,19 +513,16 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add penalty for early/late arrival
                 //ToDo: maybe 15 minutes earlier is better than on-time arrival?
-                for (Map.Entry<String, Double> entry : statisticCollectorForOF.getDeliveryTimeMap().entrySet()) {
-                    double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - entry.getValue();
-                    costs += TransportCostUtils.getStandardActivityDeviationCosts() * timeOffset;
-                }
+                costs += TransportCostUtils.getStandardActivityDeviationCosts() * kpis.getDeliveryToDesiredDeliveryTime();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getOnTimeArrivalPlusTDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getOnTimeArrivalPlusTDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -697,21 +530,18 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add penalty for early/late arrival
                 //ToDo: maybe 15 minutes earlier is better than on-time arrival?
-                for (Map.Entry<String, Double> entry : statisticCollectorForOF.getDeliveryTimeMap().entrySet()) {
-                    double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - entry.getValue();
-                    costs += TransportCostUtils.getStandardActivityDeviationCosts() * timeOffset;
-                }
+                costs += TransportCostUtils.getStandardActivityDeviationCosts() * kpis.getDeliveryToDesiredDeliveryTime();
                 //add travel distance
-                costs += TransportCostUtils.getTravelDistanceCosts() * statisticCollectorForOF.getPassengerTraveledDistanceMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getTravelDistanceCosts() * kpis.getPassengerTraveledDistance();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getDDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getDDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -719,15 +549,15 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add driven distance
-                costs += TransportCostUtils.getDrivenDistanceCosts() * statisticCollectorForOF.getDrivenDistanceMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getDrivenDistanceCosts() * kpis.getDrivenDistance();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getDDPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getDDPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -735,17 +565,17 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add driven distance
-                costs += TransportCostUtils.getDrivenDistanceCosts() * statisticCollectorForOF.getDrivenDistanceMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getDrivenDistanceCosts() * kpis.getDrivenDistance();
                 //add used number of vehicles
-                costs += TransportCostUtils.getVehicleCosts() * solution.getRoutes().size();
+                costs += TransportCostUtils.getVehicleCosts() * kpis.getVehiclesUsed();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getDTObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getDTObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -753,15 +583,15 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add driven time
-                costs += TransportCostUtils.getDriveCostRate() * statisticCollectorForOF.getDrivenTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getDriveCostRate() * kpis.getDrivenTime();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getDTPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getDTPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -769,12 +599,12 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add driven time
-                costs += TransportCostUtils.getDriveCostRate() * statisticCollectorForOF.getDrivenTimeMap().values().stream().mapToDouble(x -> x).sum();
-                costs -= TransportCostUtils.getDriveCostRate() * 3600 * 8 * solution.getRoutes().size();
+                costs += TransportCostUtils.getDriveCostRate() * kpis.getDrivenTime();
+                costs -= TransportCostUtils.getDriveCostRate() * 3600 * 8 * kpis.getVehiclesUsed();
                 //add used number of vehicles
-                costs += TransportCostUtils.getVehicleCosts() * solution.getRoutes().size();
+                costs += TransportCostUtils.getVehicleCosts() * kpis.getVehiclesUsed();
                 return costs;
             }
         };
@@ -795,7 +625,7 @@ public class MySolutionCostCalculatorFactory {
         };
     }
 
-    private static SolutionCostCalculator getTTPlusDDPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getTTPlusDDPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -803,19 +633,19 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add travel time
-                costs += TransportCostUtils.getTravelTimeCosts() * statisticCollectorForOF.getTravelTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getTravelTimeCosts() * kpis.getTravelTime();
                 //add driven distance
-                costs += TransportCostUtils.getDrivenDistanceCosts() * statisticCollectorForOF.getDrivenDistanceMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getDrivenDistanceCosts() * kpis.getDrivenDistance();
                 //add used number of vehicles
-                costs += TransportCostUtils.getVehicleCosts() * solution.getRoutes().size();
+                costs += TransportCostUtils.getVehicleCosts() * kpis.getVehiclesUsed();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getTTPlusDDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getTTPlusDDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -823,17 +653,17 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add travel time
-                costs += TransportCostUtils.getTravelTimeCosts() * statisticCollectorForOF.getTravelTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getTravelTimeCosts() * kpis.getTravelTime();
                 //add driven distance
-                costs += TransportCostUtils.getDrivenDistanceCosts() * statisticCollectorForOF.getDrivenDistanceMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getDrivenDistanceCosts() * kpis.getDrivenDistance();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getIVTObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getIVTObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -841,15 +671,15 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add in-vehicle time
-                costs += TransportCostUtils.getInVehicleTimeCost() * statisticCollectorForOF.getInVehicleTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getInVehicleTimeCost() * kpis.getInVehicleTime();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getIVTPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getIVTPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -857,17 +687,17 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add in-vehicle time
-                costs += TransportCostUtils.getInVehicleTimeCost() * statisticCollectorForOF.getInVehicleTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getInVehicleTimeCost() * kpis.getInVehicleTime();
                 //add used number of vehicles
-                costs += TransportCostUtils.getVehicleCosts() * solution.getRoutes().size();
+                costs += TransportCostUtils.getVehicleCosts() * kpis.getVehiclesUsed();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getIVTPlusDDPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getIVTPlusDDPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -875,19 +705,19 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add in-vehicle time
-                costs += TransportCostUtils.getInVehicleTimeCost() * statisticCollectorForOF.getInVehicleTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getInVehicleTimeCost() * kpis.getInVehicleTime();
                 //add driven distance
-                costs += TransportCostUtils.getDrivenDistanceCosts() * statisticCollectorForOF.getDrivenDistanceMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getDrivenDistanceCosts() * kpis.getDrivenDistance();
                 //add used number of vehicles
-                costs += TransportCostUtils.getVehicleCosts() * solution.getRoutes().size();
+                costs += TransportCostUtils.getVehicleCosts() * kpis.getVehiclesUsed();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getIVTPlusDDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF) {
+    private static SolutionCostCalculator getIVTPlusDDObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -895,17 +725,17 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add in-vehicle time
-                costs += TransportCostUtils.getInVehicleTimeCost() * statisticCollectorForOF.getInVehicleTimeMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getInVehicleTimeCost() * kpis.getInVehicleTime();
                 //add driven distance
-                costs += TransportCostUtils.getDrivenDistanceCosts() * statisticCollectorForOF.getDrivenDistanceMap().values().stream().mapToDouble(x -> x).sum();
+                costs += TransportCostUtils.getDrivenDistanceCosts() * kpis.getDrivenDistance();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getLatePickupObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF, double serviceTimeInMatsim) {
+    private static SolutionCostCalculator getLatePickupObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis, double serviceTimeInMatsim) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -913,24 +743,17 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add penalty for too early pickups
-                for (Map.Entry<String, Double> entry : statisticCollectorForOF.getPickupTimeMap().entrySet()) {
-                    if(statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey()) > entry.getValue()) {
-                        costs += TransportCostUtils.getDriveCostRate() * (statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey()) - entry.getValue());
-                        double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey());
-                        costs += TransportCostUtils.getStandardActivityDeviationCosts() * (timeOffset /*- statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey())*/) - TransportCostUtils.getInVehicleTimeCost() * (/*statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey()) +*/ 2 * serviceTimeInMatsim);
-                    }else{
-                        double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - entry.getValue();
-                        costs += TransportCostUtils.getStandardActivityDeviationCosts() * (timeOffset /*- statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey())*/) - TransportCostUtils.getInVehicleTimeCost() * (/*statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey()) +*/ 2 * serviceTimeInMatsim);
-                    }
-                }
+                costs += TransportCostUtils.getDriveCostRate() * kpis.getEarlyPickupTime();
+                costs += TransportCostUtils.getStandardActivityDeviationCosts() * kpis.getPickupToDesiredDeliveryTime();
+                costs -= TransportCostUtils.getInVehicleTimeCost() * 2 * serviceTimeInMatsim * kpis.getServedPassengers();
                 return costs;
             }
         };
     }
 
-    private static SolutionCostCalculator getLatePickupPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, StatisticCollectorForOF statisticCollectorForOF, double serviceTimeInMatsim) {
+    private static SolutionCostCalculator getLatePickupPlusNoVehObjectiveFunction(final VehicleRoutingProblem vrp, final double maxCosts, SolutionKpiAccumulator kpis, double serviceTimeInMatsim) {
         //if (objectiveFunction != null) return objectiveFunction;
 
         return new SolutionCostCalculator() {
@@ -938,25 +761,70 @@ public class MySolutionCostCalculatorFactory {
             public double getCosts(VehicleRoutingProblemSolution solution) {
                 double costs = MySolutionCostCalculatorFactory.getDefaultCosts(solution, maxCosts);
 
-                statisticCollectorForOF.statsCollector(vrp, solution);
+                kpis.accumulate(solution);
                 //add penalty for too early pickups
-                for (Map.Entry<String, Double> entry : statisticCollectorForOF.getPickupTimeMap().entrySet()) {
-                    if(statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey()) > entry.getValue()) {
-                        costs += TransportCostUtils.getDriveCostRate() * (statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey()) - entry.getValue());
-                        double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - statisticCollectorForOF.getDesiredPickupTimeMap().get(entry.getKey());
-                        costs += TransportCostUtils.getStandardActivityDeviationCosts() * (timeOffset /*- statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey())*/) - TransportCostUtils.getInVehicleTimeCost() * (/*statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey()) +*/ 2 * serviceTimeInMatsim);
-                    }else{
-                        double timeOffset = statisticCollectorForOF.getDesiredDeliveryTimeMap().get(entry.getKey()) - entry.getValue();
-                        costs += TransportCostUtils.getStandardActivityDeviationCosts() * (timeOffset /*- statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey())*/) - TransportCostUtils.getInVehicleTimeCost() * (/*statisticCollectorForOF.getInVehicleTimeMap().get(entry.getKey()) +*/ 2 * serviceTimeInMatsim);
-                    }
-                }
+                costs += TransportCostUtils.getDriveCostRate() * kpis.getEarlyPickupTime();
+                costs += TransportCostUtils.getStandardActivityDeviationCosts() * kpis.getPickupToDesiredDeliveryTime();
+                costs -= TransportCostUtils.getInVehicleTimeCost() * 2 * serviceTimeInMatsim * kpis.getServedPassengers();
                 //add used number of vehicles
-                costs += TransportCostUtils.getVehicleCosts() * solution.getRoutes().size();
+                costs += TransportCostUtils.getVehicleCosts() * kpis.getVehiclesUsed();
                 return costs;
             }
         };
     }
 
+    //costs of a route as in the jsprit default objective function (cached per route)
+    private static double getJspritDefaultRouteCosts(VehicleRoutingProblem vrp, VehicleRoute route, double maxCosts, boolean withFixCosts) {
+        double costs = withFixCosts ? route.getVehicle().getType().getVehicleCostParams().fix : 0;
+        boolean hasBreak = false;
+        TourActivity prevAct = route.getStart();
+        for (TourActivity act : route.getActivities()) {
+            if (act instanceof BreakActivity) hasBreak = true;
+            //ToDo: The used cost here is the TravelDisutility rather than travel time.
+            costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
+            costs += vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
+            prevAct = act;
+        }
+        costs += vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), route.getEnd().getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
+        if (route.getVehicle().getBreak() != null) {
+            if (!hasBreak) {
+                //break defined and required but not assigned penalty
+                if (route.getEnd().getArrTime() > route.getVehicle().getBreak().getTimeWindow().getEnd()) {
+                    costs += 4 * (maxCosts * 2 + route.getVehicle().getBreak().getServiceDuration() * route.getVehicle().getType().getVehicleCostParams().perServiceTimeUnit);
+                }
+            }
+            //throw new RuntimeException("There exists Breaks.");
+            LOG.info("************There exists Breaks! The vehicleId of this route is: " + route.getVehicle().getId() + "The number of breaks of this route is: " + route.getVehicle().getBreak() + "************");
+        }
+        return costs;
+    }
+
+    //costs of a route as in the jsprit default objective function, but using generalised transport costs (cached per route)
+    private static double getJspritRouteCosts(VehicleRoutingProblem vrp, VehicleRoute route, double maxCosts, boolean withFixCosts) {
+        double costs = withFixCosts ? TransportCostUtils.getVehicleFixCostPerDay() : 0;
+        boolean hasBreak = false;
+        TourActivity prevAct = route.getStart();
+        for (TourActivity act : route.getActivities()) {
+            if (act instanceof BreakActivity) hasBreak = true;
+            //ToDo: The used cost here is the TravelDisutility rather than travel time.
+            costs += TransportCostUtils.getDriveCostRate() * vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), act.getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
+            costs += TransportCostUtils.getDriveCostRate() * vrp.getActivityCosts().getActivityCost(act, act.getArrTime(), route.getDriver(), route.getVehicle());
+            prevAct = act;
+        }
+        costs += TransportCostUtils.getDriveCostRate() * vrp.getTransportCosts().getTransportCost(prevAct.getLocation(), route.getEnd().getLocation(), prevAct.getEndTime(), route.getDriver(), route.getVehicle());
+        if (route.getVehicle().getBreak() != null) {
+            if (!hasBreak) {
+                //break defined and required but not assigned penalty
+                if (route.getEnd().getArrTime() > route.getVehicle().getBreak().getTimeWindow().getEnd()) {
+                    costs += 4 * (maxCosts * 2 + route.getVehicle().getBreak().getServiceDuration() * TransportCostUtils.getDriveCostRate());
+                }
+            }
+            //throw new RuntimeException("There exists Breaks.");
+            LOG.info("************There exists Breaks! The vehicleId of this route is: " + route.getVehicle().getId() + "The number of breaks of this route is: " + route.getVehicle().getBreak() + "************");
+        }
+        return costs;
+    }
+
     private static double getDefaultCosts(VehicleRoutingProblemSolution solution, double maxCosts) {
         double costs = 0.;
         for (VehicleRoute route : solution.getRoutes()) {
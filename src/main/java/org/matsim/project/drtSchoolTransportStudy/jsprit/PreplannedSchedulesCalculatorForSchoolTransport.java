@@ -77,6 +77,9 @@ import org.matsim.project.drtSchoolTransportStudy.run.CaseStudyTool;
  * @author Michal Maciejewski (michalm)
  */
 public class PreplannedSchedulesCalculatorForSchoolTransport {
+    private static final int PORTFOLIO_ROUNDS = 10;
+    private static final long PORTFOLIO_RANDOM_SEED = 4711;
+
     public static class Options {
         public final boolean infiniteFleet;
         public final boolean printProgressStatistics;
@@ -84,6 +87,8 @@ public class PreplannedSchedulesCalculatorForSchoolTransport {
         public final boolean multiThread;
         public final CaseStudyTool caseStudyTool;
         public final String outputDirectory;
+        public final String matrixCacheDirectory; // null: the matrix is not cached
+        public final int numberOfSearches; // > 1: portfolio of parallel searches (see JspritPortfolio)
 
         public Options(boolean infiniteFleet, boolean printProgressStatistics, int maxIterations, boolean multiThread,
                        CaseStudyTool caseStudyTool) {
@@ -93,6 +98,8 @@ public class PreplannedSchedulesCalculatorForSchoolTransport {
             this.multiThread = multiThread;
             this.caseStudyTool = caseStudyTool;
             this.outputDirectory = null;
+            this.matrixCacheDirectory = null;
+            this.numberOfSearches = 1;
         }
 
         public Options(boolean infiniteFleet, boolean printProgressStatistics, int maxIterations, boolean multiThread) {
@@ -102,6 +109,8 @@ public class PreplannedSchedulesCalculatorForSchoolTransport {
             this.multiThread = multiThread;
             this.caseStudyTool = new CaseStudyTool();
             this.outputDirectory = null;
+            this.matrixCacheDirectory = null;
+            this.numberOfSearches = 1;
         }
 
         public Options(boolean infiniteFleet, boolean printProgressStatistics, int maxIterations, boolean multiThread,
@@ -112,6 +121,82 @@ public class PreplannedSchedulesCalculatorForSchoolTransport {
             this.multiThread = multiThread;
             this.caseStudyTool = caseStudyTool;
             this.outputDirectory = outputDirectory;
+            this.matrixCacheDirectory = null;
+            this.numberOfSearches = 1;
+        }
+
+        private Options(Builder builder) {
+            this.infiniteFleet = builder.infiniteFleet;
+            this.printProgressStatistics = builder.printProgressStatistics;
+            this.maxIterations = builder.maxIterations;
+            this.multiThread = builder.multiThread;
+            this.caseStudyTool = builder.caseStudyTool;
+            this.outputDirectory = builder.outputDirectory;
+            this.matrixCacheDirectory = builder.matrixCacheDirectory;
+            this.numberOfSearches = builder.numberOfSearches;
+        }
+
+        public static Builder newBuilder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private boolean infiniteFleet = false;
+            private boolean printProgressStatistics = false;
+            private int maxIterations = 200;
+            private boolean multiThread = false;
+            private CaseStudyTool caseStudyTool = new CaseStudyTool();
+            private String outputDirectory = null;
+            private String matrixCacheDirectory = null;
+            private int numberOfSearches = 1;
+
+            private Builder() {
+            }
+
+            public Builder infiniteFleet(boolean infiniteFleet) {
+                this.infiniteFleet = infiniteFleet;
+                return this;
+            }
+
+            public Builder printProgressStatistics(boolean printProgressStatistics) {
+                this.printProgressStatistics = printProgressStatistics;
+                return this;
+            }
+
+            public Builder maxIterations(int maxIterations) {
+                this.maxIterations = maxIterations;
+                return this;
+            }
+
+            public Builder multiThread(boolean multiThread) {
+                this.multiThread = multiThread;
+                return this;
+            }
+
+            public Builder caseStudyTool(CaseStudyTool caseStudyTool) {
+                this.caseStudyTool = caseStudyTool;
+                return this;
+            }
+
+            public Builder outputDirectory(String outputDirectory) {
+                this.outputDirectory = outputDirectory;
+                return this;
+            }
+
+            public Builder matrixCacheDirectory(String matrixCacheDirectory) {
+                this.matrixCacheDirectory = matrixCacheDirectory;
+                return this;
+            }
+
+            public Builder numberOfSearches(int numberOfSearches) {
+                Preconditions.checkArgument(numberOfSearches >= 1, "The number of searches must be at least 1");
+                this.numberOfSearches = numberOfSearches;
+                return this;
+            }
+
+            public Options build() {
+                return new Options(this);
+            }
         }
     }
 
@@ -186,7 +271,8 @@ public class PreplannedSchedulesCalculatorForSchoolTransport {
         }
 
         // compute matrix
-        var vrpCosts = MatrixBasedVrpCosts.calculateVrpCosts(network, locationByLinkId);
+        var vrpCosts = MatrixBasedVrpCosts.calculateVrpCosts(network, locationByLinkId,
+                options.matrixCacheDirectory == null ? null : Path.of(options.matrixCacheDirectory));
         vrpBuilder.setRoutingCost(vrpCosts);
 
         var preplannedRequestByShipmentId = new HashMap<String, PreplannedRequest>();
@@ -246,13 +332,21 @@ public class PreplannedSchedulesCalculatorForSchoolTransport {
         if (options.multiThread) {
             numOfThreads = Runtime.getRuntime().availableProcessors() + "";
         }
-        var algorithm = Jsprit.Builder.newInstance(problem)
-                .setObjectiveFunction(new SchoolTrafficObjectiveFunction(problem, options))
-                .setProperty(Jsprit.Parameter.THREADS, numOfThreads)
-                .buildAlgorithm();
-        algorithm.setMaxIterations(options.maxIterations);
-        var solutions = algorithm.searchSolutions();
-        var bestSolution = Solutions.bestOf(solutions);
+        VehicleRoutingProblemSolution bestSolution;
+        if (options.numberOfSearches > 1) {
+            var portfolioOptions = new JspritPortfolio.Options(options.numberOfSearches, options.maxIterations,
+                    PORTFOLIO_ROUNDS, PORTFOLIO_RANDOM_SEED);
+            bestSolution = JspritPortfolio.solve(problem, k -> new SchoolTrafficObjectiveFunction(problem, options),
+                    portfolioOptions);
+        } else {
+            var algorithm = Jsprit.Builder.newInstance(problem)
+                    .setObjectiveFunction(new SchoolTrafficObjectiveFunction(problem, options))
+                    .setProperty(Jsprit.Parameter.THREADS, numOfThreads)
+                    .buildAlgorithm();
+            algorithm.setMaxIterations(options.maxIterations);
+            var solutions = algorithm.searchSolutions();
+            bestSolution = Solutions.bestOf(solutions);
+        }
         SolutionPrinter.print(problem, bestSolution, SolutionPrinter.Print.VERBOSE);
 
         Map<PreplannedRequestKey, Id<DvrpVehicle>> preplannedRequestToVehicle = new HashMap<>();
@@ -45,6 +45,7 @@ import picocli.CommandLine;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.List;
 import java.util.Random;
 
 @CommandLine.Command(
@@ -102,6 +103,15 @@ public class RunJspritScenario implements MATSimAppCommand {
     @CommandLine.Option(names = "--enable-multi-thread", description = "enable multi-thread computing", defaultValue = "false")
     private static boolean enableMultithread;
 
+    @CommandLine.Option(names = "--matrix-cache-dir", description = "directory for persisting the travel time matrix between runs", defaultValue = "none")
+    private static String matrixCacheDirectory;
+
+    @CommandLine.Option(names = "--portfolio-size", description = "number of parallel searches with different random seeds (1: single search)", defaultValue = "1")
+    private static int portfolioSize;
+
+    @CommandLine.Option(names = "--portfolio-rounds", description = "number of rounds after which the best solution is shared between the parallel searches", defaultValue = "10")
+    private static int portfolioRounds;
+
     private VehicleRoutingTransportCosts transportCosts;
 
     private static final Logger LOG = LogManager.getLogger(RunJspritScenario.class);
@@ -159,7 +169,8 @@ public class RunJspritScenario implements MATSimAppCommand {
         StatisticUtils statisticUtils;
         if (enableNetworkBasedCosts) {
             // compute matrix
-            transportCosts = MatrixBasedVrpCosts.calculateVrpCosts(matsimDrtRequest2Jsprit.getNetwork(), matsimDrtRequest2Jsprit.getLocationByLinkId());
+            transportCosts = MatrixBasedVrpCosts.calculateVrpCosts(matsimDrtRequest2Jsprit.getNetwork(), matsimDrtRequest2Jsprit.getLocationByLinkId(),
+                    matrixCacheDirectory.equals("none") ? null : Path.of(matrixCacheDirectory));
             LOG.info("MatrixBased VrpCosts costs computed.");
             vrpBuilder.setRoutingCost(transportCosts);
             statisticUtils = new StatisticUtils(matsimDrtRequest2Jsprit.getConfig(), transportCosts, matsimDrtRequest2Jsprit.getServiceTimeInMatsim());
@@ -196,23 +207,33 @@ public class RunJspritScenario implements MATSimAppCommand {
         SolutionCostCalculator objectiveFunction = mySolutionCostCalculatorFactory.getObjectiveFunction(problem, maxCosts, objectiveFunctionType, matsimDrtRequest2Jsprit.getConfig(), transportCosts);
         Random random = RandomNumberGeneration.getRandom();
         random.setSeed(randomSeed);
-        int threads = enableMultithread ? Runtime.getRuntime().availableProcessors() : 1;
-        VehicleRoutingAlgorithm algorithm = Jsprit.Builder.newInstance(problem).setObjectiveFunction(objectiveFunction).setRandom(random).setProperty(Jsprit.Parameter.THREADS, threads + "").buildAlgorithm();
         LOG.info("The objective function used is " + objectiveFunctionType.toString());
         LOG.info("The random seed used is " + randomSeed);
-        LOG.info("The thread number used is " + threads);
-        algorithm.setMaxIterations(numberOfIterations);
-        if(isRunningTest){
-            reasonTracker = new UnassignedJobReasonTracker();
-            algorithm.addListener(reasonTracker);
-        }
-        algorithm.getAlgorithmListeners().addListener(new MyIterationEndsListener());
 
 
         /*
          * and search a solution
          */
-        Collection<VehicleRoutingProblemSolution> solutions = algorithm.searchSolutions();
+        Collection<VehicleRoutingProblemSolution> solutions;
+        if (portfolioSize > 1) {
+            // the iteration statistics (MyIterationEndsListener) and the unassigned job reasons are not collected in
+            // the portfolio mode
+            LOG.info("Portfolio of " + portfolioSize + " searches (random seeds " + randomSeed + ", " + (randomSeed + 1) + ", ...)");
+            var portfolioOptions = new JspritPortfolio.Options(portfolioSize, numberOfIterations, portfolioRounds, randomSeed);
+            solutions = List.of(JspritPortfolio.solve(problem, k -> mySolutionCostCalculatorFactory.getObjectiveFunction(problem, maxCosts,
+                    objectiveFunctionType, matsimDrtRequest2Jsprit.getConfig(), transportCosts), portfolioOptions));
+        } else {
+            int threads = enableMultithread ? Runtime.getRuntime().availableProcessors() : 1;
+            VehicleRoutingAlgorithm algorithm = Jsprit.Builder.newInstance(problem).setObjectiveFunction(objectiveFunction).setRandom(random).setProperty(Jsprit.Parameter.THREADS, threads + "").buildAlgorithm();
+            LOG.info("The thread number used is " + threads);
+            algorithm.setMaxIterations(numberOfIterations);
+            if(isRunningTest){
+                reasonTracker = new UnassignedJobReasonTracker();
+                algorithm.addListener(reasonTracker);
+            }
+            algorithm.getAlgorithmListeners().addListener(new MyIterationEndsListener());
+            solutions = algorithm.searchSolutions();
+        }
 
 
         /*
@@ -225,8 +246,12 @@ public class RunJspritScenario implements MATSimAppCommand {
         String solutionOutputFilename = (!statsOutputPath.toString().endsWith("/")) ? statsOutputPath + "/problem-with-solution.xml" : statsOutputPath + "problem-with-solution.xml";
         new VrpXMLWriter(problem, solutions).write(solutionOutputFilename);
 
-        StatisticCollectorForIterationEndsListener statisticCollectorForIterationEndsListener = new StatisticCollectorForIterationEndsListener(matsimDrtRequest2Jsprit.getConfig());
-        statisticCollectorForIterationEndsListener.writeOutputStats(statsOutputPath.toString());
+        if (portfolioSize > 1) {
+            LOG.info("The iteration statistics are not written in the portfolio mode");
+        } else {
+            StatisticCollectorForIterationEndsListener statisticCollectorForIterationEndsListener = new StatisticCollectorForIterationEndsListener(matsimDrtRequest2Jsprit.getConfig());
+            statisticCollectorForIterationEndsListener.writeOutputStats(statsOutputPath.toString());
+        }
 
         /*
          * print the MATSim-related stats
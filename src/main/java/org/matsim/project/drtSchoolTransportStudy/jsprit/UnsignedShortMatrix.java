@@ -0,0 +1,98 @@
+package org.matsim.project.drtSchoolTransportStudy.jsprit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Square matrix of unsigned 16-bit values (0 - 65535) stored off-heap in flat buffers. A single buffer cannot be
+ * larger than 2 GB, so the rows are split into chunks of whole rows. Values that do not fit are saturated at
+ * {@link #MAX_VALUE}. The buffers (little endian) can be written to a file and memory-mapped from it (read-only).
+ * Writing to different cells from different threads is safe (only absolute puts are used).
+ */
+class UnsignedShortMatrix {
+	static final int MAX_VALUE = 0xFFFF;
+
+	private final int size;
+	private final int rowsPerChunk;
+	private final ByteBuffer[] byteChunks;
+	private final ShortBuffer[] chunks;
+
+	UnsignedShortMatrix(int size) {
+		this(size, new ByteBuffer[getNumberOfChunks(size)]);
+		for (int chunk = 0; chunk < byteChunks.length; chunk++) {
+			byteChunks[chunk] = ByteBuffer.allocateDirect(getChunkBytes(size, chunk));
+			chunks[chunk] = byteChunks[chunk].order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+		}
+	}
+
+	private UnsignedShortMatrix(int size, ByteBuffer[] byteChunks) {
+		this.size = size;
+		this.rowsPerChunk = getRowsPerChunk(size);
+		this.byteChunks = byteChunks;
+		this.chunks = new ShortBuffer[byteChunks.length];
+	}
+
+	/**
+	 * Memory-map (read-only) a matrix written by {@link #writeTo} at the position of the file.
+	 */
+	static UnsignedShortMatrix map(FileChannel channel, long position, int size) throws IOException {
+		UnsignedShortMatrix matrix = new UnsignedShortMatrix(size, new ByteBuffer[getNumberOfChunks(size)]);
+		for (int chunk = 0; chunk < matrix.byteChunks.length; chunk++) {
+			int bytes = getChunkBytes(size, chunk);
+			matrix.byteChunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+			matrix.chunks[chunk] = matrix.byteChunks[chunk].order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+			position += bytes;
+		}
+		return matrix;
+	}
+
+	void writeTo(WritableByteChannel channel) throws IOException {
+		for (ByteBuffer byteChunk : byteChunks) {
+			ByteBuffer buffer = byteChunk.duplicate();
+			buffer.rewind();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	static long getSizeInBytes(int size) {
+		return (long)size * size * Short.BYTES;
+	}
+
+	int get(int row, int column) {
+		return chunks[row / rowsPerChunk].get((row % rowsPerChunk) * size + column) & MAX_VALUE;
+	}
+
+	/**
+	 * @return false if the value is saturated (i.e., larger than {@link #MAX_VALUE})
+	 */
+	boolean set(int row, int column, int value) {
+		int storedValue = Math.min(Math.max(value, 0), MAX_VALUE);
+		chunks[row / rowsPerChunk].put((row % rowsPerChunk) * size + column, (short)storedValue);
+		return storedValue == value;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private static int getRowsPerChunk(int size) {
+		return Math.max(1, Integer.MAX_VALUE / (Short.BYTES * Math.max(1, size)));
+	}
+
+	private static int getNumberOfChunks(int size) {
+		int rowsPerChunk = getRowsPerChunk(size);
+		return (size + rowsPerChunk - 1) / rowsPerChunk;
+	}
+
+	private static int getChunkBytes(int size, int chunk) {
+		int rowsPerChunk = getRowsPerChunk(size);
+		int rows = Math.min(rowsPerChunk, size - chunk * rowsPerChunk);
+		return rows * size * Short.BYTES;
+	}
+}
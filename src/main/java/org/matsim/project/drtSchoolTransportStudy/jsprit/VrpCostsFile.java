@@ -0,0 +1,149 @@
+package org.matsim.project.drtSchoolTransportStudy.jsprit;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+/**
+ * File format of the {@link MatrixBasedVrpCosts}, so that the matrices can be re-used by the following runs on the same
+ * network and locations (e.g., a sweep over the objective functions). The header contains the hash of the network
+ * and the list of the locations (link IDs in the order of the location index). It is followed by the raw travel time
+ * and (optional) distance matrices (see {@link UnsignedShortMatrix}), which are memory-mapped when the file is read.
+ */
+class VrpCostsFile {
+	private static final Logger log = LogManager.getLogger(VrpCostsFile.class);
+	private static final int MAGIC_NUMBER = 0x56525043; // "VRPC"
+	private static final int VERSION = 2;
+
+	/**
+	 * The file name is based on the hashes of the network and the locations. The header is still checked when reading
+	 * the file (hash collisions).
+	 */
+	static Path getFile(Path directory, long networkHash, List<Id<Link>> linkIdByLocationIdx) {
+		long locationsHash = 1125899906842597L;
+		for (Id<Link> linkId : linkIdByLocationIdx) {
+			locationsHash = 31 * locationsHash + linkId.toString().hashCode();
+		}
+		return directory.resolve("vrp-costs-" + Long.toHexString(networkHash) + "-" + Long.toHexString(locationsHash) + ".bin");
+	}
+
+	/**
+	 * Hash of the network properties that the free speed travel times and the distances depend on.
+	 */
+	static long hashNetwork(Network network) {
+		long hash = 1125899906842597L;
+		List<? extends Link> links = network.getLinks()
+				.values()
+				.stream()
+				.sorted(Comparator.comparing(link -> link.getId().toString()))
+				.toList();
+		for (Link link : links) {
+			hash = 31 * hash + link.getId().toString().hashCode();
+			hash = 31 * hash + link.getFromNode().getId().toString().hashCode();
+			hash = 31 * hash + link.getToNode().getId().toString().hashCode();
+			hash = 31 * hash + Double.doubleToLongBits(link.getLength());
+			hash = 31 * hash + Double.doubleToLongBits(link.getFreespeed());
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the memory-mapped costs, or null if the file does not exist, does not match the network and locations, or
+	 * is truncated or corrupt
+	 */
+	static MatrixBasedVrpCosts read(Path file, long networkHash, List<Id<Link>> linkIdByLocationIdx) {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (input.readInt() != MAGIC_NUMBER || input.readInt() != VERSION) {
+				log.warn("Unknown format of the vrp costs file " + file);
+				return null;
+			}
+			long dataOffset = input.readLong();
+			if (input.readLong() != networkHash
+					|| input.readDouble() != MatrixBasedVrpCosts.DISTANCE_RESOLUTION
+					|| input.readInt() != linkIdByLocationIdx.size()) {
+				return null;
+			}
+			boolean withDistances = input.readBoolean();
+			for (Id<Link> linkId : linkIdByLocationIdx) {
+				if (!input.readUTF().equals(linkId.toString())) {
+					return null;
+				}
+			}
+
+			int size = linkIdByLocationIdx.size();
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				long expectedFileSize = dataOffset + (withDistances ? 2 : 1) * UnsignedShortMatrix.getSizeInBytes(size);
+				if (channel.size() != expectedFileSize) {
+					log.warn("The vrp costs file " + file + " has a wrong size (" + channel.size() + " instead of "
+							+ expectedFileSize + " bytes) and is ignored");
+					return null;
+				}
+				// The mapping remains valid after the channel is closed
+				var travelTimes = UnsignedShortMatrix.map(channel, dataOffset, size);
+				var distances = withDistances ?
+						UnsignedShortMatrix.map(channel, dataOffset + UnsignedShortMatrix.getSizeInBytes(size), size) :
+						null;
+				log.info("VrpCosts are read from " + file);
+				return new MatrixBasedVrpCosts(travelTimes, distances);
+			}
+		} catch (IOException e) {
+			// e.g., EOFException (truncated header) or UTFDataFormatException (corrupt link IDs)
+			log.warn("The vrp costs file " + file + " cannot be read and is ignored", e);
+			return null;
+		}
+	}
+
+	static void write(Path file, long networkHash, List<Id<Link>> linkIdByLocationIdx, MatrixBasedVrpCosts vrpCosts) {
+		try {
+			var headerBytes = new ByteArrayOutputStream();
+			var header = new DataOutputStream(headerBytes);
+			header.writeLong(networkHash);
+			header.writeDouble(MatrixBasedVrpCosts.DISTANCE_RESOLUTION);
+			header.writeInt(linkIdByLocationIdx.size());
+			header.writeBoolean(vrpCosts.getDistanceMatrix() != null);
+			for (Id<Link> linkId : linkIdByLocationIdx) {
+				header.writeUTF(linkId.toString());
+			}
+			header.flush();
+			long dataOffset = Integer.BYTES * 2 + Long.BYTES + headerBytes.size(); // magic number, version, data offset
+
+			Files.createDirectories(file.getParent());
+			// Write to a temporary file first, so that a parallel run never reads an incomplete file
+			Path temporaryFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+			try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+				ByteBuffer prefix = ByteBuffer.allocate((int)(dataOffset - headerBytes.size()));
+				prefix.putInt(MAGIC_NUMBER).putInt(VERSION).putLong(dataOffset).flip();
+				channel.write(prefix);
+				channel.write(ByteBuffer.wrap(headerBytes.toByteArray()));
+				vrpCosts.getTravelTimeMatrix().writeTo(channel);
+				if (vrpCosts.getDistanceMatrix() != null) {
+					vrpCosts.getDistanceMatrix().writeTo(channel);
+				}
+			}
+			Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.info("VrpCosts are written to " + file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
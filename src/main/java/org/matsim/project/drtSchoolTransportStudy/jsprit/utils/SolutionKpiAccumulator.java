@@ -0,0 +1,212 @@
+package org.matsim.project.drtSchoolTransportStudy.jsprit.utils;
+
+import com.graphhopper.jsprit.core.problem.Location;
+import com.graphhopper.jsprit.core.problem.VehicleRoutingProblem;
+import com.graphhopper.jsprit.core.problem.cost.VehicleRoutingTransportCosts;
+import com.graphhopper.jsprit.core.problem.job.Job;
+import com.graphhopper.jsprit.core.problem.job.Shipment;
+import com.graphhopper.jsprit.core.problem.solution.VehicleRoutingProblemSolution;
+import com.graphhopper.jsprit.core.problem.solution.route.VehicleRoute;
+import com.graphhopper.jsprit.core.problem.solution.route.activity.DeliverShipment;
+import com.graphhopper.jsprit.core.problem.solution.route.activity.PickupShipment;
+import com.graphhopper.jsprit.core.problem.solution.route.activity.TourActivity;
+import com.graphhopper.jsprit.core.util.EuclideanDistanceCalculator;
+import org.matsim.project.utils.RouteCostCache;
+
+/**
+ * Sums of the KPIs of a solution used by the objective functions, calculated in one pass over the routes. Compared to
+ * {@link StatisticCollectorForOF}, no per-passenger maps are created: the desired pickup/delivery times are read once
+ * (by job index) and the passenger traveled distance is summed up as leg distance * number of passengers on board.
+ * The KPIs are summed up per route and cached ({@link RouteCostCache}), so only the routes changed by the last
+ * ruin-and-recreate step are walked again.
+ * The accumulator is re-used for all the solutions (not thread-safe: one instance per objective function).
+ */
+public class SolutionKpiAccumulator {
+    private final VehicleRoutingTransportCosts transportCosts; // null: Euclidean distances
+    private final double serviceTimeInMatsim;
+
+    // by job index
+    private final double[] desiredPickupTimes;
+    private final double[] desiredDeliveryTimes;
+    private final double[] pickupDepartureTimes;
+
+    // KPI sums of the routes (only the routes changed since the previous solutions are calculated)
+    private static final int TRAVEL_TIME = 0;
+    private static final int IN_VEHICLE_TIME = 1;
+    private static final int WAITING_TIME = 2;
+    private static final int PASSENGER_TRAVELED_DISTANCE = 3;
+    private static final int DRIVEN_DISTANCE = 4;
+    private static final int DRIVEN_TIME = 5;
+    private static final int EARLY_PICKUP_TIME = 6;
+    private static final int PICKUP_TO_DESIRED_DELIVERY_TIME = 7;
+    private static final int DELIVERY_TO_DESIRED_DELIVERY_TIME = 8;
+    private static final int SERVED_PASSENGERS = 9;
+    private static final int NUMBER_OF_ROUTE_KPIS = 10;
+    private final RouteCostCache<double[]> routeKpiCache = new RouteCostCache<>();
+
+    private double travelTime;
+    private double inVehicleTime;
+    private double waitingTime;
+    private double passengerTraveledDistance;
+    private double drivenDistance;
+    private double drivenTime;
+    private double earlyPickupTime;
+    private double pickupToDesiredDeliveryTime;
+    private double deliveryToDesiredDeliveryTime;
+    private int servedPassengers;
+    private int vehiclesUsed;
+
+    public SolutionKpiAccumulator(VehicleRoutingProblem problem, VehicleRoutingTransportCosts transportCosts,
+                                  double serviceTimeInMatsim) {
+        this.transportCosts = transportCosts;
+        this.serviceTimeInMatsim = serviceTimeInMatsim;
+
+        int maxJobIndex = problem.getJobs().values().stream().mapToInt(Job::getIndex).max().orElse(0);
+        desiredPickupTimes = new double[maxJobIndex + 1];
+        desiredDeliveryTimes = new double[maxJobIndex + 1];
+        pickupDepartureTimes = new double[maxJobIndex + 1];
+        for (Job job : problem.getJobs().values()) {
+            if (job instanceof Shipment shipment) {
+                desiredPickupTimes[shipment.getIndex()] = shipment.getPickupTimeWindow().getStart();
+                desiredDeliveryTimes[shipment.getIndex()] = shipment.getDeliveryTimeWindow().getEnd();
+            }
+        }
+    }
+
+    public SolutionKpiAccumulator(VehicleRoutingProblem problem, double serviceTimeInMatsim) {
+        this(problem, null, serviceTimeInMatsim);
+    }
+
+    public void accumulate(VehicleRoutingProblemSolution solution) {
+        travelTime = 0;
+        inVehicleTime = 0;
+        waitingTime = 0;
+        passengerTraveledDistance = 0;
+        drivenDistance = 0;
+        drivenTime = 0;
+        earlyPickupTime = 0;
+        pickupToDesiredDeliveryTime = 0;
+        deliveryToDesiredDeliveryTime = 0;
+        servedPassengers = 0;
+        vehiclesUsed = solution.getRoutes().size();
+
+        for (VehicleRoute route : solution.getRoutes()) {
+            double[] routeKpis = routeKpiCache.get(route, this::calculateRouteKpis);
+            travelTime += routeKpis[TRAVEL_TIME];
+            inVehicleTime += routeKpis[IN_VEHICLE_TIME];
+            waitingTime += routeKpis[WAITING_TIME];
+            passengerTraveledDistance += routeKpis[PASSENGER_TRAVELED_DISTANCE];
+            drivenDistance += routeKpis[DRIVEN_DISTANCE];
+            drivenTime += routeKpis[DRIVEN_TIME];
+            earlyPickupTime += routeKpis[EARLY_PICKUP_TIME];
+            pickupToDesiredDeliveryTime += routeKpis[PICKUP_TO_DESIRED_DELIVERY_TIME];
+            deliveryToDesiredDeliveryTime += routeKpis[DELIVERY_TO_DESIRED_DELIVERY_TIME];
+            servedPassengers += (int)routeKpis[SERVED_PASSENGERS];
+        }
+    }
+
+    private double[] calculateRouteKpis(VehicleRoute route) {
+        double[] kpis = new double[NUMBER_OF_ROUTE_KPIS];
+        Location lastLocation = route.getStart().getLocation();
+        double lastDepartureTime = route.getStart().getEndTime();
+        int passengersOnBoard = 0;
+        for (TourActivity act : route.getActivities()) {
+            boolean pickup = act instanceof PickupShipment;
+            if (!pickup && !(act instanceof DeliverShipment)) {
+                continue;
+            }
+
+            double legDistance;
+            if (transportCosts != null) {
+                legDistance = transportCosts.getDistance(lastLocation, act.getLocation(), lastDepartureTime, null);
+                kpis[DRIVEN_TIME] += transportCosts.getTransportCost(lastLocation, act.getLocation(), lastDepartureTime, null, null);
+            } else {
+                legDistance = EuclideanDistanceCalculator.calculateDistance(lastLocation.getCoordinate(), act.getLocation().getCoordinate());
+                kpis[DRIVEN_TIME] += legDistance / route.getVehicle().getType().getMaxVelocity();
+            }
+            kpis[DRIVEN_DISTANCE] += legDistance;
+            kpis[PASSENGER_TRAVELED_DISTANCE] += legDistance * passengersOnBoard;
+
+            int jobIndex = ((TourActivity.JobActivity)act).getJob().getIndex();
+            if (pickup) {
+                double pickupTime = act.getArrTime();
+                double desiredPickupTime = desiredPickupTimes[jobIndex];
+                // waiting time and in-vehicle time do not include the service time of pickup and delivery
+                double passengerWaitingTime = Math.max(pickupTime - desiredPickupTime, 0);
+                kpis[WAITING_TIME] += passengerWaitingTime;
+                // travel time includes only the service time of pickup (consistent with MATSim)
+                kpis[TRAVEL_TIME] += passengerWaitingTime + serviceTimeInMatsim;
+                kpis[EARLY_PICKUP_TIME] += Math.max(desiredPickupTime - pickupTime, 0);
+                kpis[PICKUP_TO_DESIRED_DELIVERY_TIME] += desiredDeliveryTimes[jobIndex] - Math.max(pickupTime, desiredPickupTime);
+                pickupDepartureTimes[jobIndex] = act.getEndTime();
+                passengersOnBoard++;
+            } else {
+                double passengerInVehicleTime = act.getArrTime() - pickupDepartureTimes[jobIndex];
+                kpis[IN_VEHICLE_TIME] += passengerInVehicleTime;
+                kpis[TRAVEL_TIME] += passengerInVehicleTime;
+                kpis[DELIVERY_TO_DESIRED_DELIVERY_TIME] += desiredDeliveryTimes[jobIndex] - act.getArrTime();
+                kpis[SERVED_PASSENGERS]++;
+                passengersOnBoard--;
+            }
+            lastLocation = act.getLocation();
+            lastDepartureTime = act.getEndTime();
+        }
+        return kpis;
+    }
+
+    /**
+     * @return waiting time + pickup service time + in-vehicle time (sum over the served passengers)
+     */
+    public double getTravelTime() {
+        return travelTime;
+    }
+
+    public double getInVehicleTime() {
+        return inVehicleTime;
+    }
+
+    public double getWaitingTime() {
+        return waitingTime;
+    }
+
+    public double getPassengerTraveledDistance() {
+        return passengerTraveledDistance;
+    }
+
+    public double getDrivenDistance() {
+        return drivenDistance;
+    }
+
+    public double getDrivenTime() {
+        return drivenTime;
+    }
+
+    /**
+     * @return sum of max(desired pickup time - pickup time, 0)
+     */
+    public double getEarlyPickupTime() {
+        return earlyPickupTime;
+    }
+
+    /**
+     * @return sum of (desired delivery time - max(pickup time, desired pickup time))
+     */
+    public double getPickupToDesiredDeliveryTime() {
+        return pickupToDesiredDeliveryTime;
+    }
+
+    /**
+     * @return sum of (desired delivery time - delivery time)
+     */
+    public double getDeliveryToDesiredDeliveryTime() {
+        return deliveryToDesiredDeliveryTime;
+    }
+
+    public int getServedPassengers() {
+        return servedPassengers;
+    }
+
+    public int getVehiclesUsed() {
+        return vehiclesUsed;
+    }
+}
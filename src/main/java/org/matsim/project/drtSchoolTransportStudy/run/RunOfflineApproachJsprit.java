@@ -82,6 +82,12 @@ public class RunOfflineApproachJsprit implements MATSimAppCommand {
     @CommandLine.Option(names = "--multi-thread", defaultValue = "false", description = "enable multi-threading in JSprit to increase computation speed")
     private boolean multiThread;
 
+    @CommandLine.Option(names = "--matrix-cache-dir", description = "directory for persisting the travel time matrix between runs", defaultValue = "none")
+    private String matrixCacheDirectory;
+
+    @CommandLine.Option(names = "--portfolio-size", description = "number of parallel jsprit searches (1: single search)", defaultValue = "1")
+    private int portfolioSize;
+
     @CommandLine.Option(names = "--network-change-events", description = "Path to network change events file", defaultValue = "")
     private String networkChangeEvents;
 
@@ -163,7 +169,14 @@ public class RunOfflineApproachJsprit implements MATSimAppCommand {
         Controler controler = PreplannedDrtControlerCreator.createControler(config, false);
         controler.addOverridingModule(new DvrpModule(new DvrpBenchmarkTravelTimeModuleFixedTT(0)));
 
-        var options = new PreplannedSchedulesCalculatorForSchoolTransport.Options(false, false, jspritIterations, multiThread, caseStudyTool, outputDirectory);
+        var options = PreplannedSchedulesCalculatorForSchoolTransport.Options.newBuilder()
+                .maxIterations(jspritIterations)
+                .multiThread(multiThread)
+                .caseStudyTool(caseStudyTool)
+                .outputDirectory(outputDirectory)
+                .matrixCacheDirectory(matrixCacheDirectory.equals("none") ? null : matrixCacheDirectory)
+                .numberOfSearches(portfolioSize)
+                .build();
         MultiModeDrtConfigGroup.get(config)
                 .getModalElements()
                 .forEach(drtConfig -> controler.addOverridingQSimModule(
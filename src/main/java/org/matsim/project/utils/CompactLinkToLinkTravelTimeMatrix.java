@@ -0,0 +1,78 @@
+package org.matsim.project.utils;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.dvrp.path.VrpPaths;
+import org.matsim.contrib.dvrp.router.TimeAsTravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.matsim.contrib.dvrp.path.VrpPaths.FIRST_LINK_TT;
+
+/**
+ * Compact variant of the {@link LinkToLinkTravelTimeMatrix}. The relevant links are mapped to dense indices once.
+ * For each relevant link, the dense index of its from/to node and the travel time on the link (as the last link)
+ * are stored in primitive arrays, so that a query only consists of array reads.
+ * Note: the last link travel times are calculated at the time of the matrix. Therefore, the departure time of the
+ * query is ignored. This is suitable for time-independent travel times (e.g., free speed travel time).
+ */
+public class CompactLinkToLinkTravelTimeMatrix {
+    private final DenseNodeToNodeTravelTimeMatrix nodeToNodeTravelTimeMatrix;
+    private final int[] denseIndexByLinkIndex; // -1 --> link is not in the matrix
+    private final int[] fromNodeDenseIndices;
+    private final int[] toNodeDenseIndices;
+    private final double[] lastLinkTravelTimes;
+
+    public CompactLinkToLinkTravelTimeMatrix(Network network, TravelTime travelTime, Set<Id<Link>> relevantLinks, double time) {
+        Set<Node> relevantNodes = relevantLinks
+                .stream()
+                .flatMap(linkId -> Stream.of(network.getLinks().get(linkId).getFromNode(), network.getLinks().get(linkId).getToNode()))
+                .collect(Collectors.toSet());
+        this.nodeToNodeTravelTimeMatrix = new DenseNodeToNodeTravelTimeMatrix(network, relevantNodes, time, travelTime,
+                new TimeAsTravelDisutility(travelTime), Runtime.getRuntime().availableProcessors());
+
+        this.denseIndexByLinkIndex = new int[Id.getNumberOfIds(Link.class)];
+        Arrays.fill(denseIndexByLinkIndex, -1);
+        this.fromNodeDenseIndices = new int[relevantLinks.size()];
+        this.toNodeDenseIndices = new int[relevantLinks.size()];
+        this.lastLinkTravelTimes = new double[relevantLinks.size()];
+        int denseIndex = 0;
+        for (Id<Link> linkId : relevantLinks) {
+            Link link = network.getLinks().get(linkId);
+            denseIndexByLinkIndex[linkId.index()] = denseIndex;
+            fromNodeDenseIndices[denseIndex] = nodeToNodeTravelTimeMatrix.getDenseIndex(link.getFromNode());
+            toNodeDenseIndices[denseIndex] = nodeToNodeTravelTimeMatrix.getDenseIndex(link.getToNode());
+            lastLinkTravelTimes[denseIndex] = VrpPaths.getLastLinkTT(travelTime, link, time);
+            denseIndex++;
+        }
+    }
+
+    public double getTravelTime(Link fromLink, Link toLink, double departureTime) {
+        return getTravelTime(fromLink.getId(), toLink.getId());
+    }
+
+    public double getTravelTime(Id<Link> fromLinkId, Id<Link> toLinkId) {
+        int from = getDenseIndex(fromLinkId);
+        int to = getDenseIndex(toLinkId);
+        if (from == to) {
+            return 0;
+        }
+        return FIRST_LINK_TT + nodeToNodeTravelTimeMatrix.getTravelTimeByDenseIndex(toNodeDenseIndices[from], fromNodeDenseIndices[to])
+                + lastLinkTravelTimes[to];
+    }
+
+    private int getDenseIndex(Id<Link> linkId) {
+        int linkIndex = linkId.index();
+        int denseIndex = linkIndex < denseIndexByLinkIndex.length ? denseIndexByLinkIndex[linkIndex] : -1;
+        if (denseIndex < 0) {
+            throw new IllegalArgumentException("Link " + linkId + " is not in the travel time matrix");
+        }
+        return denseIndex;
+    }
+}
@@ -0,0 +1,107 @@
+package org.matsim.project.utils;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.zone.skims.TravelTimeMatrix;
+import org.matsim.core.router.speedy.LeastCostPathTree;
+import org.matsim.core.router.speedy.SpeedyGraph;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Node to node travel time matrix for a set of relevant nodes. The relevant nodes are mapped to dense indices
+ * (via {@link Id#index()}) and the travel times are stored in a flat array, so that a query does not need any
+ * hash map lookup (i.e., no Node -> Zone -> Matrix lookups). The departure time is ignored.
+ * The rows are calculated directly into the flat array (one forward tree per node, departing at the given time), so no
+ * intermediate matrix is kept in memory while the array is filled.
+ */
+public class DenseNodeToNodeTravelTimeMatrix implements TravelTimeMatrix {
+    private final int[] denseIndexByNodeIndex; // -1 --> node is not in the matrix
+    private final int size;
+    private final int[] travelTimes;
+
+    public DenseNodeToNodeTravelTimeMatrix(Network network, Collection<Node> relevantNodes, double time,
+                                           TravelTime travelTime, TravelDisutility travelDisutility, int numberOfThreads) {
+        this.denseIndexByNodeIndex = new int[Id.getNumberOfIds(Node.class)];
+        Arrays.fill(denseIndexByNodeIndex, -1);
+
+        List<Node> nodes = new ArrayList<>();
+        for (Node node : relevantNodes) {
+            if (denseIndexByNodeIndex[node.getId().index()] >= 0) {
+                continue; // duplicate
+            }
+            denseIndexByNodeIndex[node.getId().index()] = nodes.size();
+            nodes.add(node);
+        }
+        this.size = nodes.size();
+        int numberOfCells;
+        try {
+            numberOfCells = Math.multiplyExact(size, size);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Too many nodes for a dense travel time matrix: " + size, e);
+        }
+        this.travelTimes = new int[numberOfCells];
+
+        // Each tree writes its own row
+        SpeedyGraph graph = new SpeedyGraph(network);
+        ThreadLocal<LeastCostPathTree> lcpTrees = ThreadLocal.withInitial(() -> new LeastCostPathTree(graph, travelTime, travelDisutility));
+        ForkJoinPool forkJoinPool = new ForkJoinPool(numberOfThreads);
+        try {
+            forkJoinPool.submit(() -> IntStream.range(0, size).parallel().forEach(from -> {
+                LeastCostPathTree lcpTree = lcpTrees.get();
+                lcpTree.calculate(nodes.get(from).getId().index(), time, null, null);
+                for (int to = 0; to < size; to++) {
+                    double arrivalTime = lcpTree.getTime(nodes.get(to).getId().index()).seconds();
+                    travelTimes[from * size + to] = (int) (arrivalTime - time);
+                }
+            })).join();
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    @Override
+    public int getTravelTime(Node fromNode, Node toNode, double departureTime) {
+        return getTravelTime(fromNode.getId().index(), toNode.getId().index());
+    }
+
+    /**
+     * Query based on the node indices (i.e., {@link Id#index()}).
+     */
+    public int getTravelTime(int fromNodeIndex, int toNodeIndex) {
+        return travelTimes[getDenseIndex(fromNodeIndex) * size + getDenseIndex(toNodeIndex)];
+    }
+
+    /**
+     * Query based on the dense indices (see {@link #getDenseIndex(Node)}).
+     */
+    int getTravelTimeByDenseIndex(int fromDenseIndex, int toDenseIndex) {
+        return travelTimes[fromDenseIndex * size + toDenseIndex];
+    }
+
+    int getDenseIndex(Node node) {
+        return getDenseIndex(node.getId().index());
+    }
+
+    private int getDenseIndex(int nodeIndex) {
+        int denseIndex = nodeIndex < denseIndexByNodeIndex.length ? denseIndexByNodeIndex[nodeIndex] : -1;
+        if (denseIndex < 0) {
+            throw new IllegalArgumentException("Node " + Id.get(nodeIndex, Node.class) + " is not in the travel time matrix");
+        }
+        return denseIndex;
+    }
+
+    public boolean contains(Node node) {
+        int nodeIndex = node.getId().index();
+        return nodeIndex < denseIndexByNodeIndex.length && denseIndexByNodeIndex[nodeIndex] >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,108 @@
+package org.matsim.project.utils;
+
+import com.graphhopper.jsprit.core.problem.solution.route.VehicleRoute;
+import com.graphhopper.jsprit.core.problem.solution.route.activity.TourActivity;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Cache of per-route costs (or any other per-route values) for jsprit objective functions. jsprit copies the routes
+ * of a solution in each iteration (so the route objects cannot be used as keys), but a ruin-and-recreate step changes
+ * only a few routes. The routes are therefore keyed by their content: vehicle, start time and the sequence of the
+ * activities (activity index and arrival time), which determines everything the route costs depend on. Only the
+ * changed routes are calculated again. The key stores the whole sequence (about 12 bytes per activity) and compares it
+ * on a hit, so that a hash collision never returns the value of another route.
+ * The cache is bounded (least recently used routes are removed) and not thread-safe (one cache per objective function).
+ */
+public class RouteCostCache<V> {
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    private static final class RouteKey {
+        private final int vehicleIndex;
+        private final long startTime;
+        private final int[] activityIndices;
+        private final long[] arrivalTimes;
+        private final int hash;
+
+        private RouteKey(VehicleRoute route) {
+            this.vehicleIndex = route.getVehicle().getIndex();
+            this.startTime = Double.doubleToLongBits(route.getStart().getEndTime());
+            int numberOfActivities = route.getActivities().size();
+            this.activityIndices = new int[numberOfActivities];
+            this.arrivalTimes = new long[numberOfActivities];
+            long fingerprint = mix(vehicleIndex, startTime);
+            int i = 0;
+            for (TourActivity act : route.getActivities()) {
+                activityIndices[i] = act.getIndex();
+                arrivalTimes[i] = Double.doubleToLongBits(act.getArrTime());
+                fingerprint = mix(fingerprint, activityIndices[i]);
+                fingerprint = mix(fingerprint, arrivalTimes[i]);
+                i++;
+            }
+            this.hash = Long.hashCode(fingerprint);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RouteKey other)) {
+                return false;
+            }
+            return hash == other.hash
+                    && vehicleIndex == other.vehicleIndex
+                    && startTime == other.startTime
+                    && Arrays.equals(activityIndices, other.activityIndices)
+                    && Arrays.equals(arrivalTimes, other.arrivalTimes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final Map<RouteKey, V> cache;
+    private long hits = 0;
+    private long misses = 0;
+
+    public RouteCostCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RouteCostCache(int capacity) {
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RouteKey, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public V get(VehicleRoute route, Function<VehicleRoute, V> calculator) {
+        RouteKey key = new RouteKey(route);
+        V value = cache.get(key);
+        if (value == null) {
+            misses++;
+            value = calculator.apply(route);
+            cache.put(key, value);
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return "RouteCostCache{size=" + cache.size() + ", hits=" + hits + ", misses=" + misses + "}";
+    }
+}
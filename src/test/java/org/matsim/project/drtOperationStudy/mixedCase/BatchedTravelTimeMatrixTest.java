@@ -0,0 +1,132 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.contrib.dvrp.router.TimeAsTravelDisutility;
+import org.matsim.contrib.zone.skims.TravelTimeMatrix;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.speedy.SpeedyALTFactory;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
+import org.matsim.project.utils.GridNetworkTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the batched travel times (trees) against point-to-point queries on a small grid network, also with the
+ * {@link PrecalculatedExactNodeToNodeMatrix} as the delegate (i.e., the nodes of the request are in the matrix).
+ */
+public class BatchedTravelTimeMatrixTest {
+    private static final int GRID_SIZE = 5;
+    private static final double DEPARTURE_TIME = 3600;
+
+    @Test
+    public void batchedTravelTimesEqualToPointToPointTravelTimes() {
+        Network network = createGridNetwork();
+        TravelTime travelTime = new FreeSpeedTravelTime();
+        TravelDisutility travelDisutility = new TimeAsTravelDisutility(travelTime);
+        LeastCostPathCalculator router = new SpeedyALTFactory().createPathCalculator(network, travelDisutility, travelTime);
+        TravelTimeMatrix pointToPointMatrix = (fromNode, toNode, departureTime) ->
+                (int) router.calcLeastCostPath(fromNode, toNode, departureTime, null, null).travelTime;
+
+        // The delegate covers every second node, the other nodes are calculated in batch
+        List<Node> nodes = new ArrayList<>(network.getNodes().values());
+        Set<Node> coveredNodes = nodes.stream().filter(node -> nodes.indexOf(node) % 2 == 0).collect(Collectors.toSet());
+        BatchedTravelTimeMatrix batchedMatrix = new BatchedTravelTimeMatrix(network, travelTime, travelDisutility,
+                pointToPointMatrix, coveredNodes::contains);
+
+        List<Node> sourceNodes = List.of(nodes.get(1), nodes.get(7), nodes.get(12));
+        List<Node> targetNodes = List.of(nodes.get(3), nodes.get(7), nodes.get(20));
+        batchedMatrix.prepare(sourceNodes, targetNodes, DEPARTURE_TIME);
+
+        for (Node fromNode : nodes) {
+            for (Node toNode : nodes) {
+                assertThat(batchedMatrix.getTravelTime(fromNode, toNode, DEPARTURE_TIME))
+                        .as("%s --> %s", fromNode.getId(), toNode.getId())
+                        .isEqualTo(pointToPointMatrix.getTravelTime(fromNode, toNode, DEPARTURE_TIME));
+            }
+        }
+    }
+
+    @Test
+    public void vehicleLocationsOutsideMatrixAnsweredByTrees() {
+        Network network = createGridNetwork();
+        TravelTime travelTime = new FreeSpeedTravelTime();
+        TravelDisutility travelDisutility = new TimeAsTravelDisutility(travelTime);
+        LeastCostPathCalculator router = new SpeedyALTFactory().createPathCalculator(network, travelDisutility, travelTime);
+
+        // The matrix covers the nodes of the drt trips in the population, incl. the request
+        Link fromLink = GridNetworkTestUtils.getLink(network, 0, 0, 1, 0);
+        Link toLink = GridNetworkTestUtils.getLink(network, 3, 3, 3, 4);
+        Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+        addDrtTrip(population, "request", fromLink, toLink);
+        addDrtTrip(population, "other", GridNetworkTestUtils.getLink(network, 4, 0, 4, 1),
+                GridNetworkTestUtils.getLink(network, 1, 4, 0, 4));
+        PrecalculatedExactNodeToNodeMatrix matrix = new PrecalculatedExactNodeToNodeMatrix(network, travelTime, 0, population);
+
+        AtomicInteger delegateQueries = new AtomicInteger();
+        TravelTimeMatrix countingDelegate = (fromNode, toNode, departureTime) -> {
+            delegateQueries.incrementAndGet();
+            return matrix.getTravelTime(fromNode, toNode, departureTime);
+        };
+        BatchedTravelTimeMatrix batchedMatrix = new BatchedTravelTimeMatrix(network, travelTime, travelDisutility,
+                countingDelegate, matrix::contains);
+        List<Node> sourceNodes = List.of(fromLink.getToNode(), toLink.getToNode());
+        List<Node> targetNodes = List.of(fromLink.getFromNode(), toLink.getFromNode());
+        batchedMatrix.prepare(sourceNodes, targetNodes, DEPARTURE_TIME);
+
+        // e.g. the current location of a vehicle --> pickup, pickup --> stop outside the matrix
+        List<Node> nodesOutsideMatrix = network.getNodes().values().stream().filter(node -> !matrix.contains(node)).toList();
+        assertThat(nodesOutsideMatrix).isNotEmpty();
+        for (Node node : nodesOutsideMatrix) {
+            for (Node targetNode : targetNodes) {
+                assertThat(batchedMatrix.getTravelTime(node, targetNode, DEPARTURE_TIME)).isEqualTo(
+                        (int) router.calcLeastCostPath(node, targetNode, DEPARTURE_TIME, null, null).travelTime);
+            }
+            for (Node sourceNode : sourceNodes) {
+                assertThat(batchedMatrix.getTravelTime(sourceNode, node, DEPARTURE_TIME)).isEqualTo(
+                        (int) router.calcLeastCostPath(sourceNode, node, DEPARTURE_TIME, null, null).travelTime);
+            }
+        }
+        assertThat(delegateQueries).hasValue(0);
+
+        // both nodes in the matrix
+        assertThat(batchedMatrix.getTravelTime(fromLink.getToNode(), toLink.getFromNode(), DEPARTURE_TIME))
+                .isEqualTo(matrix.getTravelTime(fromLink.getToNode(), toLink.getFromNode(), DEPARTURE_TIME));
+        assertThat(delegateQueries).hasValue(1);
+    }
+
+    private static void addDrtTrip(Population population, String personId, Link fromLink, Link toLink) {
+        Person person = population.getFactory().createPerson(Id.createPersonId(personId));
+        Plan plan = PopulationUtils.createPlan();
+        PopulationUtils.createAndAddActivityFromLinkId(plan, "home", fromLink.getId()).setEndTime(DEPARTURE_TIME);
+        PopulationUtils.createAndAddLeg(plan, TransportMode.drt);
+        PopulationUtils.createAndAddActivityFromLinkId(plan, "work", toLink.getId());
+        person.addPlan(plan);
+        population.addPerson(person);
+    }
+
+    /**
+     * Grid of nodes (100 m apart) with links in both directions. The links going right/up are twice as fast as the
+     * links going left/down, so that the travel times are not symmetric. All the link travel times are whole seconds.
+     */
+    private static Network createGridNetwork() {
+        return GridNetworkTestUtils.createGridNetwork(GRID_SIZE, 100, 10, 5);
+    }
+}
@@ -0,0 +1,107 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Single segment caches, so that the order of the evictions is known.
+ */
+public class BoundedTravelTimeCacheTest {
+    private static final double TIME_BIN_SIZE = 900;
+
+    @Test
+    public void putAndGet() {
+        BoundedTravelTimeCache cache = new BoundedTravelTimeCache(4, TIME_BIN_SIZE, 1);
+        cache.put(1, 2, 0, 100);
+        cache.put(2, 1, 0, 200);
+        cache.put(1, 3, 0, 300);
+
+        assertThat(cache.get(1, 2, 100)).isEqualTo(100);
+        assertThat(cache.get(2, 1, 100)).isEqualTo(200);
+        assertThat(cache.get(1, 3, 100)).isEqualTo(300);
+        assertThat(cache.get(3, 1, 100)).isEqualTo(BoundedTravelTimeCache.MISSING);
+        // Another time bin is a miss
+        assertThat(cache.get(1, 2, TIME_BIN_SIZE)).isEqualTo(BoundedTravelTimeCache.MISSING);
+
+        // Replace the value (and the time bin) of an existing entry
+        cache.put(1, 2, TIME_BIN_SIZE, 150);
+        assertThat(cache.get(1, 2, TIME_BIN_SIZE)).isEqualTo(150);
+        assertThat(cache.get(1, 2, 0)).isEqualTo(BoundedTravelTimeCache.MISSING);
+
+        assertThat(cache.getHits()).isEqualTo(4);
+        assertThat(cache.getMisses()).isEqualTo(3);
+        assertThat(cache.getEvictions()).isZero();
+    }
+
+    @Test
+    public void clockEvictionAtCapacity() {
+        BoundedTravelTimeCache cache = new BoundedTravelTimeCache(4, TIME_BIN_SIZE, 1);
+        for (int i = 0; i < 4; i++) {
+            cache.put(i, i + 1, 0, i);
+        }
+        // Referenced entries get a second chance
+        cache.get(0, 1, 0);
+        cache.get(2, 3, 0);
+
+        cache.put(4, 5, 0, 4); // evicts entry 1 (entry 0 is referenced)
+        assertThat(cache.get(1, 2, 0)).isEqualTo(BoundedTravelTimeCache.MISSING);
+        cache.put(5, 6, 0, 5); // evicts entry 3 (entry 2 is referenced)
+        assertThat(cache.get(3, 4, 0)).isEqualTo(BoundedTravelTimeCache.MISSING);
+
+        assertThat(cache.get(0, 1, 0)).isEqualTo(0);
+        assertThat(cache.get(2, 3, 0)).isEqualTo(2);
+        assertThat(cache.get(4, 5, 0)).isEqualTo(4);
+        assertThat(cache.get(5, 6, 0)).isEqualTo(5);
+        assertThat(cache.getEvictions()).isEqualTo(2);
+    }
+
+    @Test
+    public void entriesStayReachableAfterDeletions() {
+        // Small hash table (twice the capacity): the random keys collide, and the evictions delete entries in the
+        // middle of the probing sequences of the other entries (backward-shift deletion)
+        int capacity = 16;
+        BoundedTravelTimeCache cache = new BoundedTravelTimeCache(capacity, TIME_BIN_SIZE, 1);
+        Random random = new Random(4711);
+        int[][] insertedKeys = new int[1000][];
+        for (int i = 0; i < insertedKeys.length; i++) {
+            int from = random.nextInt(100);
+            int to = random.nextInt(100);
+            insertedKeys[i] = new int[]{from, to};
+            cache.put(from, to, 0, from * 100 + to);
+            assertThat(cache.get(from, to, 0)).isEqualTo(from * 100 + to);
+
+            // All the entries in the cache can still be found
+            int numberOfEntries = 0;
+            boolean[][] counted = new boolean[100][100];
+            for (int j = 0; j <= i; j++) {
+                int f = insertedKeys[j][0];
+                int t = insertedKeys[j][1];
+                if (!counted[f][t]) {
+                    counted[f][t] = true;
+                    int travelTime = cache.get(f, t, 0);
+                    if (travelTime != BoundedTravelTimeCache.MISSING) {
+                        assertThat(travelTime).isEqualTo(f * 100 + t);
+                        numberOfEntries++;
+                    }
+                }
+            }
+            assertThat(numberOfEntries).isEqualTo(Math.min(capacity, countDistinct(insertedKeys, i)));
+        }
+        assertThat(cache.getEvictions()).isPositive();
+    }
+
+    private static int countDistinct(int[][] keys, int lastIndex) {
+        boolean[][] seen = new boolean[100][100];
+        int count = 0;
+        for (int j = 0; j <= lastIndex; j++) {
+            if (!seen[keys[j][0]][keys[j][1]]) {
+                seen[keys[j][0]][keys[j][1]] = true;
+                count++;
+            }
+        }
+        return count;
+    }
+}
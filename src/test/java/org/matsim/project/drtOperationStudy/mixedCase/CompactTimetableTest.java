@@ -0,0 +1,138 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicleImpl;
+import org.matsim.contrib.dvrp.fleet.ImmutableDvrpVehicleSpecification;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Checks the incrementally updated cumulative slack times against the full re-calculation (backward pass).
+ */
+public class CompactTimetableTest {
+    private static final double STOP_DURATION = 60;
+    private static final double TRAVEL_TIME = 100;
+    private static final double SERVICE_END_TIME = 30 * 3600;
+
+    private final Link link = createLink();
+    private final DvrpVehicle vehicle = new DvrpVehicleImpl(ImmutableDvrpVehicleSpecification.newBuilder()
+            .id(Id.create("vehicle", DvrpVehicle.class))
+            .startLinkId(link.getId())
+            .capacity(4)
+            .serviceBeginTime(0)
+            .serviceEndTime(SERVICE_END_TIME)
+            .build(), link);
+
+    @Test
+    public void retimedTimetableEntryRequiresRecalculation() {
+        // delayed and brought forward
+        for (double delay : new double[]{30, -30}) {
+            List<TimetableEntry> timetable = createTimetable(new Random(4711));
+            TimetableEntry stop = timetable.get(timetable.size() / 2);
+            stop.updateArrivalTime(stop.getArrivalTime() + delay);
+            assertThatThrownBy(stop::getCumulativeSlackTime).isInstanceOf(IllegalStateException.class);
+
+            TimetableEntry.updateCumulativeSlackTimes(timetable);
+            List<TimetableEntry> recalculated = copy(timetable);
+            TimetableEntry.updateCumulativeSlackTimes(recalculated);
+            assertThat(stop.getCumulativeSlackTime())
+                    .isEqualTo(recalculated.get(timetable.size() / 2).getCumulativeSlackTime());
+        }
+    }
+
+    @Test
+    public void insertStopEqualToFullRecalculation() {
+        Random random = new Random(4711);
+        CompactTimetable compactTimetable = new CompactTimetable(STOP_DURATION);
+        for (int run = 0; run < 100; run++) {
+            List<TimetableEntry> timetable = createTimetable(random);
+            compactTimetable.load(timetable, vehicle);
+
+            int idx = random.nextInt(timetable.size() + 1);
+            double arrivalTime = idx == 0 ? 0 : timetable.get(idx - 1).getDepartureTime() + TRAVEL_TIME;
+            // positive and negative delays (i.e., the following stops are brought forward)
+            double delay = (random.nextDouble() - 0.3) * 2 * STOP_DURATION;
+            var request = new MixedCaseDrtOptimizer.GeneralRequest(Id.create("inserted", Person.class), link.getId(),
+                    link.getId(), arrivalTime, arrivalTime + 600, arrivalTime + 3600);
+            compactTimetable.insertStop(idx, request, TimetableEntry.StopType.PICKUP, arrivalTime,
+                    arrivalTime + STOP_DURATION, idx < timetable.size() ? timetable.get(idx).getOccupancyBeforeStop() : 0, delay);
+
+            // full backward pass (from the last stop down to the inserted stop)
+            double nextCumulativeSlackTime = Double.NaN;
+            for (int i = compactTimetable.size() - 1; i >= idx; i--) {
+                double expected = Math.min(compactTimetable.getLatestArrivalTime(i), SERVICE_END_TIME - STOP_DURATION)
+                        - compactTimetable.getArrivalTime(i);
+                if (i + 1 < compactTimetable.size()) {
+                    expected = Math.min(expected, compactTimetable.getSlackTime(i) + Math.max(0, nextCumulativeSlackTime));
+                }
+                assertThat(compactTimetable.getCumulativeSlackTime(i)).isCloseTo(expected, within(1e-9));
+                nextCumulativeSlackTime = expected;
+            }
+        }
+    }
+
+    /**
+     * Random timetable of pickups and drop offs (each request is picked up before it is dropped off), travel time of
+     * {@link #TRAVEL_TIME} between all the stops.
+     */
+    private List<TimetableEntry> createTimetable(Random random) {
+        List<MixedCaseDrtOptimizer.GeneralRequest> onboard = new ArrayList<>();
+        List<TimetableEntry> timetable = new ArrayList<>();
+        int numberOfRequests = 2 + random.nextInt(6);
+        int pickedUp = 0;
+        double time = 0;
+        while (pickedUp < numberOfRequests || !onboard.isEmpty()) {
+            boolean pickup = onboard.isEmpty() || (pickedUp < numberOfRequests && onboard.size() < 4 && random.nextBoolean());
+            double arrivalTime = time + TRAVEL_TIME;
+            if (pickup) {
+                double earliestStartTime = arrivalTime + random.nextInt(3) * 60 - 60;
+                var request = new MixedCaseDrtOptimizer.GeneralRequest(Id.create("p" + pickedUp, Person.class),
+                        link.getId(), link.getId(), earliestStartTime, Math.max(arrivalTime, earliestStartTime) + random.nextInt(600),
+                        earliestStartTime + 3600 + random.nextInt(1800));
+                double departureTime = Math.max(arrivalTime, earliestStartTime) + STOP_DURATION;
+                timetable.add(new TimetableEntry(request, TimetableEntry.StopType.PICKUP, arrivalTime, departureTime,
+                        onboard.size(), STOP_DURATION, vehicle));
+                onboard.add(request);
+                pickedUp++;
+                time = departureTime;
+            } else {
+                var request = onboard.remove(random.nextInt(onboard.size()));
+                double departureTime = arrivalTime + STOP_DURATION;
+                timetable.add(new TimetableEntry(request, TimetableEntry.StopType.DROP_OFF, arrivalTime, departureTime,
+                        onboard.size() + 1, STOP_DURATION, vehicle));
+                time = departureTime;
+            }
+        }
+        TimetableEntry.updateCumulativeSlackTimes(timetable);
+        return timetable;
+    }
+
+    private static List<TimetableEntry> copy(List<TimetableEntry> timetable) {
+        List<TimetableEntry> copy = new ArrayList<>();
+        for (TimetableEntry stop : timetable) {
+            copy.add(new TimetableEntry(stop));
+        }
+        return copy;
+    }
+
+    private static Link createLink() {
+        Network network = NetworkUtils.createNetwork();
+        Node from = NetworkUtils.createAndAddNode(network, Id.createNodeId("from"), new Coord(0, 0));
+        Node to = NetworkUtils.createAndAddNode(network, Id.createNodeId("to"), new Coord(1000, 0));
+        return NetworkUtils.createAndAddLink(network, Id.createLinkId("link"), from, to, 1000, 10, 1000, 1);
+    }
+}
@@ -0,0 +1,78 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.dvrp.router.TimeAsTravelDisutility;
+import org.matsim.contrib.dvrp.trafficmonitoring.QSimFreeSpeedTravelTime;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.matsim.examples.ExamplesUtils.getTestScenarioURL;
+
+/**
+ * Nodes added within a refresh interval are calculated incrementally (no full re-calculation) and give the same
+ * travel times as a full re-calculation (time-independent travel times).
+ */
+public class IncrementalNodeToNodeTravelTimeMatrixTest {
+    private static final double REFRESH_INTERVAL = 900;
+
+    private final Network network = readNetwork();
+    private final TravelTime travelTime = new QSimFreeSpeedTravelTime(1);
+
+    @Test
+    public void nodesAddedWithinIntervalEqualToFullRecalculation() {
+        List<Node> nodes = new ArrayList<>(network.getNodes().values());
+        Set<Node> firstNodes = new HashSet<>(nodes.subList(0, nodes.size() / 2));
+        // some nodes are evicted, the other half of the nodes is added
+        Set<Node> secondNodes = new HashSet<>(nodes.subList(nodes.size() / 4, nodes.size()));
+
+        IncrementalNodeToNodeTravelTimeMatrix matrix = createMatrix();
+        matrix.update(firstNodes, 100);
+        assertThat(matrix.getNumberOfFullRecalculations()).isEqualTo(1);
+
+        matrix.update(secondNodes, 200);
+        assertThat(matrix.getNumberOfFullRecalculations()).isEqualTo(1);
+        for (Node node : nodes) {
+            assertThat(matrix.contains(node)).isEqualTo(secondNodes.contains(node));
+        }
+        IncrementalNodeToNodeTravelTimeMatrix recalculatedMatrix = createMatrix();
+        recalculatedMatrix.update(secondNodes, 200);
+        assertTravelTimesEqual(matrix, recalculatedMatrix, secondNodes);
+
+        // the next refresh interval
+        matrix.update(firstNodes, REFRESH_INTERVAL + 100);
+        assertThat(matrix.getNumberOfFullRecalculations()).isEqualTo(2);
+        recalculatedMatrix = createMatrix();
+        recalculatedMatrix.update(firstNodes, REFRESH_INTERVAL + 100);
+        assertTravelTimesEqual(matrix, recalculatedMatrix, firstNodes);
+    }
+
+    private static void assertTravelTimesEqual(IncrementalNodeToNodeTravelTimeMatrix matrix,
+                                               IncrementalNodeToNodeTravelTimeMatrix expectedMatrix, Set<Node> nodes) {
+        for (Node from : nodes) {
+            for (Node to : nodes) {
+                assertThat(matrix.getTravelTime(from, to, 0)).isEqualTo(expectedMatrix.getTravelTime(from, to, 0));
+            }
+        }
+    }
+
+    private IncrementalNodeToNodeTravelTimeMatrix createMatrix() {
+        return new IncrementalNodeToNodeTravelTimeMatrix(network, travelTime, new TimeAsTravelDisutility(travelTime),
+                REFRESH_INTERVAL);
+    }
+
+    private static Network readNetwork() {
+        var network = NetworkUtils.createNetwork();
+        new MatsimNetworkReader(network).parse(IOUtils.extendUrl(getTestScenarioURL("dvrp-grid"), "grid_network.xml"));
+        return network;
+    }
+}
@@ -0,0 +1,118 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
+import org.matsim.contrib.dvrp.passenger.PassengerDroppedOffEvent;
+import org.matsim.contrib.dvrp.passenger.PassengerDroppedOffEventHandler;
+import org.matsim.contrib.dvrp.passenger.PassengerRequestRejectedEvent;
+import org.matsim.contrib.dvrp.passenger.PassengerRequestRejectedEventHandler;
+import org.matsim.contrib.dvrp.run.DvrpConfigGroup;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs a small mixed case scenario (half of the trips pre-booked) with synchronous and asynchronous re-planning.
+ */
+public class MixedCaseAsyncReplanningTest {
+    private static final String CONFIG_FILE = "scenarios/cottbus/config.xml";
+    private static final String PLANS_FILE = "scenarios/cottbus/drt-test-plans.xml.gz";
+    private static final String VEHICLES_FILE = "drt-vehicles/500-8-seater-drt-vehicles.xml";
+    private static final int NUMBER_OF_PERSONS = 100;
+
+    @Rule
+    public MatsimTestUtils utils = new MatsimTestUtils();
+
+    @Test
+    public void asyncReplanningServesSameRequestsAsSyncReplanning() {
+        String plansFile = writeSmallPopulation();
+        RunResult syncResult = run(plansFile, false);
+        RunResult asyncResult = run(plansFile, true);
+
+        assertThat(syncResult.droppedOffPassengers()).isNotEmpty();
+        assertThat(asyncResult.rejectedPassengers()).isEqualTo(syncResult.rejectedPassengers());
+        assertThat(asyncResult.droppedOffPassengers()).isEqualTo(syncResult.droppedOffPassengers());
+    }
+
+    private record RunResult(Set<Id<Person>> rejectedPassengers, Set<Id<Person>> droppedOffPassengers) {
+    }
+
+    private RunResult run(String plansFile, boolean asyncReplanning) {
+        Config config = ConfigUtils.loadConfig(CONFIG_FILE, new MultiModeDrtConfigGroup(), new DvrpConfigGroup());
+        DrtConfigGroup drtConfigGroup = MultiModeDrtConfigGroup.get(config).getModalElements().iterator().next();
+        drtConfigGroup.vehiclesFile = VEHICLES_FILE;
+        config.plans().setInputFile(plansFile);
+        config.controler().setOutputDirectory(utils.getOutputDirectory() + (asyncReplanning ? "async" : "sync"));
+        config.controler().setOverwriteFileSetting(OutputDirectoryHierarchy.OverwriteFileSetting.deleteDirectoryIfExists);
+        config.controler().setLastIteration(0);
+
+        // Every second person is pre-booked, the others are spontaneous requests (inserted again when merging)
+        Population prebookedPlans = PopulationUtils.readPopulation(plansFile);
+        List<Id<Person>> personIds = new ArrayList<>(prebookedPlans.getPersons().keySet());
+        for (int i = 1; i < personIds.size(); i += 2) {
+            prebookedPlans.removePerson(personIds.get(i));
+        }
+
+        Controler controler = RunMixedCase.createControler(config, drtConfigGroup, new MixedCaseModule(prebookedPlans,
+                drtConfigGroup.mode, drtConfigGroup, 1800, 900, 0, false, 4711,
+                MixedCaseModule.PrebookedRequestSolverType.SEQ_INSERTION, asyncReplanning, null, 0, 0,
+                MixedCaseModule.OnlineTravelTimeMatrixType.FREE_SPEED));
+        PassengerEventCollector collector = new PassengerEventCollector();
+        controler.addOverridingModule(new AbstractModule() {
+            @Override
+            public void install() {
+                addEventHandlerBinding().toInstance(collector);
+            }
+        });
+        controler.run();
+        return new RunResult(collector.rejectedPassengers, collector.droppedOffPassengers);
+    }
+
+    private String writeSmallPopulation() {
+        Population population = PopulationUtils.readPopulation(PLANS_FILE);
+        List<Id<Person>> personIds = new ArrayList<>(population.getPersons().keySet());
+        for (int i = NUMBER_OF_PERSONS; i < personIds.size(); i++) {
+            population.removePerson(personIds.get(i));
+        }
+        String plansFile = utils.getOutputDirectory() + "plans.xml.gz";
+        PopulationUtils.writePopulation(population, plansFile);
+        return plansFile;
+    }
+
+    private static class PassengerEventCollector implements PassengerRequestRejectedEventHandler, PassengerDroppedOffEventHandler {
+        private final Set<Id<Person>> rejectedPassengers = new HashSet<>();
+        private final Set<Id<Person>> droppedOffPassengers = new HashSet<>();
+
+        @Override
+        public void handleEvent(PassengerRequestRejectedEvent event) {
+            rejectedPassengers.add(event.getPersonId());
+        }
+
+        @Override
+        public void handleEvent(PassengerDroppedOffEvent event) {
+            droppedOffPassengers.add(event.getPersonId());
+        }
+
+        @Override
+        public void reset(int iteration) {
+            rejectedPassengers.clear();
+            droppedOffPassengers.clear();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.matsim.project.drtOperationStudy.mixedCase;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicleImpl;
+import org.matsim.contrib.dvrp.fleet.ImmutableDvrpVehicleSpecification;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.matsim.examples.ExamplesUtils.getTestScenarioURL;
+
+/**
+ * Only the vehicles that have moved to another link or whose timetable has changed (replaced, or stops brought
+ * forward in place) are re-indexed.
+ */
+public class VehicleIndexTest {
+    private static final int NUMBER_OF_VEHICLES = 10;
+    private static final double STOP_DURATION = 60;
+
+    private final Network network = readNetwork();
+    private final List<Link> links = network.getLinks().values().stream()
+            .sorted(Comparator.comparing(Link::getId))
+            .toList();
+
+    @Test
+    public void onlyChangedVehiclesAreReindexed() {
+        Map<Id<DvrpVehicle>, List<TimetableEntry>> timetables = new HashMap<>();
+        Map<Id<DvrpVehicle>, MixedCaseDrtOptimizer.OnlineVehicleInfo> vehicleInfoMap = new HashMap<>();
+        List<DvrpVehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_VEHICLES; i++) {
+            DvrpVehicle vehicle = createVehicle(i);
+            vehicles.add(vehicle);
+            vehicleInfoMap.put(vehicle.getId(), new MixedCaseDrtOptimizer.OnlineVehicleInfo(vehicle, links.get(i), 0));
+            timetables.put(vehicle.getId(), createTimetable(vehicle, i));
+        }
+        VehicleIndex vehicleIndex = new VehicleIndex(network);
+        vehicleIndex.build(timetables, vehicleInfoMap);
+        assertThat(vehicleIndex.getNumberOfIndexedVehicles()).isEqualTo(NUMBER_OF_VEHICLES);
+
+        // new time step: new vehicle infos with a later divertable time on the same links
+        for (DvrpVehicle vehicle : vehicles) {
+            var vehicleInfo = vehicleInfoMap.get(vehicle.getId());
+            vehicleInfoMap.put(vehicle.getId(), new MixedCaseDrtOptimizer.OnlineVehicleInfo(vehicle, vehicleInfo.currentLink(), 60));
+        }
+        vehicleIndex.update(timetables, vehicleInfoMap);
+        assertThat(vehicleIndex.getNumberOfIndexedVehicles()).isEqualTo(NUMBER_OF_VEHICLES);
+
+        // vehicle 0 has moved to another link
+        vehicleInfoMap.put(vehicles.get(0).getId(), new MixedCaseDrtOptimizer.OnlineVehicleInfo(vehicles.get(0),
+                links.get(NUMBER_OF_VEHICLES), 120));
+        // the timetable of vehicle 1 is replaced
+        timetables.put(vehicles.get(1).getId(), createTimetable(vehicles.get(1), 1));
+        // the first stop of vehicle 2 has been served (removed in place)
+        timetables.get(vehicles.get(2).getId()).remove(0);
+        // the first stop of vehicle 3 is brought forward in place
+        TimetableEntry broughtForwardStop = timetables.get(vehicles.get(3).getId()).get(0);
+        broughtForwardStop.updateArrivalTime(broughtForwardStop.getArrivalTime() - 60);
+        // the first stop of vehicle 4 is delayed in place
+        TimetableEntry delayedStop = timetables.get(vehicles.get(4).getId()).get(0);
+        delayedStop.updateArrivalTime(delayedStop.getArrivalTime() + 60);
+        vehicleIndex.update(timetables, vehicleInfoMap);
+        assertThat(vehicleIndex.getNumberOfIndexedVehicles()).isEqualTo(NUMBER_OF_VEHICLES + 3);
+
+        // nothing has changed
+        vehicleIndex.update(timetables, vehicleInfoMap);
+        assertThat(vehicleIndex.getNumberOfIndexedVehicles()).isEqualTo(NUMBER_OF_VEHICLES + 3);
+
+        // vehicle 0 is back on its first link, vehicle 5 is removed
+        vehicleInfoMap.put(vehicles.get(0).getId(), new MixedCaseDrtOptimizer.OnlineVehicleInfo(vehicles.get(0),
+                links.get(0), 180));
+        vehicleInfoMap.remove(vehicles.get(5).getId());
+        vehicleIndex.update(timetables, vehicleInfoMap);
+        assertThat(vehicleIndex.getNumberOfIndexedVehicles()).isEqualTo(NUMBER_OF_VEHICLES + 4);
+        assertThat(vehicleIndex.getCandidateVehicles(links.get(0), 24 * 3600))
+                .hasSize(NUMBER_OF_VEHICLES - 1)
+                .doesNotContain(vehicles.get(5).getId());
+    }
+
+    private DvrpVehicle createVehicle(int i) {
+        return new DvrpVehicleImpl(ImmutableDvrpVehicleSpecification.newBuilder()
+                .id(Id.create("vehicle_" + i, DvrpVehicle.class))
+                .startLinkId(links.get(i).getId())
+                .capacity(4)
+                .serviceBeginTime(0)
+                .serviceEndTime(30 * 3600)
+                .build(), links.get(i));
+    }
+
+    /**
+     * Pickup and drop off of one request (the vehicle waits for the pickup).
+     */
+    private List<TimetableEntry> createTimetable(DvrpVehicle vehicle, int i) {
+        Link fromLink = links.get(links.size() - 1 - i);
+        Link toLink = links.get(links.size() / 2 + i);
+        var request = new MixedCaseDrtOptimizer.GeneralRequest(Id.create("passenger_" + i, Person.class),
+                fromLink.getId(), toLink.getId(), 0, 3600, 7200);
+        List<TimetableEntry> timetable = new ArrayList<>();
+        timetable.add(new TimetableEntry(request, TimetableEntry.StopType.PICKUP, 600, 600 + STOP_DURATION, 0,
+                STOP_DURATION, vehicle));
+        timetable.add(new TimetableEntry(request, TimetableEntry.StopType.DROP_OFF, 1200, 1200 + STOP_DURATION, 1,
+                STOP_DURATION, vehicle));
+        TimetableEntry.updateCumulativeSlackTimes(timetable);
+        return timetable;
+    }
+
+    private static Network readNetwork() {
+        var network = NetworkUtils.createNetwork();
+        new MatsimNetworkReader(network).parse(IOUtils.extendUrl(getTestScenarioURL("dvrp-grid"), "grid_network.xml"));
+        return network;
+    }
+}
@@ -0,0 +1,125 @@
+package org.matsim.project.drtOperationStudy.rollingHorizon;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.contrib.drt.passenger.DrtRequest;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicleImpl;
+import org.matsim.contrib.dvrp.fleet.ImmutableDvrpVehicleSpecification;
+import org.matsim.contrib.dvrp.optimizer.Request;
+import org.matsim.project.utils.GridNetworkTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Passengers already onboard must stay with their vehicle, also when the problem is decomposed into clusters and the
+ * drop-off is in the area of another cluster.
+ */
+public class PDPTWSolverJspritTest {
+    private static final double NOW = 3600;
+
+    // grid of nodes (1 km apart) with links in both directions
+    private final Network network = GridNetworkTestUtils.createGridNetwork(6, 1000, 10);
+
+    @Test
+    public void onboardPassengersStayWithTheirVehicle() {
+        for (int numberOfClusters : new int[]{1, 2}) {
+            // Two vehicles in the south-west and two in the north-east corner. The passengers onboard travel to the
+            // opposite corner
+            Map<Id<DvrpVehicle>, RollingHorizonDrtOptimizer.OnlineVehicleInfo> vehicleInfoMap = new HashMap<>();
+            Map<Id<DvrpVehicle>, Queue<RollingHorizonDrtOptimizer.PreplannedStop>> previousStops = new HashMap<>();
+            Map<RollingHorizonDrtOptimizer.PreplannedRequestKey, Id<DvrpVehicle>> previousAssignment = new HashMap<>();
+            addVehicle("sw_0", getLink(0, 0, 1, 0), vehicleInfoMap, previousStops);
+            addVehicle("sw_1", getLink(0, 1, 0, 2), vehicleInfoMap, previousStops);
+            addVehicle("ne_0", getLink(5, 5, 4, 5), vehicleInfoMap, previousStops);
+            addVehicle("ne_1", getLink(5, 4, 5, 3), vehicleInfoMap, previousStops);
+
+            var onboardSouthWest = addOnboardPassenger("onboard_sw", "sw_0", getLink(4, 4, 5, 4), previousStops, previousAssignment);
+            var onboardNorthEast = addOnboardPassenger("onboard_ne", "ne_0", getLink(1, 1, 1, 0), previousStops, previousAssignment);
+
+            // New requests around both corners
+            List<DrtRequest> newRequests = new ArrayList<>();
+            newRequests.add(createRequest("new_0", getLink(1, 0, 2, 0), getLink(2, 2, 3, 2)));
+            newRequests.add(createRequest("new_1", getLink(0, 2, 0, 3), getLink(3, 3, 3, 4)));
+            newRequests.add(createRequest("new_2", getLink(4, 5, 3, 5), getLink(2, 2, 2, 1)));
+            newRequests.add(createRequest("new_3", getLink(5, 3, 5, 2), getLink(1, 2, 0, 2)));
+
+            var previousSchedules = new RollingHorizonDrtOptimizer.PreplannedSchedules(previousAssignment, previousStops,
+                    new HashMap<>());
+            var solver = new PDPTWSolverJsprit(new DrtConfigGroup(), network,
+                    new PDPTWSolverJsprit.Options(100, false, new Random(4711), numberOfClusters));
+            var schedules = solver.calculate(previousSchedules, vehicleInfoMap, newRequests, 1800, 900, NOW);
+
+            assertOnboardPassengerStaysWithVehicle(schedules, onboardSouthWest, "sw_0");
+            assertOnboardPassengerStaysWithVehicle(schedules, onboardNorthEast, "ne_0");
+        }
+    }
+
+    private static void assertOnboardPassengerStaysWithVehicle(RollingHorizonDrtOptimizer.PreplannedSchedules schedules,
+                                                               RollingHorizonDrtOptimizer.PreplannedRequest request,
+                                                               String vehicleId) {
+        Id<DvrpVehicle> expectedVehicleId = Id.create(vehicleId, DvrpVehicle.class);
+        assertThat(schedules.unassignedRequests()).doesNotContainKey(request.key());
+        assertThat(schedules.preplannedRequestToVehicle().get(request.key())).isEqualTo(expectedVehicleId);
+        // Only the drop off is planned (no second pickup)
+        assertThat(schedules.vehicleToPreplannedStops().get(expectedVehicleId))
+                .contains(new RollingHorizonDrtOptimizer.PreplannedStop(request, false))
+                .doesNotContain(new RollingHorizonDrtOptimizer.PreplannedStop(request, true));
+    }
+
+    private void addVehicle(String id, Link link, Map<Id<DvrpVehicle>, RollingHorizonDrtOptimizer.OnlineVehicleInfo> vehicleInfoMap,
+                            Map<Id<DvrpVehicle>, Queue<RollingHorizonDrtOptimizer.PreplannedStop>> previousStops) {
+        DvrpVehicle vehicle = new DvrpVehicleImpl(ImmutableDvrpVehicleSpecification.newBuilder()
+                .id(Id.create(id, DvrpVehicle.class))
+                .startLinkId(link.getId())
+                .capacity(4)
+                .serviceBeginTime(0)
+                .serviceEndTime(24 * 3600)
+                .build(), link);
+        vehicleInfoMap.put(vehicle.getId(), new RollingHorizonDrtOptimizer.OnlineVehicleInfo(vehicle, link, NOW));
+        previousStops.put(vehicle.getId(), new LinkedList<>());
+    }
+
+    private RollingHorizonDrtOptimizer.PreplannedRequest addOnboardPassenger(String passengerId, String vehicleId, Link toLink,
+                                                                            Map<Id<DvrpVehicle>, Queue<RollingHorizonDrtOptimizer.PreplannedStop>> previousStops,
+                                                                            Map<RollingHorizonDrtOptimizer.PreplannedRequestKey, Id<DvrpVehicle>> previousAssignment) {
+        Id<DvrpVehicle> id = Id.create(vehicleId, DvrpVehicle.class);
+        Link fromLink = getLink(0, 0, 0, 1); // picked up before
+        var request = new RollingHorizonDrtOptimizer.PreplannedRequest(new RollingHorizonDrtOptimizer.PreplannedRequestKey(
+                Id.createPersonId(passengerId), fromLink.getId(), toLink.getId()), NOW - 600, NOW - 300, NOW + 3600);
+        previousStops.get(id).add(new RollingHorizonDrtOptimizer.PreplannedStop(request, false));
+        previousAssignment.put(request.key(), id);
+        return request;
+    }
+
+    private DrtRequest createRequest(String passengerId, Link fromLink, Link toLink) {
+        Id<Person> personId = Id.createPersonId(passengerId);
+        return DrtRequest.newBuilder()
+                .id(Id.create(passengerId, Request.class))
+                .passengerId(personId)
+                .mode("drt")
+                .fromLink(fromLink)
+                .toLink(toLink)
+                .submissionTime(NOW)
+                .earliestStartTime(NOW)
+                .latestStartTime(NOW + 1200)
+                .latestArrivalTime(NOW + 5400)
+                .build();
+    }
+
+    private Link getLink(int fromX, int fromY, int toX, int toY) {
+        return GridNetworkTestUtils.getLink(network, fromX, fromY, toX, toY);
+    }
+}
@@ -0,0 +1,80 @@
+package org.matsim.project.drtRequestPatternIdentification.shareability;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.project.drtRequestPatternIdentification.basicStructures.DrtDemand;
+import org.matsim.project.drtRequestPatternIdentification.basicStructures.KRiderDemandsPattern;
+import org.matsim.project.utils.GridNetworkTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Hand-built demands with known cliques: demands with the same origin, destination and departure time can all share a
+ * ride, demands departing hours apart cannot.
+ */
+public class KRiderShareabilityCalculatorTest {
+    private final Network network = ShareabilityTestUtils.createGridNetwork();
+    private final DrtConfigGroup drtConfigGroup = ShareabilityTestUtils.createDrtConfigGroup();
+
+    @Test
+    public void cliquesOfThreeAndTwo() {
+        // a clique of three demands, a clique of two demands and a demand without any shareable demand
+        List<DrtDemand> demands = new ArrayList<>();
+        addDemands(demands, "three", 3, getLink(0, 0, 1, 0), getLink(4, 5, 5, 5), 8 * 3600);
+        addDemands(demands, "two", 2, getLink(5, 0, 5, 1), getLink(0, 4, 0, 5), 12 * 3600);
+        addDemands(demands, "single", 1, getLink(0, 0, 1, 0), getLink(4, 5, 5, 5), 16 * 3600);
+
+        // one trip of three and one trip of two demands
+        KRiderDemandsPattern pattern = new KRiderShareabilityCalculator(drtConfigGroup, network, 3).quantifyDemands(demands);
+        assertThat(pattern.kRiderShareability()).isCloseTo(5. / 6, within(1e-9));
+        assertThat(pattern.averageSharedTripSize()).isCloseTo(2.5, within(1e-9));
+
+        // k = 2: only two demands of the clique of three share a ride
+        pattern = new KRiderShareabilityCalculator(drtConfigGroup, network, 2).quantifyDemands(demands);
+        assertThat(pattern.kRiderShareability()).isCloseTo(4. / 6, within(1e-9));
+        assertThat(pattern.averageSharedTripSize()).isCloseTo(2, within(1e-9));
+    }
+
+    @Test
+    public void maxTripsPerDemand() {
+        List<DrtDemand> demands = new ArrayList<>();
+        addDemands(demands, "four", 4, getLink(0, 0, 1, 0), getLink(4, 5, 5, 5), 8 * 3600);
+
+        KRiderDemandsPattern pattern = new KRiderShareabilityCalculator(drtConfigGroup, network, 4).quantifyDemands(demands);
+        assertThat(pattern.kRiderShareability()).isCloseTo(1, within(1e-9));
+        assertThat(pattern.averageSharedTripSize()).isCloseTo(4, within(1e-9));
+
+        // each demand is only kept in one pair, so there are no trips of three (and four) demands
+        pattern = new KRiderShareabilityCalculator(drtConfigGroup, network, 4, 1).quantifyDemands(demands);
+        assertThat(pattern.kRiderShareability()).isCloseTo(1, within(1e-9));
+        assertThat(pattern.averageSharedTripSize()).isCloseTo(2, within(1e-9));
+    }
+
+    @Test
+    public void noSharedTrips() {
+        List<DrtDemand> demands = new ArrayList<>();
+        addDemands(demands, "morning", 1, getLink(0, 0, 1, 0), getLink(4, 5, 5, 5), 8 * 3600);
+        addDemands(demands, "afternoon", 1, getLink(0, 0, 1, 0), getLink(4, 5, 5, 5), 16 * 3600);
+
+        KRiderDemandsPattern pattern = new KRiderShareabilityCalculator(drtConfigGroup, network, 3).quantifyDemands(demands);
+        assertThat(pattern.kRiderShareability()).isZero();
+        assertThat(pattern.averageSharedTripSize()).isZero();
+    }
+
+    private static void addDemands(List<DrtDemand> demands, String prefix, int numberOfDemands, Link fromLink, Link toLink,
+                                   double departureTime) {
+        for (int i = 0; i < numberOfDemands; i++) {
+            demands.add(new DrtDemand(prefix + "_" + i, fromLink, toLink, departureTime));
+        }
+    }
+
+    private Link getLink(int fromX, int fromY, int toX, int toY) {
+        return GridNetworkTestUtils.getLink(network, fromX, fromY, toX, toY);
+    }
+}
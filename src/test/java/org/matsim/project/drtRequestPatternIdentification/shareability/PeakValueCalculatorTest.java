@@ -0,0 +1,66 @@
+package org.matsim.project.drtRequestPatternIdentification.shareability;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.project.drtRequestPatternIdentification.basicStructures.DrtDemand;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Compares the incremental sliding window with the evaluation of each time window from scratch. The demands are in a
+ * morning and an afternoon peak, the time windows in between (and at night) are empty.
+ */
+public class PeakValueCalculatorTest {
+    private static final double TIME_BIN = 3600;
+
+    private final Network network = ShareabilityTestUtils.createGridNetwork();
+    private final DrtConfigGroup drtConfigGroup = ShareabilityTestUtils.createDrtConfigGroup();
+
+    @Test
+    public void incrementalPeakValueEqualToBatch() {
+        Random random = new Random(4711);
+        List<DrtDemand> morningDemands = createDemands("morning", 6 * 3600, 9 * 3600, 300, random);
+        List<DrtDemand> afternoonDemands = createDemands("afternoon", 16 * 3600, 18 * 3600, 200, random);
+        List<DrtDemand> demands = new ArrayList<>(afternoonDemands);
+        demands.addAll(morningDemands); // not sorted by departure time
+
+        double incrementalPeakValue = calculate(demands, true);
+        double batchPeakValue = calculate(demands, false);
+        assertThat(incrementalPeakValue).isPositive().isCloseTo(batchPeakValue, within(1e-6));
+
+        // no time window contains demands of both peaks, the empty windows in between have no load
+        double morningPeakValue = calculate(morningDemands, false);
+        double afternoonPeakValue = calculate(afternoonDemands, false);
+        assertThat(morningPeakValue).isPositive();
+        assertThat(afternoonPeakValue).isPositive();
+        assertThat(incrementalPeakValue).isCloseTo(Math.max(morningPeakValue, afternoonPeakValue), within(1e-6));
+        assertThat(calculate(morningDemands, true)).isCloseTo(morningPeakValue, within(1e-6));
+        assertThat(calculate(afternoonDemands, true)).isCloseTo(afternoonPeakValue, within(1e-6));
+    }
+
+    private double calculate(List<DrtDemand> demands, boolean incremental) {
+        // the demands are sorted in place
+        return new PeakValueCalculator(drtConfigGroup, network, TIME_BIN, incremental).calculate(new ArrayList<>(demands));
+    }
+
+    private List<DrtDemand> createDemands(String prefix, int fromTime, int toTime, int numberOfDemands, Random random) {
+        List<Link> links = new ArrayList<>(network.getLinks().values());
+        List<DrtDemand> demands = new ArrayList<>();
+        for (int i = 0; i < numberOfDemands; i++) {
+            Link fromLink = links.get(random.nextInt(links.size()));
+            Link toLink;
+            do {
+                toLink = links.get(random.nextInt(links.size()));
+            } while (toLink == fromLink); // otherwise, the pooled drive time may be 0 (infinite pooling score)
+            demands.add(new DrtDemand(prefix + "_" + i, fromLink, toLink, fromTime + random.nextInt(toTime - fromTime)));
+        }
+        return demands;
+    }
+}
@@ -0,0 +1,205 @@
+package org.matsim.project.drtRequestPatternIdentification.shareability;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.dvrp.trafficmonitoring.QSimFreeSpeedTravelTime;
+import org.matsim.project.drtRequestPatternIdentification.basicStructures.DrtDemand;
+import org.matsim.project.utils.CompactLinkToLinkTravelTimeMatrix;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.matsim.project.drtRequestPatternIdentification.shareability.ShareabilityTestUtils.ALPHA;
+import static org.matsim.project.drtRequestPatternIdentification.shareability.ShareabilityTestUtils.BETA;
+import static org.matsim.project.drtRequestPatternIdentification.shareability.ShareabilityTestUtils.MAX_WAIT_TIME;
+import static org.matsim.project.drtRequestPatternIdentification.shareability.ShareabilityTestUtils.STOP_DURATION;
+
+/**
+ * Compares the pruned shareability graph with the evaluation of all the pairs (all four stop orders, without any
+ * pruning) on random demands.
+ */
+public class ShareabilityGraphBuilderTest {
+    private static final int NUMBER_OF_DEMANDS = 600; // enough rows for the parallel shards
+
+    private final Network network = ShareabilityTestUtils.createGridNetwork();
+    private final CompactLinkToLinkTravelTimeMatrix travelTimeMatrix = new CompactLinkToLinkTravelTimeMatrix(network,
+            new QSimFreeSpeedTravelTime(1), network.getLinks().keySet(), 0);
+
+    @Test
+    public void prunedGraphEqualToAllPairs() {
+        List<DrtDemand> demands = createDemands(new Random(4711));
+        Map<Long, Double> expectedEdges = calcAllPairs(demands);
+        assertThat(expectedEdges).isNotEmpty();
+
+        var sequentialBuilder = new ShareabilityGraphBuilder(ALPHA, BETA, MAX_WAIT_TIME, STOP_DURATION, travelTimeMatrix);
+        assertEdgesEqual(getEdges(sequentialBuilder.build(demands)), expectedEdges);
+        // the pruning skips most of the pairs
+        assertThat(sequentialBuilder.getNumberOfEvaluatedPairs())
+                .isLessThan((long)NUMBER_OF_DEMANDS * (NUMBER_OF_DEMANDS - 1) / 2);
+
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+        try {
+            var parallelBuilder = new ShareabilityGraphBuilder(ALPHA, BETA, MAX_WAIT_TIME, STOP_DURATION, travelTimeMatrix,
+                    forkJoinPool);
+            assertEdgesEqual(getEdges(parallelBuilder.build(demands)), expectedEdges);
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    @Test
+    public void greedyMatchingEqualToBaseline() {
+        // the second half of the demands are copies of the first half, so there are many pairs with the same score
+        List<DrtDemand> demands = createDemands(new Random(4711));
+        for (int i = NUMBER_OF_DEMANDS / 2; i < NUMBER_OF_DEMANDS; i++) {
+            DrtDemand demand = demands.get(i - NUMBER_OF_DEMANDS / 2);
+            demands.set(i, new DrtDemand("copy_" + i, demand.fromLink(), demand.toLink(), demand.departureTime()));
+        }
+        ShareabilityGraph graph = new ShareabilityGraphBuilder(ALPHA, BETA, MAX_WAIT_TIME, STOP_DURATION,
+                travelTimeMatrix).build(demands);
+        // the same scores for both matchings, only the order of matching may differ
+        Map<Long, Double> edges = getEdges(graph);
+
+        for (int[] range : new int[][] {{0, NUMBER_OF_DEMANDS}, {100, 400}}) {
+            List<int[]> expectedPairs = calcBaselineGreedyMatching(edges, range[0], range[1]);
+            assertThat(expectedPairs).isNotEmpty();
+            assertThat(graph.calcGreedyMatchedPairs(range[0], range[1])).containsExactlyElementsOf(expectedPairs);
+            assertThat(graph.calcGreedyMatching(range[0], range[1])).isEqualTo(2 * expectedPairs.size());
+        }
+    }
+
+    // Reference: the greedy matching of the old pairwise pooling calculator (repeated scan of the sharing matrix)
+    private static List<int[]> calcBaselineGreedyMatching(Map<Long, Double> edges, int fromDemand, int toDemand) {
+        int numOfTrips = toDemand - fromDemand;
+        double[][] sharingMatrix = new double[numOfTrips][numOfTrips];
+        edges.forEach((edge, poolingScore) -> {
+            int a = (int)(edge / NUMBER_OF_DEMANDS);
+            int b = (int)(edge % NUMBER_OF_DEMANDS);
+            if (a >= fromDemand && b < toDemand) {
+                sharingMatrix[a - fromDemand][b - fromDemand] = poolingScore;
+            }
+        });
+
+        List<int[]> matchedPairs = new ArrayList<>();
+        while (true) {
+            double maxPotential = -1;
+            int iIndex = -1;
+            int jIndex = -1;
+            for (int i = 0; i < numOfTrips; i++) {
+                for (int j = 0; j < numOfTrips; j++) {
+                    if (sharingMatrix[i][j] > maxPotential) {
+                        maxPotential = sharingMatrix[i][j];
+                        iIndex = i;
+                        jIndex = j;
+                    }
+                }
+            }
+            if (maxPotential <= 0) {
+                return matchedPairs;
+            }
+            matchedPairs.add(new int[] {iIndex + fromDemand, jIndex + fromDemand});
+            for (int i = 0; i < numOfTrips; i++) {
+                sharingMatrix[i][iIndex] = 0;
+                sharingMatrix[i][jIndex] = 0;
+                sharingMatrix[iIndex][i] = 0;
+                sharingMatrix[jIndex][i] = 0;
+            }
+        }
+    }
+
+    private static void assertEdgesEqual(Map<Long, Double> edges, Map<Long, Double> expectedEdges) {
+        assertThat(edges.keySet()).isEqualTo(expectedEdges.keySet());
+        expectedEdges.forEach((edge, poolingScore) -> assertThat(edges.get(edge)).isCloseTo(poolingScore, within(1e-9)));
+    }
+
+    private static Map<Long, Double> getEdges(ShareabilityGraph graph) {
+        Map<Long, Double> edges = new HashMap<>();
+        for (int a = 0; a < graph.getNumberOfDemands(); a++) {
+            for (int k = 0; k < graph.getDegree(a); k++) {
+                int b = graph.getNeighbour(a, k);
+                edges.put(getEdgeKey(a, b), graph.getPoolingScore(a, k));
+            }
+        }
+        return edges;
+    }
+
+    private static long getEdgeKey(int a, int b) {
+        return (long)Math.min(a, b) * NUMBER_OF_DEMANDS + Math.max(a, b);
+    }
+
+    // Reference: all the pairs, all the four stop orders
+    private Map<Long, Double> calcAllPairs(List<DrtDemand> demands) {
+        Map<Long, Double> edges = new HashMap<>();
+        for (int a = 0; a < demands.size(); a++) {
+            for (int b = a + 1; b < demands.size(); b++) {
+                DrtDemand demandA = demands.get(a);
+                DrtDemand demandB = demands.get(b);
+                double minDriveTime = Double.POSITIVE_INFINITY;
+                minDriveTime = Math.min(minDriveTime, calcDriveTime(demandA, demandB, demandA, demandB));
+                minDriveTime = Math.min(minDriveTime, calcDriveTime(demandA, demandB, demandB, demandA));
+                minDriveTime = Math.min(minDriveTime, calcDriveTime(demandB, demandA, demandA, demandB));
+                minDriveTime = Math.min(minDriveTime, calcDriveTime(demandB, demandA, demandB, demandA));
+                if (minDriveTime < Double.POSITIVE_INFINITY) {
+                    edges.put(getEdgeKey(a, b), (getDirectTravelTime(demandA) + getDirectTravelTime(demandB)) / minDriveTime);
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * @return drive time of the ride (pickup 1, pickup 2, drop off 1, drop off 2) or infinity if it is not feasible
+     */
+    private double calcDriveTime(DrtDemand pickup1, DrtDemand pickup2, DrtDemand dropOff1, DrtDemand dropOff2) {
+        double departureTime = pickup1.departureTime() + STOP_DURATION;
+
+        double driveTime = travelTimeMatrix.getTravelTime(pickup1.fromLink(), pickup2.fromLink(), departureTime);
+        double arrivalTime = departureTime + driveTime;
+        if (arrivalTime > pickup2.departureTime() + MAX_WAIT_TIME) {
+            return Double.POSITIVE_INFINITY;
+        }
+        departureTime = Math.max(arrivalTime, pickup2.departureTime()) + STOP_DURATION;
+
+        double travelTime = travelTimeMatrix.getTravelTime(pickup2.fromLink(), dropOff1.toLink(), departureTime);
+        driveTime += travelTime;
+        arrivalTime = departureTime + travelTime;
+        if (arrivalTime > getLatestArrivalTime(dropOff1)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        departureTime = arrivalTime + STOP_DURATION;
+
+        travelTime = travelTimeMatrix.getTravelTime(dropOff1.toLink(), dropOff2.toLink(), departureTime);
+        driveTime += travelTime;
+        arrivalTime = departureTime + travelTime;
+        return arrivalTime > getLatestArrivalTime(dropOff2) ? Double.POSITIVE_INFINITY : driveTime;
+    }
+
+    private double getLatestArrivalTime(DrtDemand demand) {
+        return demand.departureTime() + ALPHA * getDirectTravelTime(demand) + BETA;
+    }
+
+    private double getDirectTravelTime(DrtDemand demand) {
+        return travelTimeMatrix.getTravelTime(demand.fromLink(), demand.toLink(), demand.departureTime());
+    }
+
+    private List<DrtDemand> createDemands(Random random) {
+        List<Link> links = new ArrayList<>(network.getLinks().values());
+        List<DrtDemand> demands = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_DEMANDS; i++) {
+            Link fromLink = links.get(random.nextInt(links.size()));
+            Link toLink;
+            do {
+                toLink = links.get(random.nextInt(links.size()));
+            } while (toLink == fromLink); // otherwise, the pooled drive time may be 0 (infinite pooling score)
+            demands.add(new DrtDemand("trip_" + i, fromLink, toLink, random.nextInt(3600)));
+        }
+        return demands;
+    }
+}
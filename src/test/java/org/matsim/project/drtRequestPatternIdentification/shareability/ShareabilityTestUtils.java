@@ -0,0 +1,32 @@
+package org.matsim.project.drtRequestPatternIdentification.shareability;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.project.utils.GridNetworkTestUtils;
+
+/**
+ * Network and drt constraints shared by the shareability tests.
+ */
+class ShareabilityTestUtils {
+    static final int GRID_SIZE = 6;
+    static final double ALPHA = 1.5;
+    static final double BETA = 300;
+    static final double MAX_WAIT_TIME = 300;
+    static final double STOP_DURATION = 60;
+
+    /**
+     * Grid of nodes (500 m apart) with links in both directions (50 s free speed travel time).
+     */
+    static Network createGridNetwork() {
+        return GridNetworkTestUtils.createGridNetwork(GRID_SIZE, 500, 10);
+    }
+
+    static DrtConfigGroup createDrtConfigGroup() {
+        DrtConfigGroup drtConfigGroup = new DrtConfigGroup();
+        drtConfigGroup.maxTravelTimeAlpha = ALPHA;
+        drtConfigGroup.maxTravelTimeBeta = BETA;
+        drtConfigGroup.maxWaitTime = MAX_WAIT_TIME;
+        drtConfigGroup.stopDuration = STOP_DURATION;
+        return drtConfigGroup;
+    }
+}
@@ -21,14 +21,22 @@
 package org.matsim.project.drtSchoolTransportStudy.jsprit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
 import static org.matsim.examples.ExamplesUtils.getTestScenarioURL;
 
 import java.net.URL;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Identifiable;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.dvrp.path.VrpPath;
 import org.matsim.contrib.dvrp.path.VrpPaths;
 import org.matsim.contrib.dvrp.router.TimeAsTravelDisutility;
 import org.matsim.contrib.dvrp.trafficmonitoring.QSimFreeSpeedTravelTime;
@@ -75,7 +83,79 @@ public class MatrixBasedVrpCostsTest {
 				double matrixTT = vrpCosts.getTransportTime(fromLocation, toLocation, 0, null, null);
 
 				assertThat(matrixTT).isEqualTo(speedyTT);
+
+				// distances are stored with a resolution of 10 m
+				double matrixDistance = vrpCosts.getDistance(fromLocation, toLocation, 0, null);
+				assertThat(matrixDistance).isCloseTo(calcDistance(speedyPath),
+						within(MatrixBasedVrpCosts.DISTANCE_RESOLUTION / 2));
+			}
+		}
+	}
+
+	@Test
+	public void valuesBeyondTheRangeAreSaturated() {
+		// 1000 km at 10 m/s: 100 000 s and 1 000 000 m
+		Network network = NetworkUtils.createNetwork();
+		var nodeA = NetworkUtils.createAndAddNode(network, Id.createNodeId("A"), new Coord(0, 0));
+		var nodeB = NetworkUtils.createAndAddNode(network, Id.createNodeId("B"), new Coord(1_000_000, 0));
+		var nodeC = NetworkUtils.createAndAddNode(network, Id.createNodeId("C"), new Coord(1_000_100, 0));
+		var linkAB = NetworkUtils.createAndAddLink(network, Id.createLinkId("AB"), nodeA, nodeB, 1_000_000, 10, 1000, 1);
+		var linkBC = NetworkUtils.createAndAddLink(network, Id.createLinkId("BC"), nodeB, nodeC, 100, 10, 1000, 1);
+		var linkCA = NetworkUtils.createAndAddLink(network, Id.createLinkId("CA"), nodeC, nodeA, 1_000_000, 10, 1000, 1);
+
+		Map<Id<Link>, Location> linkIdToLocation = Map.of(linkAB.getId(), createLocation(linkAB, 0), linkBC.getId(),
+				createLocation(linkBC, 1), linkCA.getId(), createLocation(linkCA, 2));
+		var vrpCosts = MatrixBasedVrpCosts.calculateVrpCosts(network, linkIdToLocation);
+
+		// within the range
+		var ab = linkIdToLocation.get(linkAB.getId());
+		var bc = linkIdToLocation.get(linkBC.getId());
+		var ca = linkIdToLocation.get(linkCA.getId());
+		assertThat(vrpCosts.getTransportTime(ab, bc, 0, null, null)).isLessThan(UnsignedShortMatrix.MAX_VALUE);
+		assertThat(vrpCosts.getDistance(ab, bc, 0, null)).isEqualTo(100);
+
+		// beyond the range
+		assertThat(vrpCosts.getTransportTime(ab, ca, 0, null, null)).isEqualTo(UnsignedShortMatrix.MAX_VALUE);
+		assertThat(vrpCosts.getDistance(ab, ca, 0, null)).isEqualTo(
+				UnsignedShortMatrix.MAX_VALUE * MatrixBasedVrpCosts.DISTANCE_RESOLUTION);
+		assertThat(vrpCosts.getTransportTime(bc, ab, 0, null, null)).isEqualTo(UnsignedShortMatrix.MAX_VALUE);
+	}
+
+	@Test
+	public void travelTimesWithoutDistances() {
+		URL networkUrl = IOUtils.extendUrl(getTestScenarioURL("dvrp-grid"), "grid_network.xml");
+		var network = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(network).parse(networkUrl);
+
+		var indexer = new MutableInt();
+		var linkIdToLocation = network.getLinks()
+				.values()
+				.stream()
+				.collect(Collectors.toMap(Identifiable::getId, link -> createLocation(link, indexer.getAndIncrement())));
+
+		var vrpCosts = MatrixBasedVrpCosts.calculateVrpCosts(network, linkIdToLocation);
+		var vrpCostsWithoutDistances = MatrixBasedVrpCosts.calculateVrpCosts(network, linkIdToLocation, null, false);
+		for (var fromLocation : linkIdToLocation.values()) {
+			for (var toLocation : linkIdToLocation.values()) {
+				assertThat(vrpCostsWithoutDistances.getTransportTime(fromLocation, toLocation, 0, null, null)).isEqualTo(
+						vrpCosts.getTransportTime(fromLocation, toLocation, 0, null, null));
 			}
 		}
+		var location = linkIdToLocation.values().iterator().next();
+		assertThatThrownBy(() -> vrpCostsWithoutDistances.getDistance(location, location, 0, null)).isInstanceOf(
+				UnsupportedOperationException.class);
+	}
+
+	private static Location createLocation(Link link, int index) {
+		return Location.Builder.newInstance().setId(link.getId().toString()).setIndex(index).build();
+	}
+
+	// the first link is not included (same as in the matrix)
+	private static double calcDistance(VrpPath path) {
+		double distance = 0;
+		for (int i = 1; i < path.getLinkCount(); i++) {
+			distance += path.getLink(i).getLength();
+		}
+		return distance;
 	}
 }
\ No newline at end of file
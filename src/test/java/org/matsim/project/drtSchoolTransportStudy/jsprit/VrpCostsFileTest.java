@@ -0,0 +1,111 @@
+package org.matsim.project.drtSchoolTransportStudy.jsprit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.matsim.examples.ExamplesUtils.getTestScenarioURL;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.testcases.MatsimTestUtils;
+
+import com.graphhopper.jsprit.core.problem.Location;
+
+/**
+ * Round trip (write and memory-map) of the vrp costs file. Files that do not match or are truncated are cache misses.
+ */
+public class VrpCostsFileTest {
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	private final Network network = readNetwork();
+	private final Map<Id<Link>, Location> locationByLinkId = createLocations(network);
+	private final List<Id<Link>> linkIdByLocationIdx = getLinkIdByLocationIdx(locationByLinkId);
+	private final long networkHash = VrpCostsFile.hashNetwork(network);
+
+	@Test
+	public void writeAndRead() {
+		for (boolean withDistances : new boolean[] { true, false }) {
+			var vrpCosts = MatrixBasedVrpCosts.calculateVrpCosts(network, locationByLinkId, null, withDistances);
+			Path file = Path.of(utils.getOutputDirectory(), "with-distances-" + withDistances + ".bin");
+			VrpCostsFile.write(file, networkHash, linkIdByLocationIdx, vrpCosts);
+
+			var readVrpCosts = VrpCostsFile.read(file, networkHash, linkIdByLocationIdx);
+			assertThat(readVrpCosts).isNotNull();
+			assertThat(readVrpCosts.getDistanceMatrix() != null).isEqualTo(withDistances);
+			for (var from : locationByLinkId.values()) {
+				for (var to : locationByLinkId.values()) {
+					assertThat(readVrpCosts.getTransportTime(from, to, 0, null, null)).isEqualTo(
+							vrpCosts.getTransportTime(from, to, 0, null, null));
+					if (withDistances) {
+						assertThat(readVrpCosts.getDistance(from, to, 0, null)).isEqualTo(vrpCosts.getDistance(from, to, 0, null));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void fileOfAnotherNetworkOrLocationsIsIgnored() {
+		Path file = writeFile();
+		assertThat(VrpCostsFile.read(file, networkHash + 1, linkIdByLocationIdx)).isNull();
+		assertThat(VrpCostsFile.read(file, networkHash, linkIdByLocationIdx.subList(1, linkIdByLocationIdx.size()))).isNull();
+		assertThat(VrpCostsFile.read(Path.of(utils.getOutputDirectory(), "missing.bin"), networkHash,
+				linkIdByLocationIdx)).isNull();
+	}
+
+	@Test
+	public void truncatedFileIsIgnored() throws IOException {
+		byte[] bytes = Files.readAllBytes(writeFile());
+		// truncated header (EOF while reading the link IDs) and truncated matrices
+		for (int length : new int[] { 0, 10, 100, bytes.length / 2, bytes.length - 1 }) {
+			Path truncatedFile = Path.of(utils.getOutputDirectory(), "truncated-" + length + ".bin");
+			Files.write(truncatedFile, Arrays.copyOf(bytes, length));
+			assertThat(VrpCostsFile.read(truncatedFile, networkHash, linkIdByLocationIdx)).as("length: %s", length).isNull();
+		}
+	}
+
+	private Path writeFile() {
+		var vrpCosts = MatrixBasedVrpCosts.calculateVrpCosts(network, locationByLinkId);
+		Path file = VrpCostsFile.getFile(Path.of(utils.getOutputDirectory()), networkHash, linkIdByLocationIdx);
+		VrpCostsFile.write(file, networkHash, linkIdByLocationIdx, vrpCosts);
+		return file;
+	}
+
+	private static Network readNetwork() {
+		URL networkUrl = IOUtils.extendUrl(getTestScenarioURL("dvrp-grid"), "grid_network.xml");
+		var network = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(network).parse(networkUrl);
+		return network;
+	}
+
+	private static Map<Id<Link>, Location> createLocations(Network network) {
+		Map<Id<Link>, Location> locationByLinkId = new HashMap<>();
+		for (Link link : network.getLinks().values()) {
+			locationByLinkId.put(link.getId(), Location.Builder.newInstance()
+					.setId(link.getId().toString())
+					.setIndex(locationByLinkId.size())
+					.build());
+		}
+		return locationByLinkId;
+	}
+
+	private static List<Id<Link>> getLinkIdByLocationIdx(Map<Id<Link>, Location> locationByLinkId) {
+		Id<Link>[] linkIds = new Id[locationByLinkId.size()];
+		locationByLinkId.forEach((linkId, location) -> linkIds[location.getIndex()] = linkId);
+		return List.of(linkIds);
+	}
+}
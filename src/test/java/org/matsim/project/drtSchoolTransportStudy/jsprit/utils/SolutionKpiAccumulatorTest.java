@@ -0,0 +1,134 @@
+package org.matsim.project.drtSchoolTransportStudy.jsprit.utils;
+
+import com.graphhopper.jsprit.core.algorithm.box.Jsprit;
+import com.graphhopper.jsprit.core.problem.Location;
+import com.graphhopper.jsprit.core.problem.VehicleRoutingProblem;
+import com.graphhopper.jsprit.core.problem.cost.VehicleRoutingTransportCosts;
+import com.graphhopper.jsprit.core.problem.job.Shipment;
+import com.graphhopper.jsprit.core.problem.solution.VehicleRoutingProblemSolution;
+import com.graphhopper.jsprit.core.problem.solution.route.activity.TimeWindow;
+import com.graphhopper.jsprit.core.problem.vehicle.VehicleImpl;
+import com.graphhopper.jsprit.core.problem.vehicle.VehicleTypeImpl;
+import com.graphhopper.jsprit.core.util.EuclideanCosts;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Compares the KPIs of all the solutions evaluated by a short search with the KPIs collected by
+ * {@link StatisticCollectorForOF} (Euclidean and transport costs based distances).
+ */
+public class SolutionKpiAccumulatorTest {
+    private static final double SERVICE_TIME = 60;
+    private static final int NUMBER_OF_SHIPMENTS = 12;
+
+    @Test
+    public void kpisEqualToStatisticCollector() {
+        for (boolean networkBasedCosts : new boolean[]{true, false}) {
+            VehicleRoutingProblem problem = createProblem(new Random(4711));
+            VehicleRoutingTransportCosts transportCosts = networkBasedCosts ? problem.getTransportCosts() : null;
+            SolutionKpiAccumulator kpis = networkBasedCosts ?
+                    new SolutionKpiAccumulator(problem, transportCosts, SERVICE_TIME) :
+                    new SolutionKpiAccumulator(problem, SERVICE_TIME);
+            AtomicInteger comparedSolutions = new AtomicInteger();
+
+            var algorithm = Jsprit.Builder.newInstance(problem)
+                    .setProperty(Jsprit.Parameter.THREADS, "1")
+                    .setRandom(new Random(4711))
+                    .setObjectiveFunction(solution -> {
+                        // the accumulator is re-used (cached route KPIs), the statistic collector is created for each solution
+                        kpis.accumulate(solution);
+                        StatisticCollectorForOF statistics = networkBasedCosts ?
+                                new StatisticCollectorForOF(transportCosts, SERVICE_TIME) :
+                                new StatisticCollectorForOF(SERVICE_TIME);
+                        statistics.statsCollector(problem, solution);
+                        assertKpisEqual(kpis, statistics, solution);
+                        comparedSolutions.incrementAndGet();
+                        return kpis.getDrivenTime() + 10000 * solution.getUnassignedJobs().size();
+                    })
+                    .buildAlgorithm();
+            algorithm.setMaxIterations(50);
+            algorithm.searchSolutions();
+
+            assertThat(comparedSolutions.get()).isGreaterThanOrEqualTo(50);
+        }
+    }
+
+    private static void assertKpisEqual(SolutionKpiAccumulator kpis, StatisticCollectorForOF statistics,
+                                        VehicleRoutingProblemSolution solution) {
+        Map<String, Double> pickupTimes = statistics.getPickupTimeMap();
+        Map<String, Double> deliveryTimes = statistics.getDeliveryTimeMap();
+        Map<String, Double> desiredPickupTimes = statistics.getDesiredPickupTimeMap();
+        Map<String, Double> desiredDeliveryTimes = statistics.getDesiredDeliveryTimeMap();
+
+        double earlyPickupTime = 0;
+        double pickupToDesiredDeliveryTime = 0;
+        for (var entry : pickupTimes.entrySet()) {
+            double desiredPickupTime = desiredPickupTimes.get(entry.getKey());
+            earlyPickupTime += Math.max(desiredPickupTime - entry.getValue(), 0);
+            pickupToDesiredDeliveryTime += desiredDeliveryTimes.get(entry.getKey()) - Math.max(entry.getValue(), desiredPickupTime);
+        }
+        double deliveryToDesiredDeliveryTime = 0;
+        for (var entry : deliveryTimes.entrySet()) {
+            deliveryToDesiredDeliveryTime += desiredDeliveryTimes.get(entry.getKey()) - entry.getValue();
+        }
+
+        assertThat(kpis.getTravelTime()).isCloseTo(sum(statistics.getTravelTimeMap()), within(1e-6));
+        assertThat(kpis.getInVehicleTime()).isCloseTo(sum(statistics.getInVehicleTimeMap()), within(1e-6));
+        assertThat(kpis.getWaitingTime()).isCloseTo(sum(statistics.getWaitingTimeMap()), within(1e-6));
+        assertThat(kpis.getPassengerTraveledDistance()).isCloseTo(sum(statistics.getPassengerTraveledDistanceMap()), within(1e-6));
+        assertThat(kpis.getDrivenDistance()).isCloseTo(sum(statistics.getDrivenDistanceMap()), within(1e-6));
+        assertThat(kpis.getDrivenTime()).isCloseTo(sum(statistics.getDrivenTimeMap()), within(1e-6));
+        assertThat(kpis.getEarlyPickupTime()).isCloseTo(earlyPickupTime, within(1e-6));
+        assertThat(kpis.getPickupToDesiredDeliveryTime()).isCloseTo(pickupToDesiredDeliveryTime, within(1e-6));
+        assertThat(kpis.getDeliveryToDesiredDeliveryTime()).isCloseTo(deliveryToDesiredDeliveryTime, within(1e-6));
+        assertThat(kpis.getServedPassengers()).isEqualTo(deliveryTimes.size());
+        assertThat(kpis.getVehiclesUsed()).isEqualTo(solution.getRoutes().size());
+    }
+
+    private static double sum(Map<String, Double> map) {
+        return map.values().stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    /**
+     * Two vehicles and random shipments (with time windows) on a 10 km x 10 km square, Euclidean costs at 10 m/s.
+     */
+    private static VehicleRoutingProblem createProblem(Random random) {
+        var vrpBuilder = VehicleRoutingProblem.Builder.newInstance();
+        var vehicleType = VehicleTypeImpl.Builder.newInstance("vehicle-type")
+                .addCapacityDimension(0, 4)
+                .setMaxVelocity(10)
+                .build();
+        for (int i = 0; i < 2; i++) {
+            vrpBuilder.addVehicle(VehicleImpl.Builder.newInstance("vehicle_" + i)
+                    .setStartLocation(Location.newInstance(i * 10000, i * 10000))
+                    .setEarliestStart(0)
+                    .setLatestArrival(24 * 3600)
+                    .setReturnToDepot(false)
+                    .setType(vehicleType)
+                    .build());
+        }
+        for (int i = 0; i < NUMBER_OF_SHIPMENTS; i++) {
+            double desiredPickupTime = random.nextInt(3600);
+            vrpBuilder.addJob(Shipment.Builder.newInstance("shipment_" + i)
+                    .setPickupLocation(Location.newInstance(random.nextInt(10000), random.nextInt(10000)))
+                    .setDeliveryLocation(Location.newInstance(random.nextInt(10000), random.nextInt(10000)))
+                    .setPickupTimeWindow(new TimeWindow(desiredPickupTime, desiredPickupTime + 1800))
+                    .setDeliveryTimeWindow(new TimeWindow(desiredPickupTime, desiredPickupTime + 7200))
+                    .setPickupServiceTime(SERVICE_TIME)
+                    .setDeliveryServiceTime(SERVICE_TIME)
+                    .addSizeDimension(0, 1)
+                    .build());
+        }
+        var euclideanCosts = new EuclideanCosts();
+        euclideanCosts.speed = 10;
+        return vrpBuilder.setRoutingCost(euclideanCosts)
+                .setFleetSize(VehicleRoutingProblem.FleetSize.FINITE)
+                .build();
+    }
+}
@@ -0,0 +1,60 @@
+package org.matsim.project.utils;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.dvrp.router.TimeAsTravelDisutility;
+import org.matsim.contrib.dvrp.trafficmonitoring.QSimFreeSpeedTravelTime;
+import org.matsim.contrib.zone.Zone;
+import org.matsim.contrib.zone.skims.Matrix;
+import org.matsim.contrib.zone.skims.TravelTimeMatrices;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.matsim.examples.ExamplesUtils.getTestScenarioURL;
+
+/**
+ * Compares the dense matrix with the zonal travel time matrix of the same nodes (one zone per node).
+ */
+public class DenseNodeToNodeTravelTimeMatrixTest {
+    @Test
+    public void travelTimesEqualToZonalMatrix() {
+        Network network = NetworkUtils.createNetwork();
+        new MatsimNetworkReader(network).parse(IOUtils.extendUrl(getTestScenarioURL("dvrp-grid"), "grid_network.xml"));
+        TravelTime travelTime = new QSimFreeSpeedTravelTime(1);
+
+        // every second node, and one duplicate
+        List<Node> relevantNodes = new ArrayList<>();
+        Map<Zone, Node> nodeByZone = new LinkedHashMap<>();
+        int i = 0;
+        for (Node node : network.getNodes().values()) {
+            if (i++ % 2 == 0) {
+                relevantNodes.add(node);
+                nodeByZone.put(new Zone(Id.create(node.getId(), Zone.class), "node", node.getCoord()), node);
+            }
+        }
+        relevantNodes.add(relevantNodes.get(0));
+
+        var matrix = new DenseNodeToNodeTravelTimeMatrix(network, relevantNodes, 0, travelTime,
+                new TimeAsTravelDisutility(travelTime), 2);
+        Matrix zonalMatrix = TravelTimeMatrices.calculateTravelTimeMatrix(network, nodeByZone, 0, travelTime,
+                new TimeAsTravelDisutility(travelTime), 2);
+
+        assertThat(matrix.size()).isEqualTo(nodeByZone.size());
+        for (Map.Entry<Zone, Node> from : nodeByZone.entrySet()) {
+            for (Map.Entry<Zone, Node> to : nodeByZone.entrySet()) {
+                assertThat(matrix.getTravelTime(from.getValue(), to.getValue(), 0))
+                        .isEqualTo(zonalMatrix.get(from.getKey(), to.getKey()));
+            }
+        }
+    }
+}
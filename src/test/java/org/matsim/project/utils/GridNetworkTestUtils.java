@@ -0,0 +1,59 @@
+package org.matsim.project.utils;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+/**
+ * Square grid networks for the tests. The node (x, y) has the id "x_y", the link from (x1, y1) to (x2, y2) has the id
+ * "x1_y1-x2_y2".
+ */
+public class GridNetworkTestUtils {
+    /**
+     * Grid of nodes with links in both directions, all with the same free speed.
+     */
+    public static Network createGridNetwork(int gridSize, double spacing, double freespeed) {
+        return createGridNetwork(gridSize, spacing, freespeed, freespeed);
+    }
+
+    /**
+     * Grid of nodes with links in both directions. The links going right/up have the forward free speed, the links
+     * going left/down the backward free speed. The link length is the spacing of the nodes.
+     */
+    public static Network createGridNetwork(int gridSize, double spacing, double forwardFreespeed,
+                                            double backwardFreespeed) {
+        Network network = NetworkUtils.createNetwork();
+        Node[][] nodes = new Node[gridSize][gridSize];
+        for (int x = 0; x < gridSize; x++) {
+            for (int y = 0; y < gridSize; y++) {
+                nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y),
+                        new Coord(x * spacing, y * spacing));
+            }
+        }
+        for (int x = 0; x < gridSize; x++) {
+            for (int y = 0; y < gridSize; y++) {
+                if (x + 1 < gridSize) {
+                    addLink(network, nodes[x][y], nodes[x + 1][y], spacing, forwardFreespeed);
+                    addLink(network, nodes[x + 1][y], nodes[x][y], spacing, backwardFreespeed);
+                }
+                if (y + 1 < gridSize) {
+                    addLink(network, nodes[x][y], nodes[x][y + 1], spacing, forwardFreespeed);
+                    addLink(network, nodes[x][y + 1], nodes[x][y], spacing, backwardFreespeed);
+                }
+            }
+        }
+        return network;
+    }
+
+    public static Link getLink(Network network, int fromX, int fromY, int toX, int toY) {
+        return network.getLinks().get(Id.createLinkId(fromX + "_" + fromY + "-" + toX + "_" + toY));
+    }
+
+    private static void addLink(Network network, Node fromNode, Node toNode, double length, double freespeed) {
+        NetworkUtils.createAndAddLink(network, Id.createLinkId(fromNode.getId() + "-" + toNode.getId()), fromNode, toNode,
+                length, freespeed, 1000, 1);
+    }
+}